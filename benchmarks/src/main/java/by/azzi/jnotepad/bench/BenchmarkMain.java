@@ -0,0 +1,34 @@
+package by.azzi.jnotepad.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * запуск бенчмарков с аргументами JMH и профилировщиком gc, что бы рядом со временем
+ * печаталась скорость выделения памяти (gc.alloc.rate.norm - байт на операцию)
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        final CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp() || options.shouldList() || options.shouldListProfilers()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        try {
+            new Runner(new OptionsBuilder()
+                    .parent(options)
+                    .addProfiler(GCProfiler.class)
+                    .build()).run();
+        } catch (RunnerException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package by.azzi.jnotepad.bench;
+
+import by.azzi.jnotepad.document.EditHistory;
+import by.azzi.jnotepad.document.TextDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * вставка и удаление символа в случайных местах документа со слушателями,
+ * как в окне редактора: история правок и слушатель изменений
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class EditBenchmark {
+
+    @Param({"1", "64"})
+    public int megabytes;
+
+    private TextDocument document;
+    private final Random random = new Random(1);
+    private long changes;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = TextDocument.read(TextGenerator.file(megabytes));
+        document.addUndoableEditListener(new EditHistory());
+        document.addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                changes++;
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                changes++;
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                changes++;
+            }
+        });
+    }
+
+    @Benchmark
+    public int insertChar() throws BadLocationException {
+        final int offset = random.nextInt(document.getLength() + 1);
+        document.insertString(offset, random.nextInt(20) == 0 ? "\n" : "x", null);
+        return offset;
+    }
+
+    @Benchmark
+    public int removeChar() throws BadLocationException {
+        // вставка восполняет удаленное, что бы длина документа не уходила
+        final int offset = random.nextInt(document.getLength());
+        document.remove(offset, 1);
+        document.insertString(random.nextInt(document.getLength() + 1), "y", null);
+        return offset;
+    }
+}
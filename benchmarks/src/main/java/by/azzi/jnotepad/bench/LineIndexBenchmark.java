@@ -0,0 +1,76 @@
+package by.azzi.jnotepad.bench;
+
+import by.azzi.jnotepad.document.LineIndex;
+import by.azzi.jnotepad.document.TextDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.text.Element;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * строка по смещению и начало строки по номеру: {@link LineIndex} против элементов строк Swing
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LineIndexBenchmark {
+
+    private static final int LOOKUPS = 1024;
+
+    @Param({"1", "64"})
+    public int megabytes;
+
+    private TextDocument document;
+    private LineIndex lineIndex;
+    private Element root;
+    private final int[] offsets = new int[LOOKUPS];
+    private final int[] lines = new int[LOOKUPS];
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        document = TextDocument.read(TextGenerator.file(megabytes));
+        lineIndex = document.getLineIndex();
+        root = document.getDefaultRootElement();
+        final Random random = new Random(7);
+        for (int i = 0; i < LOOKUPS; i++) {
+            offsets[i] = random.nextInt(document.getLength());
+            lines[i] = random.nextInt(lineIndex.getLineCount());
+        }
+    }
+
+    @Benchmark
+    public int lineOfOffset() {
+        return lineIndex.getLineOfOffset(offsets[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public int elementIndexOfOffset() {
+        return root.getElementIndex(offsets[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public int lineStart() {
+        return lineIndex.getLineStart(lines[next++ & (LOOKUPS - 1)]);
+    }
+
+    @Benchmark
+    public int elementStart() {
+        return root.getElement(lines[next++ & (LOOKUPS - 1)]).getStartOffset();
+    }
+}
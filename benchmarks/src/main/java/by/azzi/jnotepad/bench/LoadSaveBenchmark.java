@@ -0,0 +1,76 @@
+package by.azzi.jnotepad.bench;
+
+import by.azzi.jnotepad.document.TextDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * чтение файла в документ и запись документа в файл
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+public class LoadSaveBenchmark {
+
+    @Param({"1", "64", "1024"})
+    public int megabytes;
+
+    /**
+     * ascii - файл отображается в память без копирования, utf-8 - декодируется с кириллицей
+     */
+    @Param({"ascii", "utf-8"})
+    public String text;
+
+    private File file;
+    private File saved;
+    private TextDocument document;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = "ascii".equals(text)
+                ? TextGenerator.file(megabytes)
+                : TextGenerator.file(megabytes, 0.3, Charset.forName("UTF-8"));
+        saved = File.createTempFile("jnotepad-bench-saved", ".txt");
+        document = TextDocument.read(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(saved.toPath());
+    }
+
+    @Benchmark
+    public TextDocument load() throws IOException {
+        return TextDocument.read(file);
+    }
+
+    @Benchmark
+    public long save() throws IOException {
+        try (FileChannel channel = FileChannel.open(saved.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            document.write(channel);
+            return channel.size();
+        }
+    }
+}
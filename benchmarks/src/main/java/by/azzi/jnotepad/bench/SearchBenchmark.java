@@ -0,0 +1,99 @@
+package by.azzi.jnotepad.bench;
+
+import by.azzi.jnotepad.document.DocumentStatistics;
+import by.azzi.jnotepad.document.IntArray;
+import by.azzi.jnotepad.document.TextDocument;
+import by.azzi.jnotepad.search.RegexSearch;
+import by.azzi.jnotepad.search.SearchQuery;
+import by.azzi.jnotepad.search.SearchResult;
+import by.azzi.jnotepad.search.TextSearcher;
+import by.azzi.jnotepad.search.TextSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.text.BadLocationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * поиск всех вхождений слова, регулярного выражения и замена всех вхождений
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SearchBenchmark {
+
+    @Param({"1", "64"})
+    public int megabytes;
+
+    private File file;
+    private TextDocument document;
+    private final TextSearcher word = new TextSearcher(new SearchQuery(TextGenerator.NEEDLE, false, true));
+    private final Pattern regex = Pattern.compile("\\b" + TextGenerator.NEEDLE + "\\s+\\w+");
+
+    @Setup
+    public void setUp() throws IOException {
+        file = TextGenerator.file(megabytes);
+        document = TextDocument.read(file);
+    }
+
+    @Benchmark
+    public IntArray findAll() {
+        return word.findAll(TextSource.of(document), 0, document.getLength());
+    }
+
+    @Benchmark
+    public SearchResult findRegex() {
+        return new RegexSearch(document.snapshot(), regex).run(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * свой документ на каждый вызов: замена меняет текст. Статистика подключена, как в окне,
+     * ее слушатели тоже работают при замене
+     */
+    @State(Scope.Thread)
+    public static class Fresh {
+
+        TextDocument document;
+        IntArray matches;
+        final DocumentStatistics statistics = new DocumentStatistics();
+
+        @Setup(Level.Invocation)
+        public void setUp(SearchBenchmark benchmark) throws IOException {
+            document = TextDocument.read(benchmark.file);
+            matches = benchmark.word.findAll(TextSource.of(document), 0, document.getLength());
+            statistics.setDocument(document);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() {
+            statistics.setDocument(null);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public TextDocument replaceAll(Fresh fresh) throws BadLocationException {
+        fresh.document.replace(fresh.matches.toArray(), fresh.matches.size(), TextGenerator.NEEDLE.length(), "pin\ncushion");
+        return fresh.document;
+    }
+}
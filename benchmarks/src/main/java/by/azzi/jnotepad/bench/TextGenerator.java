@@ -0,0 +1,98 @@
+package by.azzi.jnotepad.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+/**
+ * синтетические тексты для бенчмарков: строки из слов словаря длиной 20-120 символов,
+ * одинаковые от запуска к запуску при одном и том же размере
+ */
+public final class TextGenerator {
+
+    /**
+     * слово, которое ищут бенчмарки поиска, встречается примерно в каждой десятой строке
+     */
+    public static final String NEEDLE = "needle";
+
+    private static final String[] LATIN = {
+            "lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit", "sed", "do",
+            "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua", "quick",
+            "brown", "fox", "jumps", "over", "the", "lazy", "dog", "0x1F", "2024-01-01", "INFO"
+    };
+    private static final String[] CYRILLIC = {
+            "съешь", "же", "ещё", "этих", "мягких", "французских", "булок", "да", "выпей", "чаю"
+    };
+
+    private static final long SEED = 42;
+
+    private TextGenerator() {
+    }
+
+    /**
+     * текст около length символов с '\n' в конце строк
+     *
+     * @param cyrillic доля кириллических слов от 0 до 1, 0 - чистый ASCII
+     */
+    public static String text(int length, double cyrillic) {
+        final StringBuilder text = new StringBuilder(length + 128);
+        final Random random = new Random(SEED);
+        while (text.length() < length) {
+            appendLine(text, random, cyrillic);
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+
+    /**
+     * файл около megabytes МБ во временном каталоге; сгенерированный раз файл
+     * переиспользуется следующими запусками
+     */
+    public static File file(int megabytes, double cyrillic, Charset charset) throws IOException {
+        final File file = new File(System.getProperty("java.io.tmpdir"),
+                "jnotepad-bench-" + megabytes + "m-" + Math.round(cyrillic * 100) + "-" + charset.name() + ".txt");
+        final long size = (long) megabytes * 1024 * 1024;
+        if (file.isFile() && file.length() >= size) {
+            return file;
+        }
+        final File tmp = new File(file.getPath() + ".tmp");
+        final Random random = new Random(SEED);
+        final StringBuilder line = new StringBuilder(256);
+        long written = 0;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(tmp.toPath()), charset), 1 << 16)) {
+            final boolean singleByte = charset.newEncoder().maxBytesPerChar() == 1;
+            while (written < size) {
+                line.setLength(0);
+                appendLine(line, random, cyrillic);
+                out.append(line);
+                written += singleByte ? line.length() : line.toString().getBytes(charset).length;
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return file;
+    }
+
+    public static File file(int megabytes) throws IOException {
+        return file(megabytes, 0, StandardCharsets.US_ASCII);
+    }
+
+    private static void appendLine(StringBuilder text, Random random, double cyrillic) {
+        final int lineLength = 20 + random.nextInt(100);
+        final int lineStart = text.length();
+        if (random.nextInt(10) == 0) {
+            text.append(NEEDLE).append(' ');
+        }
+        while (text.length() - lineStart < lineLength) {
+            final String[] words = cyrillic > 0 && random.nextDouble() < cyrillic ? CYRILLIC : LATIN;
+            text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        text.setCharAt(text.length() - 1, '\n');
+    }
+}
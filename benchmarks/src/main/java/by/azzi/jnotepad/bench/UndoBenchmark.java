@@ -0,0 +1,84 @@
+package by.azzi.jnotepad.bench;
+
+import by.azzi.jnotepad.document.EditHistory;
+import by.azzi.jnotepad.document.TextDocument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.swing.text.BadLocationException;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * запись набора текста в историю правок и проход по ней отменой и повтором
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class UndoBenchmark {
+
+    /**
+     * сколько символов набирается, каждые 50 - в новом месте документа
+     */
+    @Param({"1000"})
+    public int typed;
+
+    private TextDocument document;
+    private EditHistory history;
+    private final Random random = new Random(3);
+
+    @Setup
+    public void setUp() throws IOException, BadLocationException {
+        document = TextDocument.read(TextGenerator.file(1));
+        history = new EditHistory();
+        document.addUndoableEditListener(history);
+        type();
+    }
+
+    private void type() throws BadLocationException {
+        int offset = 0;
+        for (int i = 0; i < typed; i++) {
+            if (i % 50 == 0) {
+                offset = random.nextInt(document.getLength() + 1);
+            }
+            document.insertString(offset++, i % 6 == 5 ? " " : "a", null);
+        }
+    }
+
+    @Benchmark
+    public int undoRedoAll() {
+        int steps = 0;
+        while (history.canUndo()) {
+            history.undo();
+            steps++;
+        }
+        while (history.canRedo()) {
+            history.redo();
+        }
+        return steps;
+    }
+
+    @Benchmark
+    public long typeAndUndo() throws BadLocationException {
+        // печать поверх уже записанной истории, затем отмена напечатанного
+        final int before = history.getUndoCount();
+        type();
+        while (history.getUndoCount() > before) {
+            history.undo();
+        }
+        return history.getSize();
+    }
+}
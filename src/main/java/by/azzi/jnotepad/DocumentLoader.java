@@ -0,0 +1,88 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.ReadProgress;
+import by.azzi.jnotepad.document.TextDocument;
+import by.azzi.jnotepad.trace.Trace;
+
+import javax.swing.*;
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * читает файл в фоне, показывая начало документа до окончания чтения.
+ * Прогресс в процентах публикуется через свойство progress
+ */
+abstract class DocumentLoader extends SwingWorker<TextDocument, String> implements ReadProgress {
+
+    private final File file;
+
+    DocumentLoader(File file) {
+        this.file = file;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    protected TextDocument doInBackground() throws Exception {
+        final Object span = Trace.ENABLED ? Trace.beginFileIO() : null;
+        final TextDocument document = TextDocument.read(file, this);
+        if (Trace.ENABLED) {
+            Trace.endFileIO(span, "read", file);
+        }
+        return document;
+    }
+
+    @Override
+    public void progress(long read, long total) throws InterruptedIOException {
+        if (isCancelled() || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Чтение отменено: " + file);
+        }
+        setProgress(total == 0 ? 100 : (int) (read * 100 / total));
+    }
+
+    @Override
+    public void preview(String text) {
+        publish(text);
+    }
+
+    @Override
+    protected void process(List<String> chunks) {
+        if (!isCancelled()) {
+            showPreview(chunks.get(chunks.size() - 1));
+        }
+    }
+
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            return;
+        }
+        try {
+            loaded(get());
+        } catch (InterruptedException | CancellationException ex) {
+            // отменено, документ не меняется
+        } catch (ExecutionException ex) {
+            failed(ex.getCause());
+        }
+    }
+
+    /**
+     * начало документа для показа, вызывается в EDT
+     */
+    protected abstract void showPreview(String text);
+
+    /**
+     * документ прочитан полностью, вызывается в EDT
+     */
+    protected abstract void loaded(TextDocument document);
+
+    /**
+     * ошибка чтения, вызывается в EDT
+     */
+    protected abstract void failed(Throwable cause);
+}
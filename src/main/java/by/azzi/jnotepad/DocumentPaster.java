@@ -0,0 +1,234 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.TextDocument;
+import by.azzi.jnotepad.document.TextSnapshot;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * вставка из буфера обмена вместо выделения: текст берется из буфера в фоне и вставляется
+ * в EDT кусками не больше {@link #CHUNK} символов, по куску за событие, так что между ними
+ * успевают обработаться ввод и отрисовка. Фоновый поток ждет, если впереди больше
+ * {@link #MAX_PENDING} кусков. Переводы строк приводятся к '\n'. Замена выделения и все куски -
+ * один шаг отмены. Для вставок больше {@link #PROGRESS_LIMIT} символов прогресс в процентах
+ * публикуется через свойство progress
+ */
+abstract class DocumentPaster extends SwingWorker<Void, Void> {
+
+    static final int CHUNK = 1 << 20;
+    private static final int MAX_PENDING = 8;
+    private static final int PROGRESS_LIMIT = 8 * CHUNK;
+
+    private final TextDocument document;
+    private final Transferable source;
+    private final int offset;
+    private final int removed;
+    /**
+     * прочитанное, но еще не вставленное, под монитором this
+     */
+    private final Deque<String> pending = new ArrayDeque<>();
+    private boolean flushPosted;
+    private volatile int total = -1;
+    private boolean lastWasCR;
+    private boolean read;
+    private boolean closed;
+    private int inserted;
+    /**
+     * длина документа после вставленного; другая длина - документ правили в обход вставки
+     */
+    private int expectedLength;
+
+    /**
+     * вставка source вместо [start, end) документа
+     */
+    DocumentPaster(TextDocument document, Transferable source, int start, int end) {
+        this.document = document;
+        this.source = source;
+        this.offset = start;
+        this.removed = end - start;
+    }
+
+    /**
+     * заменяет выделение и начинает чтение, в EDT
+     */
+    void start() {
+        document.beginEdit();
+        try {
+            if (removed > 0) {
+                document.remove(offset, removed);
+            }
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        expectedLength = document.getLength();
+        execute();
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        final char[] chars = new char[CHUNK];
+        if (source instanceof TextTransfer) {
+            // текст блокнота: переводы строк уже '\n'
+            final TextSnapshot text = ((TextTransfer) source).getText();
+            total = text.length();
+            for (int from = 0, to; from < total; from = to) {
+                to = chunkEnd(from, total, text.charAt(Math.min(total, from + CHUNK) - 1));
+                text.getChars(from, to, chars, 0);
+                append(new String(chars, 0, to - from));
+            }
+        } else {
+            final String text = (String) source.getTransferData(DataFlavor.stringFlavor);
+            total = text.length();
+            for (int from = 0, to; from < total; from = to) {
+                to = chunkEnd(from, total, text.charAt(Math.min(total, from + CHUNK) - 1));
+                text.getChars(from, to, chars, 0);
+                append(new String(chars, 0, normalize(chars, to - from)));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * конец куска с from, last - последний символ полного куска: суррогатная пара не разрывается
+     */
+    private static int chunkEnd(int from, int total, char last) {
+        final int to = Math.min(total, from + CHUNK);
+        return to < total && Character.isHighSurrogate(last) ? to - 1 : to;
+    }
+
+    /**
+     * приводит переводы строк в первых length символах к '\n' на месте и возвращает новую длину,
+     * "\r\n" на стыке кусков склеивается
+     */
+    private int normalize(char[] chars, int length) {
+        int w = 0;
+        for (int r = 0; r < length; r++) {
+            final char c = chars[r];
+            if (c == '\r') {
+                chars[w++] = '\n';
+                lastWasCR = true;
+                continue;
+            }
+            if (c != '\n' || !lastWasCR) {
+                chars[w++] = c;
+            }
+            lastWasCR = false;
+        }
+        return w;
+    }
+
+    private synchronized void append(String chunk) throws InterruptedException {
+        while (pending.size() >= MAX_PENDING && !isCancelled()) {
+            wait();
+        }
+        if (isCancelled()) {
+            throw new InterruptedException();
+        }
+        if (chunk.isEmpty()) {
+            return;
+        }
+        pending.addLast(chunk);
+        if (!flushPosted) {
+            flushPosted = true;
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+
+    /**
+     * вставляет очередной кусок, остаток - следующим событием
+     */
+    private void flush() {
+        final String chunk;
+        synchronized (this) {
+            chunk = pending.pollFirst();
+            if (!pending.isEmpty()) {
+                SwingUtilities.invokeLater(this::flush);
+            } else {
+                flushPosted = false;
+            }
+            notifyAll();
+        }
+        if (chunk == null || closed) {
+            return;
+        }
+        if (document.getLength() != expectedLength) {
+            cancel(true);
+            finish();
+            return;
+        }
+        try {
+            document.insertString(offset + inserted, chunk, null);
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        inserted += chunk.length();
+        expectedLength += chunk.length();
+        if (total > PROGRESS_LIMIT) {
+            setProgress((int) Math.min(100, inserted * 100L / total));
+        }
+        finishIfDone();
+    }
+
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            finish();
+            return;
+        }
+        try {
+            get();
+        } catch (InterruptedException | CancellationException ex) {
+            finish();
+            return;
+        } catch (ExecutionException ex) {
+            finish();
+            failed(ex.getCause());
+            return;
+        }
+        read = true;
+        finishIfDone();
+    }
+
+    private void finishIfDone() {
+        final boolean drained;
+        synchronized (this) {
+            drained = pending.isEmpty();
+        }
+        if (read && drained) {
+            finish();
+        }
+    }
+
+    /**
+     * закрывает шаг отмены; при отмене уже вставленное остается
+     */
+    private void finish() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        synchronized (this) {
+            pending.clear();
+            notifyAll();
+        }
+        document.endEdit();
+        finished(offset + inserted);
+    }
+
+    /**
+     * вставка закончена или прервана, end - конец вставленного, вызывается в EDT
+     */
+    protected abstract void finished(int end);
+
+    /**
+     * буфер обмена не прочитался, вызывается в EDT после {@link #finished(int)}
+     */
+    protected abstract void failed(Throwable cause);
+}
@@ -0,0 +1,178 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.IntArray;
+import by.azzi.jnotepad.document.TextSnapshot;
+
+import javax.swing.text.Segment;
+import java.awt.*;
+import java.awt.print.PageFormat;
+import java.awt.print.Printable;
+import java.awt.print.PrinterAbortException;
+import java.awt.print.PrinterException;
+import java.util.Arrays;
+
+/**
+ * печать снимка документа без второй текстовой области.
+ * <p>
+ * Страницы размечаются по мере запроса принтером, от документа хранятся только смещения
+ * начал страниц. Текст читается сегментами снимка, строка страницы собирается в небольшой
+ * буфер и рисуется сразу. Строки длиннее ширины страницы переносятся по словам, табуляция
+ * выравнивается на каждые {@link #TAB_SIZE} пробелов. Методы печати вызываются из потока,
+ * в котором запущен PrinterJob.print
+ */
+final class DocumentPrintable implements Printable {
+
+    static final int TAB_SIZE = 8;
+    private static final int SEGMENT_LENGTH = 16 * 1024;
+
+    private final TextSnapshot text;
+    private final Font font;
+    /**
+     * начала размеченных страниц, последнее - начало следующей неразмеченной
+     */
+    private final IntArray pageStarts = new IntArray();
+    private final Segment segment = new Segment();
+    private int segmentStart;
+    private char[] row = new char[256];
+    private volatile int progress;
+    private volatile boolean cancelled;
+
+    DocumentPrintable(TextSnapshot text, Font font) {
+        this.text = text;
+        this.font = font;
+        pageStarts.add(0);
+    }
+
+    /**
+     * напечатано процентов текста
+     */
+    int getProgress() {
+        return progress;
+    }
+
+    /**
+     * число размеченных страниц
+     */
+    int getPageCount() {
+        return pageStarts.size() - 1;
+    }
+
+    /**
+     * следующий запрос страницы прервет печать
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public int print(Graphics graphics, PageFormat format, int pageIndex) throws PrinterException {
+        if (cancelled) {
+            throw new PrinterAbortException();
+        }
+        final Graphics2D g = (Graphics2D) graphics;
+        g.setFont(font);
+        final FontMetrics metrics = g.getFontMetrics();
+        final int rows = Math.max(1, (int) (format.getImageableHeight() / metrics.getHeight()));
+        final int width = (int) format.getImageableWidth();
+        while (pageStarts.size() <= pageIndex + 1) {
+            final int start = pageStarts.get(pageStarts.size() - 1);
+            if (start >= text.length() && pageStarts.size() > 1) {
+                return NO_SUCH_PAGE;
+            }
+            pageStarts.add(layoutPage(start, rows, width, metrics, null));
+        }
+        final int start = pageStarts.get(pageIndex);
+        if (start >= text.length() && pageIndex > 0) {
+            return NO_SUCH_PAGE;
+        }
+        g.setColor(Color.BLACK);
+        g.translate(format.getImageableX(), format.getImageableY());
+        g.clipRect(0, 0, width, (int) format.getImageableHeight());
+        layoutPage(start, rows, width, metrics, g);
+        progress = text.length() == 0 ? 100 : (int) (pageStarts.get(pageIndex + 1) * 100L / text.length());
+        return PAGE_EXISTS;
+    }
+
+    /**
+     * размечает страницу с offset и рисует ее, если g задан; возвращает начало следующей
+     */
+    private int layoutPage(int offset, int rows, int width, FontMetrics metrics, Graphics2D g) {
+        final int length = text.length();
+        for (int i = 0; i < rows && offset < length; i++) {
+            offset = layoutRow(offset, width, metrics, g, metrics.getAscent() + i * metrics.getHeight());
+        }
+        return offset;
+    }
+
+    /**
+     * строка страницы с offset: до '\n' или до ширины страницы; возвращает начало следующей
+     */
+    private int layoutRow(int offset, int width, FontMetrics metrics, Graphics2D g, int y) {
+        final int length = text.length();
+        final int tabWidth = TAB_SIZE * metrics.charWidth(' ');
+        int count = 0;
+        int x = 0;
+        // число символов строки после последнего пробела, перенос по нему
+        int wordBreak = 0;
+        int next = offset;
+        while (next < length) {
+            final char c = charAt(next);
+            if (c == '\n') {
+                next++;
+                break;
+            }
+            final int advance = c == '\t' ? tabWidth - x % Math.max(1, tabWidth) : metrics.charWidth(c);
+            if (x + advance > width && count > 0) {
+                if (c == ' ') {
+                    // пробел на месте переноса не переходит в начало следующей строки
+                    next++;
+                } else if (wordBreak > 0 && !Character.isWhitespace(c)) {
+                    next -= count - wordBreak;
+                    count = wordBreak;
+                }
+                break;
+            }
+            if (count == row.length) {
+                row = Arrays.copyOf(row, row.length * 2);
+            }
+            row[count++] = c;
+            x += advance;
+            next++;
+            if (Character.isWhitespace(c)) {
+                wordBreak = count;
+            }
+        }
+        if (g != null) {
+            draw(g, count, tabWidth, metrics, y);
+        }
+        return next;
+    }
+
+    /**
+     * рисует собранную строку кусками между табуляциями
+     */
+    private void draw(Graphics2D g, int count, int tabWidth, FontMetrics metrics, int y) {
+        int x = 0;
+        int runStart = 0;
+        for (int i = 0; i <= count; i++) {
+            if (i == count || row[i] == '\t') {
+                if (i > runStart) {
+                    g.drawChars(row, runStart, i - runStart, x, y);
+                    x += metrics.charsWidth(row, runStart, i - runStart);
+                }
+                if (i < count) {
+                    x += tabWidth - x % Math.max(1, tabWidth);
+                }
+                runStart = i + 1;
+            }
+        }
+    }
+
+    private char charAt(int offset) {
+        if (offset < segmentStart || offset >= segmentStart + segment.count) {
+            text.segment(offset, Math.min(SEGMENT_LENGTH, text.length() - offset), segment);
+            segmentStart = offset;
+        }
+        return segment.array[segment.offset + offset - segmentStart];
+    }
+}
@@ -0,0 +1,69 @@
+package by.azzi.jnotepad;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.print.PrinterAbortException;
+import java.awt.print.PrinterJob;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * печатает {@link DocumentPrintable} в фоне с окном прогресса; отмена в нем прерывает задание
+ * перед следующей страницей
+ */
+final class DocumentPrinter extends SwingWorker<Void, Void> {
+
+    private static final int POLL_MILLIS = 200;
+
+    private final Component parent;
+    private final PrinterJob job;
+    private final DocumentPrintable printable;
+    private final ProgressMonitor monitor;
+    private final Timer timer;
+
+    DocumentPrinter(Component parent, PrinterJob job, DocumentPrintable printable) {
+        this.parent = parent;
+        this.job = job;
+        this.printable = printable;
+        monitor = new ProgressMonitor(parent, "Печать \"" + job.getJobName() + "\"", " ", 0, 100);
+        timer = new Timer(POLL_MILLIS, e -> {
+            if (monitor.isCanceled()) {
+                printable.cancel();
+                job.cancel();
+            } else {
+                monitor.setProgress(printable.getProgress());
+                monitor.setNote("Страница " + printable.getPageCount());
+            }
+        });
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        job.print();
+        return null;
+    }
+
+    /**
+     * запускает печать, вызывается в EDT
+     */
+    void start() {
+        timer.start();
+        execute();
+    }
+
+    @Override
+    protected void done() {
+        timer.stop();
+        monitor.close();
+        try {
+            get();
+        } catch (InterruptedException | CancellationException ex) {
+            // отменено
+        } catch (ExecutionException ex) {
+            if (!(ex.getCause() instanceof PrinterAbortException)) {
+                JOptionPane.showMessageDialog(parent, "Ошибка отправки на печать\n" + ex.getCause().getMessage(),
+                        "Ошибка", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+}
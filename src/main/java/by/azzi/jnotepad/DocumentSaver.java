@@ -0,0 +1,98 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.AtomicFile;
+import by.azzi.jnotepad.document.FileStamp;
+import by.azzi.jnotepad.document.TextFormat;
+import by.azzi.jnotepad.document.TextSnapshot;
+import by.azzi.jnotepad.document.TextWriter;
+import by.azzi.jnotepad.trace.Trace;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * сохраняет снимок документа в фоне через временный файл и атомарную подмену.
+ * Символы, которых нет в кодировке, без replace прерывают запись {@link java.nio.charset.CharacterCodingException}.
+ * Сброс на диск включается свойством jnotepad.fsync
+ */
+abstract class DocumentSaver extends SwingWorker<Void, Void> {
+
+    private static final boolean FSYNC = Boolean.getBoolean("jnotepad.fsync");
+
+    private final TextSnapshot text;
+    private final TextFormat format;
+    private final File file;
+    private final boolean replace;
+    private final List<Runnable> doneActions = new ArrayList<>();
+    private FileStamp stamp;
+
+    DocumentSaver(TextSnapshot text, TextFormat format, File file, boolean replace) {
+        this.text = text;
+        this.format = format;
+        this.file = file;
+        this.replace = replace;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * записываемый снимок документа
+     */
+    TextSnapshot getText() {
+        return text;
+    }
+
+    /**
+     * отпечаток записанного файла, после {@link #saved()}
+     */
+    FileStamp getStamp() {
+        return stamp;
+    }
+
+    /**
+     * выполнить после окончания сохранения, успешного или нет, в EDT
+     */
+    void whenDone(Runnable action) {
+        doneActions.add(action);
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        final Object span = Trace.ENABLED ? Trace.beginFileIO() : null;
+        AtomicFile.write(file, FSYNC, channel -> TextWriter.write(text, format, channel, replace));
+        if (Trace.ENABLED) {
+            Trace.endFileIO(span, "write", file);
+        }
+        // записанное только что еще в кэше страниц, перечитать его дешево
+        stamp = FileStamp.read(file);
+        return null;
+    }
+
+    @Override
+    protected void done() {
+        try {
+            get();
+            saved();
+        } catch (InterruptedException ex) {
+            failed(ex);
+        } catch (ExecutionException ex) {
+            failed(ex.getCause());
+        }
+        doneActions.forEach(Runnable::run);
+    }
+
+    /**
+     * файл записан, вызывается в EDT
+     */
+    protected abstract void saved();
+
+    /**
+     * ошибка записи, вызывается в EDT
+     */
+    protected abstract void failed(Throwable cause);
+}
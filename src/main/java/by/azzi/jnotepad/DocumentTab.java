@@ -0,0 +1,123 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.EditHistory;
+import by.azzi.jnotepad.document.EditJournal;
+import by.azzi.jnotepad.document.TextDocument;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * вкладка окна. У текущей вкладки состояние документа лежит в полях {@link JNotepad},
+ * здесь оно хранится, пока вкладка не текущая.
+ * <p>
+ * Документы вкладок всех окон делят бюджет памяти {@link #MEMORY_BUDGET}. Когда он превышен,
+ * давно не открывавшиеся вкладки выгружаются: документ без изменений и без истории правок
+ * забывается и при переходе на вкладку читается из файла заново, остальные выгружают текст во
+ * временные файлы ({@link TextDocument#spill()}) и сохраняют признак изменения и историю отмены.
+ * Вызывается только в EDT
+ */
+final class DocumentTab {
+
+    /**
+     * бюджет памяти документов в байтах, по умолчанию половина кучи
+     */
+    static final long MEMORY_BUDGET = Long.getLong("jnotepad.memoryBudget", Runtime.getRuntime().maxMemory() / 2);
+
+    private static final List<DocumentTab> TABS = new ArrayList<>();
+    private static long clock;
+
+    /**
+     * null - документ выгружен без изменений, читается заново из file
+     */
+    TextDocument document;
+    File file;
+    String name;
+    boolean changed;
+    long modificationCount;
+    EditHistory.Steps steps = EditHistory.Steps.EMPTY;
+    EditJournal journal;
+    PagerPanel pager;
+    int caret;
+    private boolean current;
+    private long lastUsed;
+
+    DocumentTab(TextDocument document, String name) {
+        this.document = document;
+        this.name = name;
+        TABS.add(this);
+    }
+
+    String getTitle() {
+        return changed ? "*" + name : name;
+    }
+
+    /**
+     * вкладка стала текущей в своем окне или перестала ей быть
+     */
+    void setCurrent(boolean current) {
+        this.current = current;
+        lastUsed = ++clock;
+    }
+
+    /**
+     * вкладка закрыта и больше не учитывается в бюджете
+     */
+    void close() {
+        TABS.remove(this);
+    }
+
+    private long getHeapSize() {
+        return document == null ? 0 : document.getHeapSize();
+    }
+
+    /**
+     * освобождает память документа и возвращает, сколько освобождено
+     */
+    private long evict() {
+        final long before = document.getHeapSize();
+        if (!changed && file != null && steps.isEmpty() && pager == null) {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+            document = null;
+            return before;
+        }
+        try {
+            document.spill();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return before - document.getHeapSize();
+    }
+
+    /**
+     * выгружает давно не открывавшиеся вкладки, пока документы всех вкладок не уложатся в budget
+     */
+    static void trim(long budget) {
+        long total = 0;
+        for (DocumentTab tab : TABS) {
+            total += tab.getHeapSize();
+        }
+        if (total <= budget) {
+            return;
+        }
+        final List<DocumentTab> idle = new ArrayList<>();
+        for (DocumentTab tab : TABS) {
+            if (!tab.current && tab.getHeapSize() > 0) {
+                idle.add(tab);
+            }
+        }
+        idle.sort(Comparator.comparingLong(tab -> tab.lastUsed));
+        for (DocumentTab tab : idle) {
+            if (total <= budget) {
+                return;
+            }
+            total -= tab.evict();
+        }
+    }
+}
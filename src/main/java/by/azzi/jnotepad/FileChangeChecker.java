@@ -0,0 +1,95 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.FileStamp;
+import by.azzi.jnotepad.document.LineDiff;
+import by.azzi.jnotepad.document.TextDocument;
+import by.azzi.jnotepad.document.TextSnapshot;
+
+import javax.swing.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * сверяет файл документа с диском в фоне: снимает {@link FileStamp} файла и, если содержимое
+ * изменилось, читает файл и строит {@link LineDiff} прежнего текста файла с ним. Если в документе
+ * есть несохраненные правки, отличия переносятся на документ {@link LineDiff#rebase}
+ */
+abstract class FileChangeChecker extends SwingWorker<Void, Void> {
+
+    private final File file;
+    private final TextSnapshot base;
+    private final TextSnapshot text;
+    private final FileStamp known;
+    private final FileStamp declined;
+    private final List<LineDiff.Hunk> conflicts = new ArrayList<>();
+    private FileStamp stamp;
+    private TextDocument disk;
+    private List<LineDiff.Hunk> hunks;
+
+    /**
+     * base - текст файла с отпечатком known, text - документ с несохраненными правками поверх base
+     * или null, если документ совпадает с base; declined - версия файла, изменения из которой
+     * уже отклонены
+     */
+    FileChangeChecker(File file, TextSnapshot base, TextSnapshot text, FileStamp known, FileStamp declined) {
+        this.file = file;
+        this.base = base;
+        this.text = text;
+        this.known = known;
+        this.declined = declined;
+    }
+
+    @Override
+    protected Void doInBackground() throws Exception {
+        stamp = FileStamp.read(file);
+        if (stamp == null || stamp.sameContent(known) || stamp.sameContent(declined)) {
+            return null;
+        }
+        disk = TextDocument.read(file);
+        hunks = LineDiff.diff(base, disk.snapshot());
+        if (text != null) {
+            hunks = LineDiff.rebase(LineDiff.diff(base, text), hunks, conflicts);
+        }
+        return null;
+    }
+
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            return;
+        }
+        try {
+            get();
+        } catch (InterruptedException | CancellationException ex) {
+            return;
+        } catch (ExecutionException ex) {
+            failed(ex.getCause());
+            return;
+        }
+        if (disk != null) {
+            changed(disk, hunks, conflicts.size());
+        } else {
+            unchanged(stamp);
+        }
+    }
+
+    /**
+     * содержимое файла прежнее или файла нет (stamp null), вызывается в EDT
+     */
+    protected abstract void unchanged(FileStamp stamp);
+
+    /**
+     * файл изменился: disk - его новое содержимое, hunks - его отличия в строках документа,
+     * conflicts - сколько отличий пропущено, потому что те же строки правлены в документе;
+     * вызывается в EDT
+     */
+    protected abstract void changed(TextDocument disk, List<LineDiff.Hunk> hunks, int conflicts);
+
+    /**
+     * файл не прочитался, вызывается в EDT
+     */
+    protected abstract void failed(Throwable cause);
+}
@@ -0,0 +1,89 @@
+package by.azzi.jnotepad;
+
+import javax.swing.*;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * уведомления об изменении одного файла через {@link WatchService} его каталога. Пачка событий
+ * дает один вызов в EDT. Где уведомлений нет (сетевые диски), изменения видны только
+ * по активации окна
+ */
+final class FileWatch implements Closeable {
+
+    private final Path path;
+    private final Runnable onChange;
+    private final WatchService watcher;
+    private final AtomicBoolean posted = new AtomicBoolean();
+
+    private FileWatch(Path path, Runnable onChange, WatchService watcher) {
+        this.path = path;
+        this.onChange = onChange;
+        this.watcher = watcher;
+    }
+
+    /**
+     * onChange выполнится в EDT после изменения файла; null, если следить нельзя
+     */
+    static FileWatch watch(File file, Runnable onChange) {
+        final Path path = file.getAbsoluteFile().toPath();
+        WatchService watcher = null;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException ex) {
+            close(watcher);
+            return null;
+        }
+        final FileWatch watch = new FileWatch(path, onChange, watcher);
+        final Thread thread = new Thread(watch::run, "file-watch");
+        thread.setDaemon(true);
+        thread.start();
+        return watch;
+    }
+
+    @Override
+    public void close() {
+        close(watcher);
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                final WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || path.getFileName().equals(event.context());
+                }
+                key.reset();
+                if (changed && posted.compareAndSet(false, true)) {
+                    SwingUtilities.invokeLater(() -> {
+                        posted.set(false);
+                        onChange.run();
+                    });
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // слежение закрыто
+        }
+    }
+
+    private static void close(WatchService watcher) {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+}
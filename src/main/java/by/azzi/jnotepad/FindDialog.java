@@ -0,0 +1,377 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.IntArray;
+import by.azzi.jnotepad.document.TextDocument;
+import by.azzi.jnotepad.listeners.DocumentListener;
+import by.azzi.jnotepad.search.ByteSearcher;
+import by.azzi.jnotepad.search.SearchQuery;
+import by.azzi.jnotepad.search.SearchResult;
+import by.azzi.jnotepad.search.TextSearcher;
+import by.azzi.jnotepad.search.TextSource;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * немодальное окно поиска и замены, запоминает последний запрос для "Найти далее" и "Найти ранее"
+ */
+class FindDialog extends JDialog {
+
+    /**
+     * выделение длиннее не подставляется в поле поиска
+     */
+    private static final int MAX_PREFILL_LENGTH = 256;
+
+    private final JTextArea textArea;
+    private final String appName;
+
+    private final JTextField findField = new JTextField(24);
+    private final JLabel replaceLabel = new JLabel("Чем:");
+    private final JTextField replaceField = new JTextField(24);
+    private final JCheckBox matchCaseCheckBox = new JCheckBox("С учетом регистра");
+    private final JCheckBox wholeWordCheckBox = new JCheckBox("Только слово целиком");
+    private final JCheckBox wrapCheckBox = new JCheckBox("Обтекание текстом", true);
+    private final JCheckBox regexCheckBox = new JCheckBox("Регулярные выражения");
+    private final JRadioButton upRadioButton = new JRadioButton("Вверх");
+    private final JRadioButton downRadioButton = new JRadioButton("Вниз", true);
+    private final JPanel directionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    private final JButton findButton = new JButton("Найти далее");
+    private final JButton replaceButton = new JButton("Заменить");
+    private final JButton replaceAllButton = new JButton("Заменить все");
+    private final JButton findAllButton = new JButton("Найти все");
+    private final SearchResultsPanel resultsPanel;
+
+    private TextSearcher searcher;
+    private ByteSearcher byteSearcher;
+    private boolean replaceMode;
+    /**
+     * просмотр большого файла: поиск идет по его байтам, без регулярных выражений и замены
+     */
+    private PagerPanel pager;
+    private boolean readOnly;
+
+    FindDialog(JFrame owner, JTextArea textArea, String appName, SearchResultsPanel resultsPanel) {
+        super(owner, "Найти", ModalityType.MODELESS);
+        this.textArea = textArea;
+        this.appName = appName;
+        this.resultsPanel = resultsPanel;
+
+        final JPanel root = new JPanel(new GridBagLayout());
+        root.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        setContentPane(root);
+        final GridBagConstraints gbc = new GridBagConstraints();
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.anchor = GridBagConstraints.WEST;
+        gbc.insets = new Insets(2, 5, 2, 5);
+
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        root.add(new JLabel("Что:"), gbc);
+        gbc.gridx = 1;
+        gbc.gridwidth = 2;
+        root.add(findField, gbc);
+        gbc.gridwidth = 1;
+
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        root.add(replaceLabel, gbc);
+        gbc.gridx = 1;
+        gbc.gridwidth = 2;
+        root.add(replaceField, gbc);
+        gbc.gridwidth = 1;
+
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        gbc.gridwidth = 2;
+        root.add(matchCaseCheckBox, gbc);
+        gbc.gridy = 3;
+        root.add(wholeWordCheckBox, gbc);
+        gbc.gridy = 4;
+        root.add(wrapCheckBox, gbc);
+        gbc.gridy = 5;
+        root.add(regexCheckBox, gbc);
+        gbc.gridwidth = 1;
+
+        directionPanel.setBorder(BorderFactory.createTitledBorder("Направление"));
+        final ButtonGroup directionGroup = new ButtonGroup();
+        directionGroup.add(upRadioButton);
+        directionGroup.add(downRadioButton);
+        directionPanel.add(upRadioButton);
+        directionPanel.add(downRadioButton);
+        gbc.gridx = 2;
+        gbc.gridy = 2;
+        gbc.gridheight = 3;
+        root.add(directionPanel, gbc);
+        gbc.gridheight = 1;
+
+        final JPanel btnPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 10));
+        findButton.addActionListener(e -> find(downRadioButton.isSelected()));
+        replaceButton.addActionListener(e -> replace());
+        replaceAllButton.addActionListener(e -> replaceAll());
+        findAllButton.addActionListener(e -> findAll());
+        updateButtons();
+        // поиск всех совпадений по старому запросу больше не нужен
+        findField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                updateButtons();
+                resultsPanel.cancel();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                updateButtons();
+                resultsPanel.cancel();
+            }
+        });
+        matchCaseCheckBox.addActionListener(e -> resultsPanel.cancel());
+        wholeWordCheckBox.addActionListener(e -> resultsPanel.cancel());
+        regexCheckBox.addActionListener(e -> resultsPanel.cancel());
+        final JButton cancelBtn = new JButton("Отмена");
+        cancelBtn.addActionListener(e -> setVisible(false));
+        btnPanel.add(findButton);
+        btnPanel.add(findAllButton);
+        btnPanel.add(replaceButton);
+        btnPanel.add(replaceAllButton);
+        btnPanel.add(cancelBtn);
+        gbc.gridx = 0;
+        gbc.gridy = 6;
+        gbc.gridwidth = 3;
+        gbc.insets = new Insets(2, 0, 5, 0);
+        root.add(btnPanel, gbc);
+
+        getRootPane().setDefaultButton(findButton);
+        getRootPane().registerKeyboardAction(e -> setVisible(false),
+                KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
+        setReplaceMode(false);
+        setResizable(false);
+        setLocationRelativeTo(owner);
+    }
+
+    /**
+     * показывает окно поиска, подставляя выделенный текст, если он в одну строку
+     */
+    void open() {
+        setReplaceMode(false);
+        showDialog();
+    }
+
+    /**
+     * показывает окно замены, поиск при замене идет вниз
+     */
+    void openReplace() {
+        setReplaceMode(true);
+        showDialog();
+    }
+
+    void setPager(PagerPanel pager) {
+        this.pager = pager;
+        byteSearcher = null;
+        regexCheckBox.setEnabled(pager == null);
+        updateButtons();
+        if (pager != null && replaceMode) {
+            setVisible(false);
+        }
+    }
+
+    /**
+     * документ только для чтения, пока идет слежение за файлом или вставка кусками:
+     * заменять в нем нельзя
+     */
+    void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+        updateButtons();
+    }
+
+    private void setReplaceMode(boolean replace) {
+        replaceMode = replace;
+        setTitle(replace ? "Заменить" : "Найти");
+        regexCheckBox.setVisible(!replace);
+        findAllButton.setVisible(!replace);
+        replaceLabel.setVisible(replace);
+        replaceField.setVisible(replace);
+        replaceButton.setVisible(replace);
+        replaceAllButton.setVisible(replace);
+        directionPanel.setVisible(!replace);
+        if (replace) {
+            downRadioButton.setSelected(true);
+        }
+        pack();
+    }
+
+    private void showDialog() {
+        if (textArea.getSelectionEnd() - textArea.getSelectionStart() <= MAX_PREFILL_LENGTH) {
+            final String selected = textArea.getSelectedText();
+            if (selected != null && !selected.isEmpty() && selected.indexOf('\n') < 0) {
+                findField.setText(selected);
+            }
+        }
+        findField.selectAll();
+        setVisible(true);
+        findField.requestFocusInWindow();
+    }
+
+    private void updateButtons() {
+        findButton.setEnabled(hasQuery());
+        replaceButton.setEnabled(hasQuery() && pager == null && !readOnly);
+        replaceAllButton.setEnabled(hasQuery() && pager == null && !readOnly);
+        findAllButton.setEnabled(hasQuery() && pager == null);
+    }
+
+    /**
+     * был ли уже задан текст поиска
+     */
+    boolean hasQuery() {
+        return !findField.getText().isEmpty();
+    }
+
+    /**
+     * ищет следующее (forward) или предыдущее вхождение от выделения и выделяет его
+     */
+    boolean find(boolean forward) {
+        if (pager != null) {
+            final String text = findField.getText();
+            pager.find(getByteSearcher(), forward, wrapCheckBox.isSelected(), () -> notFound(text));
+            return true;
+        }
+        if (isRegex()) {
+            return findRegex(forward);
+        }
+        final TextSearcher searcher = getSearcher();
+        final int from = forward ? textArea.getSelectionEnd() : textArea.getSelectionStart();
+        final int found = searcher.find(TextSource.of(textArea.getDocument()), from, forward, wrapCheckBox.isSelected());
+        if (found < 0) {
+            notFound(findField.getText());
+            return false;
+        }
+        textArea.select(found, found + searcher.getMatchLength());
+        textArea.getCaret().setSelectionVisible(true);
+        return true;
+    }
+
+    /**
+     * переходит к совпадению из найденных "Найти все", если их еще нет - запускает поиск
+     */
+    private boolean findRegex(boolean forward) {
+        final Pattern pattern = compilePattern();
+        if (pattern == null) {
+            return false;
+        }
+        final SearchResult result = resultsPanel.getResult(pattern);
+        if (result == null) {
+            resultsPanel.search(pattern);
+            return false;
+        }
+        final boolean wrap = wrapCheckBox.isSelected();
+        int index = forward
+                ? result.indexAfter(textArea.getSelectionEnd())
+                : result.indexAfter(textArea.getSelectionStart()) - 1;
+        if (index == result.size() && wrap) {
+            index = 0;
+        } else if (index < 0 && wrap) {
+            index = result.size() - 1;
+        }
+        if (index < 0 || index >= result.size()) {
+            notFound(findField.getText());
+            return false;
+        }
+        resultsPanel.select(index);
+        return true;
+    }
+
+    /**
+     * все совпадения в списке под текстом, обычный текст ищется как выражение из него самого
+     */
+    private void findAll() {
+        final Pattern pattern = compilePattern();
+        if (pattern != null) {
+            resultsPanel.search(pattern);
+        }
+    }
+
+    private boolean isRegex() {
+        return !replaceMode && pager == null && regexCheckBox.isSelected();
+    }
+
+    /**
+     * выражение по полям окна, null если в нем ошибка
+     */
+    private Pattern compilePattern() {
+        String regex = isRegex() ? findField.getText() : Pattern.quote(findField.getText());
+        if (wholeWordCheckBox.isSelected()) {
+            regex = "\\b(?:" + regex + ")\\b";
+        }
+        final int flags = Pattern.MULTILINE | (matchCaseCheckBox.isSelected() ? 0 : Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        try {
+            return Pattern.compile(regex, flags);
+        } catch (PatternSyntaxException ex) {
+            JOptionPane.showMessageDialog(isVisible() ? this : getOwner(),
+                    "Ошибка в регулярном выражении: " + ex.getDescription(), appName, JOptionPane.ERROR_MESSAGE);
+            return null;
+        }
+    }
+
+    /**
+     * заменяет выделенное вхождение и ищет следующее
+     */
+    private void replace() {
+        final TextSearcher searcher = getSearcher();
+        final int start = textArea.getSelectionStart();
+        final int end = textArea.getSelectionEnd();
+        if (end - start == searcher.getMatchLength()
+                && searcher.findForward(TextSource.of(textArea.getDocument()), start, end) == start) {
+            textArea.replaceSelection(replaceField.getText());
+        }
+        find(true);
+    }
+
+    /**
+     * находит все вхождения и заменяет их одной правкой документа
+     */
+    private void replaceAll() {
+        if (!textArea.isEditable()) {
+            return;
+        }
+        final TextSearcher searcher = getSearcher();
+        final TextDocument document = (TextDocument) textArea.getDocument();
+        final IntArray found = searcher.findAll(TextSource.of(document), 0, document.getLength());
+        if (found.size() == 0) {
+            notFound(findField.getText());
+            return;
+        }
+        final int caret = textArea.getCaretPosition();
+        try {
+            document.replace(found.toArray(), found.size(), searcher.getMatchLength(), replaceField.getText());
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        // каретка не следит за событием CHANGE
+        textArea.setCaretPosition(Math.min(caret, document.getLength()));
+    }
+
+    private TextSearcher getSearcher() {
+        final SearchQuery query = new SearchQuery(findField.getText(), matchCaseCheckBox.isSelected(), wholeWordCheckBox.isSelected());
+        if (searcher == null || !searcher.getQuery().equals(query)) {
+            searcher = new TextSearcher(query);
+        }
+        return searcher;
+    }
+
+    private ByteSearcher getByteSearcher() {
+        final SearchQuery query = new SearchQuery(findField.getText(), matchCaseCheckBox.isSelected(), wholeWordCheckBox.isSelected());
+        if (byteSearcher == null || !byteSearcher.getQuery().equals(query)) {
+            byteSearcher = new ByteSearcher(query, pager.getText().getFormat().getCharset());
+        }
+        return byteSearcher;
+    }
+
+    private void notFound(String text) {
+        JOptionPane.showMessageDialog(isVisible() ? this : getOwner(),
+                "Не удается найти \"" + text + "\"", appName, JOptionPane.INFORMATION_MESSAGE);
+    }
+}
@@ -0,0 +1,155 @@
+package by.azzi.jnotepad;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+/**
+ * иконки окна, загружаемые в фоне. Разобранные пиксели хранятся в файле кэша,
+ * так что при следующих запусках PNG не декодируется и ImageIO не загружается;
+ * кэш сверяется с ресурсами по CRC32 их байт
+ */
+final class IconCache {
+
+    private static final int MAGIC = 0x4A4E4943;
+
+    private IconCache() {
+    }
+
+    /**
+     * иконки из ресурсов resources, недоступные пропускаются
+     */
+    static CompletableFuture<List<Image>> load(File cacheFile, String... resources) {
+        final CompletableFuture<List<Image>> icons = new CompletableFuture<>();
+        final Thread thread = new Thread(() -> icons.complete(read(cacheFile, resources)), "icon-loader");
+        thread.setDaemon(true);
+        thread.start();
+        return icons;
+    }
+
+    static List<Image> read(File cacheFile, String... resources) {
+        final List<byte[]> pngs = new ArrayList<>();
+        for (String resource : resources) {
+            final byte[] png = readResource(resource);
+            if (png != null) {
+                pngs.add(png);
+            }
+        }
+        final long[] crcs = new long[pngs.size()];
+        for (int i = 0; i < crcs.length; i++) {
+            final CRC32 crc = new CRC32();
+            crc.update(pngs.get(i));
+            crcs[i] = crc.getValue();
+        }
+        final List<Image> cached = readCache(cacheFile, crcs);
+        if (cached != null) {
+            return cached;
+        }
+        final List<Image> icons = new ArrayList<>();
+        final List<Long> iconCrcs = new ArrayList<>();
+        for (int i = 0; i < pngs.size(); i++) {
+            try {
+                final BufferedImage image = ImageIO.read(new ByteArrayInputStream(pngs.get(i)));
+                if (image != null) {
+                    icons.add(image);
+                    iconCrcs.add(crcs[i]);
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        writeCache(cacheFile, icons, iconCrcs);
+        return icons;
+    }
+
+    private static byte[] readResource(String name) {
+        final URL url = ClassLoader.getSystemResource(name);
+        if (url == null) {
+            return null;
+        }
+        try (InputStream in = url.openStream()) {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                bytes.write(buffer, 0, n);
+            }
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * иконки из кэша, если он есть и собран из тех же ресурсов, иначе null
+     */
+    private static List<Image> readCache(File cacheFile, long[] crcs) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+            final int count = in.readInt() == MAGIC ? in.readInt() : -1;
+            if (count != crcs.length) {
+                return null;
+            }
+            final List<Image> icons = new ArrayList<>(count);
+            for (long crc : crcs) {
+                if (in.readLong() != crc) {
+                    return null;
+                }
+                final int width = in.readInt();
+                final int height = in.readInt();
+                final int[] pixels = new int[width * height];
+                for (int i = 0; i < pixels.length; i++) {
+                    pixels[i] = in.readInt();
+                }
+                final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+                image.setRGB(0, 0, width, height, pixels, 0, width);
+                icons.add(image);
+            }
+            return icons;
+        } catch (IOException | RuntimeException ex) {
+            // испорченный кэш пересобирается
+            return null;
+        }
+    }
+
+    private static void writeCache(File cacheFile, List<Image> icons, List<Long> crcs) {
+        cacheFile.getAbsoluteFile().getParentFile().mkdirs();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(icons.size());
+            for (int i = 0; i < icons.size(); i++) {
+                final BufferedImage image = (BufferedImage) icons.get(i);
+                final int width = image.getWidth();
+                final int height = image.getHeight();
+                out.writeLong(crcs.get(i));
+                out.writeInt(width);
+                out.writeInt(height);
+                for (int pixel : image.getRGB(0, 0, width, height, null, 0, width)) {
+                    out.writeInt(pixel);
+                }
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            cacheFile.delete();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package by.azzi.jnotepad;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * режим одного экземпляра: первый процесс слушает сокет на loopback, следующие запуски
+ * передают ему свои файлы и завершаются, не поднимая Swing.
+ * <p>
+ * Порт и случайный ключ лежат в файле экземпляра, доступном только владельцу;
+ * без ключа запрос не принимается.
+ */
+final class InstanceServer {
+
+    /**
+     * сколько ждать ответа запущенного процесса, потом запускаемся сами
+     */
+    private static final int TIMEOUT_MILLIS = 2000;
+
+    private InstanceServer() {
+    }
+
+    /**
+     * передает файлы запущенному экземпляру
+     *
+     * @return true, если он их принял и этому процессу можно завершиться
+     */
+    static boolean forward(File instanceFile, String[] args) {
+        if (!instanceFile.isFile()) {
+            return false;
+        }
+        try {
+            final String[] parts = new String(Files.readAllBytes(instanceFile.toPath()), StandardCharsets.UTF_8).trim().split(" ");
+            final int port = Integer.parseInt(parts[0]);
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), TIMEOUT_MILLIS);
+                socket.setSoTimeout(TIMEOUT_MILLIS);
+                final DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeUTF(parts[1]);
+                out.writeInt(args.length);
+                for (String arg : args) {
+                    // у запущенного процесса другой рабочий каталог
+                    out.writeUTF(new File(arg).getAbsolutePath());
+                }
+                out.flush();
+                return socket.getInputStream().read() == 1;
+            }
+        } catch (IOException | RuntimeException ex) {
+            // процесс завершился или файл от старого запуска
+            return false;
+        }
+    }
+
+    /**
+     * начинает принимать запуски в фоновом потоке, opener вызывается в нем же
+     * со списком файлов, пустой список - новое окно
+     */
+    static void listen(File instanceFile, Consumer<List<File>> opener) throws IOException {
+        final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final byte[] key = new byte[16];
+        new SecureRandom().nextBytes(key);
+        final StringBuilder token = new StringBuilder();
+        for (byte b : key) {
+            token.append(String.format("%02x", b));
+        }
+        writeInstanceFile(instanceFile, server.getLocalPort() + " " + token);
+
+        final Thread thread = new Thread(() -> {
+            while (!server.isClosed()) {
+                try (Socket socket = server.accept()) {
+                    socket.setSoTimeout(TIMEOUT_MILLIS);
+                    final DataInputStream in = new DataInputStream(socket.getInputStream());
+                    if (!token.toString().equals(in.readUTF())) {
+                        continue;
+                    }
+                    final int count = in.readInt();
+                    final List<File> files = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        files.add(new File(in.readUTF()));
+                    }
+                    opener.accept(files);
+                    socket.getOutputStream().write(1);
+                } catch (IOException ex) {
+                    // запрос оборвался, ждем следующего
+                }
+            }
+        }, "instance-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static void writeInstanceFile(File instanceFile, String content) throws IOException {
+        Files.createDirectories(instanceFile.getAbsoluteFile().getParentFile().toPath());
+        Files.deleteIfExists(instanceFile.toPath());
+        Files.createFile(instanceFile.toPath());
+        if (Files.getFileAttributeView(instanceFile.toPath(), PosixFileAttributeView.class) != null) {
+            Files.setPosixFilePermissions(instanceFile.toPath(), PosixFilePermissions.fromString("rw-------"));
+        }
+        Files.write(instanceFile.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        instanceFile.deleteOnExit();
+    }
+}
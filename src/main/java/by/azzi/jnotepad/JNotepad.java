@@ -1,36 +1,54 @@
 package by.azzi.jnotepad;
 
 import by.azzi.gui.swing.localizer.SwingLocalizer;
+import by.azzi.jnotepad.batch.Batch;
+import by.azzi.jnotepad.document.DocumentStatistics;
+import by.azzi.jnotepad.document.EditHistory;
+import by.azzi.jnotepad.document.EditJournal;
+import by.azzi.jnotepad.document.FileStamp;
+import by.azzi.jnotepad.document.LineDiff;
+import by.azzi.jnotepad.document.LineIndex;
+import by.azzi.jnotepad.document.LogHighlighting;
+import by.azzi.jnotepad.document.MappedText;
+import by.azzi.jnotepad.document.TextDocument;
+import by.azzi.jnotepad.document.TextSnapshot;
 import by.azzi.jnotepad.listeners.DocumentListener;
 import by.azzi.jnotepad.listeners.WindowListener;
+import by.azzi.jnotepad.trace.Trace;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
+import javax.swing.event.CaretEvent;
 import javax.swing.event.DocumentEvent;
 import javax.swing.filechooser.FileFilter;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.text.BadLocationException;
+import javax.swing.text.Caret;
+import javax.swing.text.DefaultCaret;
 import javax.swing.text.Document;
-import javax.swing.text.PlainDocument;
-import javax.swing.undo.UndoManager;
 import java.awt.*;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
 import java.awt.event.ActionListener;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.WindowEvent;
-import java.awt.print.PrinterException;
+import java.awt.print.PrinterJob;
+import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeSupport;
 import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.CharacterCodingException;
 import java.text.MessageFormat;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.ResourceBundle;
 import java.util.prefs.Preferences;
 
@@ -38,15 +56,82 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
 
     private static final Preferences PREF = Preferences.userNodeForPackage(JNotepad.class);
 
+    /**
+     * режим одного экземпляра: запуск передает файлы уже открытому процессу, см. {@link InstanceServer}
+     */
+    private static final boolean SINGLE_INSTANCE = Boolean.getBoolean("jnotepad.singleInstance");
+    private static final File INSTANCE_FILE = new File(System.getProperty("user.home"), ".jnotepad" + File.separator + "instance");
+    /**
+     * файлы больше открываются только для просмотра, см. {@link PagerPanel};
+     * по умолчанию четверть кучи, но не больше предела документа в 2 ГБ
+     */
+    private static final long PAGER_THRESHOLD = Math.min(Integer.MAX_VALUE - 8L,
+            Long.getLong("jnotepad.pagerThreshold", Runtime.getRuntime().maxMemory() / 4));
+
     public static void main(String[] args) {
-        SwingLocalizer.localize();
+        if (args.length > 0 && Batch.OPTION.equals(args[0])) {
+            System.exit(Batch.run(Arrays.copyOfRange(args, 1, args.length), System.out, System.err));
+        }
+        StartupTimer.started();
+        if (SINGLE_INSTANCE && InstanceServer.forward(INSTANCE_FILE, args)) {
+            return;
+        }
+        if (Trace.ENABLED) {
+            Trace.install();
+        }
         Theme.setupTheme();
-        SwingUtilities.invokeLater(new JNotepad());
+        if (SINGLE_INSTANCE) {
+            try {
+                InstanceServer.listen(INSTANCE_FILE, files -> SwingUtilities.invokeLater(() -> openWindows(files)));
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        final List<File> files = new ArrayList<>();
+        for (String arg : args) {
+            files.add(new File(arg));
+        }
+        SwingUtilities.invokeLater(() -> openWindows(files));
+        // строки диалогов нужны не раньше первого диалога, окно показывается без них
+        SwingUtilities.invokeLater(SwingLocalizer::localize);
+    }
+
+    /**
+     * файлы открываются вкладками уже открытого окна, а если окон нет - нового
+     */
+    private static void openWindows(List<File> files) {
+        for (Window window : Window.getWindows()) {
+            if (window instanceof JNotepad && window.isDisplayable()) {
+                final JNotepad notepad = (JNotepad) window;
+                notepad.openFiles(existingFiles(files));
+                notepad.toFront();
+                return;
+            }
+        }
+        new JNotepad(files).run();
+    }
+
+    private static List<File> existingFiles(List<File> files) {
+        final List<File> existing = new ArrayList<>();
+        for (File file : files) {
+            if (file.isFile()) {
+                existing.add(file);
+            }
+        }
+        return existing;
     }
 
     @Override
     public void run() {
+        StartupTimer.watch(this);
         this.setVisible(true);
+        LazyMenu.fillWhenIdle(getJMenuBar());
+        final List<File> files = existingFiles(initialFiles);
+        if (files.isEmpty()) {
+            startJournal((TextDocument) textArea.getDocument(), null);
+        } else {
+            openFiles(files);
+        }
     }
 
     private static final String FONT_SCALE_PROPERTY = "fontScale";
@@ -54,17 +139,89 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
     private static final String DOCUMENT_CHANGED_PROPERTY = "documentChanged";
     private static final String DOCUMENT_PROPERTY = "document";
     private static final String DOCUMENT_NAME_PROPERTY = "documentName";
+    private static final String LOAD_PROGRESS_PROPERTY = "loadProgress";
+    private static final String PASTE_PROGRESS_PROPERTY = "pasteProgress";
+    private static final String SAVER_PROPERTY = "saver";
+    private static final String PASTER_PROPERTY = "paster";
+    private static final String STATUS_BAR_PROPERTY = "statusBar";
+    private static final String LOG_HIGHLIGHT_PROPERTY = "logHighlight";
+    private static final String FOLLOW_PROPERTY = "follow";
+    /**
+     * свойство документа: версия файла, изменения из которой пользователь не стал вносить
+     */
+    private static final String DECLINED_STAMP_PROPERTY = "declinedFileStamp";
+    private static final String PAGER_PROPERTY = "pager";
 
     private static final ResourceBundle BUNDLE = ResourceBundle.getBundle("notepad");
-    private static final List<Image> ICONS = loadIcons();
+    private static final CompletableFuture<List<Image>> ICONS = IconCache.load(
+            new File(System.getProperty("user.home"), ".jnotepad" + File.separator + "icons.cache"),
+            "./img/icons8-spiral-notepad-48.png", "./img/icons8-spiral-notepad-96.png");
     private static final FileFilter TXT_FILE_FILTER = new FileNameExtensionFilter(BUNDLE.getString("txtFileFilterDesc"), "txt");
 
+    /**
+     * журналы несохраненных правок, см. {@link EditJournal}
+     */
+    private static final File JOURNAL_DIR = new File(System.getProperty("user.home"), ".jnotepad" + File.separator + "journal");
+
     private static final String APP_NAME = BUNDLE.getString("app.name");
     private static final String DEFAULT_FILE_NAME = BUNDLE.getString("document.defaultName");
 
-    private final PropertyChangeSupport pcs = new PropertyChangeSupport(this);
-    private final JTextArea textArea = new JTextArea();
-    private final UndoManager undoManager = new UndoManager();
+    private final PropertyChangeSupport pcs = new PropertyChangeSupport(this) {
+        @Override
+        public void firePropertyChange(PropertyChangeEvent event) {
+            if (Trace.ENABLED) {
+                final Object span = Trace.beginListeners();
+                super.firePropertyChange(event);
+                Trace.endListeners(span, "property", event.getPropertyName());
+            } else {
+                super.firePropertyChange(event);
+            }
+        }
+    };
+    private final JTextArea textArea = new JTextArea(new TextDocument()) {
+        @Override
+        public void updateUI() {
+            setUI(new TextAreaUI());
+        }
+
+        @Override
+        protected void fireCaretUpdate(CaretEvent e) {
+            if (Trace.ENABLED) {
+                final Object span = Trace.beginListeners();
+                super.fireCaretUpdate(e);
+                Trace.endListeners(span, "caret", "update");
+            } else {
+                super.fireCaretUpdate(e);
+            }
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            super.paintComponent(g);
+            if (Trace.ENABLED) {
+                Trace.painted();
+            }
+        }
+    };
+    private final EditHistory history = new EditHistory();
+    private final JScrollPane scrollPane = new JScrollPane(textArea);
+    private final DocumentStatistics statistics = new DocumentStatistics();
+    /**
+     * подсветка журналов, см. {@link LogHighlighting}; документ у нее есть, только пока она включена
+     */
+    private final LogHighlighting logHighlighting = new LogHighlighting();
+    private final SearchResultsPanel searchResultsPanel = new SearchResultsPanel(textArea);
+    /**
+     * вкладки окна; поля ниже - состояние документа текущей вкладки, у остальных оно
+     * хранится в {@link DocumentTab}
+     */
+    private final List<DocumentTab> tabs = new ArrayList<>();
+    private final JTabbedPane tabStrip = new JTabbedPane(JTabbedPane.TOP, JTabbedPane.SCROLL_TAB_LAYOUT);
+    private DocumentTab currentTab;
+    /**
+     * вкладки перестраиваются, выбор в tabStrip не переключает документ
+     */
+    private boolean updatingTabs;
 
     private Font docFont = textArea.getFont();
     private float fontScale = 0;
@@ -72,58 +229,197 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
     private String documentName = DEFAULT_FILE_NAME;
     private boolean documentChanged = false;
     private boolean wordWrap = PREF.getBoolean(WORD_WRAP_PROPERTY, false);
+    private boolean statusBarVisible = PREF.getBoolean(STATUS_BAR_PROPERTY, true);
+    private boolean logHighlight = PREF.getBoolean(LOG_HIGHLIGHT_PROPERTY, true);
+    private DocumentLoader loader;
+    private int loadProgress = -1;
+    private DocumentSaver saver;
+    /**
+     * идущая вставка из буфера обмена, см. {@link #paste(Transferable)}
+     */
+    private DocumentPaster paster;
+    private int pasteProgress = -1;
+    private FindDialog findDialog;
+    private EditJournal journal;
+    /**
+     * слежение за дописыванием в файл, см. {@link LogFollower}
+     */
+    private LogFollower follower;
+    /**
+     * сверка файла текущей вкладки с диском, см. {@link #checkFile()}
+     */
+    private FileChangeChecker checker;
+    /**
+     * во время сверки пришло новое изменение файла
+     */
+    private boolean checkAgain;
+    private FileWatch fileWatch;
+    /**
+     * просмотр файла больше кучи вместо текстовой области
+     */
+    private PagerPanel pager;
+    /**
+     * файлы из командной строки, открываются вкладками при показе окна
+     */
+    private final List<File> initialFiles;
+    /**
+     * счетчик правок документа, по нему видно были ли правки во время сохранения
+     */
+    private long modificationCount;
 
     public JNotepad() throws HeadlessException {
+        this(Collections.emptyList());
+    }
+
+    public JNotepad(List<File> initialFiles) throws HeadlessException {
         super(DEFAULT_FILE_NAME + " - " + APP_NAME);
+        this.initialFiles = initialFiles;
 
         setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
         setPreferredSize(new Dimension(600, 400));
-        setIconImages(ICONS);
+        ICONS.thenAccept(icons -> SwingUtilities.invokeLater(() -> setIconImages(icons)));
+        statistics.setDocument((TextDocument) textArea.getDocument());
+        textArea.addPropertyChangeListener(DOCUMENT_PROPERTY, evt -> statistics.setDocument((TextDocument) evt.getNewValue()));
+        logHighlighting.addChangeListener(e -> textArea.repaint());
+        textArea.addPropertyChangeListener(DOCUMENT_PROPERTY, evt -> {
+            if (logHighlight) {
+                logHighlighting.setDocument((TextDocument) evt.getNewValue());
+            }
+        });
+        pcs.addPropertyChangeListener(LOG_HIGHLIGHT_PROPERTY, evt -> {
+            logHighlighting.setDocument(logHighlight ? (TextDocument) textArea.getDocument() : null);
+            textArea.putClientProperty(LogHighlighting.class, logHighlight ? logHighlighting : null);
+            textArea.repaint();
+        });
+        if (logHighlight) {
+            logHighlighting.setDocument((TextDocument) textArea.getDocument());
+            textArea.putClientProperty(LogHighlighting.class, logHighlighting);
+        }
         setJMenuBar(createMenuBar());
 
         addWindowListener(this);
-        pcs.addPropertyChangeListener(FONT_SCALE_PROPERTY, evt -> textArea.setFont(docFont.deriveFont(docFont.getSize() + fontScale)));
+        pcs.addPropertyChangeListener(FONT_SCALE_PROPERTY, evt -> {
+            textArea.setFont(docFont.deriveFont(docFont.getSize() + fontScale));
+            if (pager != null) {
+                pager.setTextFont(textArea.getFont());
+            }
+        });
         pcs.addPropertyChangeListener(WORD_WRAP_PROPERTY, evt -> {
             Boolean wrap = (Boolean) evt.getNewValue();
             textArea.setWrapStyleWord(wrap);
             textArea.setLineWrap(wrap);
+            if (pager != null) {
+                pager.setWordWrap(wrap);
+            }
         });
         pcs.addPropertyChangeListener(DOCUMENT_CHANGED_PROPERTY, evt -> updateTitle());
         pcs.addPropertyChangeListener(DOCUMENT_NAME_PROPERTY, evt -> updateTitle());
+        pcs.addPropertyChangeListener(LOAD_PROGRESS_PROPERTY, evt -> updateTitle());
+        pcs.addPropertyChangeListener(PASTE_PROGRESS_PROPERTY, evt -> updateTitle());
+        pcs.addPropertyChangeListener(SAVER_PROPERTY, evt -> updateTitle());
+        pcs.addPropertyChangeListener(FOLLOW_PROPERTY, evt -> {
+            if (findDialog != null) {
+                findDialog.setReadOnly(follower != null || paster != null);
+            }
+            updateTitle();
+        });
+        pcs.addPropertyChangeListener(PASTER_PROPERTY, evt -> {
+            if (findDialog != null) {
+                findDialog.setReadOnly(follower != null || paster != null);
+            }
+        });
+        getRootPane().registerKeyboardAction(e -> {
+                    cancelLoading();
+                    if (paster != null) {
+                        paster.cancel(true);
+                    }
+                    if (pager != null) {
+                        pager.cancelSearch();
+                    }
+                },
+                KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_IN_FOCUSED_WINDOW);
 
-        textArea.getDocument().addUndoableEditListener(undoManager);
+        textArea.setTransferHandler(new TextTransferHandler(textArea.getTransferHandler(), this::paste));
+        textArea.getDocument().addUndoableEditListener(history);
         textArea.addPropertyChangeListener(DOCUMENT_PROPERTY, evt -> {
-            undoManager.discardAllEdits();
-            ((Document) evt.getNewValue()).addUndoableEditListener(undoManager);
+            if (paster != null) {
+                paster.cancel(true);
+            }
+            ((Document) evt.getOldValue()).removeUndoableEditListener(history);
+            history.discardAllEdits();
+            ((Document) evt.getNewValue()).addUndoableEditListener(history);
         });
 
         textArea.getDocument().addDocumentListener(this);
         textArea.addPropertyChangeListener(DOCUMENT_PROPERTY, evt -> {
+            ((Document) evt.getOldValue()).removeDocumentListener(JNotepad.this);
             textArea.getDocument().addDocumentListener(JNotepad.this);
+            currentTab.document = (TextDocument) textArea.getDocument();
             setDocumentChanged(false);
         });
 
-        final JScrollPane scrollPane = new JScrollPane(textArea);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_ALWAYS);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_ALWAYS);
         add(scrollPane);
 
+        currentTab = new DocumentTab((TextDocument) textArea.getDocument(), documentName);
+        currentTab.setCurrent(true);
+        tabs.add(currentTab);
+        tabStrip.addTab(currentTab.getTitle(), null);
+        tabStrip.setVisible(false);
+        tabStrip.addChangeListener(e -> {
+            final int index = tabStrip.getSelectedIndex();
+            if (!updatingTabs && index >= 0) {
+                selectTab(tabs.get(index));
+            }
+        });
+        add(tabStrip, BorderLayout.NORTH);
+        pcs.addPropertyChangeListener(LOAD_PROGRESS_PROPERTY, evt -> tabStrip.setEnabled(loader == null && saver == null));
+        pcs.addPropertyChangeListener(SAVER_PROPERTY, evt -> tabStrip.setEnabled(loader == null && saver == null));
+
+        final StatusBar statusBar = new StatusBar(textArea, statistics);
+        statusBar.setVisible(statusBarVisible);
+        pcs.addPropertyChangeListener(STATUS_BAR_PROPERTY, evt -> statusBar.setVisible((Boolean) evt.getNewValue()));
+        final JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(searchResultsPanel, BorderLayout.CENTER);
+        southPanel.add(statusBar, BorderLayout.SOUTH);
+        add(southPanel, BorderLayout.SOUTH);
+        textArea.addPropertyChangeListener(DOCUMENT_PROPERTY, evt -> searchResultsPanel.clear());
+        pcs.addPropertyChangeListener(PAGER_PROPERTY, evt -> {
+            remove(evt.getOldValue() != null ? (Component) evt.getOldValue() : scrollPane);
+            add(pager != null ? pager : scrollPane, BorderLayout.CENTER);
+            southPanel.setVisible(pager == null);
+            if (findDialog != null) {
+                findDialog.setPager(pager);
+            }
+            updateTitle();
+            revalidate();
+            repaint();
+        });
+
         pack();
         setLocationByPlatform(true);
     }
 
+    /**
+     * пункты меню создаются при первом открытии, см. {@link LazyMenu}
+     */
     private JMenuBar createMenuBar() {
         final JMenuBar menuBar = new JMenuBar();
-        // == file menu
-        final JMenu fileMenu = menuBar.add(new JMenu(BUNDLE.getString("menuBar.file")));
+        menuBar.add(new LazyMenu(BUNDLE.getString("menuBar.file"), this::fillFileMenu));
+        menuBar.add(new LazyMenu(BUNDLE.getString("menuBar.edit"), this::fillEditMenu));
+        menuBar.add(new LazyMenu(BUNDLE.getString("menuBar.format"), this::fillFormatMenu));
+        menuBar.add(new LazyMenu(BUNDLE.getString("menuBar.view"), this::fillViewMenu));
+        menuBar.add(new LazyMenu(BUNDLE.getString("menuBar.help"), this::fillHelpMenu));
+        return menuBar;
+    }
+
+    private void fillFileMenu(JMenu fileMenu) {
         final JMenuItem createMenuItem = fileMenu.add(BUNDLE.getString("menuBar.file.create"));
         createMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_N, KeyEvent.CTRL_DOWN_MASK));
         createMenuItem.addActionListener(e -> {
-            if (documentChanged || file != null) {
-                if (saveToFileWithConfirmDialog()) {
-                    textArea.setDocument(new PlainDocument());
-                    setFile(null);
-                }
+            if (!isPristine()) {
+                addTab();
             }
         });
 
@@ -137,69 +433,69 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
         final JMenuItem openMenuItem = fileMenu.add(BUNDLE.getString("menuBar.file.open"));
         openMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_O, InputEvent.CTRL_DOWN_MASK));
         openMenuItem.addActionListener(e -> {
-            if (!saveToFileWithConfirmDialog()) {
-                return;
-            }
-
             final JFileChooser openFileChooser = createFileChooser();
             final int answer = openFileChooser.showOpenDialog(JNotepad.this);
             if (answer != JFileChooser.APPROVE_OPTION) {
                 return;
             }
-            setFile(openFileChooser.getSelectedFile());
+            openInTab(openFileChooser.getSelectedFile(), null);
         });
 
         final JMenuItem saveMenuItem = fileMenu.add(BUNDLE.getString("menuBar.file.save"));
         saveMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK));
-        saveMenuItem.addActionListener(e -> saveToFile(false));
+        saveMenuItem.addActionListener(e -> saveToFile(false, null));
 
         final JMenuItem saveAsMenuItem = fileMenu.add(BUNDLE.getString("menuBar.file.saveAs"));
         saveAsMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK));
-        saveAsMenuItem.addActionListener(e -> saveToFile(true));
+        saveAsMenuItem.addActionListener(e -> saveToFile(true, null));
+
+        final JMenuItem closeTabMenuItem = fileMenu.add(BUNDLE.getString("menuBar.file.closeTab"));
+        closeTabMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_W, InputEvent.CTRL_DOWN_MASK));
+        closeTabMenuItem.addActionListener(e -> saveToFileWithConfirmDialog(this::closeTab));
         fileMenu.addSeparator();
 
         final JMenuItem printMenuItem = fileMenu.add(BUNDLE.getString("menuBar.file.print"));
         printMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_P, InputEvent.CTRL_DOWN_MASK));
-        printMenuItem.addActionListener(e -> {
-            try {
-                final JTextArea printTextArea = new JTextArea();
-                printTextArea.setDocument(textArea.getDocument());
-                printTextArea.setFont(docFont);
-                printTextArea.print();
-            } catch (PrinterException ex) {
-                JOptionPane.showMessageDialog(JNotepad.this, "Ошибка отпрвки на печать", "Ошибка", JOptionPane.ERROR_MESSAGE);
-            }
-        });
+        printMenuItem.addActionListener(e -> print());
 
         fileMenu.addSeparator();
         final JMenuItem exitMenuItem = fileMenu.add(BUNDLE.getString("menuBar.file.close"));
         exitMenuItem.addActionListener(e -> JNotepad.this.processWindowEvent(new WindowEvent(JNotepad.this, WindowEvent.WINDOW_CLOSING)));
+    }
 
-        // == edit menu
-        final JMenu editMenu = menuBar.add(new JMenu(BUNDLE.getString("menuBar.edit")));
+    private void fillEditMenu(JMenu editMenu) {
         final JMenuItem undoMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.undo"));
         undoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
-        undoMenuItem.setEnabled(false);
-        pcs.addPropertyChangeListener(DOCUMENT_CHANGED_PROPERTY, evt -> undoMenuItem.setEnabled(true));
-        textArea.addPropertyChangeListener(DOCUMENT_PROPERTY, evt -> undoMenuItem.setEnabled(false));
+        undoMenuItem.setEnabled(history.canUndo());
+        history.addChangeListener(e -> undoMenuItem.setEnabled(history.canUndo()));
         undoMenuItem.addActionListener(e -> {
-            if (undoManager.canUndoOrRedo()) {
-                undoManager.undoOrRedo();
-                textArea.selectAll();
+            // пока идет вставка, ее шаг отмены еще открыт
+            if (paster == null && history.canUndo()) {
+                history.undo();
+            }
+        });
+
+        final JMenuItem redoMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.redo"));
+        redoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+        redoMenuItem.setEnabled(history.canRedo());
+        history.addChangeListener(e -> redoMenuItem.setEnabled(history.canRedo()));
+        redoMenuItem.addActionListener(e -> {
+            if (paster == null && history.canRedo()) {
+                history.redo();
             }
         });
         editMenu.addSeparator();
 
         final JMenuItem cutMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.cut"));
         cutMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_X, InputEvent.CTRL_DOWN_MASK));
-        cutMenuItem.setEnabled(false);
-        textArea.addCaretListener(e -> cutMenuItem.setEnabled(textArea.getSelectedText() != null));
+        cutMenuItem.setEnabled(hasSelection());
+        textArea.addCaretListener(e -> cutMenuItem.setEnabled(hasSelection()));
         cutMenuItem.addActionListener(e -> textArea.cut());
 
         final JMenuItem copyMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.copy"));
         copyMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_C, InputEvent.CTRL_DOWN_MASK));
-        copyMenuItem.setEnabled(textArea.getSelectedText() != null);
-        textArea.addCaretListener(e -> copyMenuItem.setEnabled(textArea.getSelectedText() != null));
+        copyMenuItem.setEnabled(hasSelection());
+        textArea.addCaretListener(e -> copyMenuItem.setEnabled(hasSelection()));
         copyMenuItem.addActionListener(e -> textArea.copy());
 
         final JMenuItem pasteMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.paste"));
@@ -211,16 +507,16 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
 
         final JMenuItem deleteMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.delete"));
         deleteMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_DELETE, 0));
-        deleteMenuItem.setEnabled(textArea.getSelectedText() != null);
-        textArea.addCaretListener(e -> deleteMenuItem.setEnabled(textArea.getSelectedText() != null));
+        deleteMenuItem.setEnabled(hasSelection());
+        textArea.addCaretListener(e -> deleteMenuItem.setEnabled(hasSelection()));
         deleteMenuItem.addActionListener(e -> textArea.copy());
 
         editMenu.addSeparator();
 
         final JMenuItem findWithMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.searchByGoogle"));
         findWithMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_E, InputEvent.CTRL_DOWN_MASK));
-        findWithMenuItem.setEnabled(textArea.getSelectedText() != null);
-        textArea.addCaretListener(e -> findWithMenuItem.setEnabled(textArea.getSelectedText() != null));
+        findWithMenuItem.setEnabled(hasSelection());
+        textArea.addCaretListener(e -> findWithMenuItem.setEnabled(hasSelection()));
         findWithMenuItem.addActionListener(e -> {
             try {
                 Desktop.getDesktop().browse(new URI("http://google.com/search?q=" + textArea.getSelectedText()));
@@ -231,28 +527,33 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
 
         final JMenuItem findMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.find"));
         findMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK));
-        findMenuItem.setEnabled(!Objects.equals(textArea.getText(), ""));
-        textArea.addCaretListener(e -> findMenuItem.setEnabled(!Objects.equals(textArea.getText(), ""))); // заменить на DocListener
-        findMenuItem.addActionListener(e -> {
-//            final String search = textArea.getSelectedText();
-            // todo open find frame
-        });
+        findMenuItem.setEnabled(canFind());
+        statistics.addChangeListener(e -> findMenuItem.setEnabled(canFind()));
+        pcs.addPropertyChangeListener(PAGER_PROPERTY, e -> findMenuItem.setEnabled(canFind()));
+        findMenuItem.addActionListener(e -> getFindDialog().open());
 
         final JMenuItem findNextMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.findNext"));
         findNextMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0));
-        findNextMenuItem.setEnabled(!Objects.equals(textArea.getText(), ""));
-        textArea.addCaretListener(e -> findNextMenuItem.setEnabled(!Objects.equals(textArea.getText(), "")));
-        findMenuItem.addActionListener(e -> {/*todo*/});
+        findNextMenuItem.setEnabled(canFind());
+        statistics.addChangeListener(e -> findNextMenuItem.setEnabled(canFind()));
+        pcs.addPropertyChangeListener(PAGER_PROPERTY, e -> findNextMenuItem.setEnabled(canFind()));
+        findNextMenuItem.addActionListener(e -> findNext(true));
 
         final JMenuItem findPrevMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.findPrev"));
         findPrevMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F3, InputEvent.SHIFT_DOWN_MASK));
-        findPrevMenuItem.setEnabled(!Objects.equals(textArea.getText(), ""));
-        textArea.addCaretListener(e -> findPrevMenuItem.setEnabled(!Objects.equals(textArea.getText(), "")));
-        findPrevMenuItem.addActionListener(e -> {/*todo*/});
+        findPrevMenuItem.setEnabled(canFind());
+        statistics.addChangeListener(e -> findPrevMenuItem.setEnabled(canFind()));
+        pcs.addPropertyChangeListener(PAGER_PROPERTY, e -> findPrevMenuItem.setEnabled(canFind()));
+        findPrevMenuItem.addActionListener(e -> findNext(false));
 
         final JMenuItem replaceMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.replace"));
         replaceMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_H, InputEvent.CTRL_DOWN_MASK));
-        replaceMenuItem.addActionListener(e -> {/*todo*/});
+        replaceMenuItem.setEnabled(canReplace());
+        statistics.addChangeListener(e -> replaceMenuItem.setEnabled(canReplace()));
+        pcs.addPropertyChangeListener(PAGER_PROPERTY, e -> replaceMenuItem.setEnabled(canReplace()));
+        pcs.addPropertyChangeListener(FOLLOW_PROPERTY, e -> replaceMenuItem.setEnabled(canReplace()));
+        pcs.addPropertyChangeListener(PASTER_PROPERTY, e -> replaceMenuItem.setEnabled(canReplace()));
+        replaceMenuItem.addActionListener(e -> getFindDialog().openReplace());
 
         final JMenuItem moveToMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.moveTo"));
         moveToMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_G, InputEvent.CTRL_DOWN_MASK));
@@ -271,7 +572,7 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
             gbc.insets = new Insets(5, 5, 2, 5);
             dialog.add(label, gbc);
 
-            final String curLineStr = String.valueOf(getCurrentLine() + 1);
+            final String curLineStr = String.valueOf((pager != null ? pager.getCaretLine() : getCurrentLine()) + 1);
 
             final JTextField textField = new JTextField(curLineStr, 20);
             gbc.gridx = 0;
@@ -283,10 +584,23 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
             final JButton okBtn = new JButton("Переход");
             dialog.getRootPane().setDefaultButton(okBtn);
             okBtn.addActionListener(e12 -> {
+                // номер логической строки, при переносе по словам тоже
+                final LineIndex lines = ((TextDocument) textArea.getDocument()).getLineIndex();
                 try {
-                    textArea.setCaretPosition(textArea.getLineStartOffset(Integer.parseInt(textField.getText()) - 1));
+                    if (pager != null) {
+                        if (!pager.goToLine(Long.parseLong(textField.getText().trim()) - 1)) {
+                            throw new NumberFormatException();
+                        }
+                        dialog.dispose();
+                        return;
+                    }
+                    final int line = Integer.parseInt(textField.getText().trim()) - 1;
+                    if (line < 0 || line >= lines.getLineCount()) {
+                        throw new NumberFormatException();
+                    }
+                    textArea.setCaretPosition(lines.getLineStart(line));
                     dialog.dispose();
-                } catch (BadLocationException | NumberFormatException ex) {
+                } catch (NumberFormatException ex) {
                     JOptionPane.showMessageDialog(dialog, "Номер строки превышает общее число строк", APP_NAME + " - Переход на строку", JOptionPane.ERROR_MESSAGE);
                     textField.setText(curLineStr);
                 }
@@ -315,23 +629,19 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
 
         final JMenuItem dateTimeMenuItem = editMenu.add(BUNDLE.getString("menuBar.edit.dateTime"));
         dateTimeMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_F5, 0));
-        dateTimeMenuItem.addActionListener(e -> textArea.replaceRange(LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm dd.MM.yyyy")), textArea.getSelectionStart(), textArea.getSelectionEnd()));
-
-        // == format menu
-        final JMenu formatMenu = menuBar.add(new JMenu(BUNDLE.getString("menuBar.format")));
+        // replaceSelection, в отличие от replaceRange, не правит документ только для чтения
+        dateTimeMenuItem.addActionListener(e -> textArea.replaceSelection(LocalDateTime.now().format(DateTimeFormatter.ofPattern("HH:mm dd.MM.yyyy"))));
+    }
 
+    private void fillFormatMenu(JMenu formatMenu) {
         final JMenuItem wordWrapMenuItem = formatMenu.add(new JCheckBoxMenuItem(BUNDLE.getString("menuBar.format.wordWrap")));
         wordWrapMenuItem.setSelected(wordWrap);
-        wordWrapMenuItem.addActionListener(e -> {
-            setWordWrap(wordWrapMenuItem.isSelected());
-            moveToMenuItem.setEnabled(!wordWrapMenuItem.isSelected());
-        });
+        wordWrapMenuItem.addActionListener(e -> setWordWrap(wordWrapMenuItem.isSelected()));
 
         // todo add choose font menu
+    }
 
-        // == view menu
-        final JMenu viewMenu = menuBar.add(new JMenu(BUNDLE.getString("menuBar.view")));
-
+    private void fillViewMenu(JMenu viewMenu) {
         final JMenu themeMenuItem = (JMenu) viewMenu.add(new JMenu(BUNDLE.getString("menuBar.view.theme")));
         final JRadioButtonMenuItem lightMenuItem = new JRadioButtonMenuItem("Светлая", !Theme.isDark());
         lightMenuItem.addActionListener(e -> Theme.setupTheme(Theme.LIGHT));
@@ -378,38 +688,575 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
                 KeyStroke.getKeyStroke(KeyEvent.VK_NUMPAD0, InputEvent.CTRL_DOWN_MASK), JComponent.WHEN_ANCESTOR_OF_FOCUSED_COMPONENT);
         restoreScaleMenuItem.addActionListener(restoreScaleAction);
 
-        final JMenuItem statusBar = viewMenu.add(new JCheckBoxMenuItem(BUNDLE.getString("menuBar.view.statusBar"), true));
-        statusBar.addActionListener(e -> {/*todo*/});
+        final JMenuItem statusBar = viewMenu.add(new JCheckBoxMenuItem(BUNDLE.getString("menuBar.view.statusBar"), statusBarVisible));
+        statusBar.addActionListener(e -> setStatusBarVisible(statusBar.isSelected()));
+
+        final JMenuItem logHighlightMenuItem = viewMenu.add(new JCheckBoxMenuItem(BUNDLE.getString("menuBar.view.logHighlight"), logHighlight));
+        logHighlightMenuItem.addActionListener(e -> setLogHighlight(logHighlightMenuItem.isSelected()));
+
+        viewMenu.addSeparator();
+        final JMenuItem followMenuItem = viewMenu.add(new JCheckBoxMenuItem(BUNDLE.getString("menuBar.view.follow"), follower != null));
+        followMenuItem.setEnabled(file != null);
+        pcs.addPropertyChangeListener(DOCUMENT_NAME_PROPERTY, evt -> followMenuItem.setEnabled(file != null));
+        pcs.addPropertyChangeListener(FOLLOW_PROPERTY, evt -> followMenuItem.setSelected((Boolean) evt.getNewValue()));
+        followMenuItem.addActionListener(e -> {
+            setFollow(followMenuItem.isSelected());
+            // слежение могло не включиться
+            followMenuItem.setSelected(follower != null);
+        });
+    }
 
-        // == help menu
-        final JMenu helpMenu = menuBar.add(new JMenu(BUNDLE.getString("menuBar.help")));
+    private void fillHelpMenu(JMenu helpMenu) {
         final JMenuItem aboutMenuItem = helpMenu.add(BUNDLE.getString("menuBar.help.about"));
-        aboutMenuItem.addActionListener(e -> JOptionPane.showMessageDialog(JNotepad.this, APP_NAME, MessageFormat.format(BUNDLE.getString("aboutDialog.title"), APP_NAME), JOptionPane.INFORMATION_MESSAGE, new ImageIcon(ICONS.get(1))));
+        aboutMenuItem.addActionListener(e -> JOptionPane.showMessageDialog(JNotepad.this, APP_NAME, MessageFormat.format(BUNDLE.getString("aboutDialog.title"), APP_NAME), JOptionPane.INFORMATION_MESSAGE, new ImageIcon(ICONS.join().get(1))));
+    }
 
-        return menuBar;
+    /**
+     * есть ли где искать: непустой документ или просматриваемый файл
+     */
+    private boolean canFind() {
+        return pager != null || statistics.getCharCount() > 0;
     }
 
-    private int getCurrentLine() {
-        try {
-            return textArea.getLineOfOffset(textArea.getCaretPosition());
-        } catch (BadLocationException ex) {
-            ex.printStackTrace();
-            return 0;
+    /**
+     * заменять можно в редактируемом документе: не в пейджере, не при слежении за файлом
+     * и не во время вставки кусками
+     */
+    private boolean canReplace() {
+        return pager == null && follower == null && paster == null && canFind();
+    }
+
+    private boolean hasSelection() {
+        return textArea.getSelectionStart() != textArea.getSelectionEnd();
+    }
+
+    private FindDialog getFindDialog() {
+        if (findDialog == null) {
+            findDialog = new FindDialog(this, textArea, APP_NAME, searchResultsPanel);
+            findDialog.setPager(pager);
+            findDialog.setReadOnly(follower != null || paster != null);
+        }
+        return findDialog;
+    }
+
+    /**
+     * повторяет последний поиск, если его еще не было - открывает окно поиска
+     */
+    private void findNext(boolean forward) {
+        final FindDialog dialog = getFindDialog();
+        if (dialog.hasQuery()) {
+            dialog.find(forward);
+        } else {
+            dialog.open();
         }
     }
 
+    private int getCurrentLine() {
+        return ((TextDocument) textArea.getDocument()).getLineIndex().getLineOfOffset(textArea.getCaretPosition());
+    }
+
     private void setFile(File file) {
         this.file = file;
-        if (file == null) {
-            setDocumentName(DEFAULT_FILE_NAME);
+        setDocumentName(file == null ? DEFAULT_FILE_NAME : file.getName());
+        watchFile();
+    }
+
+    /**
+     * следит за изменениями файла текущей вкладки другими программами
+     */
+    private void watchFile() {
+        if (fileWatch != null) {
+            fileWatch.close();
+        }
+        fileWatch = file == null ? null : FileWatch.watch(file, this::checkFile);
+    }
+
+    /**
+     * если у файла сменились размер или время изменения, сверяет его с документом в фоне
+     * и предлагает внести изменения с диска, см. {@link #mergeFile}
+     */
+    private void checkFile() {
+        if (file == null || pager != null || follower != null || loader != null || saver != null || paster != null) {
+            return;
+        }
+        final TextDocument document = (TextDocument) textArea.getDocument();
+        final FileStamp known = document.getFileStamp();
+        final FileStamp declined = (FileStamp) document.getProperty(DECLINED_STAMP_PROPERTY);
+        if (known == null || known.matches(file) || declined != null && declined.matches(file)) {
+            return;
+        }
+        if (checker != null) {
+            checkAgain = true;
+            return;
+        }
+        final File checkedFile = file;
+        final long checkedModificationCount = modificationCount;
+        // правки документа сохраняются: отличия файла ищутся от его прежнего текста
+        final TextSnapshot fileText = documentChanged ? document.getFileText() : null;
+        final TextSnapshot text = document.snapshot();
+        checker = new FileChangeChecker(file, fileText == null ? text : fileText, fileText == null ? null : text, known, declined) {
+            @Override
+            protected void unchanged(FileStamp stamp) {
+                if (stamp != null && textArea.getDocument() == document) {
+                    document.setFileStamp(stamp);
+                }
+                finishChecking(this);
+            }
+
+            @Override
+            protected void changed(TextDocument disk, List<LineDiff.Hunk> hunks, int conflicts) {
+                if (textArea.getDocument() != document || file != checkedFile || modificationCount != checkedModificationCount) {
+                    // документ правили во время сверки - сверяем заново
+                    checkAgain = true;
+                } else {
+                    mergeFile(document, disk, hunks, conflicts);
+                }
+                finishChecking(this);
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                finishChecking(this);
+                cause.printStackTrace();
+            }
+        };
+        checker.execute();
+    }
+
+    private void finishChecking(FileChangeChecker finished) {
+        if (checker != finished) {
+            return;
+        }
+        checker = null;
+        if (checkAgain) {
+            checkAgain = false;
+            checkFile();
+        }
+    }
+
+    /**
+     * вносит изменения файла с диска в документ наименьшими заменами строк: каретка, история
+     * правок и неизмененный текст остаются. Несохраненные правки документа тоже остаются,
+     * изменения с диска в правленых строках не вносятся (conflicts). Без несохраненных правок
+     * после этого документ совпадает с файлом
+     */
+    private void mergeFile(TextDocument document, TextDocument disk, List<LineDiff.Hunk> hunks, int conflicts) {
+        if (!hunks.isEmpty() || conflicts > 0) {
+            final String message = documentChanged
+                    ? "Файл \"" + documentName + "\" изменен другой программой, а в документе есть несохраненные изменения.\n"
+                    + "Внести изменения с диска? Несохраненные изменения останутся, внесение можно отменить"
+                    + (conflicts > 0 ? "\nИзменения с диска в строках, измененных в документе, не будут внесены: " + conflicts : "")
+                    : "Файл \"" + documentName + "\" изменен другой программой.\nВнести изменения в документ?";
+            final int answer = JOptionPane.showConfirmDialog(this, message, APP_NAME, JOptionPane.YES_NO_OPTION);
+            if (answer != JOptionPane.YES_OPTION) {
+                document.putProperty(DECLINED_STAMP_PROPERTY, disk.getFileStamp());
+                return;
+            }
+            try {
+                document.merge(disk, hunks);
+            } catch (BadLocationException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        document.setFormat(disk.getFormat());
+        document.putProperty(TextDocument.LOSSY_PROPERTY, disk.getProperty(TextDocument.LOSSY_PROPERTY));
+        document.setFileStamp(disk.getFileStamp());
+        document.putProperty(DECLINED_STAMP_PROPERTY, null);
+        document.putProperty(TextDocument.FILE_SIZE_PROPERTY, disk.getFileSize());
+        if (documentChanged) {
+            // документ по-прежнему не сохранен, журнал прежнего файла на диске уже устарел
+            document.setFileText(disk.snapshot());
+            return;
+        }
+        document.setFileText(document.snapshot());
+        if (journal != null) {
+            journal.compact(file, journal.mark());
+        }
+        setDocumentChanged(false);
+    }
+
+    /**
+     * читает файл в фоне, пока он читается показываем его начало
+     */
+    private void openFile(File file) {
+        openFile(file, null);
+    }
+
+    /**
+     * then выполнится в EDT после того, как прочитанный документ станет текущим
+     */
+    private void openFile(File file, Runnable then) {
+        if (file.length() > PAGER_THRESHOLD) {
+            if (openPager(file) && then != null) {
+                then.run();
+            }
+            return;
+        }
+        cancelLoading();
+        final JTextArea previewArea = new JTextArea();
+        previewArea.setEditable(false);
+        previewArea.setFont(textArea.getFont());
+        previewArea.setLineWrap(wordWrap);
+        previewArea.setWrapStyleWord(wordWrap);
+        final DocumentLoader documentLoader = new DocumentLoader(file) {
+            @Override
+            protected void showPreview(String text) {
+                previewArea.setText(text);
+                previewArea.setCaretPosition(0);
+                scrollPane.setViewportView(previewArea);
+            }
+
+            @Override
+            protected void loaded(TextDocument document) {
+                finishLoading(this);
+                setFollow(false);
+                setPager(null);
+                textArea.setDocument(document);
+                setFile(file);
+                startJournal(document, file);
+                DocumentTab.trim(DocumentTab.MEMORY_BUDGET);
+                if (then != null) {
+                    then.run();
+                }
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                finishLoading(this);
+                JOptionPane.showMessageDialog(JNotepad.this, "Не удалось открыть файл \"" + file.getName() + "\"\n" + cause.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
+            }
+        };
+        documentLoader.addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName()) && loader == documentLoader) {
+                setLoadProgress((Integer) evt.getNewValue());
+            }
+        });
+        loader = documentLoader;
+        setLoadProgress(0);
+        documentLoader.execute();
+    }
+
+    /**
+     * открывает файлы по очереди, каждый в своей вкладке
+     */
+    private void openFiles(List<File> files) {
+        if (!files.isEmpty()) {
+            openInTab(files.get(0), () -> openFiles(files.subList(1, files.size())));
+        }
+    }
+
+    /**
+     * открывает файл в новой вкладке, в текущей - если она пустая; уже открытый файл
+     * просто показывается
+     */
+    private void openInTab(File file, Runnable then) {
+        if (saver != null) {
+            saver.whenDone(() -> openInTab(file, then));
+            return;
+        }
+        cancelLoading();
+        for (DocumentTab tab : tabs) {
+            final File tabFile = tab == currentTab ? this.file : tab.file;
+            if (file.equals(tabFile)) {
+                selectTab(tab);
+                if (then != null) {
+                    then.run();
+                }
+                return;
+            }
+        }
+        if (!isPristine()) {
+            addTab();
+        }
+        openFile(file, then);
+    }
+
+    /**
+     * в текущей вкладке ничего не открыто и не набрано
+     */
+    private boolean isPristine() {
+        return file == null && !documentChanged && pager == null && loader == null && textArea.getDocument().getLength() == 0;
+    }
+
+    /**
+     * новая пустая вкладка становится текущей
+     */
+    private void addTab() {
+        if (saver != null) {
+            saver.whenDone(this::addTab);
+            return;
+        }
+        cancelLoading();
+        final DocumentTab tab = new DocumentTab(new TextDocument(), DEFAULT_FILE_NAME);
+        tabs.add(tab);
+        updatingTabs = true;
+        tabStrip.addTab(tab.getTitle(), null);
+        updatingTabs = false;
+        selectTab(tab);
+        startJournal(tab.document, null);
+    }
+
+    /**
+     * делает вкладку текущей: состояние текущей уходит в ее DocumentTab, состояние новой -
+     * в поля окна. Выгруженный без изменений документ читается из файла заново. Пока документ
+     * читается или пишется, вкладки не переключаются
+     */
+    private void selectTab(DocumentTab tab) {
+        if (tab == currentTab || loader != null || saver != null || paster != null) {
+            updateTabStrip();
+            return;
+        }
+        setFollow(false);
+        final DocumentTab old = currentTab;
+        old.file = file;
+        old.name = documentName;
+        old.changed = documentChanged;
+        old.modificationCount = modificationCount;
+        old.caret = textArea.getCaretPosition();
+        old.steps = history.detach();
+        old.journal = journal;
+        old.pager = pager;
+        old.setCurrent(false);
+
+        currentTab = tab;
+        tab.setCurrent(true);
+        journal = tab.journal;
+        tab.journal = null;
+        showPager(tab.pager);
+        tab.pager = null;
+        modificationCount = tab.modificationCount;
+        final int caret = tab.caret;
+        if (tab.document == null) {
+            textArea.setDocument(new TextDocument());
+            setFile(null);
+            setDocumentName(tab.name);
+            openFile(tab.file, () -> textArea.setCaretPosition(Math.min(caret, textArea.getDocument().getLength())));
         } else {
-            setDocumentName(file.getName());
-            try (Reader reader = new FileReader(file)) {
-                textArea.read(reader, file);
-            } catch (IOException ex) {
-                throw new RuntimeException(ex);
+            final TextDocument document = tab.document;
+            document.restore();
+            textArea.setDocument(document);
+            history.attach(tab.steps);
+            this.file = tab.file;
+            watchFile();
+            setDocumentName(tab.name);
+            setDocumentChanged(tab.changed);
+            textArea.setCaretPosition(Math.min(caret, document.getLength()));
+        }
+        tab.steps = EditHistory.Steps.EMPTY;
+        searchResultsPanel.clear();
+        updateTabStrip();
+        DocumentTab.trim(DocumentTab.MEMORY_BUDGET);
+        if (pager != null) {
+            // шрифт и перенос могли смениться, пока вкладка была неактивной
+            pager.setTextFont(textArea.getFont());
+            pager.setWordWrap(wordWrap);
+            pager.requestFocusInWindow();
+        } else {
+            textArea.requestFocusInWindow();
+            checkFile();
+        }
+    }
+
+    /**
+     * закрывает текущую вкладку, изменения уже сохранены или от них отказались;
+     * единственная вкладка не закрывается, а очищается
+     */
+    private void closeTab() {
+        cancelLoading();
+        setFollow(false);
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        setPager(null);
+        if (tabs.size() == 1) {
+            final TextDocument document = new TextDocument();
+            textArea.setDocument(document);
+            setFile(null);
+            startJournal(document, null);
+            return;
+        }
+        final DocumentTab closed = currentTab;
+        final int index = tabs.indexOf(closed);
+        selectTab(tabs.get(index == tabs.size() - 1 ? index - 1 : index + 1));
+        removeTab(closed);
+    }
+
+    /**
+     * убирает не текущую вкладку вместе с ее журналом и просмотром
+     */
+    private void removeTab(DocumentTab tab) {
+        if (tab.journal != null) {
+            tab.journal.close();
+            tab.journal = null;
+        }
+        if (tab.pager != null) {
+            tab.pager.close();
+            tab.pager = null;
+        }
+        tab.close();
+        updatingTabs = true;
+        tabStrip.removeTabAt(tabs.indexOf(tab));
+        tabs.remove(tab);
+        updatingTabs = false;
+        updateTabStrip();
+    }
+
+    /**
+     * закрывает вкладки окна, по очереди предлагая сохранить измененные;
+     * then выполнится, когда останется одна вкладка и ее изменения сохранены или отброшены
+     */
+    private void closeTabs(Runnable then) {
+        // вкладки без изменений закрываются сразу, на них не нужно переходить
+        for (DocumentTab tab : new ArrayList<>(tabs)) {
+            if (tab != currentTab && !tab.changed) {
+                removeTab(tab);
+            }
+        }
+        if (tabs.size() == 1) {
+            saveToFileWithConfirmDialog(then);
+            return;
+        }
+        saveToFileWithConfirmDialog(() -> {
+            closeTab();
+            closeTabs(then);
+        });
+    }
+
+    private void updateTabStrip() {
+        updatingTabs = true;
+        final int index = tabs.indexOf(currentTab);
+        tabStrip.setTitleAt(index, (documentChanged ? "*" : "") + documentName);
+        tabStrip.setToolTipTextAt(index, file == null ? null : file.getPath());
+        tabStrip.setSelectedIndex(index);
+        tabStrip.setVisible(tabs.size() > 1);
+        updatingTabs = false;
+    }
+
+    /**
+     * печать снимка документа в фоне, окно остается доступным
+     */
+    private void print() {
+        if (pager != null) {
+            JOptionPane.showMessageDialog(this, "Файл \"" + documentName + "\" открыт только для просмотра", APP_NAME, JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        final PrinterJob job = PrinterJob.getPrinterJob();
+        final DocumentPrintable printable = new DocumentPrintable(((TextDocument) textArea.getDocument()).snapshot(), docFont);
+        job.setPrintable(printable);
+        job.setJobName(documentName);
+        if (job.printDialog()) {
+            new DocumentPrinter(this, job, printable).start();
+        }
+    }
+
+    /**
+     * открывает файл больше кучи только для просмотра: документ окна пуст, журнала нет;
+     * false - файл не открылся
+     */
+    private boolean openPager(File file) {
+        cancelLoading();
+        final MappedText text;
+        try {
+            text = MappedText.open(file);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(JNotepad.this, "Не удалось открыть файл \"" + file.getName() + "\"\n" + ex.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
+            return false;
+        }
+        setFollow(false);
+        textArea.setDocument(new TextDocument());
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        // файла у окна нет: сохранять нечего, пустой документ не запишется поверх
+        setFile(null);
+        setDocumentName(file.getName());
+        setPager(new PagerPanel(text, textArea.getFont(), wordWrap));
+        pager.requestFocusInWindow();
+        return true;
+    }
+
+    private void setPager(PagerPanel pager) {
+        final PagerPanel old = this.pager;
+        if (old == pager) {
+            return;
+        }
+        if (old != null) {
+            old.close();
+        }
+        showPager(pager);
+    }
+
+    /**
+     * показывает просмотр вместо текстовой области, прежний не закрывается: он уходит
+     * в неактивную вкладку
+     */
+    private void showPager(PagerPanel pager) {
+        final PagerPanel old = this.pager;
+        if (old == pager) {
+            return;
+        }
+        this.pager = pager;
+        pcs.firePropertyChange(PAGER_PROPERTY, old, pager);
+    }
+
+    /**
+     * заводит журнал правок нового документа, а если после падения остались
+     * несохраненные правки этого файла - предлагает их восстановить
+     */
+    private void startJournal(TextDocument document, File base) {
+        if (journal != null) {
+            journal.close();
+        }
+        final EditJournal.Recovery recovery = EditJournal.find(JOURNAL_DIR, base);
+        journal = EditJournal.start(JOURNAL_DIR, document, base);
+        if (recovery == null) {
+            return;
+        }
+        final int answer = JOptionPane.showConfirmDialog(this,
+                "Найдены несохраненные изменения документа \"" + documentName + "\", оставшиеся после сбоя.\nВосстановить их?",
+                APP_NAME, JOptionPane.YES_NO_OPTION);
+        if (answer == JOptionPane.YES_OPTION) {
+            try {
+                recovery.replay(document);
+            } catch (BadLocationException ex) {
+                JOptionPane.showMessageDialog(this, "Изменения восстановлены не полностью", APP_NAME, JOptionPane.WARNING_MESSAGE);
             }
         }
+        recovery.discard();
+    }
+
+    private void cancelLoading() {
+        if (loader != null) {
+            final DocumentLoader cancelled = loader;
+            cancelled.cancel(true);
+            finishLoading(cancelled);
+        }
+    }
+
+    private void finishLoading(DocumentLoader finished) {
+        if (loader != finished) {
+            return;
+        }
+        loader = null;
+        if (scrollPane.getViewport().getView() != textArea) {
+            scrollPane.setViewportView(textArea);
+        }
+        textArea.requestFocusInWindow();
+        setLoadProgress(-1);
+    }
+
+    private void setLoadProgress(int progress) {
+        int old = loadProgress;
+        this.loadProgress = progress;
+        pcs.firePropertyChange(LOAD_PROGRESS_PROPERTY, old, progress);
+    }
+
+    private void setPasteProgress(int progress) {
+        int old = pasteProgress;
+        this.pasteProgress = progress;
+        pcs.firePropertyChange(PASTE_PROGRESS_PROPERTY, old, progress);
     }
 
     private void setDocumentChanged(boolean changed) {
@@ -423,8 +1270,27 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
         if (documentChanged) {
             title.append("*");
         }
-        title.append(documentName).append(" - ").append(APP_NAME);
+        title.append(documentName);
+        if (loadProgress >= 0) {
+            title.append(" [загрузка ").append(loadProgress).append("%, Esc - отмена]");
+        }
+        if (pasteProgress >= 0) {
+            title.append(" [вставка ").append(pasteProgress).append("%, Esc - отмена]");
+        }
+        if (saver != null) {
+            title.append(" [сохранение]");
+        }
+        if (follower != null) {
+            title.append(" [слежение]");
+        }
+        if (pager != null) {
+            title.append(" [только чтение]");
+        }
+        title.append(" - ").append(APP_NAME);
         setTitle(title.toString());
+        if (currentTab != null) {
+            updateTabStrip();
+        }
     }
 
     private void setDocumentName(String documentName) {
@@ -442,6 +1308,67 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
         pcs.firePropertyChange(WORD_WRAP_PROPERTY, old, wrap);
     }
 
+    /**
+     * показать/скрыть строку состояния
+     * */
+    private void setStatusBarVisible(boolean visible) {
+        boolean old = statusBarVisible;
+        statusBarVisible = visible;
+        pcs.firePropertyChange(STATUS_BAR_PROPERTY, old, visible);
+    }
+
+    /**
+     * включить/выключить подсветку уровней и меток времени журналов
+     * */
+    private void setLogHighlight(boolean highlight) {
+        boolean old = logHighlight;
+        logHighlight = highlight;
+        pcs.firePropertyChange(LOG_HIGHLIGHT_PROPERTY, old, highlight);
+    }
+
+    /**
+     * включить/выключить слежение за дописыванием в открытый файл. Пока оно включено,
+     * документ только для чтения, без истории правок и журнала
+     * */
+    private void setFollow(boolean follow) {
+        if (follow == (follower != null)) {
+            return;
+        }
+        if (follow) {
+            if (file == null || loader != null) {
+                return;
+            }
+            if (documentChanged || saver != null) {
+                JOptionPane.showMessageDialog(this, "Сохраните изменения, чтобы следить за файлом \"" + documentName + "\"", APP_NAME, JOptionPane.WARNING_MESSAGE);
+                return;
+            }
+            final TextDocument document = (TextDocument) textArea.getDocument();
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+            document.removeUndoableEditListener(history);
+            history.discardAllEdits();
+            textArea.setEditable(false);
+            final File followed = file;
+            follower = new LogFollower(textArea, followed, () -> {
+                // файл перезаписан - читаем его заново и следим дальше
+                setFollow(false);
+                openFile(followed, () -> setFollow(true));
+            });
+        } else {
+            final TextDocument document = follower.getDocument();
+            follower.close();
+            follower = null;
+            textArea.setEditable(true);
+            if (textArea.getDocument() == document) {
+                document.addUndoableEditListener(history);
+                startJournal(document, file);
+            }
+        }
+        pcs.firePropertyChange(FOLLOW_PROPERTY, !follow, follow);
+    }
+
     /**
      * установить масштаб шрифта
      * */
@@ -455,23 +1382,29 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
 
     /**
      * сохранение в файл с предварительным подтверждением
-     * вернет false в случает отмены сохранения
+     * then выполнится после сохранения или отказа от него, в случае отмены - не выполнится
      */
-    private boolean saveToFileWithConfirmDialog() {
+    private void saveToFileWithConfirmDialog(Runnable then) {
+        if (saver != null) {
+            // дожидаемся текущего сохранения, после него документ может оказаться сохраненным
+            saver.whenDone(() -> saveToFileWithConfirmDialog(then));
+            return;
+        }
         if (documentChanged) {
             final int confirmAnswer = JOptionPane.showConfirmDialog(JNotepad.this, "Вы хотите сохранить изменения в файле \"" + documentName + "\"?");
             switch (confirmAnswer) {
                 default:
                 case JOptionPane.CANCEL_OPTION: {
-                    return false;
+                    return;
                 }
                 case JOptionPane.YES_OPTION: {
-                    return saveToFile(false);
+                    saveToFile(false, then);
+                    return;
                 }
                 case JOptionPane.NO_OPTION:
             }
         }
-        return true;
+        then.run();
     }
 
 
@@ -480,50 +1413,235 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
      * если передан choose true, то идет обязательный выбор файла из JFileChooser
      * если choose false и был открыт файл выбираем его
      * иначе из JFileChooser
+     * запись идет в фоне со снимка документа, onSaved выполнится после успешной записи
      */
-    private boolean saveToFile(boolean choose) {
+    private void saveToFile(boolean choose, Runnable onSaved) {
+        if (pager != null) {
+            JOptionPane.showMessageDialog(this, "Файл \"" + documentName + "\" открыт только для просмотра", APP_NAME, JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        if (saver != null) {
+            saver.whenDone(() -> saveToFile(choose, onSaved));
+            return;
+        }
         File localFile = this.file;
         if (choose || Objects.isNull(this.file)) {
             final JFileChooser saveFileChooser = createApprovableFileChooser(this);
             final int chooseAnswer = saveFileChooser.showSaveDialog(this);
             if (chooseAnswer != JFileChooser.APPROVE_OPTION) {
-                return false;
+                return;
             }
             localFile = saveFileChooser.getSelectedFile();
+        } else {
+            final FileStamp stamp = ((TextDocument) textArea.getDocument()).getFileStamp();
+            if (stamp != null && file.exists() && !stamp.matches(file)) {
+                final int confirmAnswer = JOptionPane.showConfirmDialog(this, "Файл \"" + documentName + "\" изменен другой программой.\nПерезаписать его?", APP_NAME, JOptionPane.YES_NO_OPTION);
+                if (confirmAnswer != JOptionPane.YES_OPTION) {
+                    return;
+                }
+            }
         }
 
-        try (Writer writer = new FileWriter(localFile)) {
-            textArea.write(writer);
-            setFile(localFile);
-        } catch (IOException ex) {
-            throw new RuntimeException(ex);
+        final TextDocument document = (TextDocument) textArea.getDocument();
+        if (document.isLossy()) {
+            final int confirmAnswer = JOptionPane.showConfirmDialog(this, "Файл \"" + documentName + "\" прочитан с заменой байтов, неверных для кодировки "
+                    + document.getFormat().getCharset().name() + ".\nПри сохранении эти байты будут потеряны. Сохранить?", APP_NAME, JOptionPane.YES_NO_OPTION);
+            if (confirmAnswer != JOptionPane.YES_OPTION) {
+                return;
+            }
         }
+        saveToFile(document, localFile, onSaved, document.isLossy());
+    }
+
+    /**
+     * запись в фоне в выбранный файл, при replace символы, которых нет в кодировке, заменяются.
+     * Без replace такие символы прерывают запись, и замена предлагается отдельно
+     */
+    private void saveToFile(TextDocument document, File targetFile, Runnable onSaved, boolean replace) {
+        final long savedModificationCount = modificationCount;
+        final EditJournal savedJournal = journal;
+        final long journalMark = savedJournal == null ? 0 : savedJournal.mark();
+        final DocumentSaver documentSaver = new DocumentSaver(document.snapshot(), document.getFormat(), targetFile, replace) {
+            @Override
+            protected void saved() {
+                setSaver(null);
+                document.putProperty(TextDocument.LOSSY_PROPERTY, null);
+                document.setFileText(getText());
+                if (textArea.getDocument() != document) {
+                    return;
+                }
+                setFile(targetFile);
+                document.putProperty(TextDocument.FILE_SIZE_PROPERTY, targetFile.length());
+                document.setFileStamp(getStamp());
+                document.putProperty(DECLINED_STAMP_PROPERTY, null);
+                if (savedJournal != null && savedJournal == journal) {
+                    savedJournal.compact(targetFile, journalMark);
+                }
+                // правки, сделанные во время записи, в файл не попали
+                if (modificationCount == savedModificationCount) {
+                    setDocumentChanged(false);
+                }
+                if (onSaved != null) {
+                    onSaved.run();
+                }
+            }
 
+            @Override
+            protected void failed(Throwable cause) {
+                setSaver(null);
+                if (cause instanceof CharacterCodingException && textArea.getDocument() == document) {
+                    final int confirmAnswer = JOptionPane.showConfirmDialog(JNotepad.this, "В тексте есть символы, которых нет в кодировке "
+                            + document.getFormat().getCharset().name() + ".\nСохранить файл \"" + targetFile.getName() + "\", заменив их?", APP_NAME, JOptionPane.YES_NO_OPTION);
+                    if (confirmAnswer == JOptionPane.YES_OPTION) {
+                        saveToFile(document, targetFile, onSaved, true);
+                    }
+                    return;
+                }
+                JOptionPane.showMessageDialog(JNotepad.this, "Не удалось сохранить файл \"" + targetFile.getName() + "\"\n" + cause.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
+            }
+        };
+        setSaver(documentSaver);
+        documentSaver.execute();
+    }
+
+    /**
+     * вставка из буфера обмена вместо выделения: большой текст вставляется кусками в фоне,
+     * см. {@link DocumentPaster}, пока он вставляется, документ только для чтения, а каретка
+     * не двигается. Небольшой текст, вырезанный в блокноте, вставляется сразу
+     */
+    private boolean paste(Transferable source) {
+        if (!textArea.isEditable() || paster != null || !source.isDataFlavorSupported(DataFlavor.stringFlavor)) {
+            return false;
+        }
+        final TextDocument document = (TextDocument) textArea.getDocument();
+        if (source instanceof TextTransfer && ((TextTransfer) source).getText().length() <= DocumentPaster.CHUNK) {
+            final TextSnapshot text = ((TextTransfer) source).getText();
+            final char[] chars = new char[text.length()];
+            text.getChars(0, chars.length, chars, 0);
+            document.beginEdit();
+            try {
+                textArea.replaceSelection(new String(chars));
+            } finally {
+                document.endEdit();
+            }
+            return true;
+        }
+        final int start = textArea.getSelectionStart();
+        final int end = textArea.getSelectionEnd();
+        final Caret caret = textArea.getCaret();
+        final int caretPolicy = caret instanceof DefaultCaret ? ((DefaultCaret) caret).getUpdatePolicy() : -1;
+        final DocumentPaster documentPaster = new DocumentPaster(document, source, start, end) {
+            @Override
+            protected void finished(int end) {
+                setPaster(null);
+                setPasteProgress(-1);
+                textArea.setEditable(true);
+                if (caretPolicy >= 0) {
+                    ((DefaultCaret) caret).setUpdatePolicy(caretPolicy);
+                }
+                if (textArea.getDocument() == document) {
+                    textArea.setCaretPosition(end);
+                }
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                JOptionPane.showMessageDialog(JNotepad.this, "Не удалось вставить текст из буфера обмена\n" + cause.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
+            }
+        };
+        documentPaster.addPropertyChangeListener(evt -> {
+            if ("progress".equals(evt.getPropertyName()) && paster == documentPaster) {
+                setPasteProgress((Integer) evt.getNewValue());
+            }
+        });
+        // каретка встанет в конец вставленного в конце, а пока не гоняет прокрутку за каждым куском
+        textArea.setCaretPosition(start);
+        if (caretPolicy >= 0) {
+            ((DefaultCaret) caret).setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
+        }
+        textArea.setEditable(false);
+        setPaster(documentPaster);
+        documentPaster.start();
         return true;
     }
 
+    private void setSaver(DocumentSaver saver) {
+        DocumentSaver old = this.saver;
+        this.saver = saver;
+        pcs.firePropertyChange(SAVER_PROPERTY, old, saver);
+    }
+
+    private void setPaster(DocumentPaster paster) {
+        DocumentPaster old = this.paster;
+        this.paster = paster;
+        pcs.firePropertyChange(PASTER_PROPERTY, old, paster);
+    }
+
     // == listeners methods ==
 
     @Override
     public void insertUpdate(DocumentEvent e) {
+        if (follower != null && follower.isAppending()) {
+            // дописанное в файл уже в файле
+            return;
+        }
+        modificationCount++;
         setDocumentChanged(true);
     }
 
     @Override
     public void removeUpdate(DocumentEvent e) {
-        setDocumentChanged(file != null || !textArea.getText().isEmpty());
+        modificationCount++;
+        setDocumentChanged(file != null || e.getDocument().getLength() > 0);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // атрибутов у текста нет, CHANGE приходит только от "Заменить все"
+        modificationCount++;
+        setDocumentChanged(true);
     }
 
     @Override
     public void windowClosing(WindowEvent e) {
-        if (saveToFileWithConfirmDialog()) {
+        closeTabs(() -> {
+            cancelLoading();
             dispose();
-        }
+        });
+    }
+
+    @Override
+    public void windowActivated(WindowEvent e) {
+        checkFile();
     }
 
     @Override
     public void windowClosed(WindowEvent e) {
+        if (paster != null) {
+            paster.cancel(true);
+        }
+        if (fileWatch != null) {
+            fileWatch.close();
+            fileWatch = null;
+        }
+        if (follower != null) {
+            follower.close();
+            follower = null;
+        }
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        setPager(null);
+        for (DocumentTab tab : new ArrayList<>(tabs)) {
+            if (tab != currentTab) {
+                removeTab(tab);
+            }
+        }
+        currentTab.close();
         PREF.putBoolean(WORD_WRAP_PROPERTY, wordWrap);
+        PREF.putBoolean(STATUS_BAR_PROPERTY, statusBarVisible);
+        PREF.putBoolean(LOG_HIGHLIGHT_PROPERTY, logHighlight);
     }
 
     // == static utils
@@ -556,15 +1674,4 @@ public class JNotepad extends JFrame implements DocumentListener, WindowListener
         fileChooser.setFileFilter(TXT_FILE_FILTER);
         return fileChooser;
     }
-
-    private static List<Image> loadIcons() {
-        List<Image> icons = new ArrayList<>();
-        try {
-            icons.add(ImageIO.read(ClassLoader.getSystemResource("./img/icons8-spiral-notepad-48.png")));
-            icons.add(ImageIO.read(ClassLoader.getSystemResource("./img/icons8-spiral-notepad-96.png")));
-        } catch (IOException ex) {
-            ex.printStackTrace();
-        }
-        return icons;
-    }
 }
@@ -0,0 +1,59 @@
+package by.azzi.jnotepad;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.function.Consumer;
+
+/**
+ * меню, пункты которого создаются при первом обращении к нему: открытии или поиске
+ * сочетания клавиш по меню, иначе - в первую свободную минуту после показа окна
+ */
+class LazyMenu extends JMenu {
+
+    /**
+     * через сколько после показа окна заполняются все меню
+     */
+    private static final int IDLE_FILL_DELAY = 500;
+
+    private Consumer<JMenu> filler;
+
+    LazyMenu(String text, Consumer<JMenu> filler) {
+        super(text);
+        this.filler = filler;
+    }
+
+    /**
+     * создает пункты, если их еще нет
+     */
+    void fill() {
+        if (filler != null) {
+            final Consumer<JMenu> fill = filler;
+            filler = null;
+            fill.accept(this);
+        }
+    }
+
+    /**
+     * через сочетания клавиш меню обходится через getSubElements, а он берет всплывающее меню
+     */
+    @Override
+    public JPopupMenu getPopupMenu() {
+        fill();
+        return super.getPopupMenu();
+    }
+
+    /**
+     * заполнит все ленивые меню строки меню вскоре после показа окна
+     */
+    static void fillWhenIdle(JMenuBar menuBar) {
+        final Timer timer = new Timer(IDLE_FILL_DELAY, e -> {
+            for (Component menu : menuBar.getComponents()) {
+                if (menu instanceof LazyMenu) {
+                    ((LazyMenu) menu).fill();
+                }
+            }
+        });
+        timer.setRepeats(false);
+        timer.start();
+    }
+}
@@ -0,0 +1,136 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.FileTail;
+import by.azzi.jnotepad.document.TextDocument;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.io.File;
+
+/**
+ * режим слежения за файлом: дописанное, прочитанное {@link FileTail} в фоне, копится
+ * и вставляется в конец документа в EDT пачками не больше {@link #MAX_BATCH} символов,
+ * так что при быстром росте файла окно остается отзывчивым. Если накопилось больше
+ * {@link #MAX_PENDING} символов, поток слежения ждет EDT. Каретка в конце документа
+ * остается в конце - окно прокручивается вслед за файлом
+ */
+final class LogFollower implements FileTail.Listener {
+
+    private static final int MAX_BATCH = 1 << 20;
+    private static final int MAX_PENDING = 16 << 20;
+
+    private final JTextArea textArea;
+    private final TextDocument document;
+    private final Runnable onTruncated;
+    private final FileTail tail;
+    /**
+     * прочитанное, но еще не вставленное, под монитором this
+     */
+    private final StringBuilder pending = new StringBuilder();
+    private boolean flushPosted;
+    private boolean closed;
+    /**
+     * идет вставка дописанного, в EDT
+     */
+    private boolean appending;
+
+    /**
+     * onTruncated выполнится в EDT, если файл станет короче прочитанного
+     */
+    LogFollower(JTextArea textArea, File file, Runnable onTruncated) {
+        this.textArea = textArea;
+        this.document = (TextDocument) textArea.getDocument();
+        this.onTruncated = onTruncated;
+        final long offset = document.getFileSize() >= 0 ? document.getFileSize() : file.length();
+        this.tail = FileTail.follow(file, offset, document.getFormat(), this);
+    }
+
+    TextDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * вставляется ли сейчас дописанное в файл, а не правка пользователя
+     */
+    boolean isAppending() {
+        return appending;
+    }
+
+    @Override
+    public synchronized void appended(String text) throws InterruptedException {
+        while (pending.length() > MAX_PENDING && !closed) {
+            wait();
+        }
+        if (closed) {
+            return;
+        }
+        pending.append(text);
+        if (!flushPosted) {
+            flushPosted = true;
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+
+    @Override
+    public void truncated() {
+        SwingUtilities.invokeLater(() -> {
+            if (!isClosed()) {
+                onTruncated.run();
+            }
+        });
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * вставляет очередную пачку, остаток - следующим событием, чтобы между пачками
+     * успевали обработаться ввод и отрисовка
+     */
+    private void flush() {
+        final String batch;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            int length = Math.min(MAX_BATCH, pending.length());
+            if (length < pending.length() && Character.isHighSurrogate(pending.charAt(length - 1))) {
+                length--;
+            }
+            batch = pending.substring(0, length);
+            pending.delete(0, length);
+            if (pending.length() > 0) {
+                SwingUtilities.invokeLater(this::flush);
+            } else {
+                flushPosted = false;
+            }
+            notifyAll();
+        }
+        final boolean atEnd = textArea.getCaretPosition() == document.getLength()
+                && textArea.getSelectionStart() == textArea.getSelectionEnd();
+        appending = true;
+        try {
+            document.insertString(document.getLength(), batch, null);
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            appending = false;
+        }
+        if (atEnd) {
+            textArea.setCaretPosition(document.getLength());
+        }
+    }
+
+    /**
+     * прекращает слежение, еще не вставленное отбрасывается
+     */
+    void close() {
+        tail.close();
+        synchronized (this) {
+            closed = true;
+            pending.setLength(0);
+            notifyAll();
+        }
+    }
+}
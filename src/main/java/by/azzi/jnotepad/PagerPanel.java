@@ -0,0 +1,325 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.MappedText;
+import by.azzi.jnotepad.search.ByteSearcher;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * просмотр файла больше кучи, см. {@link MappedText}.
+ * <p>
+ * В текстовой области лежит одна страница не длиннее {@link #PAGE_BYTES}; при прокрутке к ее краю
+ * загружается соседняя страница с тем же текстом наверху. Полоса прокрутки справа идет по всему
+ * файлу в байтах, номера строк появляются по мере построения индекса строк. Поиск идет в фоне
+ * по байтам файла
+ */
+final class PagerPanel extends JPanel {
+
+    static final int PAGE_BYTES = 512 * 1024;
+    private static final int INDEX_POLL_MILLIS = 250;
+
+    private final MappedText text;
+    private final JTextArea textArea = new JTextArea() {
+        @Override
+        public void updateUI() {
+            setUI(new TextAreaUI());
+        }
+    };
+    private final JScrollPane scrollPane = new JScrollPane(textArea,
+            ScrollPaneConstants.VERTICAL_SCROLLBAR_NEVER, ScrollPaneConstants.HORIZONTAL_SCROLLBAR_AS_NEEDED);
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    private final JLabel status = new JLabel(" ");
+    private final Timer indexTimer;
+    /**
+     * байт на единицу полосы прокрутки, чтобы размер файла уместился в int
+     */
+    private final long scale;
+    private MappedText.Page page;
+    /**
+     * страница и полоса прокрутки меняются программно, события прокрутки не обрабатываются
+     */
+    private boolean updating;
+    private SwingWorker<Long, Void> search;
+
+    PagerPanel(MappedText text, Font font, boolean wrap) {
+        super(new BorderLayout());
+        this.text = text;
+        scale = Math.max(1, text.size() / (Integer.MAX_VALUE / 2));
+
+        textArea.setEditable(false);
+        textArea.setFont(font);
+        textArea.setLineWrap(wrap);
+        textArea.setWrapStyleWord(wrap);
+        textArea.getCaret().setSelectionVisible(true);
+        scrollPane.setWheelScrollingEnabled(false);
+        scrollPane.addMouseWheelListener(this::scroll);
+        scrollPane.getViewport().addChangeListener(e -> viewportChanged());
+        scrollBar.addAdjustmentListener(e -> {
+            if (!updating) {
+                showAt(e.getValue() * scale);
+            }
+        });
+        bind(KeyStroke.getKeyStroke(KeyEvent.VK_HOME, InputEvent.CTRL_DOWN_MASK), "pagerStart", () -> showAt(0));
+        bind(KeyStroke.getKeyStroke(KeyEvent.VK_END, InputEvent.CTRL_DOWN_MASK), "pagerEnd", () -> showAt(text.size()));
+        add(scrollPane, BorderLayout.CENTER);
+        add(scrollBar, BorderLayout.EAST);
+        status.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+        add(status, BorderLayout.SOUTH);
+
+        indexTimer = new Timer(INDEX_POLL_MILLIS, e -> {
+            updateStatus();
+            if (text.isIndexed()) {
+                ((Timer) e.getSource()).stop();
+            }
+        });
+        indexTimer.start();
+        showAt(text.getDataStart());
+    }
+
+    private void bind(KeyStroke key, String name, Runnable action) {
+        textArea.getInputMap().put(key, name);
+        textArea.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+
+    MappedText getText() {
+        return text;
+    }
+
+    void setTextFont(Font font) {
+        final long top = topOffset();
+        textArea.setFont(font);
+        showAt(top);
+    }
+
+    void setWordWrap(boolean wrap) {
+        final long top = topOffset();
+        textArea.setLineWrap(wrap);
+        textArea.setWrapStyleWord(wrap);
+        showAt(top);
+    }
+
+    /**
+     * показывает файл с байта position наверху
+     */
+    void showAt(long position) {
+        final long top = Math.max(text.getDataStart(), Math.min(position, text.size()));
+        try {
+            load(text.lineStart(top - PAGE_BYTES / 4, PAGE_BYTES / 4), top);
+            textArea.setCaretPosition(page.charOffsetOf(top));
+            updateStatus();
+        } catch (IOException ex) {
+            failed(ex);
+        }
+    }
+
+    /**
+     * переходит к строке файла, false если строки нет или индекс до нее еще не дошел
+     */
+    boolean goToLine(long line) {
+        try {
+            final long offset = text.offsetOfLine(line);
+            if (offset < 0) {
+                return false;
+            }
+            showAt(offset);
+            return true;
+        } catch (IOException ex) {
+            failed(ex);
+            return false;
+        }
+    }
+
+    /**
+     * номер строки каретки, -1 пока индекс до нее не дошел
+     */
+    long getCaretLine() {
+        try {
+            return text.lineOfOffset(page.offsetOf(textArea.getCaretPosition()));
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * ищет от выделения в фоне и выделяет вхождение, notFound выполнится в EDT, если его нет
+     */
+    void find(ByteSearcher searcher, boolean forward, boolean wrap, Runnable notFound) {
+        cancelSearch();
+        final long from = page.offsetOf(forward ? textArea.getSelectionEnd() : textArea.getSelectionStart());
+        final SwingWorker<Long, Void> worker = new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws IOException {
+                return searcher.find(text, from, forward, wrap, this::isCancelled);
+            }
+
+            @Override
+            protected void done() {
+                if (search != this) {
+                    return;
+                }
+                search = null;
+                updateStatus();
+                try {
+                    final long found = get();
+                    if (found < 0) {
+                        notFound.run();
+                    } else {
+                        select(found, found + searcher.getMatchLength());
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException ex) {
+                    failed(ex.getCause());
+                }
+            }
+        };
+        search = worker;
+        updateStatus();
+        worker.execute();
+    }
+
+    /**
+     * отменяет поиск; поток поиска не прерывается, чтобы не закрылся общий канал файла
+     */
+    void cancelSearch() {
+        if (search != null) {
+            search.cancel(false);
+            search = null;
+            updateStatus();
+        }
+    }
+
+    void close() {
+        indexTimer.stop();
+        cancelSearch();
+        try {
+            text.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void select(long start, long end) {
+        if (start < page.getStart() || end > page.getEnd()) {
+            showAt(start);
+        }
+        textArea.select(page.charOffsetOf(start), page.charOffsetOf(end));
+    }
+
+    /**
+     * загружает страницу с байта start и прокручивает ее так, чтобы байт top был наверху
+     */
+    private void load(long start, long top) throws IOException {
+        page = text.page(start, PAGE_BYTES);
+        updating = true;
+        try {
+            textArea.setDocument(page.getDocument());
+            scrollPane.validate();
+            final Rectangle at = textArea.modelToView(page.charOffsetOf(top));
+            scrollPane.getViewport().setViewPosition(new Point(0, at == null ? 0 : at.y));
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            updating = false;
+        }
+        updatePosition();
+    }
+
+    private void scroll(MouseWheelEvent e) {
+        final JViewport viewport = scrollPane.getViewport();
+        final Point position = viewport.getViewPosition();
+        final int step = e.getUnitsToScroll() * textArea.getFontMetrics(textArea.getFont()).getHeight();
+        final int max = Math.max(0, textArea.getHeight() - viewport.getExtentSize().height);
+        viewport.setViewPosition(new Point(position.x, Math.max(0, Math.min(max, position.y + step))));
+    }
+
+    /**
+     * у края страницы подгружает соседнюю, иначе обновляет полосу прокрутки и строку состояния
+     */
+    private void viewportChanged() {
+        if (updating || page == null) {
+            return;
+        }
+        final Rectangle view = scrollPane.getViewport().getViewRect();
+        try {
+            if (view.y + view.height >= textArea.getHeight() && page.getEnd() < text.size()) {
+                final long top = topOffset();
+                final long start = text.lineStart(top - PAGE_BYTES / 4, PAGE_BYTES / 4);
+                if (start > page.getStart()) {
+                    load(start, top);
+                    return;
+                }
+            } else if (view.y == 0 && page.getStart() > text.getDataStart()) {
+                final long top = topOffset();
+                final long start = text.lineStart(page.getStart() - PAGE_BYTES / 2, PAGE_BYTES / 2);
+                if (start < page.getStart()) {
+                    load(start, top);
+                    return;
+                }
+            }
+        } catch (IOException ex) {
+            failed(ex);
+            return;
+        }
+        updatePosition();
+    }
+
+    /**
+     * байт файла в левом верхнем углу
+     */
+    private long topOffset() {
+        if (page == null) {
+            return text.getDataStart();
+        }
+        final Rectangle view = scrollPane.getViewport().getViewRect();
+        return page.offsetOf(textArea.viewToModel(new Point(0, view.y)));
+    }
+
+    private void updatePosition() {
+        final Rectangle view = scrollPane.getViewport().getViewRect();
+        final long top = topOffset();
+        final long bottom = page.offsetOf(textArea.viewToModel(new Point(view.width, view.y + view.height)));
+        final int extent = (int) Math.max(1, (bottom - top) / scale);
+        updating = true;
+        try {
+            scrollBar.setValues((int) (top / scale), extent, 0, (int) (text.size() / scale) + extent);
+            scrollBar.setBlockIncrement(extent);
+        } finally {
+            updating = false;
+        }
+        updateStatus();
+    }
+
+    private void updateStatus() {
+        final StringBuilder line = new StringBuilder("Строка ");
+        final long current = getCaretLine();
+        line.append(current >= 0 ? String.format("%,d", current + 1) : "?");
+        if (text.isIndexed()) {
+            line.append(String.format(" из %,d", text.getLineCount()));
+        } else {
+            line.append(", индексация строк ").append(text.getIndexProgress()).append('%');
+        }
+        line.append(String.format("   |   %,d МБ, только чтение", text.size() >> 20));
+        if (search != null) {
+            line.append("   |   поиск... (Esc - отмена)");
+        }
+        status.setText(line.toString());
+    }
+
+    private void failed(Throwable cause) {
+        JOptionPane.showMessageDialog(this, "Ошибка чтения файла\n" + cause.getMessage(), "Ошибка", JOptionPane.ERROR_MESSAGE);
+    }
+}
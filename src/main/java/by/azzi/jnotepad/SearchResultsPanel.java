@@ -0,0 +1,193 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.TextDocument;
+import by.azzi.jnotepad.search.RegexSearch;
+import by.azzi.jnotepad.search.SearchResult;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
+
+/**
+ * список всех совпадений регулярного выражения под текстом, выбор строки переводит каретку
+ */
+class SearchResultsPanel extends JPanel {
+
+    /**
+     * значение-образец для расчета размера ячейки без обхода всех строк списка
+     */
+    private static final int PROTOTYPE = -1;
+
+    private final JTextArea textArea;
+    private final JLabel statusLabel = new JLabel();
+    private final ResultListModel model = new ResultListModel();
+    private final JList<Integer> list = new JList<>(model);
+
+    private RegexSearch search;
+    private SearchResult result;
+
+    SearchResultsPanel(JTextArea textArea) {
+        super(new BorderLayout());
+        this.textArea = textArea;
+
+        final JPanel header = new JPanel(new BorderLayout());
+        header.setBorder(BorderFactory.createEmptyBorder(2, 5, 2, 5));
+        header.add(statusLabel, BorderLayout.CENTER);
+        final JButton closeBtn = new JButton("Закрыть");
+        closeBtn.addActionListener(e -> clear());
+        header.add(closeBtn, BorderLayout.EAST);
+        add(header, BorderLayout.NORTH);
+
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+                return super.getListCellRendererComponent(list, describe((Integer) value), index, isSelected, cellHasFocus);
+            }
+        });
+        list.setPrototypeCellValue(PROTOTYPE);
+        list.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting() && list.getSelectedIndex() >= 0) {
+                select(list.getSelectedIndex());
+            }
+        });
+        final JScrollPane scrollPane = new JScrollPane(list);
+        scrollPane.setPreferredSize(new Dimension(100, 150));
+        add(scrollPane, BorderLayout.CENTER);
+        setVisible(false);
+    }
+
+    /**
+     * запускает поиск по снимку документа, предыдущий поиск отменяется
+     */
+    void search(Pattern pattern) {
+        cancel();
+        setResult(null);
+        final RegexSearch search = new RegexSearch(((TextDocument) textArea.getDocument()).snapshot(), pattern);
+        this.search = search;
+        statusLabel.setText("Поиск \"" + pattern.pattern() + "\"...");
+        setVisible(true);
+        new SwingWorker<SearchResult, Void>() {
+            @Override
+            protected SearchResult doInBackground() {
+                return search.run(ForkJoinPool.commonPool());
+            }
+
+            @Override
+            protected void done() {
+                if (SearchResultsPanel.this.search != search) {
+                    return;
+                }
+                SearchResultsPanel.this.search = null;
+                try {
+                    setResult(get());
+                } catch (CancellationException | InterruptedException ex) {
+                    statusLabel.setText("Поиск отменен");
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof CancellationException) {
+                        statusLabel.setText("Поиск отменен");
+                    } else {
+                        ex.printStackTrace();
+                        statusLabel.setText("Ошибка поиска: " + ex.getCause());
+                    }
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * отменяет идущий поиск
+     */
+    void cancel() {
+        if (search != null) {
+            search.cancel();
+            search = null;
+            statusLabel.setText("Поиск отменен");
+        }
+    }
+
+    /**
+     * убирает результаты, например при открытии другого документа
+     */
+    void clear() {
+        cancel();
+        setResult(null);
+        setVisible(false);
+    }
+
+    /**
+     * результат для этого выражения, если он уже посчитан
+     */
+    SearchResult getResult(Pattern pattern) {
+        if (result == null || !result.getPattern().pattern().equals(pattern.pattern())
+                || result.getPattern().flags() != pattern.flags()) {
+            return null;
+        }
+        return result;
+    }
+
+    /**
+     * выделяет совпадение в тексте и в списке
+     */
+    void select(int index) {
+        if (list.getSelectedIndex() != index) {
+            list.setSelectedIndex(index);
+            list.ensureIndexIsVisible(index);
+            return;
+        }
+        // после правок смещения результата могут выйти за конец текста
+        final int length = textArea.getDocument().getLength();
+        textArea.select(Math.min(result.getStart(index), length), Math.min(result.getEnd(index), length));
+        textArea.getCaret().setSelectionVisible(true);
+    }
+
+    private void setResult(SearchResult result) {
+        this.result = result;
+        model.fireChanged();
+        if (result == null) {
+            return;
+        }
+        final long count = result.getCount();
+        statusLabel.setText("Найдено совпадений: " + count
+                + (count > result.size() ? " (показаны первые " + result.size() + ")" : ""));
+    }
+
+    private String describe(int index) {
+        if (index == PROTOTYPE || result == null) {
+            return "Стр 0000000: " + new String(new char[100]).replace('\0', 'x');
+        }
+        return "Стр " + (result.getLine(index) + 1) + ": " + result.getPreview(index);
+    }
+
+    /**
+     * модель списка по индексам совпадений, строки не хранятся
+     */
+    private final class ResultListModel extends AbstractListModel<Integer> {
+        private int size;
+
+        @Override
+        public int getSize() {
+            return size;
+        }
+
+        @Override
+        public Integer getElementAt(int index) {
+            return index;
+        }
+
+        void fireChanged() {
+            if (size > 0) {
+                final int old = size;
+                size = 0;
+                fireIntervalRemoved(this, 0, old - 1);
+            }
+            size = result == null ? 0 : result.size();
+            if (size > 0) {
+                fireIntervalAdded(this, 0, size - 1);
+            }
+        }
+    }
+}
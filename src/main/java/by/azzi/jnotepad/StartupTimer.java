@@ -0,0 +1,71 @@
+package by.azzi.jnotepad;
+
+import javax.swing.*;
+import java.awt.*;
+import java.lang.management.ManagementFactory;
+
+/**
+ * замер запуска до первой отрисовки окна.
+ * <p>
+ * -Djnotepad.startupTiming=true печатает время от старта JVM до main, до создания окна
+ * и до первой отрисовки; -Djnotepad.exitAfterStartup=true завершает процесс после первой
+ * отрисовки - для серии замеров и для записи архива CDS (профиль cds в pom.xml)
+ */
+final class StartupTimer {
+
+    static final boolean ENABLED = Boolean.getBoolean("jnotepad.startupTiming");
+    private static final boolean EXIT = Boolean.getBoolean("jnotepad.exitAfterStartup");
+
+    private static long mainNanos;
+    private static long mainUptime;
+    private static long frameNanos;
+
+    private StartupTimer() {
+    }
+
+    /**
+     * начало main
+     */
+    static void started() {
+        if (ENABLED) {
+            mainNanos = System.nanoTime();
+            mainUptime = ManagementFactory.getRuntimeMXBean().getUptime();
+        }
+    }
+
+    /**
+     * ждет первой отрисовки показанного окна
+     */
+    static void watch(Window window) {
+        if (!ENABLED && !EXIT || frameNanos != 0) {
+            return;
+        }
+        frameNanos = System.nanoTime();
+        RepaintManager.setCurrentManager(new RepaintManager() {
+            private boolean painted;
+
+            @Override
+            public void paintDirtyRegions() {
+                super.paintDirtyRegions();
+                if (!painted && window.isShowing()) {
+                    painted = true;
+                    firstPaint();
+                }
+            }
+        });
+    }
+
+    private static void firstPaint() {
+        if (ENABLED) {
+            final long now = System.nanoTime();
+            System.out.printf("startup: jvm -> main %d ms, main -> frame %d ms, frame -> first paint %d ms, total %d ms%n",
+                    mainUptime,
+                    (frameNanos - mainNanos) / 1_000_000,
+                    (now - frameNanos) / 1_000_000,
+                    ManagementFactory.getRuntimeMXBean().getUptime());
+        }
+        if (EXIT) {
+            System.exit(0);
+        }
+    }
+}
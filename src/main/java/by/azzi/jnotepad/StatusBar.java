@@ -0,0 +1,68 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.DocumentStatistics;
+import by.azzi.jnotepad.document.LineIndex;
+import by.azzi.jnotepad.document.TextDocument;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * строка состояния: позиция каретки, число символов, слов и строк, формат файла
+ */
+class StatusBar extends JPanel {
+
+    private final JTextArea textArea;
+    private final DocumentStatistics statistics;
+
+    private final JLabel caretLabel = new JLabel();
+    private final JLabel charsLabel = new JLabel();
+    private final JLabel wordsLabel = new JLabel();
+    private final JLabel linesLabel = new JLabel();
+    private final JLabel formatLabel = new JLabel();
+
+    StatusBar(JTextArea textArea, DocumentStatistics statistics) {
+        super(new FlowLayout(FlowLayout.RIGHT, 8, 2));
+        this.textArea = textArea;
+        this.statistics = statistics;
+
+        add(caretLabel);
+        add(new JSeparator(SwingConstants.VERTICAL));
+        add(charsLabel);
+        add(new JSeparator(SwingConstants.VERTICAL));
+        add(wordsLabel);
+        add(new JSeparator(SwingConstants.VERTICAL));
+        add(linesLabel);
+        add(new JSeparator(SwingConstants.VERTICAL));
+        add(formatLabel);
+
+        textArea.addCaretListener(e -> updateCaret());
+        statistics.addChangeListener(e -> updateStatistics());
+        updateCaret();
+        updateStatistics();
+    }
+
+    @Override
+    public Component add(Component comp) {
+        if (comp instanceof JSeparator) {
+            comp.setPreferredSize(new Dimension(2, 16));
+        }
+        return super.add(comp);
+    }
+
+    private void updateCaret() {
+        final int caret = textArea.getCaretPosition();
+        final LineIndex lines = ((TextDocument) textArea.getDocument()).getLineIndex();
+        final int line = lines.getLineOfOffset(caret);
+        final int column = caret - lines.getLineStart(line);
+        caretLabel.setText("Стр " + (line + 1) + ", стлб " + (column + 1));
+    }
+
+    private void updateStatistics() {
+        charsLabel.setText("Символов: " + statistics.getCharCount());
+        final long words = statistics.getWordCount();
+        wordsLabel.setText("Слов: " + (words < 0 ? "..." : String.valueOf(words)));
+        linesLabel.setText("Строк: " + statistics.getLineCount());
+        formatLabel.setText(((TextDocument) textArea.getDocument()).getFormat().toString());
+    }
+}
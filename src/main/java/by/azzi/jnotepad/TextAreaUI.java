@@ -0,0 +1,23 @@
+package by.azzi.jnotepad;
+
+import com.formdev.flatlaf.ui.FlatTextAreaUI;
+
+import javax.swing.*;
+import javax.swing.text.Element;
+import javax.swing.text.View;
+
+/**
+ * оформление FlatLaf с видом {@link TextAreaView} вместо PlainView и WrappedPlainView.
+ * Документы с текстом справа налево остаются на стандартных видах
+ */
+class TextAreaUI extends FlatTextAreaUI {
+
+    @Override
+    public View create(Element elem) {
+        if (Boolean.TRUE.equals(elem.getDocument().getProperty("i18n"))) {
+            return super.create(elem);
+        }
+        final JTextArea area = (JTextArea) getComponent();
+        return new TextAreaView(elem, area.getLineWrap(), area.getWrapStyleWord());
+    }
+}
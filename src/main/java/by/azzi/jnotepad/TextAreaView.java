@@ -0,0 +1,605 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.LogHighlighting;
+import by.azzi.jnotepad.document.LogTokenizer;
+import by.azzi.jnotepad.document.TextDocument;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Highlighter;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.LayeredHighlighter;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.text.TabExpander;
+import javax.swing.text.Utilities;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * вид всего текста JTextArea без видов на каждую строку, с переносом и без.
+ * <p>
+ * Измеряются только строки, которые рисуются или в которых ищется позиция; высота остальных
+ * при переносе оценивается по длине и хранится в {@link WrapRows}, правка переоценивает только
+ * свои строки. Поэтому смена масштаба, ширины окна и переноса стоит прохода по числам,
+ * а не измерения всего текста. Строки длиннее {@link #LONG_LINE} не измеряются вовсе:
+ * они переносятся по числу колонок ширины 'm' и рисуются только в видимых колонках.
+ * <p>
+ * Если у текстовой области есть {@link LogHighlighting} (клиентское свойство с ключом-классом),
+ * метки времени и уровни записей журнала рисуются цветом; состояния запрашиваются только
+ * у рисуемых строк.
+ */
+class TextAreaView extends View implements TabExpander {
+
+    /**
+     * строки длиннее этого считаются по колонкам
+     */
+    static final int LONG_LINE = 10_000;
+
+    private static final Map<?, ?> DESKTOP_HINTS =
+            (Map<?, ?>) Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+
+    private static final Color[] LIGHT_LEVEL_COLORS = {null, new Color(0x757575), new Color(0x757575),
+            new Color(0x2E7D32), new Color(0xB26A00), new Color(0xC62828)};
+    private static final Color[] DARK_LEVEL_COLORS = {null, new Color(0x9E9E9E), new Color(0x9E9E9E),
+            new Color(0x81C784), new Color(0xFFB74D), new Color(0xEF5350)};
+    private static final Color LIGHT_TIMESTAMP_COLOR = new Color(0x1565C0);
+    private static final Color DARK_TIMESTAMP_COLOR = new Color(0x64B5F6);
+
+    private final boolean wrap;
+    private final boolean wordWrap;
+    private final WrapRows rows = new WrapRows();
+    private final Segment segment = new Segment();
+
+    private Font font;
+    private FontMetrics metrics;
+    private int lineHeight;
+    private int charWidth;
+    /**
+     * средняя ширина символа для оценки рядов строк, которые еще не измерялись
+     */
+    private float averageWidth;
+    private int tabSize;
+    private int tabBase;
+    /**
+     * ширина для переноса, до раскладки Integer.MAX_VALUE
+     */
+    private int width = Integer.MAX_VALUE;
+    /**
+     * длина самой длинной строки без переноса, -1 - надо пересчитать
+     */
+    private int longestLength = -1;
+    private int longestLine;
+    /**
+     * ширина самой широкой нарисованной строки, оценка по длине не учитывает табуляции
+     */
+    private int paintedWidth;
+    private boolean correctionPosted;
+    /**
+     * подсветка журнала на время отрисовки, null - без подсветки
+     */
+    private LogHighlighting highlighting;
+
+    TextAreaView(Element root, boolean wrap, boolean wordWrap) {
+        super(root);
+        this.wrap = wrap;
+        this.wordWrap = wordWrap;
+    }
+
+    private boolean wrapping() {
+        return wrap && width > 0 && width != Integer.MAX_VALUE;
+    }
+
+    private int columns() {
+        return Math.max(1, width / charWidth);
+    }
+
+    private void updateMetrics() {
+        final Component host = getContainer();
+        final Font f = host.getFont();
+        if (font == f) {
+            return;
+        }
+        font = f;
+        metrics = host.getFontMetrics(f);
+        lineHeight = metrics.getHeight();
+        charWidth = Math.max(1, metrics.charWidth('m'));
+        averageWidth = Math.max(1, metrics.stringWidth("abcdefghijklmnopqrstuvwxyz ") / 27f);
+        final Object size = getDocument().getProperty(PlainDocument.tabSizeAttribute);
+        tabSize = (size instanceof Integer ? (Integer) size : 8) * charWidth;
+        longestLength = -1;
+        paintedWidth = 0;
+        resetRows();
+    }
+
+    private void resetRows() {
+        if (wrap) {
+            rows.reset(getElement().getElementCount(), this::estimateRows);
+        }
+    }
+
+    private int estimateRows(int line) {
+        if (!wrapping()) {
+            return 1;
+        }
+        final int length = lineLength(line);
+        if (length > LONG_LINE) {
+            // длинные строки переносятся по колонкам, оценка точна
+            final int cols = columns();
+            return (length + cols - 1) / cols;
+        }
+        return (int) Math.ceil(length * averageWidth / width);
+    }
+
+    private int lineLength(int line) {
+        return Math.max(0, lineEnd(line) - lineStart(line) - 1);
+    }
+
+    /**
+     * начало строки line; строки {@link TextDocument} берутся из индекса, без элементов
+     */
+    private int lineStart(int line) {
+        final Document document = getDocument();
+        return document instanceof TextDocument
+                ? ((TextDocument) document).getLineIndex().getLineStart(line)
+                : getElement().getElement(line).getStartOffset();
+    }
+
+    /**
+     * конец строки line вместе с ее '\n'
+     */
+    private int lineEnd(int line) {
+        final Document document = getDocument();
+        return document instanceof TextDocument
+                ? ((TextDocument) document).getLineIndex().getLineEnd(line)
+                : getElement().getElement(line).getEndOffset();
+    }
+
+    private int longestLength() {
+        if (longestLength < 0) {
+            final int count = getElement().getElementCount();
+            longestLength = 0;
+            for (int i = 0; i < count; i++) {
+                final int length = lineLength(i);
+                if (length > longestLength) {
+                    longestLength = length;
+                    longestLine = i;
+                }
+            }
+        }
+        return longestLength;
+    }
+
+    /**
+     * ряды строки line, у коротких строк с переносом они измеряются
+     */
+    private LineRows lineRows(int line) {
+        final int start = lineStart(line);
+        final int lineEnd = lineEnd(line);
+        final int end = Math.max(start, lineEnd - 1);
+        final boolean fixed = end - start > LONG_LINE;
+        if (!wrapping()) {
+            return new LineRows(start, end, null, 0, fixed);
+        }
+        if (fixed) {
+            return new LineRows(start, end, null, columns(), true);
+        }
+        // как в WrappedPlainView, ряды считаются вместе с '\n': getBreakLocation на него рассчитывает,
+        // и если '\n' не влез, у него свой ряд
+        int[] breaks = new int[4];
+        int count = 0;
+        int p = start;
+        do {
+            if (count == breaks.length) {
+                breaks = Arrays.copyOf(breaks, count * 2);
+            }
+            breaks[count++] = p;
+            p = breakPosition(p, lineEnd);
+        } while (p < lineEnd);
+        return new LineRows(start, end, Arrays.copyOf(breaks, count), 0, false);
+    }
+
+    private int breakPosition(int p0, int p1) {
+        text(p0, p1);
+        final int count = wordWrap
+                ? Utilities.getBreakLocation(segment, metrics, tabBase, tabBase + width, this, p0)
+                : Utilities.getTabbedTextOffset(segment, metrics, tabBase, tabBase + width, this, p0, false);
+        // хотя бы один символ в ряду, даже если он шире окна
+        return p0 + Math.max(1, count);
+    }
+
+    /**
+     * сверяет оценку рядов строки с измеренными, поправка размера откладывается
+     * до конца текущей отрисовки или раскладки
+     */
+    private void measured(int line, LineRows lineRows) {
+        if (wrapping() && rows.measured(line, lineRows.count())) {
+            postCorrection();
+        }
+    }
+
+    private void postCorrection() {
+        if (!correctionPosted) {
+            correctionPosted = true;
+            SwingUtilities.invokeLater(() -> {
+                correctionPosted = false;
+                preferenceChanged(null, true, true);
+            });
+        }
+    }
+
+    private void text(int p0, int p1) {
+        try {
+            getDocument().getText(p0, p1 - p0, segment);
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // == View ==
+
+    @Override
+    public float getPreferredSpan(int axis) {
+        updateMetrics();
+        if (axis == X_AXIS) {
+            if (wrap) {
+                return width == Integer.MAX_VALUE ? 100 : width;
+            }
+            return Math.max((long) longestLength() * charWidth, paintedWidth);
+        }
+        final int count = wrapping() ? rows.total() : getElement().getElementCount();
+        return (float) count * lineHeight;
+    }
+
+    @Override
+    public void setSize(float width, float height) {
+        updateMetrics();
+        if (wrap && (int) width != this.width) {
+            this.width = (int) width;
+            resetRows();
+            preferenceChanged(null, true, true);
+        }
+    }
+
+    @Override
+    public void paint(Graphics g, Shape a) {
+        updateMetrics();
+        final Rectangle alloc = a.getBounds();
+        final Rectangle clip = g.getClipBounds() != null ? g.getClipBounds() : alloc;
+        final JTextComponent host = (JTextComponent) getContainer();
+        final Highlighter highlighter = host.getHighlighter();
+        final LayeredHighlighter layered = highlighter instanceof LayeredHighlighter ? (LayeredHighlighter) highlighter : null;
+        tabBase = alloc.x;
+        if (DESKTOP_HINTS != null && g instanceof Graphics2D) {
+            // текст рисуется с теми же подсказками сглаживания, что и у стандартных видов
+            ((Graphics2D) g).addRenderingHints(DESKTOP_HINTS);
+        }
+        g.setFont(font);
+        final Object property = host.getClientProperty(LogHighlighting.class);
+        highlighting = property instanceof LogHighlighting && ((LogHighlighting) property).getDocument() == getDocument()
+                ? (LogHighlighting) property : null;
+
+        final Element root = getElement();
+        final int count = root.getElementCount();
+        final int bottom = clip.y + clip.height;
+        int line;
+        int y;
+        if (wrapping()) {
+            line = rows.lineOfRow(Math.max(0, (clip.y - alloc.y) / lineHeight));
+            y = alloc.y + rows.rowOf(line) * lineHeight;
+        } else {
+            line = Math.min(count - 1, Math.max(0, (clip.y - alloc.y) / lineHeight));
+            y = alloc.y + line * lineHeight;
+        }
+        for (; line < count && y < bottom; line++) {
+            final LineRows lineRows = lineRows(line);
+            measured(line, lineRows);
+            if (layered != null) {
+                final int end = line == count - 1 ? lineEnd(line) : lineEnd(line) - 1;
+                layered.paintLayeredHighlights(g, lineStart(line), end, a, host, this);
+            }
+            final int rowCount = lineRows.count();
+            final int first = Math.max(0, Math.min(rowCount, (clip.y - y) / lineHeight));
+            for (int row = first; row < rowCount; row++) {
+                final int rowY = y + row * lineHeight;
+                if (rowY >= bottom) {
+                    break;
+                }
+                drawRow(g, host, line, lineRows, row, alloc, clip, rowY + metrics.getAscent());
+            }
+            y += rowCount * lineHeight;
+        }
+        highlighting = null;
+    }
+
+    private void drawRow(Graphics g, JTextComponent host, int line, LineRows lineRows, int row, Rectangle alloc, Rectangle clip, int y) {
+        int p0 = lineRows.rowStart(row);
+        int p1 = lineRows.rowEnd(row);
+        int x = alloc.x;
+        if (lineRows.fixed && !wrapping()) {
+            // длинная строка без переноса рисуется только в видимых колонках
+            final int first = Math.max(0, (clip.x - alloc.x) / charWidth - 1);
+            final int last = (clip.x + clip.width - alloc.x) / charWidth + 1;
+            x += first * charWidth;
+            p0 = Math.min(p1, lineRows.start + first);
+            p1 = Math.min(p1, lineRows.start + last);
+        }
+        final Color foreground = host.isEnabled() ? host.getForeground() : host.getDisabledTextColor();
+        final int sel0 = host.getSelectionStart();
+        final int sel1 = host.getSelectionEnd();
+        final int state = highlighting != null && host.isEnabled() ? highlighting.getState(line) : LogTokenizer.NONE;
+        if (sel0 == sel1 || sel1 <= p0 || sel0 >= p1 || !host.getCaret().isSelectionVisible()
+                || host.getSelectedTextColor() == null) {
+            x = drawStyledText(g, state, lineRows.start, p0, p1, x, y, foreground);
+        } else {
+            final int s0 = Math.max(p0, sel0);
+            final int s1 = Math.min(p1, sel1);
+            x = drawStyledText(g, state, lineRows.start, p0, s0, x, y, foreground);
+            x = drawText(g, s0, s1, x, y, host.getSelectedTextColor());
+            x = drawStyledText(g, state, lineRows.start, s1, p1, x, y, foreground);
+        }
+        if (!wrap && !lineRows.fixed && x - alloc.x > getPreferredSpan(X_AXIS)) {
+            paintedWidth = x - alloc.x;
+            postCorrection();
+        }
+    }
+
+    /**
+     * рисует [p0, p1) строки с началом lineStart цветами ее состояния журнала: вся запись
+     * цветом уровня, кроме INFO, метки времени и уровня - своими цветами
+     */
+    private int drawStyledText(Graphics g, int state, int lineStart, int p0, int p1, int x, int y, Color foreground) {
+        final int level = LogTokenizer.level(state);
+        if (state == LogTokenizer.NONE || level == LogTokenizer.NONE && LogTokenizer.isContinuation(state)) {
+            return drawText(g, p0, p1, x, y, foreground);
+        }
+        final Color[] levelColors = Theme.isDark() ? DARK_LEVEL_COLORS : LIGHT_LEVEL_COLORS;
+        final Color levelColor = level == LogTokenizer.NONE ? foreground : levelColors[level];
+        final Color base = level == LogTokenizer.INFO || level == LogTokenizer.NONE ? foreground : levelColor;
+        final Color timestampColor = Theme.isDark() ? DARK_TIMESTAMP_COLOR : LIGHT_TIMESTAMP_COLOR;
+        // границы меток по порядку: метка времени обычно раньше уровня, но не всегда
+        final int ts0 = lineStart + LogTokenizer.timestampStart(state);
+        final int ts1 = ts0 + LogTokenizer.timestampLength(state);
+        final int lv0 = lineStart + LogTokenizer.levelStart(state);
+        final int lv1 = lv0 + LogTokenizer.levelLength(state);
+        final boolean timestampFirst = ts0 <= lv0;
+        final int a0 = timestampFirst ? ts0 : lv0;
+        final int a1 = timestampFirst ? ts1 : lv1;
+        final int b0 = timestampFirst ? lv0 : ts0;
+        final int b1 = timestampFirst ? lv1 : ts1;
+        final Color aColor = timestampFirst ? timestampColor : levelColor;
+        final Color bColor = timestampFirst ? levelColor : timestampColor;
+        x = drawText(g, p0, Math.min(p1, a0), x, y, base);
+        x = drawText(g, Math.max(p0, a0), Math.min(p1, a1), x, y, aColor);
+        x = drawText(g, Math.max(p0, a1), Math.min(p1, b0), x, y, base);
+        x = drawText(g, Math.max(p0, b0), Math.min(p1, b1), x, y, bColor);
+        return drawText(g, Math.max(p0, b1), p1, x, y, base);
+    }
+
+    private int drawText(Graphics g, int p0, int p1, int x, int y, Color color) {
+        if (p1 <= p0) {
+            return x;
+        }
+        text(p0, p1);
+        g.setColor(color);
+        return Utilities.drawTabbedText(segment, x, y, g, this, p0);
+    }
+
+    @Override
+    public Shape modelToView(int pos, Shape a, Position.Bias b) throws BadLocationException {
+        if (pos < getStartOffset() || pos > getEndOffset()) {
+            throw new BadLocationException("Позиция вне документа", pos);
+        }
+        updateMetrics();
+        final Rectangle alloc = a.getBounds();
+        tabBase = alloc.x;
+        final int line = getElement().getElementIndex(pos);
+        final LineRows lineRows = lineRows(line);
+        measured(line, lineRows);
+        final int row = lineRows.rowOf(Math.min(pos, lineRows.end));
+        final int rowsAbove = wrapping() ? rows.rowOf(line) : line;
+        final int rowStart = lineRows.rowStart(row);
+        final int x;
+        if (lineRows.fixed) {
+            x = (Math.min(pos, lineRows.end) - rowStart) * charWidth;
+        } else {
+            text(rowStart, Math.min(pos, lineRows.end));
+            x = Utilities.getTabbedTextWidth(segment, metrics, alloc.x, this, rowStart);
+        }
+        return new Rectangle(alloc.x + x, alloc.y + (rowsAbove + row) * lineHeight, 1, lineHeight);
+    }
+
+    @Override
+    public int viewToModel(float fx, float fy, Shape a, Position.Bias[] bias) {
+        bias[0] = Position.Bias.Forward;
+        updateMetrics();
+        final Rectangle alloc = a.getBounds();
+        tabBase = alloc.x;
+        if (fy < alloc.y) {
+            return getStartOffset();
+        }
+        if (fy >= alloc.y + alloc.height) {
+            return getEndOffset() - 1;
+        }
+        final int count = getElement().getElementCount();
+        final int row = ((int) fy - alloc.y) / lineHeight;
+        final int line;
+        int rowInLine = 0;
+        if (wrapping()) {
+            line = rows.lineOfRow(row);
+            rowInLine = row - rows.rowOf(line);
+        } else {
+            line = Math.min(row, count - 1);
+        }
+        final LineRows lineRows = lineRows(line);
+        measured(line, lineRows);
+        rowInLine = Math.max(0, Math.min(rowInLine, lineRows.count() - 1));
+        final int p0 = lineRows.rowStart(rowInLine);
+        final int p1 = lineRows.rowEnd(rowInLine);
+        final int x = (int) fx;
+        if (x < alloc.x) {
+            return p0;
+        }
+        int offset;
+        if (lineRows.fixed) {
+            offset = (int) Math.min(p1, p0 + ((long) x - alloc.x + charWidth / 2) / charWidth);
+        } else {
+            text(p0, p1);
+            offset = p0 + Utilities.getTabbedTextOffset(segment, metrics, alloc.x, x, this, p0);
+        }
+        if (rowInLine < lineRows.count() - 1 && offset >= p1) {
+            // конец перенесенного ряда - это уже начало следующего
+            offset = p1 - 1;
+        }
+        return offset;
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        update(e, a, e.getOffset() + e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        update(e, a, e.getOffset());
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f) {
+        update(e, a, e.getOffset() + e.getLength());
+    }
+
+    /**
+     * переоценивает строки с правкой, остальные строки не трогаются
+     */
+    private void update(DocumentEvent e, Shape a, int changeEnd) {
+        if (font == null) {
+            return;
+        }
+        final Element root = getElement();
+        final DocumentEvent.ElementChange change = e.getChange(root);
+        boolean linesChanged = false;
+        if (change != null) {
+            final int index = change.getIndex();
+            final int removed = TextDocument.getRemovedCount(change);
+            final int added = TextDocument.getAddedCount(change);
+            if (wrap) {
+                rows.replace(index, removed, added, this::estimateRows);
+            }
+            if (longestLine >= index + removed) {
+                longestLine += added - removed;
+            } else if (longestLine >= index) {
+                longestLength = -1;
+            }
+            linesChanged = removed != added;
+        }
+        final int first = root.getElementIndex(e.getOffset());
+        final int last = root.getElementIndex(Math.min(changeEnd, getDocument().getLength()));
+        for (int line = first; line <= last; line++) {
+            if (wrapping()) {
+                // измерить правленые строки дешевле, чем перерисовать все окно из-за оценки
+                final boolean changed = last - first < 64
+                        ? rows.measured(line, lineRows(line).count())
+                        : rows.estimated(line, estimateRows(line));
+                linesChanged |= changed;
+            }
+            if (longestLength >= 0) {
+                final int length = lineLength(line);
+                if (length > longestLength) {
+                    longestLength = length;
+                    longestLine = line;
+                } else if (line == longestLine && length < longestLength) {
+                    longestLength = -1;
+                }
+            }
+        }
+        preferenceChanged(null, !wrap, true);
+        final Component host = getContainer();
+        if (host == null || a == null) {
+            return;
+        }
+        if (linesChanged) {
+            host.repaint();
+        } else {
+            try {
+                final Rectangle r0 = modelToView(lineStart(first), a, Position.Bias.Forward).getBounds();
+                final Rectangle r1 = modelToView(lineEnd(last) - 1, a, Position.Bias.Forward).getBounds();
+                final Rectangle alloc = a.getBounds();
+                host.repaint(alloc.x, r0.y, alloc.width, r1.y + r1.height - r0.y);
+            } catch (BadLocationException ex) {
+                host.repaint();
+            }
+        }
+    }
+
+    @Override
+    public float nextTabStop(float x, int tabOffset) {
+        if (tabSize == 0) {
+            return x;
+        }
+        final int tabs = ((int) x - tabBase) / tabSize;
+        return tabBase + (tabs + 1) * tabSize;
+    }
+
+    /**
+     * ряды экрана одной строки документа: измеренные начала рядов или, у длинных строк, колонки
+     */
+    private static final class LineRows {
+
+        final int start;
+        /**
+         * конец строки без '\n'
+         */
+        final int end;
+        final int[] breaks;
+        final int columns;
+        final boolean fixed;
+
+        LineRows(int start, int end, int[] breaks, int columns, boolean fixed) {
+            this.start = start;
+            this.end = end;
+            this.breaks = breaks;
+            this.columns = columns;
+            this.fixed = fixed;
+        }
+
+        int count() {
+            if (breaks != null) {
+                return breaks.length;
+            }
+            return columns == 0 ? 1 : Math.max(1, (end - start + columns - 1) / columns);
+        }
+
+        int rowStart(int row) {
+            return breaks != null ? breaks[row] : start + row * columns;
+        }
+
+        int rowEnd(int row) {
+            return row + 1 < count() ? rowStart(row + 1) : end;
+        }
+
+        int rowOf(int offset) {
+            if (breaks != null) {
+                int lo = 0;
+                int hi = breaks.length - 1;
+                while (lo < hi) {
+                    final int mid = (lo + hi + 1) >>> 1;
+                    if (breaks[mid] <= offset) {
+                        lo = mid;
+                    } else {
+                        hi = mid - 1;
+                    }
+                }
+                return lo;
+            }
+            return columns == 0 ? 0 : Math.min(count() - 1, (offset - start) / columns);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.TextSnapshot;
+
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+
+/**
+ * вырезанный или скопированный текст в буфере обмена: хранится снимок документа, а строка
+ * строится, только когда ее попросят, в потоке того, кто просит. Вставка в блокнот читает
+ * снимок кусками, без строки, см. {@link DocumentPaster}
+ */
+final class TextTransfer implements Transferable {
+
+    private final TextSnapshot text;
+
+    TextTransfer(TextSnapshot text) {
+        this.text = text;
+    }
+
+    TextSnapshot getText() {
+        return text;
+    }
+
+    @Override
+    public DataFlavor[] getTransferDataFlavors() {
+        return new DataFlavor[]{DataFlavor.stringFlavor};
+    }
+
+    @Override
+    public boolean isDataFlavorSupported(DataFlavor flavor) {
+        return DataFlavor.stringFlavor.equals(flavor);
+    }
+
+    @Override
+    public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException {
+        if (!isDataFlavorSupported(flavor)) {
+            throw new UnsupportedFlavorException(flavor);
+        }
+        final char[] chars = new char[text.length()];
+        text.getChars(0, chars.length, chars, 0);
+        return new String(chars);
+    }
+}
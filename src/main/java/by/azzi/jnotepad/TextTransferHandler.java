@@ -0,0 +1,117 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.TextDocument;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.JTextComponent;
+import javax.swing.text.Position;
+import java.awt.datatransfer.Clipboard;
+import java.awt.datatransfer.Transferable;
+import java.util.function.Predicate;
+
+/**
+ * буфер обмена текстовой области без строк во весь текст в EDT: вырезание, копирование и
+ * перетаскивание отдают снимок выделения {@link TextTransfer}, вставка отдается paste.
+ * Сброс перетаскиваемого остается за прежним обработчиком области
+ */
+final class TextTransferHandler extends TransferHandler {
+
+    private final TransferHandler fallback;
+    private final Predicate<Transferable> paste;
+    /**
+     * перетаскиваемое выделение; сброшенное в него же никуда не переносится
+     */
+    private JTextComponent dragged;
+    private Position dragStart;
+    private Position dragEnd;
+    private boolean dropped;
+
+    /**
+     * paste начинает вставку и возвращает, принята ли она
+     */
+    TextTransferHandler(TransferHandler fallback, Predicate<Transferable> paste) {
+        this.fallback = fallback;
+        this.paste = paste;
+    }
+
+    @Override
+    public void exportToClipboard(JComponent comp, Clipboard clip, int action) throws IllegalStateException {
+        final JTextComponent text = (JTextComponent) comp;
+        final int start = text.getSelectionStart();
+        final int end = text.getSelectionEnd();
+        if (start == end) {
+            return;
+        }
+        final TextDocument document = (TextDocument) text.getDocument();
+        try {
+            clip.setContents(new TextTransfer(document.snapshot(start, end - start)), null);
+            if (action == MOVE && text.isEditable()) {
+                document.remove(start, end - start);
+            }
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    protected Transferable createTransferable(JComponent c) {
+        final JTextComponent text = (JTextComponent) c;
+        final int start = text.getSelectionStart();
+        final int end = text.getSelectionEnd();
+        if (start == end) {
+            return null;
+        }
+        final TextDocument document = (TextDocument) text.getDocument();
+        try {
+            dragged = text;
+            dragStart = document.createPosition(start);
+            dragEnd = document.createPosition(end);
+            dropped = false;
+            return new TextTransfer(document.snapshot(start, end - start));
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    @Override
+    protected void exportDone(JComponent source, Transferable data, int action) {
+        if (source == dragged && action == MOVE && !dropped && dragged.isEditable()) {
+            final int start = dragStart.getOffset();
+            final int end = dragEnd.getOffset();
+            try {
+                if (start < end) {
+                    dragged.getDocument().remove(start, end - start);
+                }
+            } catch (BadLocationException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        dragged = null;
+    }
+
+    @Override
+    public boolean importData(TransferSupport support) {
+        if (!support.isDrop()) {
+            return paste.test(support.getTransferable());
+        }
+        if (support.getComponent() == dragged) {
+            final int index = ((JTextComponent.DropLocation) support.getDropLocation()).getIndex();
+            if (index >= dragStart.getOffset() && index <= dragEnd.getOffset()) {
+                dropped = true;
+                return true;
+            }
+        }
+        return fallback.importData(support);
+    }
+
+    @Override
+    public boolean canImport(TransferSupport support) {
+        return fallback.canImport(support);
+    }
+
+    @Override
+    public int getSourceActions(JComponent c) {
+        return fallback.getSourceActions(c);
+    }
+}
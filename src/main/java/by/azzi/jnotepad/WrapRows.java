@@ -0,0 +1,151 @@
+package by.azzi.jnotepad;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * число рядов экрана у каждой строки документа при переносе по словам.
+ * <p>
+ * Строки, которые еще не показывались, хранят оценку по длине, показанные - точное число рядов.
+ * Ряд над строкой и строка по ряду ищутся деревом Фенвика за логарифм; вставка и удаление
+ * строк сдвигают массив и перестраивают дерево при следующем запросе
+ */
+final class WrapRows {
+
+    /**
+     * ряды строк: точное число положительное, оценка - со знаком минус
+     */
+    private int[] rows = new int[16];
+    private int size;
+    /**
+     * дерево Фенвика по модулям rows, с единицы
+     */
+    private int[] tree = new int[1];
+    private boolean dirty;
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * заново оценивает все count строк
+     */
+    void reset(int count, IntUnaryOperator estimate) {
+        if (rows.length < count) {
+            rows = new int[count + count / 8];
+        }
+        size = count;
+        for (int i = 0; i < count; i++) {
+            rows[i] = -Math.max(1, estimate.applyAsInt(i));
+        }
+        dirty = true;
+    }
+
+    int get(int line) {
+        return Math.abs(rows[line]);
+    }
+
+    boolean isMeasured(int line) {
+        return rows[line] > 0;
+    }
+
+    /**
+     * точное число рядов строки
+     *
+     * @return изменилось ли число рядов
+     */
+    boolean measured(int line, int count) {
+        return set(line, Math.max(1, count));
+    }
+
+    /**
+     * оценка числа рядов строки, например после ее правки
+     *
+     * @return изменилось ли число рядов
+     */
+    boolean estimated(int line, int count) {
+        return set(line, -Math.max(1, count));
+    }
+
+    private boolean set(int line, int value) {
+        final int delta = Math.abs(value) - get(line);
+        rows[line] = value;
+        if (delta != 0 && !dirty) {
+            for (int i = line + 1; i <= size; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+        return delta != 0;
+    }
+
+    /**
+     * removed строк с index заменяются added оцененными строками
+     */
+    void replace(int index, int removed, int added, IntUnaryOperator estimate) {
+        final int newSize = size - removed + added;
+        if (rows.length < newSize) {
+            final int[] grown = new int[newSize + newSize / 8 + 16];
+            System.arraycopy(rows, 0, grown, 0, index);
+            System.arraycopy(rows, index + removed, grown, index + added, size - index - removed);
+            rows = grown;
+        } else {
+            System.arraycopy(rows, index + removed, rows, index + added, size - index - removed);
+        }
+        size = newSize;
+        for (int i = index; i < index + added; i++) {
+            rows[i] = -Math.max(1, estimate.applyAsInt(i));
+        }
+        dirty = true;
+    }
+
+    /**
+     * рядов над строкой line, для line == size - всего рядов
+     */
+    int rowOf(int line) {
+        build();
+        int sum = 0;
+        for (int i = line; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    int total() {
+        return rowOf(size);
+    }
+
+    /**
+     * строка, в которой лежит ряд row, ряды за концом относятся к последней строке
+     */
+    int lineOfRow(int row) {
+        build();
+        int line = 0;
+        int rest = row;
+        for (int step = Integer.highestOneBit(Math.max(1, size)); step > 0; step >>= 1) {
+            final int next = line + step;
+            if (next <= size && tree[next] <= rest) {
+                line = next;
+                rest -= tree[next];
+            }
+        }
+        return Math.min(line, size - 1);
+    }
+
+    private void build() {
+        if (!dirty) {
+            return;
+        }
+        if (tree.length < size + 1) {
+            tree = new int[rows.length + 1];
+        }
+        for (int i = 1; i <= size; i++) {
+            tree[i] = Math.abs(rows[i - 1]);
+        }
+        for (int i = 1; i <= size; i++) {
+            final int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+        dirty = false;
+    }
+}
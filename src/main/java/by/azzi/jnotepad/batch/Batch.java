@@ -0,0 +1,244 @@
+package by.azzi.jnotepad.batch;
+
+import by.azzi.jnotepad.search.SearchQuery;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * пакетный режим без окон: jnotepad --batch [параметры] файлы и каталоги.
+ * <p>
+ * Файлы обрабатываются {@link FileProcessor} на пуле из --threads потоков. Очередь пула
+ * ограничена, при заполнении обход каталогов ждет, так что и память, и число открытых
+ * файлов не растут с числом файлов
+ */
+public final class Batch {
+
+    public static final String OPTION = "--batch";
+
+    static final String USAGE = "Использование: jnotepad --batch [параметры] файл|каталог...\n"
+            + "  --find ТЕКСТ          искать текст, без --replace только подсчет вхождений\n"
+            + "  --replace ТЕКСТ       заменить все вхождения\n"
+            + "  --match-case          с учетом регистра\n"
+            + "  --whole-word          только слово целиком\n"
+            + "  --encoding КОДИРОВКА  перекодировать файлы\n"
+            + "  --line-separator lf|crlf|cr  заменить переводы строк\n"
+            + "  --include ШАБЛОН      в каталогах только файлы с подходящим именем, например *.txt\n"
+            + "  --threads N           число потоков, по умолчанию число процессоров\n"
+            + "  --fsync               сбрасывать записанные файлы на диск";
+
+    private final FileProcessor processor;
+    private final List<Path> paths = new ArrayList<>();
+    private PathMatcher include;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong matches = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicInteger errors = new AtomicInteger();
+
+    /**
+     * разбирает параметры, при ошибке в них IllegalArgumentException
+     */
+    Batch(String[] args) {
+        String find = null;
+        String replacement = null;
+        boolean matchCase = false;
+        boolean wholeWord = false;
+        Charset charset = null;
+        String lineSeparator = null;
+        boolean fsync = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--find":
+                    find = value(args, ++i);
+                    break;
+                case "--replace":
+                    replacement = value(args, ++i);
+                    break;
+                case "--match-case":
+                    matchCase = true;
+                    break;
+                case "--whole-word":
+                    wholeWord = true;
+                    break;
+                case "--encoding":
+                    try {
+                        charset = Charset.forName(value(args, ++i));
+                    } catch (IllegalArgumentException ex) {
+                        throw new IllegalArgumentException("Неизвестная кодировка: " + args[i]);
+                    }
+                    break;
+                case "--line-separator":
+                    lineSeparator = lineSeparator(value(args, ++i));
+                    break;
+                case "--include":
+                    include = FileSystems.getDefault().getPathMatcher("glob:" + value(args, ++i));
+                    break;
+                case "--threads":
+                    threads = threads(value(args, ++i));
+                    break;
+                case "--fsync":
+                    fsync = true;
+                    break;
+                default:
+                    if (args[i].startsWith("--")) {
+                        throw new IllegalArgumentException("Неизвестный параметр: " + args[i]);
+                    }
+                    paths.add(Paths.get(args[i]));
+            }
+        }
+        if (find != null && find.isEmpty()) {
+            throw new IllegalArgumentException("Пустой текст поиска");
+        }
+        if (find == null && replacement != null) {
+            throw new IllegalArgumentException("--replace без --find");
+        }
+        if (find == null && charset == null && lineSeparator == null) {
+            throw new IllegalArgumentException("Не задано действие: --find, --encoding или --line-separator");
+        }
+        if (paths.isEmpty()) {
+            throw new IllegalArgumentException("Не заданы файлы");
+        }
+        processor = new FileProcessor(find == null ? null : new SearchQuery(find, matchCase, wholeWord),
+                replacement, charset, lineSeparator, fsync, FileProcessor.CHUNK);
+    }
+
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Нет значения для " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    private static String lineSeparator(String name) {
+        switch (name.toLowerCase()) {
+            case "lf":
+                return "\n";
+            case "crlf":
+                return "\r\n";
+            case "cr":
+                return "\r";
+            default:
+                throw new IllegalArgumentException("Перевод строки должен быть lf, crlf или cr: " + name);
+        }
+    }
+
+    private static int threads(String value) {
+        try {
+            final int threads = Integer.parseInt(value);
+            if (threads > 0) {
+                return threads;
+            }
+        } catch (NumberFormatException ex) {
+            // ниже
+        }
+        throw new IllegalArgumentException("Число потоков должно быть положительным: " + value);
+    }
+
+    /**
+     * выполняет пакетный режим и возвращает код выхода: 0 - успех, 1 - были ошибки файлов,
+     * 2 - ошибка в параметрах
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        // AWT не нужен, но может подгрузиться через javax.swing.text
+        System.setProperty("java.awt.headless", "true");
+        final Batch batch;
+        try {
+            batch = new Batch(args);
+        } catch (IllegalArgumentException ex) {
+            err.println(ex.getMessage());
+            err.println(USAGE);
+            return 2;
+        }
+        return batch.run(out, err);
+    }
+
+    int run(PrintStream out, PrintStream err) {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 4), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            for (Path path : paths) {
+                if (Files.isDirectory(path)) {
+                    walk(path, pool, out, err);
+                } else {
+                    pool.execute(() -> process(path.toFile(), out, err));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException ex) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        out.printf("Файлов: %d, вхождений: %d, записано: %d, ошибок: %d%n", files.get(), matches.get(), written.get(), errors.get());
+        return errors.get() == 0 ? 0 : 1;
+    }
+
+    /**
+     * каталог читается целиком до обработки его файлов: временные файлы записи и подмененные
+     * файлы не попадают в обход. Символические ссылки пропускаются
+     */
+    private void walk(Path dir, ThreadPoolExecutor pool, PrintStream out, PrintStream err) {
+        final List<Path> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            stream.forEach(entries::add);
+        } catch (IOException | DirectoryIteratorException ex) {
+            error(dir.toFile(), ex, err);
+            return;
+        }
+        for (Path entry : entries) {
+            if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                walk(entry, pool, out, err);
+            } else if (Files.isRegularFile(entry, LinkOption.NOFOLLOW_LINKS)
+                    && (include == null || include.matches(entry.getFileName()))) {
+                pool.execute(() -> process(entry.toFile(), out, err));
+            }
+        }
+    }
+
+    private void process(File file, PrintStream out, PrintStream err) {
+        try {
+            final FileProcessor.Result result = processor.process(file);
+            if (result.binary) {
+                err.println(file + ": пропущен, не текстовый файл");
+                return;
+            }
+            files.incrementAndGet();
+            matches.addAndGet(result.matches);
+            if (result.written) {
+                written.incrementAndGet();
+            }
+            if (result.matches > 0 || result.written) {
+                out.println(file + ": " + result.matches + (result.written ? ", записан" : ""));
+            }
+        } catch (IOException | RuntimeException ex) {
+            error(file, ex, err);
+        }
+    }
+
+    private void error(File file, Exception ex, PrintStream err) {
+        errors.incrementAndGet();
+        err.println(file + ": " + ex);
+    }
+}
@@ -0,0 +1,188 @@
+package by.azzi.jnotepad.batch;
+
+import by.azzi.jnotepad.document.AtomicFile;
+import by.azzi.jnotepad.document.TextFormat;
+import by.azzi.jnotepad.document.TextStreamReader;
+import by.azzi.jnotepad.document.TextWriter;
+import by.azzi.jnotepad.search.SearchQuery;
+import by.azzi.jnotepad.search.TextSearcher;
+import by.azzi.jnotepad.search.TextSource;
+
+import javax.swing.text.Segment;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * поиск, замена и перекодирование одного файла потоком: текст идет через буфер из chunk символов,
+ * вхождения ищутся {@link TextSearcher}, результат пишется {@link TextWriter} через {@link AtomicFile}.
+ * Файл без изменений не перезаписывается, как и файл с байтами, неверными для его кодировки.
+ * Экземпляр не меняется и обслуживает несколько потоков
+ */
+final class FileProcessor {
+
+    static final int CHUNK = 64 * 1024;
+
+    private final SearchQuery query;
+    private final String replacement;
+    private final Charset charset;
+    private final String lineSeparator;
+    private final boolean fsync;
+    private final int chunk;
+
+    /**
+     * @param query       что искать, null - только перекодировать
+     * @param replacement на что заменить, null - только посчитать вхождения
+     * @param charset     новая кодировка или null
+     * @param lineSeparator новый перевод строки или null
+     */
+    FileProcessor(SearchQuery query, String replacement, Charset charset, String lineSeparator, boolean fsync, int chunk) {
+        this.query = query;
+        this.replacement = replacement;
+        this.charset = charset;
+        this.lineSeparator = lineSeparator;
+        this.fsync = fsync;
+        this.chunk = chunk;
+    }
+
+    static final class Result {
+
+        final long matches;
+        final boolean written;
+        final boolean binary;
+
+        Result(long matches, boolean written, boolean binary) {
+            this.matches = matches;
+            this.written = written;
+            this.binary = binary;
+        }
+    }
+
+    Result process(File file) throws IOException {
+        try (TextStreamReader reader = new TextStreamReader(file)) {
+            if (reader.isBinary()) {
+                return new Result(0, false, true);
+            }
+            final TextFormat source = reader.getFormat();
+            TextFormat target = charset == null ? source : source.withCharset(charset);
+            target = lineSeparator == null ? target : target.withLineSeparator(lineSeparator);
+            final boolean recode = !target.equals(source);
+            if (!recode && (replacement == null || query == null)) {
+                return new Result(query == null ? 0 : scan(reader, null), false, false);
+            }
+            final TextFormat format = target;
+            final long[] matches = new long[1];
+            try {
+                AtomicFile.write(file, fsync, channel -> {
+                    matches[0] = scan(reader, new TextWriter(channel, format));
+                    if (reader.isLossy()) {
+                        throw new IOException("в файле есть байты, неверные для кодировки " + source.getCharset().name());
+                    }
+                    if (matches[0] == 0 && !recode) {
+                        throw new Unchanged();
+                    }
+                });
+            } catch (Unchanged ex) {
+                return new Result(0, false, false);
+            }
+            return new Result(matches[0], true, false);
+        }
+    }
+
+    /**
+     * считает вхождения и, если writer задан, пишет в него текст с заменами
+     */
+    private long scan(TextStreamReader reader, TextWriter writer) throws IOException {
+        final int m = query == null ? 0 : query.getText().length();
+        final char[] buffer = new char[chunk + m + 1];
+        if (query == null) {
+            for (int count = reader.read(buffer, 0, buffer.length); count >= 0; count = reader.read(buffer, 0, buffer.length)) {
+                writer.write(buffer, 0, count);
+            }
+            writer.finish();
+            return 0;
+        }
+        final TextSearcher searcher = new TextSearcher(query);
+        final char[] replacementChars = replacement == null ? null : replacement.toCharArray();
+        final ChunkText text = new ChunkText(buffer);
+        long matches = 0;
+        int from = 0;
+        int written = 0;
+        boolean end = false;
+        while (true) {
+            while (!end && text.length < buffer.length) {
+                final int count = reader.read(buffer, text.length, buffer.length - text.length);
+                if (count < 0) {
+                    end = true;
+                } else {
+                    text.length += count;
+                }
+            }
+            // до конца файла последний символ буфера не ищется: по нему проверяется слово целиком
+            final int to = end ? text.length : text.length - 1;
+            for (int found = searcher.findForward(text, from, to); found >= 0; found = searcher.findForward(text, from, to)) {
+                matches++;
+                if (writer != null && replacementChars != null) {
+                    writer.write(buffer, written, found - written);
+                    writer.write(replacementChars, 0, replacementChars.length);
+                    written = found + m;
+                }
+                from = found + m;
+            }
+            if (end) {
+                break;
+            }
+            // вхождение, начатое в хвосте, ищется в следующем буфере вместе с символом перед ним
+            final int next = Math.max(from, to - m + 1);
+            final int keep = next - 1;
+            if (writer != null && written < keep) {
+                writer.write(buffer, written, keep - written);
+            }
+            written = Math.max(written, keep) - keep;
+            from = next - keep;
+            text.length -= keep;
+            System.arraycopy(buffer, keep, buffer, 0, text.length);
+        }
+        if (writer != null) {
+            writer.write(buffer, written, text.length - written);
+            writer.finish();
+        }
+        return matches;
+    }
+
+    /**
+     * начало буфера как текст для поиска
+     */
+    private static final class ChunkText implements TextSource {
+
+        private final char[] chars;
+        private int length;
+
+        ChunkText(char[] chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public void segment(int offset, int length, Segment segment) {
+            segment.array = chars;
+            segment.offset = offset;
+            segment.count = Math.min(length, this.length - offset);
+        }
+
+        @Override
+        public char charAt(int offset) {
+            return chars[offset];
+        }
+    }
+
+    /**
+     * вхождений нет, временный файл удаляется, исходный остается как был
+     */
+    private static final class Unchanged extends IOException {
+    }
+}
@@ -0,0 +1,77 @@
+package by.azzi.jnotepad.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+
+/**
+ * запись файла через временный файл рядом с ним и атомарную подмену:
+ * при сбое посреди записи целевой файл остается прежним
+ */
+public final class AtomicFile {
+
+    private AtomicFile() {
+    }
+
+    public interface ChannelWriter {
+        void write(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * @param fsync сбросить данные на диск перед подменой
+     */
+    public static void write(File target, boolean fsync, ChannelWriter writer) throws IOException {
+        final Path path = target.getAbsoluteFile().toPath();
+        final Path tmp = Files.createTempFile(path.getParent(), "." + path.getFileName(), ".tmp");
+        try {
+            copyPermissions(path, tmp);
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writer.write(channel);
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+            try {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(tmp);
+            throw ex;
+        }
+        if (fsync) {
+            forceDirectory(path.getParent());
+        }
+    }
+
+    /**
+     * временный файл создается с правами 600, возвращаем права заменяемого файла
+     */
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        if (!Files.exists(from)) {
+            return;
+        }
+        final PosixFileAttributeView view = Files.getFileAttributeView(from, PosixFileAttributeView.class);
+        if (view != null) {
+            Files.setPosixFilePermissions(to, view.readAttributes().permissions());
+        }
+    }
+
+    /**
+     * переименование попадает на диск вместе с каталогом, на Windows каталог открыть нельзя
+     */
+    private static void forceDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ex) {
+            // не поддерживается файловой системой
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package by.azzi.jnotepad.document;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * буфер поверх байтов в однобайтовой кодировке ISO-8859-1 (в том числе ASCII),
+ * обычно это отображенная в память копия файла, поэтому символы не лежат в куче.
+ * Байты в куче, например декодированный текст из {@link CompactChars}, можно выгрузить
+ * во временный файл {@link #spill()} и вернуть обратно {@link #restore()}
+ */
+public class ByteTextBuffer implements TextBuffer {
+
+    private volatile ByteBuffer bytes;
+    private final int length;
+    /**
+     * байты были в куче и выгружены
+     */
+    private boolean spilled;
+
+    public ByteTextBuffer(ByteBuffer bytes) {
+        // читаем только абсолютными get(int), так что позиция буфера не важна
+        this.bytes = bytes.duplicate();
+        this.length = bytes.limit();
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(index) & 0xff);
+    }
+
+    @Override
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        final ByteBuffer src = bytes;
+        for (int i = srcBegin; i < srcEnd; i++) {
+            dst[dstBegin++] = (char) (src.get(i) & 0xff);
+        }
+    }
+
+    @Override
+    public ByteBuffer bytes() {
+        return bytes;
+    }
+
+    /**
+     * байт кучи под символы, 0 если они в отображенном файле
+     */
+    long getHeapSize() {
+        final ByteBuffer current = bytes;
+        return current.isDirect() ? 0 : current.capacity();
+    }
+
+    /**
+     * выгружает байты из кучи в удаляемый при закрытии временный файл
+     */
+    synchronized void spill() throws IOException {
+        final ByteBuffer current = bytes;
+        if (current.isDirect()) {
+            return;
+        }
+        final ByteBuffer mapped = SpillFile.map(length);
+        final ByteBuffer src = current.duplicate();
+        src.position(0);
+        src.limit(length);
+        mapped.put(src);
+        mapped.clear();
+        bytes = mapped.asReadOnlyBuffer();
+        spilled = true;
+    }
+
+    /**
+     * читает выгруженные байты обратно в кучу
+     */
+    synchronized void restore() {
+        if (!spilled) {
+            return;
+        }
+        final byte[] restored = new byte[length];
+        bytes.duplicate().get(restored);
+        bytes = ByteBuffer.wrap(restored);
+        spilled = false;
+    }
+}
@@ -0,0 +1,99 @@
+package by.azzi.jnotepad.document;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+
+/**
+ * буфер поверх готового char[].
+ * <p>
+ * Символы можно выгрузить во временный файл {@link #spill()}: буфер читает их дальше из
+ * отображения файла, а массив освобождается; {@link #restore()} возвращает их в кучу.
+ * Текст при этом не меняется, так что куски и правки, ссылающиеся на буфер, остаются верными
+ */
+public class CharArrayTextBuffer implements TextBuffer {
+
+    /**
+     * char[] в куче или CharBuffer отображенного файла выгрузки
+     */
+    private volatile Object storage;
+    private final int length;
+
+    public CharArrayTextBuffer(char[] chars, int length) {
+        if (length < 0 || length > chars.length) {
+            throw new IllegalArgumentException("length: " + length);
+        }
+        this.storage = chars;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index >= length) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        final Object chars = storage;
+        return chars instanceof char[] ? ((char[]) chars)[index] : ((CharBuffer) chars).get(index);
+    }
+
+    @Override
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        if (srcEnd > length) {
+            throw new IndexOutOfBoundsException(String.valueOf(srcEnd));
+        }
+        final Object chars = storage;
+        if (chars instanceof char[]) {
+            System.arraycopy(chars, srcBegin, dst, dstBegin, srcEnd - srcBegin);
+        } else {
+            final CharBuffer view = ((CharBuffer) chars).duplicate();
+            view.position(srcBegin);
+            view.get(dst, dstBegin, srcEnd - srcBegin);
+        }
+    }
+
+    @Override
+    public char[] array() {
+        final Object chars = storage;
+        return chars instanceof char[] ? (char[]) chars : null;
+    }
+
+    /**
+     * байт кучи под символы, 0 если они выгружены
+     */
+    long getHeapSize() {
+        final Object chars = storage;
+        return chars instanceof char[] ? 2L * ((char[]) chars).length : 0;
+    }
+
+    /**
+     * выгружает символы в удаляемый при закрытии временный файл; отображение остается
+     * действительным и после удаления файла. Буфер больше 1 Г символов не выгружается
+     */
+    synchronized void spill() throws IOException {
+        final Object chars = storage;
+        if (!(chars instanceof char[]) || 2L * length > Integer.MAX_VALUE) {
+            return;
+        }
+        final CharBuffer mapped = SpillFile.map(2L * length).asCharBuffer();
+        mapped.put((char[]) chars, 0, length);
+        mapped.clear();
+        storage = mapped.asReadOnlyBuffer();
+    }
+
+    /**
+     * читает выгруженные символы обратно в кучу
+     */
+    synchronized void restore() {
+        final Object chars = storage;
+        if (chars instanceof char[]) {
+            return;
+        }
+        final char[] restored = new char[length];
+        ((CharBuffer) chars).duplicate().get(restored);
+        storage = restored;
+    }
+}
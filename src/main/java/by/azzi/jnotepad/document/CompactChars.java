@@ -0,0 +1,141 @@
+package by.azzi.jnotepad.document;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * растущий массив символов, который хранит их по байту, пока все они из ISO-8859-1,
+ * как компактные строки JDK. Первый более широкий символ переводит его в char[].
+ * Символы только дописываются в конец, массив растет заменой, поэтому уже записанные
+ * символы старого массива не меняются и его можно отдавать снимкам
+ */
+final class CompactChars {
+
+    private byte[] bytes;
+    private char[] chars;
+    private int length;
+
+    CompactChars(int capacity) {
+        bytes = new byte[Math.max(16, capacity)];
+    }
+
+    int length() {
+        return length;
+    }
+
+    boolean isLatin1() {
+        return chars == null;
+    }
+
+    /**
+     * байты символов, пока все они из ISO-8859-1, иначе null
+     */
+    byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * символы, если массив уже расширен, иначе null
+     */
+    char[] chars() {
+        return chars;
+    }
+
+    char charAt(int index) {
+        return chars != null ? chars[index] : (char) (bytes[index] & 0xff);
+    }
+
+    void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        if (chars != null) {
+            System.arraycopy(chars, srcBegin, dst, dstBegin, srcEnd - srcBegin);
+            return;
+        }
+        final byte[] src = bytes;
+        for (int i = srcBegin; i < srcEnd; i++) {
+            dst[dstBegin++] = (char) (src[i] & 0xff);
+        }
+    }
+
+    void append(char[] src, int from, int to) {
+        final int n = to - from;
+        ensureCapacity(length + n);
+        if (chars != null) {
+            System.arraycopy(src, from, chars, length, n);
+            length += n;
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            final char c = src[i];
+            if (c > 0xff) {
+                inflate();
+                append(src, i, to);
+                return;
+            }
+            bytes[length++] = (byte) c;
+        }
+    }
+
+    void append(String str) {
+        final int n = str.length();
+        ensureCapacity(length + n);
+        if (chars != null) {
+            str.getChars(0, n, chars, length);
+            length += n;
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            final char c = str.charAt(i);
+            if (c > 0xff) {
+                inflate();
+                str.getChars(i, n, chars, length);
+                length += n - i;
+                return;
+            }
+            bytes[length++] = (byte) c;
+        }
+    }
+
+    /**
+     * неизменяемый буфер уже записанных символов: байтовый, пока массив не расширен
+     */
+    TextBuffer toBuffer() {
+        return chars != null
+                ? new CharArrayTextBuffer(chars, length)
+                : new ByteTextBuffer(ByteBuffer.wrap(bytes, 0, length));
+    }
+
+    /**
+     * байт кучи под символы
+     */
+    long getHeapSize() {
+        return chars != null ? 2L * chars.length : bytes.length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity < 0) {
+            throw new OutOfMemoryError("Text too long");
+        }
+        final int current = chars != null ? chars.length : bytes.length;
+        if (capacity <= current) {
+            return;
+        }
+        final int grown = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(capacity, current * 2L));
+        if (chars != null) {
+            chars = Arrays.copyOf(chars, grown);
+        } else {
+            bytes = Arrays.copyOf(bytes, grown);
+        }
+    }
+
+    /**
+     * переводит массив в char[] той же емкости
+     */
+    private void inflate() {
+        final char[] inflated = new char[bytes.length];
+        for (int i = 0; i < length; i++) {
+            inflated[i] = (char) (bytes[i] & 0xff);
+        }
+        chars = inflated;
+        bytes = null;
+    }
+}
@@ -0,0 +1,286 @@
+package by.azzi.jnotepad.document;
+
+import by.azzi.jnotepad.listeners.DocumentListener;
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.EventListenerList;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * число символов, строк и слов документа.
+ * <p>
+ * Символы и строки берутся из документа за O(1), слова считаются один раз в фоне
+ * по снимку, а дальше обновляются по событиям документа: пересчитываются только
+ * начала слов в измененном диапазоне и на его границах, а после замены множества
+ * вхождений слова снова считаются в фоне. Слово - последовательность
+ * символов без пробельных.
+ */
+public class DocumentStatistics implements DocumentListener, RemovalListener {
+
+    /**
+     * документы меньше этого размера считаются сразу, без фонового потока
+     */
+    private static final int SYNC_COUNT_LIMIT = 1024 * 1024;
+    /**
+     * замена большего числа участков не пересчитывается по участкам, слова считаются заново по снимку
+     */
+    private static final int MATCH_COUNT_LIMIT = 10_000;
+
+    private final EventListenerList listenerList = new EventListenerList();
+    private final ChangeEvent changeEvent = new ChangeEvent(this);
+    private final Segment segment = new Segment();
+
+    private TextDocument document;
+    private SwingWorker<Long, Void> counter;
+    /**
+     * число слов в снимке документа на момент подключения, -1 пока не посчитано
+     */
+    private long baseWords = -1;
+    /**
+     * изменение числа слов правками после подключения
+     */
+    private long wordsDelta;
+
+    public DocumentStatistics() {
+        segment.setPartialReturn(true);
+    }
+
+    public void setDocument(TextDocument document) {
+        if (this.document != null) {
+            this.document.removeDocumentListener(this);
+            this.document.removeRemovalListener(this);
+        }
+        if (counter != null) {
+            counter.cancel(true);
+            counter = null;
+        }
+        this.document = document;
+        baseWords = -1;
+        wordsDelta = 0;
+        if (document != null) {
+            document.addDocumentListener(this);
+            document.addRemovalListener(this);
+            countWords(document.snapshot());
+        }
+        fireStateChanged();
+    }
+
+    public int getCharCount() {
+        return document == null ? 0 : document.getLength();
+    }
+
+    public int getLineCount() {
+        return document == null ? 0 : document.getLineIndex().getLineCount();
+    }
+
+    /**
+     * число слов или -1, если оно еще считается
+     */
+    public long getWordCount() {
+        return baseWords < 0 ? -1 : baseWords + wordsDelta;
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listenerList.add(ChangeListener.class, listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listenerList.remove(ChangeListener.class, listener);
+    }
+
+    // == listeners ==
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        textInserted(e.getOffset(), e.getLength());
+        fireStateChanged();
+    }
+
+    @Override
+    public void textReplaced(TextDocument document, int offset, int length) {
+        textInserted(offset, length);
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        // замена уже учтена в textRemoving и textReplaced
+        fireStateChanged();
+    }
+
+    @Override
+    public void textRemoving(TextDocument document, int offset, int length) {
+        final int end = offset + length;
+        final char prev = charAt(offset - 1);
+        final long before = countWordStarts(offset, Math.min(end + 1, document.getLength()), prev);
+        final long after = end < document.getLength() && isWordStart(charAt(end), prev) ? 1 : 0;
+        wordsDelta += after - before;
+    }
+
+    @Override
+    public void matchesReplacing(TextDocument document, int[] starts, int oldLength, int newLength) {
+        if (starts.length <= MATCH_COUNT_LIMIT) {
+            wordsDelta -= countMatchWordStarts(starts, oldLength, 0);
+        }
+    }
+
+    @Override
+    public void matchesReplaced(TextDocument document, int[] starts, int oldLength, int newLength, String replacement) {
+        if (starts.length <= MATCH_COUNT_LIMIT) {
+            wordsDelta += countMatchWordStarts(starts, newLength, newLength - oldLength);
+            return;
+        }
+        if (counter != null) {
+            counter.cancel(true);
+            counter = null;
+        }
+        baseWords = -1;
+        wordsDelta = 0;
+        countWords(document.snapshot());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        fireStateChanged();
+    }
+
+    // == counting ==
+
+    private void textInserted(int offset, int length) {
+        final int end = offset + length;
+        final char prev = charAt(offset - 1);
+        final long after = countWordStarts(offset, Math.min(end + 1, document.getLength()), prev);
+        final long before = end < document.getLength() && isWordStart(charAt(end), prev) ? 1 : 0;
+        wordsDelta += after - before;
+    }
+
+    private void countWords(TextSnapshot snapshot) {
+        if (snapshot.length() < SYNC_COUNT_LIMIT) {
+            baseWords = countWordStarts(snapshot, new Segment());
+            return;
+        }
+        final SwingWorker<Long, Void> worker = new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() {
+                return countWordStarts(snapshot, new Segment());
+            }
+
+            @Override
+            protected void done() {
+                if (counter != this || isCancelled()) {
+                    return;
+                }
+                counter = null;
+                try {
+                    baseWords = get();
+                    fireStateChanged();
+                } catch (InterruptedException | ExecutionException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        };
+        counter = worker;
+        worker.execute();
+    }
+
+    private static long countWordStarts(TextSnapshot snapshot, Segment segment) {
+        long count = 0;
+        boolean prevSpace = true;
+        final int length = snapshot.length();
+        int offset = 0;
+        while (offset < length) {
+            if (Thread.currentThread().isInterrupted()) {
+                return 0;
+            }
+            snapshot.segment(offset, length - offset, segment);
+            for (int i = segment.offset, end = segment.offset + segment.count; i < end; i++) {
+                final boolean space = Character.isWhitespace(segment.array[i]);
+                if (!space && prevSpace) {
+                    count++;
+                }
+                prevSpace = space;
+            }
+            offset += segment.count;
+        }
+        return count;
+    }
+
+    /**
+     * число начал слов в [from, to), prev - символ перед from
+     */
+    private long countWordStarts(int from, int to, char prev) {
+        return countWordStarts(from, from, to, Character.isWhitespace(prev));
+    }
+
+    /**
+     * число начал слов в [from, to), текст читается с read: символы до from только
+     * задают предыдущий, prevSpace - пробельный ли символ перед read
+     */
+    private long countWordStarts(int read, int from, int to, boolean prevSpace) {
+        long count = 0;
+        try {
+            while (read < to) {
+                document.getText(read, to - read, segment);
+                for (int i = segment.offset, end = segment.offset + segment.count; i < end; i++) {
+                    final boolean space = Character.isWhitespace(segment.array[i]);
+                    if (!space && prevSpace && read + i - segment.offset >= from) {
+                        count++;
+                    }
+                    prevSpace = space;
+                }
+                read += segment.count;
+            }
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return count;
+    }
+
+    /**
+     * число начал слов в участках длины length со смещений starts[k] + k * shift и в символах
+     * сразу после них: текст между участками замена не трогает
+     */
+    private long countMatchWordStarts(int[] starts, int length, int shift) {
+        final int textLength = document.getLength();
+        long count = 0;
+        for (int k = 0; k < starts.length; k++) {
+            final int from = starts[k] + k * shift;
+            int to = Math.min(from + length + 1, textLength);
+            if (k + 1 < starts.length) {
+                to = Math.min(to, starts[k + 1] + (k + 1) * shift);
+            }
+            // символ перед участком читается тем же запросом, что и сам участок
+            count += countWordStarts(Math.max(from - 1, 0), from, to, true);
+        }
+        return count;
+    }
+
+    private static boolean isWordStart(char c, char prev) {
+        return !Character.isWhitespace(c) && Character.isWhitespace(prev);
+    }
+
+    /**
+     * символ документа, за пределами документа - пробел
+     */
+    private char charAt(int offset) {
+        if (offset < 0 || offset >= document.getLength()) {
+            return ' ';
+        }
+        try {
+            document.getText(offset, 1, segment);
+            return segment.first();
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void fireStateChanged() {
+        for (ChangeListener listener : listenerList.getListeners(ChangeListener.class)) {
+            listener.stateChanged(changeEvent);
+        }
+    }
+}
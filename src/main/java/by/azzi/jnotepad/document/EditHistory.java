@@ -0,0 +1,299 @@
+package by.azzi.jnotepad.document;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.EventListenerList;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.event.UndoableEditListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.LongSupplier;
+
+/**
+ * история правок для отмены и повтора.
+ * <p>
+ * Набор и стирание по одному символу подряд склеиваются в один шаг; новый шаг начинается
+ * с нового слова, после паузы в {@link #PAUSE_MILLIS} или при переходе в другое место.
+ * Число шагов не ограничено, ограничена оценка занятой ими памяти: когда она превышает
+ * бюджет, забываются самые старые шаги.
+ */
+public class EditHistory implements UndoableEditListener {
+
+    public static final long DEFAULT_BUDGET = 32L * 1024 * 1024;
+    /**
+     * после такой паузы набор начинает новый шаг
+     */
+    static final long PAUSE_MILLIS = 1500;
+    /**
+     * оценка объектов одной правки: событие, правка содержимого, снимок позиций
+     */
+    private static final int EDIT_SIZE = 200;
+
+    private final EventListenerList listenerList = new EventListenerList();
+    private final ChangeEvent changeEvent = new ChangeEvent(this);
+    private final Deque<Step> undoSteps = new ArrayDeque<>();
+    private final Deque<Step> redoSteps = new ArrayDeque<>();
+    private final long budget;
+    private final LongSupplier clock;
+    private long size;
+
+    public EditHistory() {
+        this(DEFAULT_BUDGET, System::currentTimeMillis);
+    }
+
+    EditHistory(long budget, LongSupplier clock) {
+        this.budget = budget;
+        this.clock = clock;
+    }
+
+    public boolean canUndo() {
+        return !undoSteps.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redoSteps.isEmpty();
+    }
+
+    public void undo() throws CannotUndoException {
+        final Step step = undoSteps.pollLast();
+        if (step == null) {
+            throw new CannotUndoException();
+        }
+        step.open = false;
+        step.undo();
+        redoSteps.addLast(step);
+        fireStateChanged();
+    }
+
+    public void redo() throws CannotRedoException {
+        final Step step = redoSteps.pollLast();
+        if (step == null) {
+            throw new CannotRedoException();
+        }
+        step.redo();
+        undoSteps.addLast(step);
+        fireStateChanged();
+    }
+
+    /**
+     * забывает всю историю, например при открытии другого документа
+     */
+    public void discardAllEdits() {
+        for (Step step : undoSteps) {
+            step.die();
+        }
+        for (Step step : redoSteps) {
+            step.die();
+        }
+        undoSteps.clear();
+        redoSteps.clear();
+        size = 0;
+        fireStateChanged();
+    }
+
+    /**
+     * снимает все шаги вместе с документом, например при переходе на другую вкладку;
+     * вернуть их можно {@link #attach(Steps)}, когда документ снова станет текущим
+     */
+    public Steps detach() {
+        final Step last = undoSteps.peekLast();
+        if (last != null) {
+            last.open = false;
+        }
+        final Steps steps = new Steps(new ArrayDeque<>(undoSteps), new ArrayDeque<>(redoSteps), size);
+        undoSteps.clear();
+        redoSteps.clear();
+        size = 0;
+        fireStateChanged();
+        return steps;
+    }
+
+    /**
+     * возвращает шаги, снятые {@link #detach()}, вместо текущих
+     */
+    public void attach(Steps steps) {
+        discardAllEdits();
+        undoSteps.addAll(steps.undoSteps);
+        redoSteps.addAll(steps.redoSteps);
+        size = steps.size;
+        fireStateChanged();
+    }
+
+    /**
+     * оценка памяти, занятой историей, в байтах
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * число шагов отмены
+     */
+    public int getUndoCount() {
+        return undoSteps.size();
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listenerList.add(ChangeListener.class, listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listenerList.remove(ChangeListener.class, listener);
+    }
+
+    @Override
+    public void undoableEditHappened(UndoableEditEvent e) {
+        final UndoableEdit edit = e.getEdit();
+        for (Step step : redoSteps) {
+            size -= step.size;
+            step.die();
+        }
+        redoSteps.clear();
+
+        final long now = clock.getAsLong();
+        final long editSize = estimateSize(edit);
+        final Step last = undoSteps.peekLast();
+        if (edit instanceof DocumentEvent && last != null && last.merge((DocumentEvent) edit, now)) {
+            last.add(edit, editSize);
+        } else {
+            undoSteps.addLast(new Step(edit, editSize, now));
+        }
+        size += editSize;
+        // последний шаг остается, даже если один не помещается в бюджет
+        while (size > budget && undoSteps.size() > 1) {
+            final Step step = undoSteps.pollFirst();
+            size -= step.size;
+            step.die();
+        }
+        fireStateChanged();
+    }
+
+    /**
+     * оценка сверху: текст правки считается хранящимся в истории; элементов строк правки не держат
+     */
+    private static long estimateSize(UndoableEdit edit) {
+        if (edit instanceof TextDocument.GroupEdit) {
+            long size = 0;
+            for (UndoableEdit child : ((TextDocument.GroupEdit) edit).getEdits()) {
+                size += estimateSize(child);
+            }
+            return size;
+        }
+        if (!(edit instanceof DocumentEvent)) {
+            return EDIT_SIZE;
+        }
+        return EDIT_SIZE + 2L * ((DocumentEvent) edit).getLength();
+    }
+
+    private void fireStateChanged() {
+        for (ChangeListener listener : listenerList.getListeners(ChangeListener.class)) {
+            listener.stateChanged(changeEvent);
+        }
+    }
+
+    /**
+     * шаги отмены и повтора документа, который сейчас не редактируется
+     */
+    public static final class Steps {
+        public static final Steps EMPTY = new Steps(new ArrayDeque<>(), new ArrayDeque<>(), 0);
+
+        private final Deque<Step> undoSteps;
+        private final Deque<Step> redoSteps;
+        private final long size;
+
+        private Steps(Deque<Step> undoSteps, Deque<Step> redoSteps, long size) {
+            this.undoSteps = undoSteps;
+            this.redoSteps = redoSteps;
+            this.size = size;
+        }
+
+        public boolean isEmpty() {
+            return undoSteps.isEmpty() && redoSteps.isEmpty();
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * шаг отмены из одной или нескольких склеенных правок
+     */
+    private static final class Step extends CompoundEdit {
+        private final DocumentEvent.EventType type;
+        /**
+         * набранный или стертый подряд текст, [start, end) в текущем документе
+         */
+        private int start;
+        private int end;
+        private char lastChar;
+        private long time;
+        private long size;
+        /**
+         * можно ли дописывать правки в шаг
+         */
+        private boolean open;
+
+        Step(UndoableEdit edit, long size, long time) {
+            edits.add(edit);
+            end();
+            this.size = size;
+            this.time = time;
+            if (edit instanceof DocumentEvent && ((DocumentEvent) edit).getLength() == 1) {
+                final DocumentEvent event = (DocumentEvent) edit;
+                type = event.getType();
+                open = type == DocumentEvent.EventType.INSERT || type == DocumentEvent.EventType.REMOVE;
+                start = event.getOffset();
+                end = type == DocumentEvent.EventType.INSERT ? start + 1 : start;
+                lastChar = type == DocumentEvent.EventType.INSERT ? charAt(event) : 0;
+            } else {
+                type = null;
+            }
+        }
+
+        /**
+         * продолжает ли правка набор или стирание этого шага, при этом запоминает ее место
+         */
+        boolean merge(DocumentEvent event, long now) {
+            if (!open || event.getType() != type || event.getLength() != 1 || now - time > PAUSE_MILLIS) {
+                return false;
+            }
+            final int offset = event.getOffset();
+            if (type == DocumentEvent.EventType.INSERT) {
+                final char c = charAt(event);
+                if (offset != end || !Character.isWhitespace(c) && Character.isWhitespace(lastChar)) {
+                    return false;
+                }
+                end++;
+                lastChar = c;
+            } else if (offset == start - 1) {
+                // Backspace
+                start--;
+            } else if (offset != start) {
+                // не Delete на том же месте
+                return false;
+            }
+            time = now;
+            return true;
+        }
+
+        void add(UndoableEdit edit, long size) {
+            edits.add(edit);
+            this.size += size;
+        }
+
+        private static char charAt(DocumentEvent event) {
+            try {
+                return event.getDocument().getText(event.getOffset(), 1).charAt(0);
+            } catch (BadLocationException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
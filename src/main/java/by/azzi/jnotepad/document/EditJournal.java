@@ -0,0 +1,602 @@
+package by.azzi.jnotepad.document;
+
+import by.azzi.jnotepad.listeners.DocumentListener;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * журнал правок документа для восстановления после падения.
+ * <p>
+ * Каждая правка дописывается в двоичный файл журнала: вставка - смещение и текст, удаление -
+ * смещение и длина, замена всех вхождений - их смещения и новый текст, так что правка стоит
+ * O(своей длины), а не O(документа). Записи копятся в памяти, текст в них - снимком документа,
+ * и пишутся фоновым потоком не позже чем через {@link #FLUSH_MILLIS}. В заголовке
+ * журнала - путь, размер и время изменения файла, поверх которого проигрываются правки;
+ * после сохранения журнал сжимается до правок, сделанных после снимка сохранения.
+ * Пока журнал открыт, он заблокирован, чужой незаблокированный журнал - остаток падения.
+ */
+public class EditJournal implements DocumentListener, RemovalListener {
+
+    static final long FLUSH_MILLIS = 500;
+    private static final boolean FSYNC = Boolean.getBoolean("jnotepad.fsync");
+    private static final int MAGIC = 0x4A4E4A31;
+    private static final String SUFFIX = ".jnl";
+    private static final byte INSERT = 'I';
+    private static final byte REMOVE = 'R';
+    private static final byte REPLACE = 'M';
+    /**
+     * тип, смещение, длина
+     */
+    private static final int RECORD_HEADER = 9;
+    /**
+     * тип, число участков, старая и новая длина, общий ли у участков текст
+     */
+    private static final int REPLACE_HEADER = 14;
+    private static final int WRITE_BUFFER = 64 * 1024;
+
+    private static final ScheduledExecutorService WRITER = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "journal-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TextDocument document;
+    private final Path path;
+    /**
+     * записи, еще не отданные фоновому потоку, под блокировкой this
+     */
+    private final List<Record> pending = new ArrayList<>();
+    /**
+     * байт записей, добавленных с открытия журнала
+     */
+    private long appended;
+    private volatile boolean failed;
+
+    // только в потоке записи
+    private FileChannel channel;
+    private FileLock lock;
+    private int headerLength;
+    /**
+     * байт записей, выброшенных сжатием
+     */
+    private long dropped;
+
+    private EditJournal(TextDocument document, Path path) {
+        this.document = document;
+        this.path = path;
+    }
+
+    /**
+     * заводит новый журнал документа, открытого из base (null - новый документ)
+     */
+    public static EditJournal start(File dir, TextDocument document, File base) {
+        final EditJournal journal = new EditJournal(document, dir.toPath().resolve(UUID.randomUUID() + SUFFIX));
+        final byte[] header = header(base);
+        journal.execute(() -> journal.open(header));
+        document.addDocumentListener(journal);
+        document.addRemovalListener(journal);
+        return journal;
+    }
+
+    public TextDocument getDocument() {
+        return document;
+    }
+
+    /**
+     * отметка для {@link #compact(File, long)}, берется вместе со снимком для сохранения
+     */
+    public long mark() {
+        return appended;
+    }
+
+    /**
+     * документ до отметки сохранен в saved: журнал остается только с более поздними правками
+     */
+    public void compact(File saved, long mark) {
+        final byte[] header = header(saved);
+        execute(() -> rewrite(header, mark));
+    }
+
+    /**
+     * закрывает и удаляет журнал, правки сохранены или от них отказались
+     */
+    public void close() {
+        detach();
+        execute(() -> {
+            closeChannel();
+            Files.deleteIfExists(path);
+        });
+    }
+
+    /**
+     * закрывает журнал, оставляя его на диске, как при падении
+     */
+    void abandon() {
+        detach();
+        execute(() -> {
+            writePending();
+            closeChannel();
+        });
+    }
+
+    /**
+     * дожидается записи всего добавленного
+     */
+    void sync() {
+        try {
+            WRITER.submit(() -> {
+                if (!failed) {
+                    writePending();
+                }
+                return null;
+            }).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    private void detach() {
+        document.removeDocumentListener(this);
+        document.removeRemovalListener(this);
+    }
+
+    // == listeners ==
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        inserted(e.getOffset(), e.getLength());
+    }
+
+    @Override
+    public void textReplaced(TextDocument document, int offset, int length) {
+        inserted(offset, length);
+    }
+
+    @Override
+    public void textRemoving(TextDocument document, int offset, int length) {
+        append(new Record(ByteBuffer.allocate(RECORD_HEADER).put(REMOVE).putInt(offset).putInt(length).array()));
+    }
+
+    @Override
+    public void matchesReplacing(TextDocument document, int[] starts, int oldLength, int newLength) {
+        // замена пишется одной записью после нее
+    }
+
+    /**
+     * одна запись на всю замену: смещения участков до замены и их новый текст, общий
+     * текст замены пишется один раз, а разные тексты при отмене - снимком
+     */
+    @Override
+    public void matchesReplaced(TextDocument document, int[] starts, int oldLength, int newLength, String replacement) {
+        final int count = starts.length;
+        final long textLength = replacement != null ? newLength : (long) count * newLength;
+        if (4L * count + 2 * textLength > Integer.MAX_VALUE - REPLACE_HEADER) {
+            // такую запись в массив не прочитать, дальше журнал не проиграть
+            failed = true;
+            return;
+        }
+        final ByteBuffer header = ByteBuffer.allocate(REPLACE_HEADER + 4 * count + (replacement != null ? 2 * newLength : 0));
+        header.put(REPLACE).putInt(count).putInt(oldLength).putInt(newLength).put((byte) (replacement != null ? 1 : 0));
+        for (int start : starts) {
+            header.putInt(start);
+        }
+        if (replacement != null) {
+            for (int i = 0; i < newLength; i++) {
+                header.putChar(replacement.charAt(i));
+            }
+            append(new Record(header.array()));
+            return;
+        }
+        final int delta = newLength - oldLength;
+        final int offset = starts[0];
+        final int[] parts = new int[count];
+        for (int k = 0; k < count; k++) {
+            parts[k] = starts[k] + k * delta - offset;
+        }
+        append(new Record(header.array(), snapshot(offset, parts[count - 1] + newLength), parts, newLength));
+    }
+
+    private void inserted(int offset, int length) {
+        if (length > (Integer.MAX_VALUE - RECORD_HEADER) / 2) {
+            // такую вставку в массив не прочитать, дальше журнал не проиграть
+            failed = true;
+            return;
+        }
+        final byte[] header = ByteBuffer.allocate(RECORD_HEADER).put(INSERT).putInt(offset).putInt(length).array();
+        append(new Record(header, snapshot(offset, length), null, length));
+    }
+
+    private TextSnapshot snapshot(int offset, int length) {
+        try {
+            return document.snapshot(offset, length);
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void append(Record record) {
+        if (failed) {
+            return;
+        }
+        appended += record.length();
+        final boolean first;
+        synchronized (this) {
+            first = pending.isEmpty();
+            pending.add(record);
+        }
+        if (first) {
+            WRITER.schedule(() -> execute(this::writePending), FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // == writer thread ==
+
+    private interface IOTask {
+        void run() throws IOException;
+    }
+
+    private void execute(IOTask task) {
+        WRITER.execute(() -> {
+            if (failed) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (IOException | RuntimeException ex) {
+                failed = true;
+                ex.printStackTrace();
+            }
+        });
+    }
+
+    private void open(byte[] header) throws IOException {
+        Files.createDirectories(path.getParent());
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        lock = channel.tryLock();
+        write(ByteBuffer.wrap(header));
+        headerLength = header.length;
+    }
+
+    private void writePending() throws IOException {
+        final List<Record> records;
+        synchronized (this) {
+            if (pending.isEmpty() || channel == null) {
+                return;
+            }
+            records = new ArrayList<>(pending);
+            pending.clear();
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER);
+        final Segment chars = new Segment();
+        chars.setPartialReturn(true);
+        for (Record record : records) {
+            flushIfFull(buffer, record.bytes.length);
+            if (record.bytes.length > buffer.capacity()) {
+                write(ByteBuffer.wrap(record.bytes));
+            } else {
+                buffer.put(record.bytes);
+            }
+            if (record.text == null) {
+                continue;
+            }
+            if (record.parts == null) {
+                writeChars(record.text, 0, record.partLength, chars, buffer);
+            } else {
+                for (int part : record.parts) {
+                    writeChars(record.text, part, record.partLength, chars, buffer);
+                }
+            }
+        }
+        buffer.flip();
+        write(buffer);
+        if (FSYNC) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * пишет новый журнал из заголовка и записей после mark через временный файл
+     */
+    private void rewrite(byte[] header, long mark) throws IOException {
+        writePending();
+        final long tailStart = headerLength + mark - dropped;
+        final ByteBuffer tail = ByteBuffer.allocate((int) (channel.size() - tailStart));
+        while (tail.hasRemaining()) {
+            if (channel.read(tail, tailStart + tail.position()) < 0) {
+                throw new EOFException(path.toString());
+            }
+        }
+        tail.flip();
+        // на Windows открытый файл не подменить
+        closeChannel();
+        AtomicFile.write(path.toFile(), FSYNC, out -> {
+            out.write(ByteBuffer.wrap(header));
+            while (tail.hasRemaining()) {
+                out.write(tail);
+            }
+        });
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        lock = channel.tryLock();
+        headerLength = header.length;
+        dropped = mark;
+    }
+
+    /**
+     * дописывает в buffer символы снимка [offset, offset + length) в UTF-16
+     */
+    private void writeChars(TextSnapshot text, int offset, int length, Segment chars, ByteBuffer buffer) throws IOException {
+        final int end = offset + length;
+        while (offset < end) {
+            text.segment(offset, end - offset, chars);
+            int i = chars.offset;
+            final int last = chars.offset + chars.count;
+            while (i < last) {
+                flushIfFull(buffer, 2);
+                final int n = Math.min(last - i, buffer.remaining() / 2);
+                buffer.asCharBuffer().put(chars.array, i, n);
+                buffer.position(buffer.position() + 2 * n);
+                i += n;
+            }
+            offset += chars.count;
+        }
+    }
+
+    private void flushIfFull(ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() < needed) {
+            buffer.flip();
+            write(buffer);
+            buffer.clear();
+        }
+    }
+
+    private void write(ByteBuffer bytes) throws IOException {
+        long position = channel.size();
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+
+    private void closeChannel() throws IOException {
+        if (channel != null) {
+            if (lock != null) {
+                lock.release();
+                lock = null;
+            }
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static byte[] header(File base) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeUTF(base == null ? "" : base.getAbsolutePath());
+            out.writeLong(base == null ? 0 : base.length());
+            out.writeLong(base == null ? 0 : base.lastModified());
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * запись журнала: готовые байты и текст, который фоновый поток допишет после них в UTF-16 -
+     * первые partLength символов снимка или, если есть parts, его участки длины partLength
+     */
+    private static final class Record {
+        final byte[] bytes;
+        final TextSnapshot text;
+        final int[] parts;
+        final int partLength;
+
+        Record(byte[] bytes) {
+            this(bytes, null, null, 0);
+        }
+
+        Record(byte[] bytes, TextSnapshot text, int[] parts, int partLength) {
+            this.bytes = bytes;
+            this.text = text;
+            this.parts = parts;
+            this.partLength = partLength;
+        }
+
+        long length() {
+            return bytes.length + 2L * partLength * (parts == null ? 1 : parts.length);
+        }
+    }
+
+    // == recovery ==
+
+    /**
+     * незаблокированный журнал с правками поверх base (null - несохраненный документ), или null.
+     * Журналы файла, который с тех пор изменился, удаляются: проиграть их уже нельзя
+     */
+    public static Recovery find(File dir, File base) {
+        final String basePath = base == null ? "" : base.getAbsolutePath();
+        Recovery found = null;
+        if (!dir.isDirectory()) {
+            return null;
+        }
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(dir.toPath(), "*" + SUFFIX)) {
+            for (Path journal : journals) {
+                final byte[] bytes = readUnlocked(journal);
+                if (bytes == null) {
+                    continue;
+                }
+                try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                    if (in.readInt() != MAGIC || !in.readUTF().equals(basePath)) {
+                        continue;
+                    }
+                    final long size = in.readLong();
+                    final long modified = in.readLong();
+                    final boolean stale = base != null && (base.length() != size || base.lastModified() != modified);
+                    final int headerLength = bytes.length - in.available();
+                    if (stale || headerLength == bytes.length) {
+                        Files.deleteIfExists(journal);
+                        continue;
+                    }
+                    final long time = Files.getLastModifiedTime(journal).toMillis();
+                    if (found == null || found.time < time) {
+                        found = new Recovery(journal, base, bytes, headerLength, time);
+                    }
+                } catch (EOFException ex) {
+                    // заголовок не дописан
+                    Files.deleteIfExists(journal);
+                }
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        return found;
+    }
+
+    /**
+     * содержимое журнала, если его никто не держит открытым
+     */
+    private static byte[] readUnlocked(Path journal) throws IOException {
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            try (FileLock lock = channel.tryLock()) {
+                if (lock == null) {
+                    return null;
+                }
+                final ByteBuffer bytes = ByteBuffer.allocate((int) channel.size());
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    // читаем до конца
+                }
+                return bytes.array();
+            } catch (OverlappingFileLockException ex) {
+                // журнал другого окна этой же программы
+                return null;
+            }
+        }
+    }
+
+    /**
+     * правки, оставшиеся после падения
+     */
+    public static final class Recovery {
+        private final Path path;
+        private final File base;
+        private final byte[] bytes;
+        private final int headerLength;
+        private final long time;
+
+        private Recovery(Path path, File base, byte[] bytes, int headerLength, long time) {
+            this.path = path;
+            this.base = base;
+            this.bytes = bytes;
+            this.headerLength = headerLength;
+            this.time = time;
+        }
+
+        public File getBase() {
+            return base;
+        }
+
+        /**
+         * проигрывает правки по порядку, недописанная последняя запись пропускается
+         *
+         * @return число проигранных правок
+         */
+        public int replay(Document document) throws BadLocationException {
+            final ByteBuffer records = ByteBuffer.wrap(bytes, headerLength, bytes.length - headerLength);
+            int count = 0;
+            while (records.remaining() >= RECORD_HEADER) {
+                final byte type = records.get();
+                if (type == REPLACE) {
+                    if (!replayReplace(document, records)) {
+                        break;
+                    }
+                    count++;
+                    continue;
+                }
+                final int offset = records.getInt();
+                final int length = records.getInt();
+                if (type == REMOVE) {
+                    document.remove(offset, length);
+                } else if (type == INSERT && records.remaining() >= 2L * length) {
+                    final char[] text = new char[length];
+                    records.asCharBuffer().get(text);
+                    records.position(records.position() + 2 * length);
+                    document.insertString(offset, new String(text), null);
+                } else {
+                    break;
+                }
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * проигрывает замену участков, false - запись не дописана
+         */
+        private static boolean replayReplace(Document document, ByteBuffer records) throws BadLocationException {
+            if (records.remaining() < REPLACE_HEADER - 1) {
+                return false;
+            }
+            final int count = records.getInt();
+            final int oldLength = records.getInt();
+            final int newLength = records.getInt();
+            final boolean shared = records.get() != 0;
+            final long textLength = shared ? newLength : (long) count * newLength;
+            if (records.remaining() < 4L * count + 2 * textLength) {
+                return false;
+            }
+            final int[] starts = new int[count];
+            records.asIntBuffer().get(starts);
+            records.position(records.position() + 4 * count);
+            final char[] text = new char[(int) textLength];
+            records.asCharBuffer().get(text);
+            records.position(records.position() + 2 * text.length);
+            if (shared && oldLength > 0 && document instanceof TextDocument) {
+                ((TextDocument) document).replace(starts, count, oldLength, new String(text));
+                return true;
+            }
+            // с конца, чтобы смещения еще не замененных участков не сдвигались
+            for (int k = count - 1; k >= 0; k--) {
+                document.remove(starts[k], oldLength);
+                document.insertString(starts[k], new String(text, shared ? 0 : k * newLength, newLength), null);
+            }
+            return true;
+        }
+
+        /**
+         * удаляет журнал после восстановления или отказа от него
+         */
+        public void discard() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package by.azzi.jnotepad.document;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * отпечаток файла на момент чтения или записи: размер, время изменения и CRC32 содержимого.
+ * Размер и время сверяются дешево, по ним видно, что файл, возможно, изменился; хеш отличает
+ * настоящее изменение от перезаписи тем же содержимым
+ */
+public final class FileStamp {
+
+    /**
+     * свойство документа с отпечатком файла, из которого прочитан или в который записан документ
+     */
+    public static final String PROPERTY = "fileStamp";
+
+    /**
+     * файл хешируется отображенными кусками такого размера
+     */
+    private static final long MAP_CHUNK = 64L << 20;
+
+    private final long size;
+    private final long lastModified;
+    private final long hash;
+
+    private FileStamp(long size, long lastModified, long hash) {
+        this.size = size;
+        this.lastModified = lastModified;
+        this.hash = hash;
+    }
+
+    /**
+     * отпечаток по уже отображенному содержимому файла; время берется до чтения,
+     * так что запись во время хеширования потом видна как изменение
+     */
+    static FileStamp of(long lastModified, ByteBuffer content) {
+        final CRC32 crc = new CRC32();
+        crc.update(content.duplicate());
+        return new FileStamp(content.remaining(), lastModified, crc.getValue());
+    }
+
+    /**
+     * читает файл целиком, null если его нет
+     */
+    public static FileStamp read(File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        final long lastModified = file.lastModified();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final CRC32 crc = new CRC32();
+            for (long position = 0; position < size; position += MAP_CHUNK) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK, size - position)));
+            }
+            return new FileStamp(size, lastModified, crc.getValue());
+        }
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * у файла те же размер и время изменения, содержимое не читается
+     */
+    public boolean matches(File file) {
+        return file.length() == size && file.lastModified() == lastModified;
+    }
+
+    /**
+     * то же содержимое, время изменения не важно
+     */
+    public boolean sameContent(FileStamp other) {
+        return other != null && other.size == size && other.hash == hash;
+    }
+}
@@ -0,0 +1,212 @@
+package by.azzi.jnotepad.document;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * слежение за файлом, в конец которого дописывают, например за логом.
+ * <p>
+ * Фоновый поток ждет изменений каталога через {@link WatchService}, а если события не приходят
+ * (сетевые диски, файловые системы без уведомлений) - проверяет размер файла раз в {@link #POLL_MILLIS}.
+ * Читаются только байты после уже прочитанных, кусками по {@link #CHUNK} байт; они декодируются
+ * в кодировке документа, переводы строк приводятся к '\n' как в {@link TextReader}, причем
+ * последовательность байт или "\r\n", разорванная между кусками, склеивается
+ */
+public final class FileTail implements Closeable {
+
+    /**
+     * получатель дописанного, вызывается в потоке слежения
+     */
+    public interface Listener {
+
+        /**
+         * дописанный текст, переводы строк уже '\n'. Может блокировать поток слежения,
+         * пока получатель не разберет накопленное
+         */
+        void appended(String text) throws InterruptedException;
+
+        /**
+         * файл стал короче прочитанного - его перезаписали или обрезали; слежение прекращается
+         */
+        void truncated();
+    }
+
+    static final long POLL_MILLIS = 500;
+    static final int CHUNK = 1 << 20;
+
+    private final Path path;
+    private final TextFormat format;
+    private final Listener listener;
+    private final CharsetDecoder decoder;
+    private final ByteBuffer in = ByteBuffer.allocate(CHUNK);
+    private final char[] chars;
+    private long offset;
+    private boolean started;
+    private boolean lastWasCR;
+    private volatile boolean closed;
+    private Thread thread;
+
+    FileTail(File file, long offset, TextFormat format, Listener listener) {
+        this.path = file.toPath();
+        this.offset = offset;
+        this.format = format;
+        this.listener = listener;
+        this.decoder = format.getCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = new char[(int) (CHUNK * (double) decoder.maxCharsPerByte()) + 16];
+    }
+
+    /**
+     * начинает следить за файлом, прочитанным до offset байт
+     */
+    public static FileTail follow(File file, long offset, TextFormat format, Listener listener) {
+        final FileTail tail = new FileTail(file, offset, format, listener);
+        tail.thread = new Thread(tail::run, "file-tail");
+        tail.thread.setDaemon(true);
+        tail.thread.start();
+        return tail;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        WatchService watcher = null;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            path.toAbsolutePath().getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException ex) {
+            // остается опрос по таймеру
+            watcher = close(watcher);
+        }
+        try {
+            while (!closed) {
+                check();
+                if (watcher == null) {
+                    Thread.sleep(POLL_MILLIS);
+                    continue;
+                }
+                // таймаут - тот же опрос, если уведомление не пришло
+                final WatchKey key = watcher.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // слежение закрыто
+        } finally {
+            close(watcher);
+        }
+    }
+
+    private static WatchService close(WatchService watcher) {
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * дочитывает файл до текущего размера
+     */
+    void check() throws InterruptedException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (!started) {
+                started = true;
+                lastWasCR = endsWithCR(channel);
+            }
+            final long size = channel.size();
+            if (size < offset) {
+                closed = true;
+                listener.truncated();
+                return;
+            }
+            while (offset < size && !closed) {
+                in.limit((int) Math.min(in.capacity(), in.position() + size - offset));
+                final int read = channel.read(in, offset);
+                if (read <= 0) {
+                    break;
+                }
+                offset += read;
+                in.flip();
+                final CharBuffer out = CharBuffer.wrap(chars);
+                final CoderResult result = decoder.decode(in, out, false);
+                if (result.isOverflow()) {
+                    throw new IllegalStateException("буфер символов меньше куска байт");
+                }
+                // недекодированный хвост символа останется в начале буфера до следующего куска
+                in.compact();
+                final int length = normalize(out.position());
+                if (length > 0) {
+                    listener.appended(new String(chars, 0, length));
+                }
+            }
+        } catch (NoSuchFileException ex) {
+            // файл переименовали при ротации лога, ждем нового
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * был ли последним прочитанным символом '\r', тогда '\n' в начале дописанного уже учтен
+     */
+    private boolean endsWithCR(FileChannel channel) throws IOException {
+        final int unit = format.isAsciiCompatible() ? 1 : 2;
+        if (offset < unit) {
+            return false;
+        }
+        final ByteBuffer last = ByteBuffer.allocate(unit);
+        channel.read(last, offset - unit);
+        last.flip();
+        return "\r".equals(format.getCharset().decode(last).toString());
+    }
+
+    /**
+     * приводит переводы строк в первых length символах к '\n' на месте и возвращает новую длину
+     */
+    private int normalize(int length) {
+        int w = 0;
+        for (int r = 0; r < length; r++) {
+            final char c = chars[r];
+            if (c == '\r') {
+                chars[w++] = '\n';
+                lastWasCR = true;
+            } else {
+                if (c != '\n' || !lastWasCR) {
+                    chars[w++] = c;
+                }
+                lastWasCR = false;
+            }
+        }
+        return w;
+    }
+}
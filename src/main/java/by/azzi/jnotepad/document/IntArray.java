@@ -0,0 +1,52 @@
+package by.azzi.jnotepad.document;
+
+import java.util.Arrays;
+
+/**
+ * растущий массив int без упаковки в Integer
+ */
+public class IntArray {
+
+    private int[] values;
+    private int size;
+
+    public IntArray() {
+        this(16);
+    }
+
+    public IntArray(int capacity) {
+        values = new int[Math.max(1, capacity)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * отбрасывает значения начиная с индекса size
+     */
+    public void truncate(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IndexOutOfBoundsException(String.valueOf(size));
+        }
+        this.size = size;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,293 @@
+package by.azzi.jnotepad.document;
+
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * построчная разница двух текстов алгоритмом Майерса в линейной памяти: общие начало и конец
+ * отрезаются, остаток делится пополам по середине кратчайшего пути правок и так далее.
+ * Строки сравниваются по 64-битным хешам, которые считаются одним проходом по кускам снимка,
+ * сами тексты в памяти не копируются. Строка - символы вместе с ее '\n', последняя строка
+ * без '\n' считается, только если она не пустая. Если в куске правок больше {@link #MAX_COST},
+ * он делится в самой дальней точке, до которой дошел поиск из начала, как в xdiff: разница
+ * остается верной, но может быть не самой короткой
+ */
+public final class LineDiff {
+
+    private static final int MAX_COST = 4096;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * строки [oldLine, oldLine + oldCount) старого текста заменяются строками
+     * [newLine, newLine + newCount) нового
+     */
+    public static final class Hunk {
+        private final int oldLine;
+        private final int oldCount;
+        private final int newLine;
+        private final int newCount;
+
+        Hunk(int oldLine, int oldCount, int newLine, int newCount) {
+            this.oldLine = oldLine;
+            this.oldCount = oldCount;
+            this.newLine = newLine;
+            this.newCount = newCount;
+        }
+
+        public int getOldLine() {
+            return oldLine;
+        }
+
+        public int getOldCount() {
+            return oldCount;
+        }
+
+        public int getNewLine() {
+            return newLine;
+        }
+
+        public int getNewCount() {
+            return newCount;
+        }
+
+        @Override
+        public String toString() {
+            return oldLine + "," + oldCount + " -> " + newLine + "," + newCount;
+        }
+    }
+
+    private final long[] a;
+    private final long[] b;
+    private final List<Hunk> hunks = new ArrayList<>();
+
+    private LineDiff(long[] a, long[] b) {
+        this.a = a;
+        this.b = b;
+    }
+
+    /**
+     * отличия updated от old по возрастанию строк; прерывается вместе с потоком
+     */
+    public static List<Hunk> diff(TextSnapshot old, TextSnapshot updated) throws InterruptedException {
+        return diff(hashLines(old), hashLines(updated));
+    }
+
+    static List<Hunk> diff(long[] a, long[] b) throws InterruptedException {
+        final LineDiff diff = new LineDiff(a, b);
+        diff.compare(0, a.length, 0, b.length);
+        return diff.hunks;
+    }
+
+    /**
+     * переносит отличия updated от общей версии base на текст, который сам отличается от base
+     * на local: строки отличия сдвигаются на правки local выше него. Отличия, задевающие строки
+     * правок local или вставку на том же месте, не переносятся, а добавляются в conflicts
+     */
+    public static List<Hunk> rebase(List<Hunk> local, List<Hunk> updated, List<Hunk> conflicts) {
+        final List<Hunk> rebased = new ArrayList<>();
+        int shift = 0;
+        int i = 0;
+        for (Hunk hunk : updated) {
+            final int start = hunk.oldLine;
+            final int end = start + hunk.oldCount;
+            for (; i < local.size(); i++) {
+                final Hunk before = local.get(i);
+                if (before.oldLine + before.oldCount > start || before.oldLine == start) {
+                    break;
+                }
+                shift += before.newCount - before.oldCount;
+            }
+            boolean conflict = false;
+            for (int j = i; j < local.size() && !conflict; j++) {
+                final Hunk edit = local.get(j);
+                if (edit.oldLine >= end && edit.oldLine != start) {
+                    break;
+                }
+                conflict = edit.oldLine == start || edit.oldLine < end && start < edit.oldLine + edit.oldCount;
+            }
+            if (conflict) {
+                conflicts.add(hunk);
+            } else {
+                rebased.add(new Hunk(start + shift, hunk.oldCount, hunk.newLine, hunk.newCount));
+            }
+        }
+        return rebased;
+    }
+
+    /**
+     * начало строки line в смысле {@link LineDiff} по элементам строк документа;
+     * строка за последней начинается в конце текста
+     */
+    public static int lineStart(Element root, int line) {
+        return line < root.getElementCount()
+                ? root.getElement(line).getStartOffset()
+                : root.getDocument().getLength();
+    }
+
+    static long[] hashLines(TextSnapshot text) throws InterruptedException {
+        long[] hashes = new long[1024];
+        int count = 0;
+        long hash = FNV_OFFSET;
+        final Segment segment = new Segment();
+        final int length = text.length();
+        int offset = 0;
+        while (offset < length) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            text.segment(offset, length - offset, segment);
+            final char[] array = segment.array;
+            for (int i = segment.offset, end = segment.offset + segment.count; i < end; i++) {
+                final char c = array[i];
+                hash = (hash ^ c) * FNV_PRIME;
+                if (c == '\n') {
+                    if (count == hashes.length) {
+                        hashes = Arrays.copyOf(hashes, count * 2);
+                    }
+                    hashes[count++] = hash;
+                    hash = FNV_OFFSET;
+                }
+            }
+            offset += segment.count;
+        }
+        if (length > 0 && text.charAt(length - 1) != '\n') {
+            hashes = Arrays.copyOf(hashes, count + 1);
+            hashes[count++] = hash;
+        }
+        return Arrays.copyOf(hashes, count);
+    }
+
+    private void compare(int aLo, int aHi, int bLo, int bHi) throws InterruptedException {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi || bLo == bHi) {
+            add(aLo, aHi, bLo, bHi);
+            return;
+        }
+        final long split = bisect(aLo, aHi - aLo, bLo, bHi - bLo);
+        final int x = aLo + (int) (split >> 32);
+        final int y = bLo + (int) split;
+        if (split < 0 || x == aLo && y == bLo || x == aHi && y == bHi) {
+            add(aLo, aHi, bLo, bHi);
+            return;
+        }
+        compare(aLo, x, bLo, y);
+        compare(x, aHi, y, bHi);
+    }
+
+    /**
+     * точка (x, y) на кратчайшем пути правок, упакованная в long: пути ищутся навстречу друг
+     * другу из начала и из конца. Если правок больше {@link #MAX_COST} - самая дальняя точка
+     * пути из начала; -1, если и на ней общих строк меньше, чем правок: такие куски почти
+     * не похожи, и дробить их дальше - только тратить время
+     */
+    private long bisect(int aLo, int n, int bLo, int m) throws InterruptedException {
+        final int maxD = Math.min((n + m + 1) / 2, MAX_COST);
+        final int vOffset = maxD;
+        final int vLength = 2 * maxD + 2;
+        final int[] v1 = new int[vLength];
+        final int[] v2 = new int[vLength];
+        Arrays.fill(v1, -1);
+        Arrays.fill(v2, -1);
+        v1[vOffset + 1] = 0;
+        v2[vOffset + 1] = 0;
+        final int delta = n - m;
+        // при нечетной разнице длин пути встречаются на ходе из начала, иначе - из конца
+        final boolean front = (delta & 1) != 0;
+        int k1start = 0;
+        int k1end = 0;
+        int k2start = 0;
+        int k2end = 0;
+        for (int d = 0; d < maxD; d++) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                final int k1Offset = vOffset + k1;
+                int x1 = k1 == -d || k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1]
+                        ? v1[k1Offset + 1]
+                        : v1[k1Offset - 1] + 1;
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+                    x1++;
+                    y1++;
+                }
+                v1[k1Offset] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    final int k2Offset = vOffset + delta - k1;
+                    if (k2Offset >= 0 && k2Offset < vLength && v2[k2Offset] != -1 && x1 >= n - v2[k2Offset]) {
+                        return (long) x1 << 32 | y1;
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                final int k2Offset = vOffset + k2;
+                int x2 = k2 == -d || k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1]
+                        ? v2[k2Offset + 1]
+                        : v2[k2Offset - 1] + 1;
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m && a[aLo + n - x2 - 1] == b[bLo + m - y2 - 1]) {
+                    x2++;
+                    y2++;
+                }
+                v2[k2Offset] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    final int k1Offset = vOffset + delta - k2;
+                    if (k1Offset >= 0 && k1Offset < vLength && v1[k1Offset] != -1) {
+                        final int x1 = v1[k1Offset];
+                        final int y1 = vOffset + x1 - k1Offset;
+                        if (x1 >= n - x2) {
+                            return (long) x1 << 32 | y1;
+                        }
+                    }
+                }
+            }
+        }
+        long furthest = -1;
+        // на каждом шаге пути одна правка, остальное - общие строки парами
+        int best = 2 * maxD;
+        for (int k1 = -maxD + 1 + k1start; k1 <= maxD - 1 - k1end; k1 += 2) {
+            final int x1 = v1[vOffset + k1];
+            final int y1 = x1 - k1;
+            if (x1 >= 0 && x1 <= n && y1 >= 0 && y1 <= m && x1 + y1 > best) {
+                best = x1 + y1;
+                furthest = (long) x1 << 32 | y1;
+            }
+        }
+        return furthest;
+    }
+
+    /**
+     * добавляет замену, смыкающуюся с предыдущей - склеивает с ней
+     */
+    private void add(int aLo, int aHi, int bLo, int bHi) {
+        if (aLo == aHi && bLo == bHi) {
+            return;
+        }
+        final int last = hunks.size() - 1;
+        final Hunk previous = last >= 0 ? hunks.get(last) : null;
+        if (previous != null && previous.oldLine + previous.oldCount == aLo && previous.newLine + previous.newCount == bLo) {
+            hunks.set(last, new Hunk(previous.oldLine, aHi - previous.oldLine, previous.newLine, bHi - previous.newLine));
+        } else {
+            hunks.add(new Hunk(aLo, aHi - aLo, bLo, bHi - bLo));
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package by.azzi.jnotepad.document;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Segment;
+
+/**
+ * начала строк документа в массиве int с разрывом у места последней правки.
+ * <p>
+ * Начала строк до разрыва хранятся как есть, после разрыва - относительно конца текста,
+ * поэтому правка сдвигает разрыв к своей строке и не трогает остальные строки.
+ * Строка по смещению и смещение по строке ищутся двоичным поиском без создания объектов.
+ * Индекс обновляется содержимым документа до рассылки событий, в том числе при отмене и повторе.
+ */
+public final class LineIndex {
+
+    private final AbstractDocument.Content content;
+    private final Segment segment = new Segment();
+
+    private int[] starts;
+    private int gapStart;
+    private int gapEnd;
+    /**
+     * длина содержимого вместе с последним '\n', от нее отсчитываются начала после разрыва
+     */
+    private int length;
+
+    /**
+     * индекс по концам строк кроме последней, как их дает {@link TextReader#getLineEnds()}
+     */
+    LineIndex(AbstractDocument.Content content, IntArray lineEnds) {
+        this.content = content;
+        this.length = content.length();
+        final int count = lineEnds.size() + 1;
+        starts = new int[count + count / 8 + 16];
+        for (int i = 1; i < count; i++) {
+            starts[i] = lineEnds.get(i - 1);
+        }
+        gapStart = count;
+        gapEnd = starts.length;
+        segment.setPartialReturn(true);
+    }
+
+    public int getLineCount() {
+        return starts.length - (gapEnd - gapStart);
+    }
+
+    /**
+     * смещение начала строки line
+     */
+    public int getLineStart(int line) {
+        if (line < 0 || line >= getLineCount()) {
+            throw new IndexOutOfBoundsException(String.valueOf(line));
+        }
+        return get(line);
+    }
+
+    /**
+     * смещение после конца строки line вместе с ее '\n'
+     */
+    public int getLineEnd(int line) {
+        return line + 1 < getLineCount() ? getLineStart(line + 1) : length;
+    }
+
+    /**
+     * номер строки со смещением offset, смещения за концом текста относятся к последней строке
+     */
+    public int getLineOfOffset(int offset) {
+        int lo = 0;
+        int hi = getLineCount() - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (get(mid) <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * память кучи под массив начал строк вместе с разрывом
+     */
+    long getHeapSize() {
+        return 4L * starts.length;
+    }
+
+    // == updates ==
+
+    /**
+     * после вставки length символов со смещения offset
+     */
+    void inserted(int offset, int length) {
+        moveGap(getLineOfOffset(offset) + 1);
+        try {
+            int from = offset;
+            final int to = offset + length;
+            while (from < to) {
+                content.getChars(from, to - from, segment);
+                for (int i = 0; i < segment.count; i++) {
+                    if (segment.array[segment.offset + i] == '\n') {
+                        add(from + i + 1);
+                    }
+                }
+                from += segment.count;
+            }
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        this.length += length;
+    }
+
+    /**
+     * перед удалением length символов со смещения offset
+     */
+    void removing(int offset, int length) {
+        final int first = getLineOfOffset(offset) + 1;
+        final int last = getLineOfOffset(offset + length);
+        moveGap(first);
+        // строки, чьи '\n' удаляются, уходят в разрыв
+        gapEnd += last - first + 1;
+        this.length -= length;
+    }
+
+    /**
+     * после замены участков длины oldLength со смещений matches на участки длины newLength:
+     * начала строк между участками только сдвигаются, текст читается лишь в новых участках,
+     * а если у них общий текст replacement - только в нем
+     */
+    void replaced(int[] matches, int oldLength, int newLength, String replacement) {
+        final int count = matches.length;
+        final int delta = newLength - oldLength;
+        final int first = getLineOfOffset(matches[0]) + 1;
+        final int last = getLineOfOffset(matches[count - 1] + oldLength);
+        moveGap(first);
+        // старые начала строк внутри замены уходят в разрыв и возвращаются со сдвигом
+        final int[] old = new int[last - first + 1];
+        for (int i = 0; i < old.length; i++) {
+            old[i] = this.starts[gapEnd + i] + length;
+        }
+        gapEnd += old.length;
+        final IntArray newLines = new IntArray();
+        if (replacement != null) {
+            for (int i = replacement.indexOf('\n'); i >= 0; i = replacement.indexOf('\n', i + 1)) {
+                newLines.add(i + 1);
+            }
+        }
+        int next = 0;
+        try {
+            for (int k = 0; k < count; k++) {
+                final int start = matches[k];
+                for (; next < old.length && old[next] <= start; next++) {
+                    add(old[next] + k * delta);
+                }
+                // '\n' заменяемого участка уходит вместе с ним
+                while (next < old.length && old[next] <= start + oldLength) {
+                    next++;
+                }
+                int from = start + k * delta;
+                if (replacement != null) {
+                    for (int i = 0; i < newLines.size(); i++) {
+                        add(from + newLines.get(i));
+                    }
+                    continue;
+                }
+                final int to = from + newLength;
+                while (from < to) {
+                    content.getChars(from, to - from, segment);
+                    for (int i = 0; i < segment.count; i++) {
+                        if (segment.array[segment.offset + i] == '\n') {
+                            add(from + i + 1);
+                        }
+                    }
+                    from += segment.count;
+                }
+            }
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        for (; next < old.length; next++) {
+            add(old[next] + count * delta);
+        }
+        length += count * delta;
+    }
+
+    private int get(int line) {
+        return line < gapStart ? starts[line] : starts[line + gapEnd - gapStart] + length;
+    }
+
+    private void add(int start) {
+        if (gapStart == gapEnd) {
+            final int count = starts.length;
+            final int[] grown = new int[count + count / 2 + 16];
+            final int tail = count - gapEnd;
+            System.arraycopy(starts, 0, grown, 0, gapStart);
+            System.arraycopy(starts, gapEnd, grown, grown.length - tail, tail);
+            gapEnd = grown.length - tail;
+            starts = grown;
+        }
+        starts[gapStart++] = start;
+    }
+
+    /**
+     * переносит разрыв перед строкой line, перенесенные начала меняют точку отсчета
+     */
+    private void moveGap(int line) {
+        final int gap = gapEnd - gapStart;
+        while (gapStart > line) {
+            gapStart--;
+            starts[gapStart + gap] = starts[gapStart] - length;
+        }
+        while (gapStart < line) {
+            starts[gapStart] = starts[gapStart + gap] + length;
+            gapStart++;
+        }
+        gapEnd = gapStart + gap;
+    }
+}
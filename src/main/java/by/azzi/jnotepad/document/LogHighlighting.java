@@ -0,0 +1,299 @@
+package by.azzi.jnotepad.document;
+
+import by.azzi.jnotepad.listeners.DocumentListener;
+
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.EventListenerList;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Segment;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * состояния строк документа для подсветки журналов, см. {@link LogTokenizer}.
+ * <p>
+ * Состояния хранятся по int на строку. Правка заново размечает только свои строки и идет
+ * дальше, пока у следующих строк-продолжений меняется унаследованный уровень. Неразмеченные
+ * строки размечаются при первом запросе, то есть при отрисовке, вместе со строками выше до
+ * ближайшего заголовка записи. Большой документ размечается целиком в фоне по снимку, правки,
+ * сделанные за это время, потом повторяются на результате. Вызывается в потоке событий
+ */
+public class LogHighlighting implements DocumentListener {
+
+    /**
+     * документы меньше этого размера размечаются сразу, без фонового потока
+     */
+    private static final int SYNC_LIMIT = 1024 * 1024;
+    /**
+     * сколько строк вверх ищется заголовок записи при разметке по запросу
+     */
+    private static final int LOOKBACK = 256;
+    /**
+     * правка большего числа строк размечается лениво
+     */
+    private static final int EAGER_LINES = 1024;
+
+    private final EventListenerList listenerList = new EventListenerList();
+    private final ChangeEvent changeEvent = new ChangeEvent(this);
+    private final Segment segment = new Segment();
+
+    private TextDocument document;
+    private int[] states = new int[16];
+    private int size;
+    private SwingWorker<int[], Void> worker;
+    /**
+     * замены строк за время фоновой разметки: тройки index, removed, added
+     */
+    private IntArray pending;
+
+    public TextDocument getDocument() {
+        return document;
+    }
+
+    public void setDocument(TextDocument document) {
+        if (this.document != null) {
+            this.document.removeDocumentListener(this);
+        }
+        if (worker != null) {
+            worker.cancel(true);
+            worker = null;
+        }
+        pending = null;
+        this.document = document;
+        size = 0;
+        if (document != null) {
+            document.addDocumentListener(this);
+            final int count = document.getLineIndex().getLineCount();
+            replaceLines(0, 0, count);
+            if (document.getLength() < SYNC_LIMIT) {
+                tokenize(0, count - 1);
+            } else {
+                tokenizeInBackground(document.snapshot());
+            }
+        }
+        fireStateChanged();
+    }
+
+    /**
+     * состояние строки, неразмеченная строка размечается сейчас
+     */
+    public int getState(int line) {
+        if (line < 0 || line >= size) {
+            return LogTokenizer.NONE;
+        }
+        final int state = states[line];
+        if (state != LogTokenizer.UNKNOWN && !LogTokenizer.isContinuation(state)) {
+            return state;
+        }
+        // продолжение верно, если все строки до заголовка записи размечены
+        int first = state == LogTokenizer.UNKNOWN ? line : -1;
+        for (int k = line - 1; k >= 0 && line - k <= LOOKBACK; k--) {
+            final int above = states[k];
+            if (above == LogTokenizer.UNKNOWN) {
+                first = k;
+            } else if (!LogTokenizer.isContinuation(above)) {
+                break;
+            }
+        }
+        if (first < 0) {
+            return state;
+        }
+        tokenize(first, line);
+        return states[line];
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listenerList.add(ChangeListener.class, listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listenerList.remove(ChangeListener.class, listener);
+    }
+
+    // == listeners ==
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        update(e, e.getOffset() + e.getLength());
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        update(e, e.getOffset());
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        update(e, e.getOffset() + e.getLength());
+    }
+
+    /**
+     * строки правки становятся неразмеченными и, если их немного, размечаются заново
+     */
+    private void update(DocumentEvent e, int changeEnd) {
+        final Element root = document.getDefaultRootElement();
+        final DocumentEvent.ElementChange change = e.getChange(root);
+        if (change != null) {
+            replaceLines(change.getIndex(), TextDocument.getRemovedCount(change), TextDocument.getAddedCount(change));
+        }
+        final int first = root.getElementIndex(e.getOffset());
+        final int last = root.getElementIndex(Math.min(changeEnd, document.getLength()));
+        replaceLines(first, last - first + 1, last - first + 1);
+        if (last - first < EAGER_LINES && tokenize(first, last) > last) {
+            // уровень сменился и у строк за правкой
+            fireStateChanged();
+        }
+    }
+
+    // == tokenizing ==
+
+    /**
+     * removed строк с index заменяются added неразмеченными
+     */
+    private void replaceLines(int index, int removed, int added) {
+        if (pending != null) {
+            pending.add(index);
+            pending.add(removed);
+            pending.add(added);
+        }
+        states = replace(states, size, index, removed, added);
+        size += added - removed;
+    }
+
+    private static int[] replace(int[] states, int size, int index, int removed, int added) {
+        final int newSize = size - removed + added;
+        int[] target = states;
+        if (states.length < newSize) {
+            target = new int[newSize + newSize / 8 + 16];
+            System.arraycopy(states, 0, target, 0, index);
+        }
+        System.arraycopy(states, index + removed, target, index + added, size - index - removed);
+        Arrays.fill(target, index, index + added, LogTokenizer.UNKNOWN);
+        return target;
+    }
+
+    /**
+     * размечает строки [first, last] и следующие, пока их состояние меняется;
+     * возвращает последнюю размеченную строку
+     */
+    private int tokenize(int first, int last) {
+        final LineIndex lines = document.getLineIndex();
+        int previous = first > 0 ? states[first - 1] : LogTokenizer.UNKNOWN;
+        int line = first;
+        for (; line < size; line++) {
+            final int old = states[line];
+            if (line > last && (old == LogTokenizer.UNKNOWN || !LogTokenizer.isContinuation(old))) {
+                // заголовок записи от предыдущих строк не зависит, неразмеченное разметится по запросу
+                break;
+            }
+            final int start = lines.getLineStart(line);
+            final int length = Math.min(LogTokenizer.HEAD, Math.max(0, lines.getLineEnd(line) - 1 - start));
+            try {
+                document.getText(start, length, segment);
+            } catch (BadLocationException ex) {
+                throw new IllegalStateException(ex);
+            }
+            final int state = LogTokenizer.tokenize(segment.array, segment.offset, segment.count, previous);
+            states[line] = state;
+            previous = state;
+            if (line > last && state == old) {
+                break;
+            }
+        }
+        return line - 1 > last ? line - 1 : last;
+    }
+
+    private void tokenizeInBackground(TextSnapshot snapshot) {
+        final SwingWorker<int[], Void> tokenizer = new SwingWorker<int[], Void>() {
+            @Override
+            protected int[] doInBackground() {
+                return tokenizeAll(snapshot);
+            }
+
+            @Override
+            protected void done() {
+                if (worker != this || isCancelled()) {
+                    return;
+                }
+                worker = null;
+                final IntArray replaced = pending;
+                pending = null;
+                try {
+                    merge(get(), replaced);
+                } catch (InterruptedException | ExecutionException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        };
+        worker = tokenizer;
+        pending = new IntArray();
+        tokenizer.execute();
+    }
+
+    /**
+     * результат фоновой разметки с повторенными на нем заменами строк становится состояниями
+     */
+    private void merge(int[] tokenized, IntArray replaced) {
+        if (tokenized == null) {
+            return;
+        }
+        int[] merged = tokenized;
+        int count = tokenized.length;
+        for (int i = 0; i < replaced.size(); i += 3) {
+            final int index = replaced.get(i);
+            final int removed = replaced.get(i + 1);
+            final int added = replaced.get(i + 2);
+            merged = replace(merged, count, index, removed, added);
+            count += added - removed;
+        }
+        if (count != size) {
+            return;
+        }
+        // строки, правленые за время фоновой разметки, остаются неразмеченными и разметятся
+        // по запросу уже от верных состояний строк выше
+        states = merged;
+        fireStateChanged();
+    }
+
+    /**
+     * состояния всех строк снимка, null если поток прерван
+     */
+    private static int[] tokenizeAll(TextSnapshot snapshot) {
+        final IntArray tokenized = new IntArray(1024);
+        final Segment segment = new Segment();
+        final char[] head = new char[LogTokenizer.HEAD];
+        final int length = snapshot.length();
+        int headLength = 0;
+        int previous = LogTokenizer.UNKNOWN;
+        int offset = 0;
+        while (offset < length) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            snapshot.segment(offset, length - offset, segment);
+            for (int i = segment.offset, end = segment.offset + segment.count; i < end; i++) {
+                final char c = segment.array[i];
+                if (c == '\n') {
+                    previous = LogTokenizer.tokenize(head, 0, headLength, previous);
+                    tokenized.add(previous);
+                    headLength = 0;
+                } else if (headLength < head.length) {
+                    head[headLength++] = c;
+                }
+            }
+            offset += segment.count;
+        }
+        tokenized.add(LogTokenizer.tokenize(head, 0, headLength, previous));
+        return tokenized.toArray();
+    }
+
+    private void fireStateChanged() {
+        for (ChangeListener listener : listenerList.getListeners(ChangeListener.class)) {
+            listener.stateChanged(changeEvent);
+        }
+    }
+}
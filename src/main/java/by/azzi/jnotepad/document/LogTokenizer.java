@@ -0,0 +1,271 @@
+package by.azzi.jnotepad.document;
+
+/**
+ * разметка строки журнала: метка времени и уровень записи в начале строки.
+ * <p>
+ * Состояние строки упаковано в int: уровень, признак продолжения записи и начала и длины
+ * меток относительно начала строки. Строка без метки времени и уровня - продолжение
+ * предыдущей записи (например, стек исключения) и наследует ее уровень, поэтому состояние
+ * строки зависит от состояния предыдущей. Смотрятся только первые {@link #HEAD} символов строки
+ */
+public final class LogTokenizer {
+
+    /**
+     * строка еще не размечена
+     */
+    public static final int UNKNOWN = -1;
+
+    public static final int NONE = 0;
+    public static final int TRACE = 1;
+    public static final int DEBUG = 2;
+    public static final int INFO = 3;
+    public static final int WARN = 4;
+    public static final int ERROR = 5;
+
+    /**
+     * сколько символов начала строки размечается
+     */
+    public static final int HEAD = 256;
+
+    private static final int LEVEL_MASK = 0x7;
+    private static final int CONTINUATION = 0x8;
+    private static final int TIMESTAMP_START_SHIFT = 4;
+    private static final int TIMESTAMP_LENGTH_SHIFT = 12;
+    private static final int MAX_TIMESTAMP_LENGTH = 63;
+    private static final int LEVEL_START_SHIFT = 18;
+    private static final int LEVEL_LENGTH_SHIFT = 26;
+    /**
+     * метка времени ищется не дальше этого от начала строки
+     */
+    private static final int TIMESTAMP_SEARCH = 32;
+
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+    private static final String[] LEVEL_WORDS = {
+            "TRACE", "FINEST", "FINER", "FINE",
+            "DEBUG", "DBG",
+            "INFO", "NOTICE",
+            "WARN", "WARNING",
+            "ERROR", "ERR", "FATAL", "SEVERE", "CRITICAL", "CRIT", "ALERT", "EMERG"};
+    private static final int[] LEVELS = {
+            TRACE, TRACE, TRACE, TRACE,
+            DEBUG, DEBUG,
+            INFO, INFO,
+            WARN, WARN,
+            ERROR, ERROR, ERROR, ERROR, ERROR, ERROR, ERROR, ERROR};
+
+    private LogTokenizer() {
+    }
+
+    /**
+     * состояние строки chars[offset, offset + count), previous - состояние предыдущей строки
+     * или {@link #UNKNOWN}; символы после {@link #HEAD} не смотрятся
+     */
+    public static int tokenize(char[] chars, int offset, int count, int previous) {
+        count = Math.min(count, HEAD);
+        int timestampStart = 0;
+        int timestampLength = 0;
+        for (int i = 0; i < Math.min(count, TIMESTAMP_SEARCH); i++) {
+            if (i > 0 && isWordChar(chars[offset + i - 1])) {
+                continue;
+            }
+            final int length = timestamp(chars, offset + i, offset + count);
+            if (length > 0 && (i + length == count || !isWordChar(chars[offset + i + length]))) {
+                timestampStart = i;
+                timestampLength = Math.min(length, MAX_TIMESTAMP_LENGTH);
+                break;
+            }
+        }
+        int level = NONE;
+        int levelStart = 0;
+        int levelLength = 0;
+        int i = 0;
+        while (i < count && level == NONE) {
+            if (!isUpper(chars[offset + i]) || i > 0 && isWordChar(chars[offset + i - 1])) {
+                i++;
+                continue;
+            }
+            int end = i;
+            while (end < count && isUpper(chars[offset + end])) {
+                end++;
+            }
+            if (end == count || !isWordChar(chars[offset + end])) {
+                final int word = levelWord(chars, offset + i, end - i);
+                if (word >= 0) {
+                    level = LEVELS[word];
+                    levelStart = i;
+                    levelLength = end - i;
+                }
+            }
+            i = end;
+        }
+        if (timestampLength == 0 && level == NONE) {
+            return (previous == UNKNOWN ? NONE : level(previous)) | CONTINUATION;
+        }
+        return level
+                | timestampStart << TIMESTAMP_START_SHIFT
+                | timestampLength << TIMESTAMP_LENGTH_SHIFT
+                | levelStart << LEVEL_START_SHIFT
+                | levelLength << LEVEL_LENGTH_SHIFT;
+    }
+
+    public static int level(int state) {
+        return state & LEVEL_MASK;
+    }
+
+    /**
+     * строка продолжает предыдущую запись: своих меток у нее нет
+     */
+    public static boolean isContinuation(int state) {
+        return (state & CONTINUATION) != 0;
+    }
+
+    public static int timestampStart(int state) {
+        return state >>> TIMESTAMP_START_SHIFT & 0xff;
+    }
+
+    public static int timestampLength(int state) {
+        return state >>> TIMESTAMP_LENGTH_SHIFT & 0x3f;
+    }
+
+    public static int levelStart(int state) {
+        return state >>> LEVEL_START_SHIFT & 0xff;
+    }
+
+    public static int levelLength(int state) {
+        return state >>> LEVEL_LENGTH_SHIFT & 0xf;
+    }
+
+    /**
+     * длина метки времени с p или 0: дата 2024-01-31 / 2024/01/31 / 31.01.2024 с временем
+     * или без, время 12:34:56.789 с поясом или без, дата syslog "Jan 31 12:34:56"
+     */
+    private static int timestamp(char[] chars, int p, int end) {
+        int q = date(chars, p, end);
+        if (q > p) {
+            if (q + 1 < end && (chars[q] == 'T' || chars[q] == ' ')) {
+                final int t = time(chars, q + 1, end);
+                if (t > q + 1) {
+                    q = t;
+                }
+            }
+            return q - p;
+        }
+        q = syslogDate(chars, p, end);
+        if (q > p) {
+            final int t = time(chars, q, end);
+            return t > q ? t - p : 0;
+        }
+        q = time(chars, p, end);
+        return q - p;
+    }
+
+    /**
+     * конец даты с p или p
+     */
+    private static int date(char[] chars, int p, int end) {
+        if (digits(chars, p, end, 4) && p + 10 <= end
+                && (chars[p + 4] == '-' || chars[p + 4] == '/') && chars[p + 7] == chars[p + 4]
+                && digits(chars, p + 5, end, 2) && digits(chars, p + 8, end, 2)) {
+            return p + 10;
+        }
+        if (digits(chars, p, end, 2) && p + 10 <= end && chars[p + 2] == '.' && chars[p + 5] == '.'
+                && digits(chars, p + 3, end, 2) && digits(chars, p + 6, end, 4)) {
+            return p + 10;
+        }
+        return p;
+    }
+
+    /**
+     * конец "Mmm dd " с p или p
+     */
+    private static int syslogDate(char[] chars, int p, int end) {
+        if (p + 7 > end || chars[p + 3] != ' ' || chars[p + 6] != ' ') {
+            return p;
+        }
+        for (String month : MONTHS) {
+            if (chars[p] == month.charAt(0) && chars[p + 1] == month.charAt(1) && chars[p + 2] == month.charAt(2)) {
+                final boolean day = (chars[p + 4] == ' ' || isDigit(chars[p + 4])) && isDigit(chars[p + 5]);
+                return day ? p + 7 : p;
+            }
+        }
+        return p;
+    }
+
+    /**
+     * конец времени hh:mm[:ss[.fff]][Z|+hh[:]mm] с p или p
+     */
+    private static int time(char[] chars, int p, int end) {
+        if (!digits(chars, p, end, 2) || p + 5 > end || chars[p + 2] != ':' || !digits(chars, p + 3, end, 2)) {
+            return p;
+        }
+        int q = p + 5;
+        if (q + 3 <= end && chars[q] == ':' && digits(chars, q + 1, end, 2)) {
+            q += 3;
+            if (q + 1 < end && (chars[q] == '.' || chars[q] == ',') && isDigit(chars[q + 1])) {
+                q++;
+                while (q < end && isDigit(chars[q])) {
+                    q++;
+                }
+            }
+        }
+        if (q < end && chars[q] == 'Z') {
+            q++;
+        } else if (q + 3 <= end && (chars[q] == '+' || chars[q] == '-') && digits(chars, q + 1, end, 2)) {
+            int z = q + 3;
+            if (z < end && chars[z] == ':') {
+                z++;
+            }
+            if (digits(chars, z, end, 2)) {
+                q = z + 2;
+            }
+        }
+        return q;
+    }
+
+    private static boolean digits(char[] chars, int p, int end, int count) {
+        if (p + count > end) {
+            return false;
+        }
+        for (int i = p; i < p + count; i++) {
+            if (!isDigit(chars[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * символ слова: метки внутри идентификаторов вроде MY_INFO_KEY не ищутся
+     */
+    private static boolean isWordChar(char c) {
+        return c == '_' || Character.isLetterOrDigit(c);
+    }
+
+    private static boolean isUpper(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    /**
+     * индекс слова уровня в {@link #LEVEL_WORDS} или -1
+     */
+    private static int levelWord(char[] chars, int p, int length) {
+        for (int w = 0; w < LEVEL_WORDS.length; w++) {
+            final String word = LEVEL_WORDS[w];
+            if (word.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && chars[p + i] == word.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return w;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,495 @@
+package by.azzi.jnotepad.document;
+
+import javax.swing.text.BadLocationException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * файл больше кучи, открытый только для просмотра.
+ * <p>
+ * Байты не читаются в память целиком: файл отображается окнами через {@link FileChannel#map},
+ * текст декодируется страницами ограниченного размера, см. {@link #page(long, int)}.
+ * Фоновый поток строит разреженный индекс строк - номер строки для начала каждой
+ * {@link #SPARSE}-й строки и для каждого {@link #CHECKPOINT_BYTES} байт, так что переход
+ * к строке и номер строки по смещению просматривают не больше одного такого промежутка.
+ * Поддерживаются только кодировки, где '\n' и '\r' - одиночные байты (не UTF-16)
+ */
+public final class MappedText implements Closeable {
+
+    public static final int DEFAULT_WINDOW = 64 << 20;
+    static final int SPARSE = 1024;
+    static final int CHECKPOINT_BYTES = 1 << 20;
+
+    private final FileChannel channel;
+    private final long size;
+    private final TextFormat format;
+    private final int window;
+    private final long dataStart;
+    /**
+     * пары (номер строки, смещение в ней), по возрастанию; публикуются записью checkpointCount
+     */
+    private volatile long[] checkpoints = new long[512];
+    private volatile int checkpointCount;
+    private volatile long indexed;
+    private volatile long lineCount = -1;
+    private volatile boolean closed;
+
+    private MappedText(FileChannel channel, long size, TextFormat format, int window) {
+        this.channel = channel;
+        this.size = size;
+        this.format = format;
+        this.window = window;
+        this.dataStart = format.getBomLength();
+        addCheckpoint(0, dataStart);
+        final Thread indexer = new Thread(this::index, "line-index");
+        indexer.setDaemon(true);
+        indexer.start();
+    }
+
+    public static MappedText open(File file) throws IOException {
+        return open(file, DEFAULT_WINDOW);
+    }
+
+    /**
+     * window - сколько байт отображается за раз при построении индекса и поиске
+     */
+    public static MappedText open(File file, int window) throws IOException {
+        final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            final long size = channel.size();
+            final TextFormat format = TextFormat.detect(channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, TextReader.SAMPLE_LENGTH)));
+            if (!format.isAsciiCompatible()) {
+                throw new IOException("Просмотр больших файлов в " + format.getCharset().name() + " не поддерживается: " + file);
+            }
+            return new MappedText(channel, size, format, window);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public TextFormat getFormat() {
+        return format;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * смещение первого символа, за BOM
+     */
+    public long getDataStart() {
+        return dataStart;
+    }
+
+    /**
+     * отображает length байт с position, только для чтения
+     */
+    public ByteBuffer map(long position, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+    }
+
+    // == индекс строк ==
+
+    /**
+     * построен ли индекс до конца файла
+     */
+    public boolean isIndexed() {
+        return lineCount >= 0;
+    }
+
+    /**
+     * сколько процентов файла проиндексировано
+     */
+    public int getIndexProgress() {
+        return size == 0 ? 100 : (int) (indexed * 100 / size);
+    }
+
+    /**
+     * число строк, -1 пока индекс строится
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * номер строки, в которой лежит байт position, -1 если индекс до него еще не дошел
+     */
+    public long lineOfOffset(long position) throws IOException {
+        if (position > indexed && !isIndexed()) {
+            return -1;
+        }
+        final int count = checkpointCount;
+        final long[] points = checkpoints;
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (points[2 * mid + 1] <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        final long[] line = {points[2 * low]};
+        scanBreaks(points[2 * low + 1], Math.min(position, size), lineStart -> {
+            line[0]++;
+            return true;
+        });
+        return line[0];
+    }
+
+    /**
+     * смещение начала строки line, -1 если индекс до нее еще не дошел или строки нет
+     */
+    public long offsetOfLine(long line) throws IOException {
+        if (line <= 0) {
+            return line == 0 ? dataStart : -1;
+        }
+        final int count = checkpointCount;
+        final long[] points = checkpoints;
+        if (points[2 * (count - 1)] < line && !isIndexed()) {
+            // строка может быть дальше проиндексированного
+            return -1;
+        }
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (points[2 * mid] < line) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        final long[] rest = {line - points[2 * low]};
+        final long[] found = {-1};
+        scanBreaks(points[2 * low + 1], size, lineStart -> {
+            if (--rest[0] > 0) {
+                return true;
+            }
+            found[0] = lineStart;
+            return false;
+        });
+        return found[0];
+    }
+
+    private void index() {
+        final long[] lines = {0};
+        try {
+            for (long position = dataStart; position < size && !closed; ) {
+                final long end = Math.min(size, position + CHECKPOINT_BYTES);
+                scanBreaks(position, end, lineStart -> {
+                    if (++lines[0] % SPARSE == 0) {
+                        addCheckpoint(lines[0], lineStart);
+                    }
+                    return true;
+                });
+                if (end - checkpoints[2 * (checkpointCount - 1) + 1] >= CHECKPOINT_BYTES && end < size) {
+                    addCheckpoint(lines[0], end);
+                }
+                position = end;
+                indexed = end;
+            }
+            if (closed) {
+                return;
+            }
+            indexed = size;
+            lineCount = lines[0] + 1;
+        } catch (IOException ex) {
+            if (!closed) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    private void addCheckpoint(long line, long offset) {
+        long[] points = checkpoints;
+        final int count = checkpointCount;
+        if (2 * count + 2 > points.length) {
+            points = Arrays.copyOf(points, points.length * 2);
+            checkpoints = points;
+        }
+        points[2 * count] = line;
+        points[2 * count + 1] = offset;
+        checkpointCount = count + 1;
+    }
+
+    private interface BreakVisitor {
+        /**
+         * @return продолжать ли просмотр
+         */
+        boolean visit(long lineStart);
+    }
+
+    /**
+     * переводы строк в [from, to) по правилам {@link TextReader}: '\n', "\r\n" и одиночный '\r';
+     * visitor получает начало следующей строки
+     */
+    private void scanBreaks(long from, long to, BreakVisitor visitor) throws IOException {
+        for (long position = from; position < to; ) {
+            final int length = (int) Math.min(window, to - position);
+            final ByteBuffer bytes = map(position, length);
+            for (int i = 0; i < length; i++) {
+                final byte b = bytes.get(i);
+                if ((b == '\n' || b == '\r' && !isLineFeed(bytes, i + 1, position + i + 1))
+                        && !visitor.visit(position + i + 1)) {
+                    return;
+                }
+            }
+            position += length;
+        }
+    }
+
+    private boolean isLineFeed(ByteBuffer bytes, int index, long position) throws IOException {
+        if (index < bytes.limit()) {
+            return bytes.get(index) == '\n';
+        }
+        return position < size && map(position, 1).get(0) == '\n';
+    }
+
+    // == текст ==
+
+    /**
+     * начало строки, в которой лежит position; назад просматривается не больше limit байт,
+     * для более длинной строки возвращается граница символа
+     */
+    public long lineStart(long position, int limit) throws IOException {
+        final long end = Math.max(dataStart, Math.min(position, size));
+        final long from = Math.max(dataStart, end - limit);
+        final ByteBuffer bytes = map(from, end - from);
+        for (int i = (int) (end - from) - 1; i >= 0; i--) {
+            final byte b = bytes.get(i);
+            if (b == '\n' || b == '\r' && !isLineFeed(bytes, i + 1, from + i + 1)) {
+                return from + i + 1;
+            }
+        }
+        return from == dataStart ? from : charStart(from);
+    }
+
+    /**
+     * страница текста с start не длиннее maxBytes, заканчивается на переводе строки,
+     * если он есть, иначе на границе символа
+     */
+    public Page page(long start, int maxBytes) throws IOException {
+        final long from = Math.max(dataStart, Math.min(start, size));
+        final int length = (int) Math.min(maxBytes, size - from);
+        // байт за страницей нужен для "\r\n" и границы символа на стыке
+        final ByteBuffer bytes = map(from, Math.min(size - from, length + 1L));
+        final IntArray lineStarts = new IntArray();
+        lineStarts.add(0);
+        for (int i = 0; i < length; i++) {
+            final byte b = bytes.get(i);
+            if (b == '\n' || b == '\r' && !isLineFeed(bytes, i + 1, from + i + 1)) {
+                lineStarts.add(i + 1);
+            }
+        }
+        int end = length;
+        if (from + length < size) {
+            final int lastBreak = lineStarts.get(lineStarts.size() - 1);
+            end = lastBreak > 0 ? lastBreak : charEnd(bytes, length);
+        }
+        bytes.limit(end);
+        return new Page(from, bytes.slice(), lineStarts, format.getCharset());
+    }
+
+    /**
+     * символы в [from, to) как есть, без приведения переводов строк
+     */
+    public String decode(long from, long to) throws IOException {
+        return decoder(format.getCharset()).decode(map(from, to - from)).toString();
+    }
+
+    /**
+     * символ, начинающийся с байта position, -1 за концом файла
+     */
+    public int charAt(long position) throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        final CharBuffer chars = decoder(format.getCharset()).decode(map(position, Math.min(4, size - position)));
+        return chars.hasRemaining() ? chars.get(0) : -1;
+    }
+
+    /**
+     * символ, заканчивающийся перед байтом position, -1 в начале файла
+     */
+    public int charBefore(long position) throws IOException {
+        if (position <= dataStart) {
+            return -1;
+        }
+        long start = position - 1;
+        if (isUtf8()) {
+            while (start > dataStart && position - start < 4 && isContinuation(map(start, 1).get(0))) {
+                start--;
+            }
+        }
+        return charAt(start);
+    }
+
+    private long charStart(long position) throws IOException {
+        if (!isUtf8()) {
+            return position;
+        }
+        long start = position;
+        while (start < size && start - position < 3 && isContinuation(map(start, 1).get(0))) {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * граница символа не дальше length, не разрывающая "\r\n"
+     */
+    private int charEnd(ByteBuffer bytes, int length) {
+        int end = length;
+        if (isUtf8()) {
+            while (end > 0 && length - end < 3 && isContinuation(bytes.get(end))) {
+                end--;
+            }
+        }
+        if (end > 0 && bytes.get(end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    private boolean isUtf8() {
+        return StandardCharsets.UTF_8.equals(format.getCharset());
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xC0) == 0x80;
+    }
+
+    private static CharsetDecoder decoder(Charset charset) {
+        return charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * декодированный кусок файла; строки документа страницы соответствуют строкам файла
+     */
+    public static final class Page {
+
+        private final long start;
+        private final ByteBuffer bytes;
+        private final int[] lineStarts;
+        private final Charset charset;
+        private final TextDocument document;
+
+        private Page(long start, ByteBuffer bytes, IntArray lineStarts, Charset charset) throws IOException {
+            this.start = start;
+            this.bytes = bytes;
+            final int end = bytes.limit();
+            int count = lineStarts.size();
+            while (count > 1 && lineStarts.get(count - 1) > end) {
+                count--;
+            }
+            this.lineStarts = Arrays.copyOf(lineStarts.toArray(), count);
+            this.charset = charset;
+            final CharBuffer chars = decoder(charset).decode(bytes.duplicate());
+            final char[] text = new char[chars.remaining()];
+            int length = 0;
+            boolean lastWasCR = false;
+            for (int i = 0; i < text.length; i++) {
+                final char c = chars.get(i);
+                if (c == '\r') {
+                    text[length++] = '\n';
+                    lastWasCR = true;
+                } else {
+                    if (c != '\n' || !lastWasCR) {
+                        text[length++] = c;
+                    }
+                    lastWasCR = false;
+                }
+            }
+            document = new TextDocument(new PieceTableContent(new CharArrayTextBuffer(text, length)));
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return start + bytes.limit();
+        }
+
+        public TextDocument getDocument() {
+            return document;
+        }
+
+        /**
+         * смещение в файле начала строки страницы
+         */
+        public long getLineOffset(int line) {
+            return start + lineStarts[line];
+        }
+
+        /**
+         * строка страницы, в которой лежит байт position
+         */
+        public int lineOf(long position) {
+            final int found = Arrays.binarySearch(lineStarts, (int) Math.max(0, Math.min(position - start, bytes.limit())));
+            return found >= 0 ? found : -found - 2;
+        }
+
+        /**
+         * смещение символа offset документа страницы в файле
+         */
+        public long offsetOf(int offset) {
+            if (offset <= 0) {
+                return start;
+            }
+            final LineIndex lines = document.getLineIndex();
+            final int line = lines.getLineOfOffset(offset);
+            final int lineStart = lines.getLineStart(line);
+            try {
+                final String prefix = document.getText(lineStart, offset - lineStart);
+                return getLineOffset(line) + charset.encode(prefix).remaining();
+            } catch (BadLocationException ex) {
+                throw new IndexOutOfBoundsException(ex.getMessage());
+            }
+        }
+
+        /**
+         * символ документа страницы, с которого начинается байт position файла
+         */
+        public int charOffsetOf(long position) {
+            final int line = lineOf(position);
+            final ByteBuffer prefix = bytes.duplicate();
+            prefix.position(lineStarts[line]);
+            prefix.limit((int) Math.max(lineStarts[line], Math.min(position - start, bytes.limit())));
+            final int column;
+            try {
+                column = decoder(charset).decode(prefix).remaining();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+            final LineIndex lines = document.getLineIndex();
+            return Math.min(lines.getLineStart(line) + column, document.getLength());
+        }
+    }
+}
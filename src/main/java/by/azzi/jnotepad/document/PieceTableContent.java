@@ -0,0 +1,839 @@
+package by.azzi.jnotepad.document;
+
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CannotRedoException;
+import javax.swing.undo.CannotUndoException;
+import javax.swing.undo.UndoableEdit;
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * содержимое документа в виде таблицы кусков (piece table).
+ * <p>
+ * Текст описывается списком кусков, каждый из которых ссылается либо на один из исходных
+ * буферов (обычно отображенная в память копия файла), либо на буфер добавлений, куда
+ * только дописываются вставленные символы. Исходный буфер никогда не копируется,
+ * поэтому память расходуется пропорционально объему правок, а не размеру файла.
+ * Как и у {@link javax.swing.text.GapContent}, содержимое всегда заканчивается '\n'.
+ */
+public class PieceTableContent implements AbstractDocument.Content {
+
+    /**
+     * сколько символов максимум копируется за один частичный вызов getChars
+     */
+    private static final int PARTIAL_COPY_LIMIT = 16 * 1024;
+
+    private final AppendBuffer added = new AppendBuffer();
+    private final TextBuffer[] originals;
+
+    /**
+     * оценка куска в куче: объект и ссылка на него в списке
+     */
+    static final int PIECE_SIZE = 32;
+    /**
+     * оценка позиции в куче: слабая ссылка со смещением, сама позиция и ссылка в списке
+     */
+    private static final int MARK_SIZE = 56;
+
+    private final List<Piece> pieces = new ArrayList<>();
+    /**
+     * смещения начала кусков, актуальны для индексов меньше validOffsets
+     */
+    private int[] pieceOffsets = new int[16];
+    private int validOffsets;
+    private int length;
+
+    /**
+     * позиции отсортированы по смещению
+     */
+    private final List<Mark> marks = new ArrayList<>();
+    private final ReferenceQueue<StickyPosition> queue = new ReferenceQueue<>();
+
+    private EditHook editHook;
+
+    /**
+     * содержимое из исходных буферов, идущих друг за другом
+     */
+    public PieceTableContent(TextBuffer... originals) {
+        this.originals = originals.clone();
+        for (TextBuffer original : originals) {
+            if (original.length() > 0) {
+                pieces.add(new Piece(original, 0, original.length()));
+                length += original.length();
+            }
+        }
+        pieces.add(new Piece(added, added.append("\n"), 1));
+        length++;
+    }
+
+    /**
+     * оценка памяти кучи: исходные буферы в массивах, буфер добавлений, куски со смещениями
+     * и позиции. Отображенные в память буферы в куче не лежат
+     */
+    public long getHeapSize() {
+        long size = added.getHeapSize() + (long) PIECE_SIZE * pieces.size() + 4L * pieceOffsets.length
+                + (long) MARK_SIZE * marks.size();
+        for (TextBuffer original : originals) {
+            if (original instanceof CharArrayTextBuffer) {
+                size += ((CharArrayTextBuffer) original).getHeapSize();
+            } else if (original instanceof ByteTextBuffer) {
+                size += ((ByteTextBuffer) original).getHeapSize();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * выгружает исходные буферы из кучи во временные файлы, см. {@link CharArrayTextBuffer#spill()}.
+     * Текст, куски и правки не меняются; буфер добавлений остается в куче
+     */
+    public void spill() throws IOException {
+        for (TextBuffer original : originals) {
+            if (original instanceof CharArrayTextBuffer) {
+                ((CharArrayTextBuffer) original).spill();
+            } else if (original instanceof ByteTextBuffer) {
+                ((ByteTextBuffer) original).spill();
+            }
+        }
+    }
+
+    /**
+     * возвращает выгруженные буферы в кучу
+     */
+    public void restore() {
+        for (TextBuffer original : originals) {
+            if (original instanceof CharArrayTextBuffer) {
+                ((CharArrayTextBuffer) original).restore();
+            } else if (original instanceof ByteTextBuffer) {
+                ((ByteTextBuffer) original).restore();
+            }
+        }
+    }
+
+    /**
+     * hook вызывается при каждом изменении текста, включая отмену и повтор правок
+     */
+    public void setEditHook(EditHook editHook) {
+        this.editHook = editHook;
+    }
+
+    // == Content ==
+
+    @Override
+    public Position createPosition(int offset) throws BadLocationException {
+        // позиция держится локальной переменной, пока ее не вернули, иначе ее может собрать GC
+        final StickyPosition position = new StickyPosition();
+        final Mark mark = new Mark(position, offset, queue);
+        purgeMarks();
+        marks.add(upperBound(offset), mark);
+        return position;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public UndoableEdit insertString(int where, String str) throws BadLocationException {
+        if (where > length || where < 0) {
+            throw new BadLocationException("Invalid insert", length);
+        }
+        final int n = str.length();
+        if (n == 0) {
+            return null;
+        }
+        final int start = added.append(str);
+        final int index = splitAt(where);
+        final Piece prev = index > 0 ? pieces.get(index - 1) : null;
+        if (prev != null && prev.buffer == added && prev.start + prev.length == start) {
+            // продолжаем набор текста - расширяем предыдущий кусок вместо нового
+            pieces.set(index - 1, new Piece(added, prev.start, prev.length + n));
+        } else {
+            pieces.add(index, new Piece(added, start, n));
+        }
+        invalidate(index);
+        length += n;
+        updateMarksForInsert(where, n);
+        if (editHook != null) {
+            editHook.inserted(where, n);
+        }
+        return new InsertUndo(where, n);
+    }
+
+    @Override
+    public UndoableEdit remove(int where, int nitems) throws BadLocationException {
+        if (where + nitems >= length || where < 0 || nitems < 0) {
+            throw new BadLocationException("Invalid remove", length + 1);
+        }
+        final MarkSnapshot snapshot = snapshotMarks(where, where + nitems);
+        final List<Piece> removed = removeContent(where, nitems);
+        return new RemoveUndo(where, nitems, removed, snapshot);
+    }
+
+    /**
+     * заменяет count вхождений длины matchLength, начинающихся со смещений starts
+     * (по возрастанию, без пересечений), на replacement за один проход по таблице кусков.
+     * Все замены ссылаются на один кусок буфера добавлений. Позиция в начале вхождения
+     * остается в начале замены, позиции внутри вхождения переходят в ее конец
+     */
+    public UndoableEdit replace(int[] starts, int count, int matchLength, String replacement) throws BadLocationException {
+        if (count <= 0 || matchLength <= 0 || starts[0] < 0) {
+            throw new BadLocationException("Invalid replace", count > 0 ? starts[0] : 0);
+        }
+        for (int i = 1; i < count; i++) {
+            if (starts[i] < starts[i - 1] + matchLength) {
+                throw new BadLocationException("Overlapping replace", starts[i]);
+            }
+        }
+        if (starts[count - 1] + matchLength >= length) {
+            throw new BadLocationException("Invalid replace", length + 1);
+        }
+        final Piece piece = replacement.isEmpty() ? null : new Piece(added, added.append(replacement), replacement.length());
+        final ReplaceUndo edit = new ReplaceUndo(Arrays.copyOf(starts, count), matchLength, replacement, piece);
+        edit.apply();
+        return edit;
+    }
+
+    @Override
+    public String getString(int where, int len) throws BadLocationException {
+        final Segment s = new Segment();
+        getChars(where, len, s);
+        return new String(s.array, s.offset, s.count);
+    }
+
+    @Override
+    public void getChars(int where, int len, Segment txt) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length) {
+            throw new BadLocationException("Invalid location", length);
+        }
+        if (len == 0) {
+            txt.array = new char[0];
+            txt.offset = 0;
+            txt.count = 0;
+            return;
+        }
+        final int index = pieceIndex(where);
+        final Piece piece = pieces.get(index);
+        final int inPiece = where - pieceOffsets[index];
+        final int available = piece.length - inPiece;
+        final char[] array = piece.buffer.array();
+        if (array != null && (len <= available || txt.isPartialReturn())) {
+            // отдаем кусок прямо из буфера, без копирования
+            txt.array = array;
+            txt.offset = piece.start + inPiece;
+            txt.count = Math.min(len, available);
+            return;
+        }
+        final int count = txt.isPartialReturn() ? Math.min(len, Math.min(available, PARTIAL_COPY_LIMIT)) : len;
+        final char[] chars = new char[count];
+        copyChars(where, count, chars);
+        txt.array = chars;
+        txt.offset = 0;
+        txt.count = count;
+    }
+
+    /**
+     * байты ISO-8859-1 начала диапазона [where, where + len), если оно лежит в
+     * однобайтовом буфере, иначе null. Как getChars с частичным возвратом, но без
+     * расширения байтов в символы: символ i диапазона - байт position() + i
+     */
+    public ByteBuffer getBytes(int where, int len) throws BadLocationException {
+        if (where < 0 || len <= 0 || where + len > length) {
+            throw new BadLocationException("Invalid location", length);
+        }
+        final int index = pieceIndex(where);
+        final Piece piece = pieces.get(index);
+        final ByteBuffer bytes = piece.buffer.bytes();
+        if (bytes == null) {
+            return null;
+        }
+        final int inPiece = where - pieceOffsets[index];
+        final ByteBuffer view = bytes.duplicate();
+        view.limit(piece.start + inPiece + Math.min(len, piece.length - inPiece));
+        view.position(piece.start + inPiece);
+        return view;
+    }
+
+    /**
+     * неизменяемый снимок символов [where, where + len)
+     */
+    public TextSnapshot snapshot(int where, int len) throws BadLocationException {
+        if (where < 0 || len < 0 || where + len > length) {
+            throw new BadLocationException("Invalid location", length);
+        }
+        // буфер добавлений растет заменой массива, снимок держит текущий массив
+        final TextBuffer frozen = added.freeze();
+        final List<TextBuffer> buffers = new ArrayList<>();
+        final IntArray starts = new IntArray();
+        final IntArray lengths = new IntArray();
+        int offset = where;
+        final int end = where + len;
+        int index = pieceIndex(where);
+        while (offset < end) {
+            final Piece piece = pieces.get(index);
+            final int inPiece = offset - pieceOffsets[index];
+            final int n = Math.min(piece.length - inPiece, end - offset);
+            buffers.add(piece.buffer == added ? frozen : piece.buffer);
+            starts.add(piece.start + inPiece);
+            lengths.add(n);
+            offset += n;
+            index++;
+        }
+        return new TextSnapshot(buffers.toArray(new TextBuffer[0]), starts.toArray(), lengths.toArray());
+    }
+
+    // == pieces ==
+
+    /**
+     * копирует len символов начиная с where в dst
+     */
+    private void copyChars(int where, int len, char[] dst) {
+        int index = pieceIndex(where);
+        int inPiece = where - pieceOffsets[index];
+        int copied = 0;
+        while (copied < len) {
+            final Piece piece = pieces.get(index++);
+            final int n = Math.min(piece.length - inPiece, len - copied);
+            final int from = piece.start + inPiece;
+            piece.buffer.getChars(from, from + n, dst, copied);
+            copied += n;
+            inPiece = 0;
+        }
+    }
+
+    private void insertContent(int where, List<Piece> text) {
+        final int index = splitAt(where);
+        int n = 0;
+        for (Piece piece : text) {
+            n += piece.length;
+        }
+        pieces.addAll(index, text);
+        invalidate(index);
+        length += n;
+        updateMarksForInsert(where, n);
+        if (editHook != null) {
+            editHook.inserted(where, n);
+        }
+    }
+
+    private List<Piece> removeContent(int where, int nitems) {
+        if (editHook != null) {
+            editHook.removing(where, nitems);
+        }
+        final int from = splitAt(where);
+        final int to = splitAt(where + nitems);
+        final List<Piece> range = pieces.subList(from, to);
+        final List<Piece> removed = new ArrayList<>(range);
+        range.clear();
+        invalidate(from);
+        length -= nitems;
+        updateMarksForRemove(where, nitems);
+        return removed;
+    }
+
+    /**
+     * разрезает кусок так, что бы offset был началом куска, и возвращает его индекс
+     */
+    private int splitAt(int offset) {
+        if (offset == length) {
+            return pieces.size();
+        }
+        final int index = pieceIndex(offset);
+        final int inPiece = offset - pieceOffsets[index];
+        if (inPiece == 0) {
+            return index;
+        }
+        final Piece piece = pieces.get(index);
+        pieces.set(index, new Piece(piece.buffer, piece.start, inPiece));
+        pieces.add(index + 1, new Piece(piece.buffer, piece.start + inPiece, piece.length - inPiece));
+        invalidate(index + 1);
+        return index + 1;
+    }
+
+    /**
+     * индекс куска, содержащего offset, для offset == length - количество кусков
+     */
+    private int pieceIndex(int offset) {
+        final int size = pieces.size();
+        if (offset >= length) {
+            return size;
+        }
+        ensureOffsets();
+        int lo = 0;
+        int hi = size - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (pieceOffsets[mid] <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private void ensureOffsets() {
+        final int size = pieces.size();
+        if (validOffsets >= size) {
+            return;
+        }
+        if (pieceOffsets.length < size) {
+            pieceOffsets = Arrays.copyOf(pieceOffsets, Math.max(pieceOffsets.length * 2, size));
+        }
+        int offset = validOffsets == 0 ? 0 : pieceOffsets[validOffsets - 1] + pieces.get(validOffsets - 1).length;
+        for (int i = validOffsets; i < size; i++) {
+            pieceOffsets[i] = offset;
+            offset += pieces.get(i).length;
+        }
+        validOffsets = size;
+    }
+
+    private void invalidate(int index) {
+        validOffsets = Math.min(validOffsets, index);
+    }
+
+    // == marks ==
+
+    private void updateMarksForInsert(int where, int n) {
+        // позиция в начале документа остается на месте, как в GapContent
+        final int from = lowerBound(where == 0 ? 1 : where);
+        for (int i = from, size = marks.size(); i < size; i++) {
+            marks.get(i).offset += n;
+        }
+    }
+
+    private void updateMarksForRemove(int where, int n) {
+        final int end = where + n;
+        for (int i = lowerBound(where), size = marks.size(); i < size; i++) {
+            final Mark mark = marks.get(i);
+            mark.offset = mark.offset >= end ? mark.offset - n : where;
+        }
+    }
+
+    /**
+     * запоминает позиции в диапазоне [from, to], что бы восстановить их при отмене
+     */
+    private MarkSnapshot snapshotMarks(int from, int to) {
+        final int lo = lowerBound(from);
+        final int hi = upperBound(to);
+        final Mark[] refs = marks.subList(lo, hi).toArray(new Mark[0]);
+        final int[] offsets = new int[refs.length];
+        for (int i = 0; i < refs.length; i++) {
+            offsets[i] = refs[i].offset;
+        }
+        return new MarkSnapshot(refs, offsets);
+    }
+
+    private void restoreMarks(MarkSnapshot snapshot) {
+        if (snapshot.marks.length == 0) {
+            return;
+        }
+        for (int i = 0; i < snapshot.marks.length; i++) {
+            snapshot.marks[i].offset = snapshot.offsets[i];
+        }
+        for (int i = 1, size = marks.size(); i < size; i++) {
+            if (marks.get(i - 1).offset > marks.get(i).offset) {
+                marks.sort(Comparator.comparingInt(m -> m.offset));
+                return;
+            }
+        }
+    }
+
+    private void purgeMarks() {
+        if (queue.poll() == null) {
+            return;
+        }
+        while (queue.poll() != null) {
+            // очищаем очередь, удалим все разом
+        }
+        marks.removeIf(mark -> mark.get() == null);
+    }
+
+    /**
+     * индекс первой позиции со смещением >= offset
+     */
+    private int lowerBound(int offset) {
+        int lo = 0;
+        int hi = marks.size();
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (marks.get(mid).offset < offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * индекс первой позиции со смещением > offset
+     */
+    private int upperBound(int offset) {
+        int lo = 0;
+        int hi = marks.size();
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (marks.get(mid).offset <= offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // == classes ==
+
+    public interface EditHook {
+        /**
+         * вызывается перед удалением текста
+         */
+        void removing(int offset, int length);
+
+        /**
+         * вызывается после вставки, [offset, offset + length) - вставленный текст
+         */
+        default void inserted(int offset, int length) {
+        }
+
+        /**
+         * вызывается после замены, [offset, offset + length) - текст на месте удаленного
+         */
+        default void replaced(int offset, int length) {
+        }
+
+        /**
+         * вызывается перед заменой участков длины oldLength со смещений starts на участки
+         * длины newLength, по умолчанию - как удаление всего диапазона замены
+         */
+        default void replacing(int[] starts, int oldLength, int newLength) {
+            removing(starts[0], starts[starts.length - 1] + oldLength - starts[0]);
+        }
+
+        /**
+         * вызывается после замены участков, о которой сообщил replacing: k-й новый участок
+         * начинается с starts[k] + k * (newLength - oldLength); replacement - текст всех новых
+         * участков, если он один, иначе null. По умолчанию - как замена всего диапазона
+         */
+        default void replaced(int[] starts, int oldLength, int newLength, String replacement) {
+            final int count = starts.length;
+            replaced(starts[0], starts[count - 1] + oldLength - starts[0] + count * (newLength - oldLength));
+        }
+    }
+
+    static final class Piece {
+        final TextBuffer buffer;
+        final int start;
+        final int length;
+
+        Piece(TextBuffer buffer, int start, int length) {
+            this.buffer = buffer;
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+    /**
+     * буфер добавлений, символы в нем только дописываются в конец. Пока вставлялись
+     * только символы ISO-8859-1, он хранит их по байту, см. {@link CompactChars}
+     */
+    private static final class AppendBuffer implements TextBuffer {
+        private final CompactChars text = new CompactChars(256);
+        /**
+         * байты text, обернутые для {@link #bytes()}; меняются вместе с массивом
+         */
+        private ByteBuffer wrapped;
+
+        int append(String str) {
+            final int start = text.length();
+            text.append(str);
+            return start;
+        }
+
+        /**
+         * неизменяемый буфер уже вставленных символов
+         */
+        TextBuffer freeze() {
+            return text.toBuffer();
+        }
+
+        long getHeapSize() {
+            return text.getHeapSize();
+        }
+
+        @Override
+        public int length() {
+            return text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text.charAt(index);
+        }
+
+        @Override
+        public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+            text.getChars(srcBegin, srcEnd, dst, dstBegin);
+        }
+
+        @Override
+        public char[] array() {
+            return text.chars();
+        }
+
+        @Override
+        public ByteBuffer bytes() {
+            final byte[] bytes = text.bytes();
+            if (bytes == null) {
+                return null;
+            }
+            if (wrapped == null || wrapped.array() != bytes) {
+                wrapped = ByteBuffer.wrap(bytes);
+            }
+            return wrapped;
+        }
+    }
+
+    private static final class Mark extends WeakReference<StickyPosition> {
+        int offset;
+
+        Mark(StickyPosition position, int offset, ReferenceQueue<StickyPosition> queue) {
+            super(position, queue);
+            this.offset = offset;
+            position.mark = this;
+        }
+    }
+
+    private static final class StickyPosition implements Position {
+        Mark mark;
+
+        @Override
+        public int getOffset() {
+            return mark.offset;
+        }
+
+        @Override
+        public String toString() {
+            return Integer.toString(getOffset());
+        }
+    }
+
+    private static final class MarkSnapshot {
+        final Mark[] marks;
+        final int[] offsets;
+
+        MarkSnapshot(Mark[] marks, int[] offsets) {
+            this.marks = marks;
+            this.offsets = offsets;
+        }
+    }
+
+    private final class InsertUndo extends AbstractUndoableEdit {
+        private final int offset;
+        private final int length;
+        private List<Piece> text;
+        private MarkSnapshot snapshot;
+
+        InsertUndo(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            snapshot = snapshotMarks(offset, offset + length);
+            text = removeContent(offset, length);
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            insertContent(offset, text);
+            restoreMarks(snapshot);
+            text = null;
+            snapshot = null;
+        }
+    }
+
+    private final class RemoveUndo extends AbstractUndoableEdit {
+        private final int offset;
+        private final int length;
+        private List<Piece> text;
+        private MarkSnapshot snapshot;
+
+        RemoveUndo(int offset, int length, List<Piece> text, MarkSnapshot snapshot) {
+            this.offset = offset;
+            this.length = length;
+            this.text = text;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            insertContent(offset, text);
+            restoreMarks(snapshot);
+            text = null;
+            snapshot = null;
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            snapshot = snapshotMarks(offset, offset + length);
+            text = removeContent(offset, length);
+        }
+    }
+
+    private final class ReplaceUndo extends AbstractUndoableEdit {
+        private final int[] starts;
+        private final int matchLength;
+        private final String replacementText;
+        private final Piece replacement;
+        private final int offset;
+        private final int oldLength;
+        private final int newLength;
+        private List<Piece> text;
+        private MarkSnapshot snapshot;
+        /**
+         * позиции в замененном тексте на момент отмены, в том числе созданные после замены
+         */
+        private MarkSnapshot redoSnapshot;
+
+        ReplaceUndo(int[] starts, int matchLength, String replacementText, Piece replacement) {
+            this.starts = starts;
+            this.matchLength = matchLength;
+            this.replacementText = replacementText;
+            this.replacement = replacement;
+            final int count = starts.length;
+            final int replacementLength = replacement == null ? 0 : replacement.length;
+            offset = starts[0];
+            oldLength = starts[count - 1] + matchLength - offset;
+            newLength = oldLength + count * (replacementLength - matchLength);
+        }
+
+        void apply() {
+            final int replacementLength = replacement == null ? 0 : replacement.length;
+            if (editHook != null) {
+                editHook.replacing(starts, matchLength, replacementLength);
+            }
+            snapshot = snapshotMarks(offset, offset + oldLength);
+            final int from = splitAt(offset);
+            final int to = splitAt(offset + oldLength);
+            final List<Piece> range = pieces.subList(from, to);
+            text = new ArrayList<>(range);
+            final List<Piece> result = new ArrayList<>(starts.length * 2);
+            // куски между вхождениями берутся из старых кусков, index и pieceStart идут вперед
+            int index = 0;
+            int pieceStart = offset;
+            int pos = offset;
+            for (int start : starts) {
+                while (pos < start) {
+                    while (pieceStart + text.get(index).length <= pos) {
+                        pieceStart += text.get(index++).length;
+                    }
+                    final Piece piece = text.get(index);
+                    final int inPiece = pos - pieceStart;
+                    final int n = Math.min(piece.length - inPiece, start - pos);
+                    result.add(new Piece(piece.buffer, piece.start + inPiece, n));
+                    pos += n;
+                }
+                if (replacement != null) {
+                    result.add(replacement);
+                }
+                pos = start + matchLength;
+            }
+            range.clear();
+            pieces.addAll(from, result);
+            invalidate(from);
+            length += newLength - oldLength;
+            updateMarks();
+            if (editHook != null) {
+                editHook.replaced(starts, matchLength, replacementLength, replacementText);
+            }
+        }
+
+        private void updateMarks() {
+            final int delta = (replacement == null ? 0 : replacement.length) - matchLength;
+            final int end = offset + oldLength;
+            int k = 0;
+            for (int i = lowerBound(offset), size = marks.size(); i < size; i++) {
+                final Mark mark = marks.get(i);
+                if (mark.offset >= end) {
+                    mark.offset += newLength - oldLength;
+                    continue;
+                }
+                while (starts[k] + matchLength <= mark.offset) {
+                    k++;
+                }
+                if (starts[k] <= mark.offset) {
+                    final int start = starts[k] + k * delta;
+                    mark.offset = mark.offset == starts[k] ? start : start + matchLength + delta;
+                } else {
+                    mark.offset += k * delta;
+                }
+            }
+        }
+
+        @Override
+        public void undo() throws CannotUndoException {
+            super.undo();
+            final int replacementLength = replacement == null ? 0 : replacement.length;
+            final int[] replaced = replacedStarts(replacementLength);
+            if (editHook != null) {
+                editHook.replacing(replaced, replacementLength, matchLength);
+            }
+            redoSnapshot = snapshotMarks(offset, offset + newLength);
+            final int from = splitAt(offset);
+            final int to = splitAt(offset + newLength);
+            final List<Piece> range = pieces.subList(from, to);
+            range.clear();
+            pieces.addAll(from, text);
+            invalidate(from);
+            length += oldLength - newLength;
+            final int end = offset + newLength;
+            for (int i = lowerBound(offset), size = marks.size(); i < size; i++) {
+                final Mark mark = marks.get(i);
+                mark.offset = mark.offset >= end ? mark.offset + oldLength - newLength : offset;
+            }
+            restoreMarks(snapshot);
+            text = null;
+            snapshot = null;
+            if (editHook != null) {
+                editHook.replaced(replaced, replacementLength, matchLength, null);
+            }
+        }
+
+        /**
+         * смещения замен в тексте после замены
+         */
+        private int[] replacedStarts(int replacementLength) {
+            final int[] replaced = new int[starts.length];
+            for (int k = 0; k < starts.length; k++) {
+                replaced[k] = starts[k] + k * (replacementLength - matchLength);
+            }
+            return replaced;
+        }
+
+        @Override
+        public void redo() throws CannotRedoException {
+            super.redo();
+            apply();
+            restoreMarks(redoSnapshot);
+            redoSnapshot = null;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package by.azzi.jnotepad.document;
+
+import java.io.InterruptedIOException;
+
+/**
+ * наблюдатель за чтением файла
+ */
+public interface ReadProgress {
+
+    ReadProgress NONE = (read, total) -> {
+    };
+
+    /**
+     * прочитано read байт из total. Что бы прервать чтение можно выбросить InterruptedIOException
+     */
+    void progress(long read, long total) throws InterruptedIOException;
+
+    /**
+     * начало документа, доступное до окончания чтения
+     */
+    default void preview(String text) {
+    }
+}
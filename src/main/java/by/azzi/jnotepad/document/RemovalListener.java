@@ -0,0 +1,38 @@
+package by.azzi.jnotepad.document;
+
+import java.util.EventListener;
+
+/**
+ * уведомление об удалении текста до того, как он удален, в том числе при отмене
+ * и повторе правок: DocumentListener.removeUpdate вызывается уже после удаления
+ */
+public interface RemovalListener extends EventListener {
+
+    void textRemoving(TextDocument document, int offset, int length);
+
+    /**
+     * после замены текста, о котором сообщил textRemoving: [offset, offset + length) -
+     * новый текст; событие документа при замене только одно, CHANGE
+     */
+    default void textReplaced(TextDocument document, int offset, int length) {
+    }
+
+    /**
+     * перед заменой участков одной длины oldLength со смещений starts (по возрастанию) на
+     * участки длины newLength, как при "Заменить все" и ее отмене. По умолчанию - как
+     * удаление всего диапазона от первого участка до конца последнего
+     */
+    default void matchesReplacing(TextDocument document, int[] starts, int oldLength, int newLength) {
+        textRemoving(document, starts[0], starts[starts.length - 1] + oldLength - starts[0]);
+    }
+
+    /**
+     * после замены участков, о которой сообщил matchesReplacing: k-й новый участок начинается
+     * с starts[k] + k * (newLength - oldLength); replacement - текст всех новых участков, если
+     * он один, как при замене, и null при отмене. По умолчанию - как textReplaced всего диапазона
+     */
+    default void matchesReplaced(TextDocument document, int[] starts, int oldLength, int newLength, String replacement) {
+        final int count = starts.length;
+        textReplaced(document, starts[0], starts[count - 1] + oldLength - starts[0] + count * (newLength - oldLength));
+    }
+}
@@ -0,0 +1,50 @@
+package by.azzi.jnotepad.document;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * временные файлы, в которые буферы выгружают символы из кучи и копируются открываемые файлы
+ */
+final class SpillFile {
+
+    private SpillFile() {
+    }
+
+    /**
+     * отображение нового временного файла размером size байт; файл удаляется сразу при
+     * закрытии канала, отображение остается действительным до сборки мусора
+     */
+    static MappedByteBuffer map(long size) throws IOException {
+        final Path file = Files.createTempFile("jnotepad", ".spill");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * отображение закрытой копии source: другие программы не видят копию, так что ее не
+     * перепишут и не обрежут, а сам файл остается свободным для записи и переименования.
+     * Копируется не больше size байт, граница отображения - сколько скопировалось
+     */
+    static MappedByteBuffer copy(FileChannel source, long size) throws IOException {
+        final Path file = Files.createTempFile("jnotepad", ".copy");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE)) {
+            long copied = 0;
+            while (copied < size) {
+                final long n = channel.transferFrom(source, copied, size - copied);
+                if (n <= 0) {
+                    break;
+                }
+                copied += n;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, copied);
+        }
+    }
+}
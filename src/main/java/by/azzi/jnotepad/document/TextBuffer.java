@@ -0,0 +1,34 @@
+package by.azzi.jnotepad.document;
+
+import java.nio.ByteBuffer;
+
+/**
+ * неизменяемый источник символов для {@link PieceTableContent}
+ */
+public interface TextBuffer {
+
+    int length();
+
+    char charAt(int index);
+
+    /**
+     * копирует символы [srcBegin, srcEnd) в dst начиная с dstBegin
+     */
+    void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin);
+
+    /**
+     * массив, в котором буфер хранит символы начиная с индекса 0,
+     * либо null, если символы надо копировать
+     */
+    default char[] array() {
+        return null;
+    }
+
+    /**
+     * байты ISO-8859-1, в которых буфер хранит символы начиная с индекса 0,
+     * либо null; позицию и границу возвращенного буфера менять нельзя
+     */
+    default ByteBuffer bytes() {
+        return null;
+    }
+}
@@ -0,0 +1,677 @@
+package by.azzi.jnotepad.document;
+
+import by.azzi.jnotepad.trace.Trace;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.UndoableEditEvent;
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.AttributeSet;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.PlainDocument;
+import javax.swing.text.Segment;
+import javax.swing.text.SimpleAttributeSet;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.CompoundEdit;
+import javax.swing.undo.UndoableEdit;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * документ блокнота поверх {@link PieceTableContent}.
+ * <p>
+ * Строки, как у PlainDocument, - дети корневого элемента, но элементы строк не хранятся:
+ * корень отвечает по {@link LineIndex}, а элемент строки создается по запросу и не следит
+ * за правками. Изменение строк в событии - {@link LineChange} с номером первой строки и
+ * числом удаленных и добавленных строк
+ */
+public class TextDocument extends AbstractDocument {
+
+    /**
+     * свойство документа с размером прочитанного файла в байтах, с него дочитывается дописанное
+     */
+    public static final String FILE_SIZE_PROPERTY = "fileSize";
+    /**
+     * свойство документа: при чтении неверные для кодировки байты файла заменены
+     */
+    public static final String LOSSY_PROPERTY = "lossy";
+    private static final String FILE_TEXT_PROPERTY = "fileText";
+
+    private final LineIndex lineIndex;
+    private final LineRoot root = new LineRoot();
+    /**
+     * шаг отмены, в который собираются правки между {@link #beginEdit()} и {@link #endEdit()}
+     */
+    private GroupEdit groupEdit;
+
+    public TextDocument() {
+        this(new PieceTableContent(), new IntArray());
+    }
+
+    /**
+     * документ над уже заполненным содержимым, строки строятся один раз без событий
+     */
+    public TextDocument(PieceTableContent content) {
+        this(content, scanLineEnds(content));
+    }
+
+    private TextDocument(PieceTableContent content, IntArray lineEnds) {
+        super(content);
+        lineIndex = new LineIndex(content, lineEnds);
+        content.setEditHook(new Hook());
+        putProperty(PlainDocument.tabSizeAttribute, 8);
+    }
+
+    public static TextDocument read(File file) throws IOException {
+        return read(file, ReadProgress.NONE);
+    }
+
+    /**
+     * читает файл за один проход: определяет кодировку и перевод строки по началу файла,
+     * ASCII часть отображается в память без копирования в кучу, остальное декодируется
+     * с приведением переводов строк к '\n'. Отображается не сам файл, а его закрытая копия
+     * {@link SpillFile#copy}, так что запись в файл другой программой документ не меняет.
+     * Заодно снимается {@link FileStamp} файла
+     */
+    public static TextDocument read(File file, ReadProgress progress) throws IOException {
+        final TextDocument document;
+        final long lastModified = file.lastModified();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size >= Integer.MAX_VALUE) {
+                throw new IOException("Файл слишком большой: " + file);
+            }
+            final MappedByteBuffer mapped = SpillFile.copy(channel, size);
+            final FileStamp stamp = FileStamp.of(lastModified, mapped);
+            final TextReader reader = new TextReader(mapped, progress);
+            document = new TextDocument(reader.read(), reader.getLineEnds());
+            document.setFormat(reader.getFormat());
+            if (reader.isLossy()) {
+                document.putProperty(LOSSY_PROPERTY, Boolean.TRUE);
+            }
+            document.putProperty(FILE_SIZE_PROPERTY, (long) mapped.limit());
+            document.setFileStamp(stamp);
+            document.setFileText(document.snapshot());
+        }
+        document.putProperty(StreamDescriptionProperty, file);
+        return document;
+    }
+
+    public void addRemovalListener(RemovalListener listener) {
+        listenerList.add(RemovalListener.class, listener);
+    }
+
+    public void removeRemovalListener(RemovalListener listener) {
+        listenerList.remove(RemovalListener.class, listener);
+    }
+
+    /**
+     * заменяет count вхождений длины matchLength со смещений starts на replacement одной правкой:
+     * содержимое перестраивается за один проход, заново строятся только строки с вхождениями,
+     * слушатели получают одно событие CHANGE, а в отмену попадает один шаг
+     */
+    public void replace(int[] starts, int count, int matchLength, String replacement) throws BadLocationException {
+        if (count == 0) {
+            return;
+        }
+        final PieceTableContent content = (PieceTableContent) getContent();
+        writeLock();
+        try {
+            final int offset = starts[0];
+            final int oldEnd = starts[count - 1] + matchLength;
+            final int firstLine = lineIndex.getLineOfOffset(offset);
+            final int lastLine = lineIndex.getLineOfOffset(oldEnd);
+            final UndoableEdit edit = content.replace(starts, count, matchLength, replacement);
+            final int end = oldEnd + count * (replacement.length() - matchLength);
+            final DefaultDocumentEvent event = new DefaultDocumentEvent(offset, end - offset, DocumentEvent.EventType.CHANGE);
+            event.addEdit(edit);
+            final int added = lineIndex.getLineOfOffset(end) - firstLine + 1;
+            final int removed = lastLine - firstLine + 1;
+            if (added != 1 || removed != 1) {
+                event.addEdit(new LineChange(firstLine, removed, added));
+            }
+            event.end();
+            fireChangedUpdate(event);
+            fireUndoableEditUpdate(new UndoableEditEvent(this, event));
+        } finally {
+            writeUnlock();
+        }
+    }
+
+    /**
+     * заменяет строки документа строками source по отличиям {@link LineDiff#diff} одним шагом
+     * отмены. Замены идут с конца, так что строки выше еще на своих местах; неизмененные
+     * строки, каретка и позиции в них остаются
+     */
+    public void merge(TextDocument source, List<LineDiff.Hunk> hunks) throws BadLocationException {
+        if (hunks.isEmpty()) {
+            return;
+        }
+        beginEdit();
+        try {
+            final Element sourceRoot = source.getDefaultRootElement();
+            for (int i = hunks.size() - 1; i >= 0; i--) {
+                final LineDiff.Hunk hunk = hunks.get(i);
+                final Element root = getDefaultRootElement();
+                final int start = LineDiff.lineStart(root, hunk.getOldLine());
+                final int end = LineDiff.lineStart(root, hunk.getOldLine() + hunk.getOldCount());
+                final int from = LineDiff.lineStart(sourceRoot, hunk.getNewLine());
+                final int to = LineDiff.lineStart(sourceRoot, hunk.getNewLine() + hunk.getNewCount());
+                if (end > start) {
+                    remove(start, end - start);
+                }
+                if (to > from) {
+                    insertString(start, source.getText(from, to - from), null);
+                }
+            }
+        } finally {
+            endEdit();
+        }
+    }
+
+    /**
+     * правки до {@link #endEdit()}, в том числе в разных событиях EDT, попадут в отмену
+     * одним шагом. Пока шаг открыт, документ правит только тот, кто его открыл
+     */
+    public void beginEdit() {
+        if (groupEdit != null) {
+            throw new IllegalStateException("Шаг отмены уже открыт");
+        }
+        groupEdit = new GroupEdit();
+    }
+
+    public void endEdit() {
+        final GroupEdit edit = groupEdit;
+        groupEdit = null;
+        edit.end();
+        if (!edit.getEdits().isEmpty()) {
+            super.fireUndoableEditUpdate(new UndoableEditEvent(this, edit));
+        }
+    }
+
+    @Override
+    protected void fireUndoableEditUpdate(UndoableEditEvent e) {
+        if (groupEdit != null) {
+            groupEdit.addEdit(e.getEdit());
+        } else {
+            super.fireUndoableEditUpdate(e);
+        }
+    }
+
+    /**
+     * правки между {@link #beginEdit()} и {@link #endEdit()}, отменяются вместе
+     */
+    static final class GroupEdit extends CompoundEdit {
+        List<UndoableEdit> getEdits() {
+            return edits;
+        }
+    }
+
+    /**
+     * начала строк для перехода по номеру строки и поиска строки каретки,
+     * читается под блокировкой документа или в потоке событий
+     */
+    public LineIndex getLineIndex() {
+        return lineIndex;
+    }
+
+    @Override
+    public Element getDefaultRootElement() {
+        return root;
+    }
+
+    @Override
+    public Element getParagraphElement(int pos) {
+        return root.getElement(root.getElementIndex(pos));
+    }
+
+    /**
+     * число строк, добавленных изменением; у изменений этого документа - без создания элементов
+     */
+    public static int getAddedCount(DocumentEvent.ElementChange change) {
+        return change instanceof LineChange ? ((LineChange) change).getAddedCount() : change.getChildrenAdded().length;
+    }
+
+    /**
+     * число строк, удаленных изменением
+     */
+    public static int getRemovedCount(DocumentEvent.ElementChange change) {
+        return change instanceof LineChange ? ((LineChange) change).getRemovedCount() : change.getChildrenRemoved().length;
+    }
+
+    /**
+     * вставка с переводами строк заменяет строку вставки строками от нее до конца вставленного;
+     * индекс строк к этому моменту уже обновлен
+     */
+    @Override
+    protected void insertUpdate(DefaultDocumentEvent chng, AttributeSet attr) {
+        final int first = lineIndex.getLineOfOffset(chng.getOffset());
+        final int last = lineIndex.getLineOfOffset(chng.getOffset() + chng.getLength());
+        if (last > first) {
+            chng.addEdit(new LineChange(first, 1, last - first + 1));
+        }
+        super.insertUpdate(chng, attr);
+    }
+
+    /**
+     * удаление переводов строк сливает строки от начала до конца удаляемого в одну,
+     * вызывается до удаления
+     */
+    @Override
+    protected void removeUpdate(DefaultDocumentEvent chng) {
+        final int first = lineIndex.getLineOfOffset(chng.getOffset());
+        final int last = lineIndex.getLineOfOffset(chng.getOffset() + chng.getLength());
+        if (last > first) {
+            chng.addEdit(new LineChange(first, last - first + 1, 1));
+        }
+        super.removeUpdate(chng);
+    }
+
+    /**
+     * элемент строки line. Стандартные виды документов с текстом справа налево держат
+     * элементы строк между правками, им достаются элементы на позициях, как у PlainDocument
+     */
+    private Element line(int line) {
+        final int start = lineIndex.getLineStart(line);
+        final int end = lineIndex.getLineEnd(line);
+        if (Boolean.TRUE.equals(getProperty("i18n"))) {
+            return createLeafElement(root, null, start, end);
+        }
+        return new Line(start, end);
+    }
+
+    /**
+     * корень строк документа
+     */
+    private final class LineRoot implements Element {
+
+        @Override
+        public Document getDocument() {
+            return TextDocument.this;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return null;
+        }
+
+        @Override
+        public String getName() {
+            return ParagraphElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return 0;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return getContent().length();
+        }
+
+        @Override
+        public int getElementIndex(int offset) {
+            return lineIndex.getLineOfOffset(offset);
+        }
+
+        @Override
+        public int getElementCount() {
+            return lineIndex.getLineCount();
+        }
+
+        @Override
+        public Element getElement(int index) {
+            return index >= 0 && index < lineIndex.getLineCount() ? line(index) : null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return false;
+        }
+    }
+
+    /**
+     * строка на момент создания элемента
+     */
+    private final class Line implements Element {
+        private final int start;
+        private final int end;
+
+        Line(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Document getDocument() {
+            return TextDocument.this;
+        }
+
+        @Override
+        public Element getParentElement() {
+            return root;
+        }
+
+        @Override
+        public String getName() {
+            return ContentElementName;
+        }
+
+        @Override
+        public AttributeSet getAttributes() {
+            return SimpleAttributeSet.EMPTY;
+        }
+
+        @Override
+        public int getStartOffset() {
+            return start;
+        }
+
+        @Override
+        public int getEndOffset() {
+            return end;
+        }
+
+        @Override
+        public int getElementIndex(int offset) {
+            return -1;
+        }
+
+        @Override
+        public int getElementCount() {
+            return 0;
+        }
+
+        @Override
+        public Element getElement(int index) {
+            return null;
+        }
+
+        @Override
+        public boolean isLeaf() {
+            return true;
+        }
+    }
+
+    /**
+     * removed строк с index заменены added строками. Элементы строк создаются, только когда
+     * их просят: если правка сделана, добавленные - строки документа, удаленных уже нет;
+     * после отмены наоборот, как у переставляющего детей ElementEdit
+     */
+    private final class LineChange extends AbstractUndoableEdit implements DocumentEvent.ElementChange {
+        private final int index;
+        private final int removed;
+        private final int added;
+
+        LineChange(int index, int removed, int added) {
+            this.index = index;
+            this.removed = removed;
+            this.added = added;
+        }
+
+        int getAddedCount() {
+            return canUndo() ? added : removed;
+        }
+
+        int getRemovedCount() {
+            return canUndo() ? removed : added;
+        }
+
+        @Override
+        public Element getElement() {
+            return root;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public Element[] getChildrenAdded() {
+            return lines(getAddedCount(), true);
+        }
+
+        @Override
+        public Element[] getChildrenRemoved() {
+            return lines(getRemovedCount(), false);
+        }
+
+        /**
+         * строки с index, которых уже нет, - пустые элементы в начале строки index
+         */
+        private Element[] lines(int count, boolean present) {
+            final Element[] lines = new Element[count];
+            final int start = lineIndex.getLineStart(Math.min(index, lineIndex.getLineCount() - 1));
+            for (int i = 0; i < count; i++) {
+                lines[i] = present ? line(index + i) : new Line(start, start);
+            }
+            return lines;
+        }
+    }
+
+    @Override
+    protected void fireInsertUpdate(DocumentEvent e) {
+        if (Trace.ENABLED) {
+            final Object span = Trace.beginListeners();
+            super.fireInsertUpdate(e);
+            Trace.endListeners(span, "document", "insert");
+        } else {
+            super.fireInsertUpdate(e);
+        }
+    }
+
+    @Override
+    protected void fireRemoveUpdate(DocumentEvent e) {
+        if (Trace.ENABLED) {
+            final Object span = Trace.beginListeners();
+            super.fireRemoveUpdate(e);
+            Trace.endListeners(span, "document", "remove");
+        } else {
+            super.fireRemoveUpdate(e);
+        }
+    }
+
+    @Override
+    protected void fireChangedUpdate(DocumentEvent e) {
+        if (Trace.ENABLED) {
+            final Object span = Trace.beginListeners();
+            super.fireChangedUpdate(e);
+            Trace.endListeners(span, "document", "change");
+        } else {
+            super.fireChangedUpdate(e);
+        }
+    }
+
+    /**
+     * уведомления содержимого о правках, в том числе при отмене и повторе
+     */
+    private final class Hook implements PieceTableContent.EditHook {
+
+        @Override
+        public void removing(int offset, int length) {
+            lineIndex.removing(offset, length);
+            for (RemovalListener listener : listenerList.getListeners(RemovalListener.class)) {
+                listener.textRemoving(TextDocument.this, offset, length);
+            }
+        }
+
+        @Override
+        public void inserted(int offset, int length) {
+            lineIndex.inserted(offset, length);
+        }
+
+        @Override
+        public void replaced(int offset, int length) {
+            lineIndex.inserted(offset, length);
+            for (RemovalListener listener : listenerList.getListeners(RemovalListener.class)) {
+                listener.textReplaced(TextDocument.this, offset, length);
+            }
+        }
+
+        @Override
+        public void replacing(int[] starts, int oldLength, int newLength) {
+            for (RemovalListener listener : listenerList.getListeners(RemovalListener.class)) {
+                listener.matchesReplacing(TextDocument.this, starts, oldLength, newLength);
+            }
+        }
+
+        @Override
+        public void replaced(int[] starts, int oldLength, int newLength, String replacement) {
+            lineIndex.replaced(starts, oldLength, newLength, replacement);
+            for (RemovalListener listener : listenerList.getListeners(RemovalListener.class)) {
+                listener.matchesReplaced(TextDocument.this, starts, oldLength, newLength, replacement);
+            }
+        }
+    }
+
+    public TextFormat getFormat() {
+        final Object format = getProperty(TextFormat.PROPERTY);
+        return format instanceof TextFormat ? (TextFormat) format : TextFormat.defaultFormat();
+    }
+
+    public void setFormat(TextFormat format) {
+        putProperty(TextFormat.PROPERTY, format);
+    }
+
+    /**
+     * размер файла, из которого прочитан или в который записан документ, -1 если неизвестен
+     */
+    public long getFileSize() {
+        final Object size = getProperty(FILE_SIZE_PROPERTY);
+        return size instanceof Long ? (Long) size : -1;
+    }
+
+    /**
+     * отпечаток файла документа, null если документ не читался из файла и не записывался
+     */
+    public FileStamp getFileStamp() {
+        final Object stamp = getProperty(FileStamp.PROPERTY);
+        return stamp instanceof FileStamp ? (FileStamp) stamp : null;
+    }
+
+    public void setFileStamp(FileStamp stamp) {
+        putProperty(FileStamp.PROPERTY, stamp);
+    }
+
+    /**
+     * текст, совпадающий с файлом по {@link #getFileStamp()}: с ним сверяется новая версия файла,
+     * чтобы перенести ее отличия в документ поверх несохраненных правок
+     */
+    public TextSnapshot getFileText() {
+        final Object text = getProperty(FILE_TEXT_PROPERTY);
+        return text instanceof TextSnapshot ? (TextSnapshot) text : null;
+    }
+
+    public void setFileText(TextSnapshot text) {
+        putProperty(FILE_TEXT_PROPERTY, text);
+    }
+
+    /**
+     * при чтении файла часть байтов не декодировалась и заменена, запись изменит файл
+     */
+    public boolean isLossy() {
+        return Boolean.TRUE.equals(getProperty(LOSSY_PROPERTY));
+    }
+
+    /**
+     * оценка памяти кучи под текст, куски, позиции и начала строк
+     */
+    public long getHeapSize() {
+        return ((PieceTableContent) getContent()).getHeapSize() + lineIndex.getHeapSize();
+    }
+
+    /**
+     * выгружает текст из кучи во временные файлы, документ остается рабочим,
+     * см. {@link PieceTableContent#spill()}
+     */
+    public void spill() throws IOException {
+        ((PieceTableContent) getContent()).spill();
+    }
+
+    /**
+     * возвращает выгруженный текст в кучу
+     */
+    public void restore() {
+        ((PieceTableContent) getContent()).restore();
+    }
+
+    /**
+     * снимок текста документа, который можно читать из другого потока
+     */
+    public TextSnapshot snapshot() {
+        readLock();
+        try {
+            return snapshot(0, getLength());
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * снимок части текста, например выделения для буфера обмена
+     */
+    public TextSnapshot snapshot(int offset, int length) throws BadLocationException {
+        readLock();
+        try {
+            return ((PieceTableContent) getContent()).snapshot(offset, length);
+        } finally {
+            readUnlock();
+        }
+    }
+
+    /**
+     * байты начала диапазона, если оно лежит в однобайтовом буфере содержимого,
+     * см. {@link PieceTableContent#getBytes(int, int)}
+     */
+    public ByteBuffer getBytes(int offset, int length) throws BadLocationException {
+        return ((PieceTableContent) getContent()).getBytes(offset, length);
+    }
+
+    /**
+     * пишет документ в канал в его {@link TextFormat} за один проход
+     */
+    public void write(WritableByteChannel channel) throws IOException {
+        TextWriter.write(snapshot(), getFormat(), channel);
+    }
+
+    /**
+     * концы строк кроме последней
+     */
+    private static IntArray scanLineEnds(PieceTableContent content) {
+        final IntArray lineEnds = new IntArray();
+        final Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        final int to = content.length() - 1;
+        try {
+            int offset = 0;
+            while (offset < to) {
+                content.getChars(offset, to - offset, segment);
+                for (int i = 0; i < segment.count; i++) {
+                    if (segment.array[segment.offset + i] == '\n') {
+                        lineEnds.add(offset + i + 1);
+                    }
+                }
+                offset += segment.count;
+            }
+        } catch (BadLocationException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return lineEnds;
+    }
+}
@@ -0,0 +1,241 @@
+package by.azzi.jnotepad.document;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * кодировка, метка BOM и перевод строки файла, с которыми он записывается обратно
+ */
+public final class TextFormat {
+
+    /**
+     * свойство документа с форматом файла
+     */
+    public static final String PROPERTY = "textFormat";
+
+    public static final Charset WINDOWS_1251 = Charset.forName("windows-1251");
+    public static final Charset WINDOWS_1252 = Charset.forName("windows-1252");
+
+    private static final byte[] UTF_8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final byte[] UTF_16BE_BOM = {(byte) 0xFE, (byte) 0xFF};
+    private static final byte[] UTF_16LE_BOM = {(byte) 0xFF, (byte) 0xFE};
+
+    private final Charset charset;
+    private final boolean bom;
+    private final String lineSeparator;
+
+    public TextFormat(Charset charset, boolean bom, String lineSeparator) {
+        this.charset = Objects.requireNonNull(charset);
+        this.bom = bom;
+        this.lineSeparator = Objects.requireNonNull(lineSeparator);
+    }
+
+    /**
+     * формат нового документа
+     */
+    public static TextFormat defaultFormat() {
+        return new TextFormat(StandardCharsets.UTF_8, false, System.lineSeparator());
+    }
+
+    /**
+     * определяет формат по началу файла: сначала по BOM, затем проверкой на
+     * корректный UTF-8, иначе выбирается однобайтовая кодировка (кириллица или западная)
+     */
+    public static TextFormat detect(ByteBuffer sample) {
+        final ByteBuffer bytes = sample.duplicate();
+        if (startsWith(bytes, UTF_8_BOM)) {
+            return new TextFormat(StandardCharsets.UTF_8, true, detectLineSeparator(bytes, 1));
+        }
+        if (startsWith(bytes, UTF_16BE_BOM)) {
+            return new TextFormat(StandardCharsets.UTF_16BE, true, detectLineSeparator(bytes, 2));
+        }
+        if (startsWith(bytes, UTF_16LE_BOM)) {
+            return new TextFormat(StandardCharsets.UTF_16LE, true, detectLineSeparator(bytes, 2));
+        }
+        final Charset charset = isUtf8(bytes) ? StandardCharsets.UTF_8 : detectSingleByte(bytes);
+        return new TextFormat(charset, false, detectLineSeparator(bytes, 1));
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public boolean hasBom() {
+        return bom;
+    }
+
+    public int getBomLength() {
+        if (!bom) {
+            return 0;
+        }
+        return StandardCharsets.UTF_8.equals(charset) ? UTF_8_BOM.length : UTF_16BE_BOM.length;
+    }
+
+    public byte[] getBom() {
+        if (!bom) {
+            return new byte[0];
+        }
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            return UTF_8_BOM.clone();
+        }
+        return StandardCharsets.UTF_16BE.equals(charset) ? UTF_16BE_BOM.clone() : UTF_16LE_BOM.clone();
+    }
+
+    public String getLineSeparator() {
+        return lineSeparator;
+    }
+
+    /**
+     * символы с кодами меньше 0x80 кодируются одним одноименным байтом
+     */
+    public boolean isAsciiCompatible() {
+        return !StandardCharsets.UTF_16BE.equals(charset) && !StandardCharsets.UTF_16LE.equals(charset);
+    }
+
+    public TextFormat withCharset(Charset charset) {
+        return new TextFormat(charset, bom && (StandardCharsets.UTF_8.equals(charset)
+                || StandardCharsets.UTF_16BE.equals(charset) || StandardCharsets.UTF_16LE.equals(charset)), lineSeparator);
+    }
+
+    public TextFormat withLineSeparator(String lineSeparator) {
+        return new TextFormat(charset, bom, lineSeparator);
+    }
+
+    /**
+     * короткое имя перевода строки для строки состояния
+     */
+    public String getLineSeparatorName() {
+        switch (lineSeparator) {
+            case "\r\n":
+                return "Windows (CRLF)";
+            case "\r":
+                return "Macintosh (CR)";
+            default:
+                return "Unix (LF)";
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TextFormat)) {
+            return false;
+        }
+        final TextFormat that = (TextFormat) o;
+        return bom == that.bom && charset.equals(that.charset) && lineSeparator.equals(that.lineSeparator);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(charset, bom, lineSeparator);
+    }
+
+    @Override
+    public String toString() {
+        return charset.name() + (bom ? " BOM" : "") + ", " + getLineSeparatorName();
+    }
+
+    // == detection ==
+
+    private static boolean startsWith(ByteBuffer bytes, byte[] prefix) {
+        if (bytes.remaining() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes.get(bytes.position() + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * корректный UTF-8, обрезанная в конце выборки последовательность допускается
+     */
+    private static boolean isUtf8(ByteBuffer bytes) {
+        final int end = bytes.limit();
+        int i = bytes.position();
+        while (i < end) {
+            final int b = bytes.get(i) & 0xff;
+            final int n;
+            if (b < 0x80) {
+                i++;
+                continue;
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                n = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                n = 2;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                n = 3;
+            } else {
+                return false;
+            }
+            for (int k = 1; k <= n; k++) {
+                if (i + k >= end) {
+                    return true;
+                }
+                if ((bytes.get(i + k) & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += n + 1;
+        }
+        return true;
+    }
+
+    /**
+     * в кириллице windows-1251 буквы 0xC0-0xFF идут словами подряд,
+     * а в западных кодировках буквы с диакритикой стоят поодиночке среди ASCII
+     */
+    static Charset detectSingleByte(ByteBuffer bytes) {
+        int high = 0;
+        int paired = 0;
+        boolean prevHigh = false;
+        for (int i = bytes.position(), end = bytes.limit(); i < end; i++) {
+            final boolean isHigh = (bytes.get(i) & 0xff) >= 0xC0;
+            if (isHigh) {
+                high++;
+                if (prevHigh) {
+                    paired++;
+                }
+            }
+            prevHigh = isHigh;
+        }
+        return high > 0 && paired * 2 >= high ? WINDOWS_1251 : WINDOWS_1252;
+    }
+
+    /**
+     * первый перевод строки, для UTF-16 unit - размер символа в байтах
+     */
+    private static String detectLineSeparator(ByteBuffer bytes, int unit) {
+        final boolean littleEndian = unit == 2 && startsWith(bytes, UTF_16LE_BOM);
+        final int end = bytes.limit() - unit + 1;
+        for (int i = bytes.position(); i < end; i += unit) {
+            final int c = charAt(bytes, i, unit, littleEndian);
+            if (c == '\n') {
+                return "\n";
+            }
+            if (c == '\r') {
+                final int next = i + unit;
+                if (next >= end) {
+                    return "\r\n";
+                }
+                return charAt(bytes, next, unit, littleEndian) == '\n' ? "\r\n" : "\r";
+            }
+        }
+        return System.lineSeparator();
+    }
+
+    private static int charAt(ByteBuffer bytes, int index, int unit, boolean littleEndian) {
+        if (unit == 1) {
+            return bytes.get(index) & 0xff;
+        }
+        final int b0 = bytes.get(index) & 0xff;
+        final int b1 = bytes.get(index + 1) & 0xff;
+        return littleEndian ? b0 | b1 << 8 : b0 << 8 | b1;
+    }
+}
@@ -0,0 +1,220 @@
+package by.azzi.jnotepad.document;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * однопроходное чтение отображенного в память файла.
+ * <p>
+ * Начало файла в ASCII без '\r' используется как есть, без копирования. С первого
+ * символа вне ASCII или '\r' остаток декодируется прямо из отображения кусками по
+ * {@link #CHUNK} символов, переводы строк в куске приводятся к '\n' и собираются концы
+ * строк, а сам кусок дописывается в {@link CompactChars}: пока символы из ISO-8859-1,
+ * остаток занимает байт на символ.
+ * <p>
+ * Декодирование строгое: если дальше выборки встретится байт, неверный для выбранной
+ * кодировки, остаток декодируется заново однобайтовой кодировкой, определенной по всему
+ * остатку, а если не подходит и она - ISO-8859-1, так что файл без BOM записывается обратно
+ * байт в байт. Файл с BOM декодируется с заменой неверных байтов и помечается как
+ * прочитанный с потерями {@link #isLossy()}.
+ */
+final class TextReader {
+
+    /**
+     * сколько символов показывается до окончания чтения файла
+     */
+    static final int PREVIEW_LENGTH = 64 * 1024;
+    /**
+     * по скольким байтам определяется формат
+     */
+    static final int SAMPLE_LENGTH = 64 * 1024;
+    private static final int STEP = 1024 * 1024;
+    private static final int CHUNK = 64 * 1024;
+
+    private final ByteBuffer bytes;
+    private final ReadProgress progress;
+    private final IntArray lineEnds = new IntArray();
+    private TextFormat format;
+    private boolean previewed;
+    private boolean lastWasCR;
+    private boolean lossy;
+
+    TextReader(ByteBuffer bytes, ReadProgress progress) {
+        this.bytes = bytes;
+        this.progress = progress;
+    }
+
+    PieceTableContent read() throws IOException {
+        final int size = bytes.limit();
+        final ByteBuffer sample = bytes.duplicate();
+        sample.limit(Math.min(size, SAMPLE_LENGTH));
+        format = TextFormat.detect(sample);
+
+        final int asciiEnd = format.isAsciiCompatible() && !format.hasBom() ? scanAscii() : 0;
+        if (asciiEnd == size) {
+            return new PieceTableContent(new ByteTextBuffer(bytes));
+        }
+        final ByteBuffer head = bytes.duplicate();
+        head.limit(asciiEnd);
+        final int from = Math.max(asciiEnd, format.getBomLength());
+        final int asciiLines = lineEnds.size();
+        TextBuffer tail = decode(from, asciiEnd, head, CodingErrorAction.REPORT);
+        if (tail == null && !format.hasBom() && StandardCharsets.UTF_8.equals(format.getCharset())) {
+            final ByteBuffer rest = bytes.duplicate();
+            rest.position(from);
+            format = format.withCharset(TextFormat.detectSingleByte(rest));
+            lineEnds.truncate(asciiLines);
+            tail = decode(from, asciiEnd, head, CodingErrorAction.REPORT);
+        }
+        if (tail == null && !format.hasBom() && format.isAsciiCompatible()) {
+            // в ISO-8859-1 каждый байт - свой символ, файл запишется обратно как был
+            format = format.withCharset(StandardCharsets.ISO_8859_1);
+            lineEnds.truncate(asciiLines);
+            tail = decode(from, asciiEnd, head, CodingErrorAction.REPORT);
+        }
+        if (tail == null) {
+            lossy = true;
+            lineEnds.truncate(asciiLines);
+            tail = decode(from, asciiEnd, head, CodingErrorAction.REPLACE);
+        }
+        return asciiEnd == 0
+                ? new PieceTableContent(tail)
+                : new PieceTableContent(new ByteTextBuffer(head.slice()), tail);
+    }
+
+    TextFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * в файле есть байты, неверные для его кодировки, и они заменены:
+     * записанный обратно файл будет отличаться от прочитанного
+     */
+    boolean isLossy() {
+        return lossy;
+    }
+
+    /**
+     * концы строк кроме последней
+     */
+    IntArray getLineEnds() {
+        return lineEnds;
+    }
+
+    /**
+     * индекс первого байта вне ASCII или '\r', либо размер файла
+     */
+    private int scanAscii() throws IOException {
+        final int size = bytes.limit();
+        int step = 0;
+        while (step < size) {
+            final int stepEnd = Math.min(size, step + STEP);
+            for (int i = step; i < stepEnd; i++) {
+                final byte b = bytes.get(i);
+                if (b == '\n') {
+                    lineEnds.add(i + 1);
+                } else if (b < 0 || b == '\r') {
+                    return i;
+                }
+            }
+            if (!previewed && stepEnd >= PREVIEW_LENGTH && stepEnd < size) {
+                final byte[] head = new byte[PREVIEW_LENGTH];
+                for (int i = 0; i < head.length; i++) {
+                    head[i] = bytes.get(i);
+                }
+                preview(new String(head, StandardCharsets.ISO_8859_1));
+            }
+            step = stepEnd;
+            progress.progress(step, size);
+        }
+        return size;
+    }
+
+    /**
+     * декодирует байты начиная с from, символы в документе начнутся со смещения base;
+     * при action REPORT на неверном байте возвращает null
+     */
+    private TextBuffer decode(int from, int base, ByteBuffer asciiHead, CodingErrorAction action) throws IOException {
+        final CharsetDecoder decoder = format.getCharset().newDecoder()
+                .onMalformedInput(action)
+                .onUnmappableCharacter(action);
+        lastWasCR = false;
+        final int size = bytes.limit();
+        final CompactChars text = new CompactChars((int) Math.min(Integer.MAX_VALUE - 8,
+                (long) ((size - from) * (double) decoder.averageCharsPerByte()) + 16));
+        final char[] chunk = new char[CHUNK];
+        final ByteBuffer in = bytes.duplicate();
+        in.position(from);
+        int limit = from;
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            limit = Math.min(size, limit + STEP);
+            endOfInput = limit == size;
+            in.limit(limit);
+            CoderResult result;
+            boolean flushing = false;
+            do {
+                final CharBuffer out = CharBuffer.wrap(chunk);
+                result = flushing ? decoder.flush(out) : decoder.decode(in, out, endOfInput);
+                if (!flushing && endOfInput && result.isUnderflow()) {
+                    flushing = true;
+                    result = decoder.flush(out);
+                }
+                if (result.isError()) {
+                    return null;
+                }
+                text.append(chunk, 0, normalize(chunk, out.position(), base + text.length()));
+            } while (result.isOverflow());
+            if (!previewed && base + text.length() >= PREVIEW_LENGTH && !endOfInput) {
+                preview(previewText(asciiHead, text, base));
+            }
+            progress.progress(in.position(), size);
+        }
+        return text.toBuffer();
+    }
+
+    /**
+     * приводит переводы строк в [0, to) к '\n' на месте и возвращает новую длину;
+     * символы куска начнутся в документе со смещения base
+     */
+    private int normalize(char[] chars, int to, int base) {
+        int w = 0;
+        for (int r = 0; r < to; r++) {
+            final char c = chars[r];
+            if (c == '\r') {
+                chars[w++] = '\n';
+                lineEnds.add(base + w);
+                lastWasCR = true;
+            } else {
+                if (c != '\n' || !lastWasCR) {
+                    chars[w++] = c;
+                    if (c == '\n') {
+                        lineEnds.add(base + w);
+                    }
+                }
+                lastWasCR = false;
+            }
+        }
+        return w;
+    }
+
+    private static String previewText(ByteBuffer asciiHead, CompactChars decoded, int base) {
+        final char[] text = new char[PREVIEW_LENGTH];
+        final int head = Math.min(base, PREVIEW_LENGTH);
+        for (int i = 0; i < head; i++) {
+            text[i] = (char) asciiHead.get(i);
+        }
+        decoded.getChars(0, PREVIEW_LENGTH - head, text, head);
+        return new String(text);
+    }
+
+    private void preview(String text) {
+        previewed = true;
+        progress.preview(text);
+    }
+}
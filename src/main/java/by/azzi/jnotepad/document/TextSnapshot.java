@@ -0,0 +1,128 @@
+package by.azzi.jnotepad.document;
+
+import javax.swing.text.Segment;
+import java.nio.ByteBuffer;
+
+/**
+ * неизменяемый снимок текста документа. Снимок делается за время, пропорциональное
+ * числу кусков, а не длине текста, и его можно читать из любого потока
+ */
+public final class TextSnapshot implements TextBuffer {
+
+    /**
+     * сколько символов максимум копируется за один вызов segment
+     */
+    private static final int COPY_LIMIT = 16 * 1024;
+
+    private final TextBuffer[] buffers;
+    private final int[] starts;
+    private final int[] offsets;
+    private final int length;
+
+    TextSnapshot(TextBuffer[] buffers, int[] starts, int[] lengths) {
+        this.buffers = buffers;
+        this.starts = starts;
+        this.offsets = new int[lengths.length + 1];
+        for (int i = 0; i < lengths.length; i++) {
+            offsets[i + 1] = offsets[i] + lengths[i];
+        }
+        this.length = offsets[lengths.length];
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        final int piece = pieceIndex(index);
+        return buffers[piece].charAt(starts[piece] + index - offsets[piece]);
+    }
+
+    @Override
+    public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+        if (srcBegin < 0 || srcEnd > length || srcBegin > srcEnd) {
+            throw new IndexOutOfBoundsException(srcBegin + ", " + srcEnd);
+        }
+        int offset = srcBegin;
+        int piece = pieceIndex(offset);
+        while (offset < srcEnd) {
+            final int n = Math.min(offsets[piece + 1], srcEnd) - offset;
+            final int from = starts[piece] + offset - offsets[piece];
+            buffers[piece].getChars(from, from + n, dst, dstBegin);
+            dstBegin += n;
+            offset += n;
+            piece++;
+        }
+    }
+
+    /**
+     * частичное чтение как у Segment.setPartialReturn: отдает не больше len символов
+     * до конца куска, без копирования, если кусок хранится в char[]
+     */
+    public void segment(int offset, int len, Segment txt) {
+        if (offset < 0 || len < 0 || offset + len > length) {
+            throw new IndexOutOfBoundsException(offset + ", " + len);
+        }
+        if (len == 0) {
+            txt.array = new char[0];
+            txt.offset = 0;
+            txt.count = 0;
+            return;
+        }
+        final int piece = pieceIndex(offset);
+        final int inPiece = offset - offsets[piece];
+        final int available = offsets[piece + 1] - offset;
+        final char[] array = buffers[piece].array();
+        if (array != null) {
+            txt.array = array;
+            txt.offset = starts[piece] + inPiece;
+            txt.count = Math.min(len, available);
+            return;
+        }
+        final int count = Math.min(len, Math.min(available, COPY_LIMIT));
+        final char[] chars = new char[count];
+        buffers[piece].getChars(starts[piece] + inPiece, starts[piece] + inPiece + count, chars, 0);
+        txt.array = chars;
+        txt.offset = 0;
+        txt.count = count;
+    }
+
+    /**
+     * байты ISO-8859-1 начала диапазона, если оно лежит в однобайтовом буфере,
+     * иначе null; символ i диапазона - байт position() + i
+     */
+    public ByteBuffer bytes(int offset, int len) {
+        if (offset < 0 || len <= 0 || offset + len > length) {
+            throw new IndexOutOfBoundsException(offset + ", " + len);
+        }
+        final int piece = pieceIndex(offset);
+        final ByteBuffer bytes = buffers[piece].bytes();
+        if (bytes == null) {
+            return null;
+        }
+        final int inPiece = offset - offsets[piece];
+        final ByteBuffer view = bytes.duplicate();
+        view.limit(starts[piece] + inPiece + Math.min(len, offsets[piece + 1] - offset));
+        view.position(starts[piece] + inPiece);
+        return view;
+    }
+
+    private int pieceIndex(int offset) {
+        int lo = 0;
+        int hi = buffers.length - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (offsets[mid] <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+}
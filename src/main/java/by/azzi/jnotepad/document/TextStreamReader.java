@@ -0,0 +1,151 @@
+package by.azzi.jnotepad.document;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * потоковое чтение файла по тем же правилам, что и {@link TextDocument#read}: формат
+ * определяется по началу файла, переводы строк приводятся к '\n'. В памяти только буфер
+ * байт, так что файл может быть любого размера. Неверные для кодировки байты заменяются
+ * на U+FFFD, и чтение отмечается как {@link #isLossy()}: такой текст нельзя записать
+ * обратно без изменения файла
+ */
+public final class TextStreamReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocateDirect(Math.max(BUFFER_SIZE, TextReader.SAMPLE_LENGTH));
+    private final TextFormat format;
+    private final CharsetDecoder decoder;
+    private final boolean binary;
+    private boolean endOfInput;
+    private boolean flushed;
+    private boolean lastWasCR;
+    private boolean lossy;
+
+    public TextStreamReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            fill();
+            in.flip();
+            final ByteBuffer sample = in.duplicate();
+            sample.limit(Math.min(in.limit(), TextReader.SAMPLE_LENGTH));
+            format = TextFormat.detect(sample);
+            binary = format.isAsciiCompatible() && contains(sample, (byte) 0);
+            in.position(Math.min(in.limit(), format.getBomLength()));
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+        decoder = format.getCharset().newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+    }
+
+    public TextFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * в прочитанной части были байты, неверные для кодировки файла
+     */
+    public boolean isLossy() {
+        return lossy;
+    }
+
+    /**
+     * в начале файла есть нулевой байт, а кодировка не UTF-16: скорее всего это не текст
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * читает до length символов (не меньше 2, чтобы поместилась суррогатная пара)
+     * и возвращает их число или -1 в конце файла
+     */
+    public int read(char[] chars, int offset, int length) throws IOException {
+        while (!flushed) {
+            final CharBuffer out = CharBuffer.wrap(chars, offset, length);
+            CoderResult result = decoder.decode(in, out, endOfInput);
+            if (result.isError()) {
+                if (!out.hasRemaining()) {
+                    result = CoderResult.OVERFLOW;
+                } else {
+                    lossy = true;
+                    out.put('\uFFFD');
+                    in.position(in.position() + result.length());
+                }
+            }
+            if (endOfInput && result.isUnderflow()) {
+                result = decoder.flush(out);
+                flushed = result.isUnderflow();
+            }
+            final int end = normalize(chars, offset, out.position());
+            if (end > offset) {
+                return end - offset;
+            }
+            if (result.isUnderflow() && !endOfInput) {
+                in.compact();
+                fill();
+                in.flip();
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * дочитывает буфер до конца или до конца файла
+     */
+    private void fill() throws IOException {
+        while (in.hasRemaining()) {
+            if (channel.read(in) < 0) {
+                endOfInput = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * приводит переводы строк в [from, to) к '\n' на месте и возвращает новый конец
+     */
+    private int normalize(char[] chars, int from, int to) {
+        int w = from;
+        for (int r = from; r < to; r++) {
+            final char c = chars[r];
+            if (c == '\r') {
+                chars[w++] = '\n';
+                lastWasCR = true;
+            } else {
+                if (c != '\n' || !lastWasCR) {
+                    chars[w++] = c;
+                }
+                lastWasCR = false;
+            }
+        }
+        return w;
+    }
+
+    private static boolean contains(ByteBuffer bytes, byte value) {
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            if (bytes.get(i) == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
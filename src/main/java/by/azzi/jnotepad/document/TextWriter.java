@@ -0,0 +1,146 @@
+package by.azzi.jnotepad.document;
+
+import javax.swing.text.Segment;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.MalformedInputException;
+
+/**
+ * потоковая запись текста в канал в заданном {@link TextFormat}:
+ * '\n' заменяется на перевод строки формата, символы кодируются прямо в direct буфер.
+ * Символ, которого нет в кодировке, или одиночный суррогат прерывают запись исключением
+ * {@link java.nio.charset.CharacterCodingException}, если запись с заменой не разрешена явно
+ */
+public final class TextWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final CharBuffer separator;
+    private final ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharBuffer surrogate = CharBuffer.allocate(2);
+    private boolean hasHighSurrogate;
+
+    public TextWriter(WritableByteChannel channel, TextFormat format) {
+        this(channel, format, false);
+    }
+
+    /**
+     * @param replace заменять символы, которых нет в кодировке, вместо ошибки
+     */
+    public TextWriter(WritableByteChannel channel, TextFormat format, boolean replace) {
+        this.channel = channel;
+        final CodingErrorAction action = replace ? CodingErrorAction.REPLACE : CodingErrorAction.REPORT;
+        this.encoder = format.getCharset().newEncoder()
+                .onMalformedInput(action)
+                .onUnmappableCharacter(action);
+        this.separator = CharBuffer.wrap(format.getLineSeparator());
+        out.put(format.getBom());
+    }
+
+    /**
+     * пишет весь снимок
+     */
+    public static void write(TextSnapshot text, TextFormat format, WritableByteChannel channel) throws IOException {
+        write(text, format, channel, false);
+    }
+
+    /**
+     * пишет весь снимок, при replace символы, которых нет в кодировке, заменяются
+     */
+    public static void write(TextSnapshot text, TextFormat format, WritableByteChannel channel, boolean replace) throws IOException {
+        final TextWriter writer = new TextWriter(channel, format, replace);
+        final Segment segment = new Segment();
+        final int length = text.length();
+        int offset = 0;
+        while (offset < length) {
+            text.segment(offset, length - offset, segment);
+            writer.write(segment.array, segment.offset, segment.count);
+            offset += segment.count;
+        }
+        writer.finish();
+    }
+
+    public void write(char[] chars, int offset, int count) throws IOException {
+        if (count == 0) {
+            return;
+        }
+        if (hasHighSurrogate) {
+            // суррогатная пара, разорванная между вызовами
+            hasHighSurrogate = false;
+            surrogate.put(chars[offset]);
+            surrogate.flip();
+            encode(surrogate);
+            surrogate.clear();
+            offset++;
+            count--;
+        }
+        int end = offset + count;
+        if (count > 0 && Character.isHighSurrogate(chars[end - 1])) {
+            surrogate.put(chars[--end]);
+            hasHighSurrogate = true;
+        }
+        int runStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (chars[i] == '\n') {
+                encode(CharBuffer.wrap(chars, runStart, i - runStart));
+                separator.rewind();
+                encode(separator);
+                runStart = i + 1;
+            }
+        }
+        encode(CharBuffer.wrap(chars, runStart, end - runStart));
+    }
+
+    /**
+     * дописывает остаток кодировщика и сбрасывает буфер в канал
+     */
+    public void finish() throws IOException {
+        if (hasHighSurrogate) {
+            hasHighSurrogate = false;
+            surrogate.flip();
+            encode(surrogate);
+            surrogate.clear();
+        }
+        encoder.encode(CharBuffer.allocate(0), out, true);
+        while (encoder.flush(out).isOverflow()) {
+            drain();
+        }
+        drain();
+    }
+
+    private void encode(CharBuffer in) throws IOException {
+        CoderResult result;
+        while ((result = encoder.encode(in, out, false)).isOverflow()) {
+            drain();
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        if (in.hasRemaining()) {
+            // одиночный старший суррогат перед переводом строки
+            if (encoder.malformedInputAction() == CodingErrorAction.REPORT) {
+                throw new MalformedInputException(in.remaining());
+            }
+            final byte[] replacement = encoder.replacement();
+            if (out.remaining() < replacement.length) {
+                drain();
+            }
+            out.put(replacement);
+        }
+    }
+
+    private void drain() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+}
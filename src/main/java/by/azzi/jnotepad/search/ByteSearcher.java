@@ -0,0 +1,202 @@
+package by.azzi.jnotepad.search;
+
+import by.azzi.jnotepad.document.MappedText;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * поиск строки прямо в байтах отображенного файла {@link MappedText}, без декодирования текста.
+ * <p>
+ * Запрос кодируется в кодировку файла. Без учета регистра каждый байт образца допускает байты
+ * строчного и прописного вариантов символа, если они кодируются той же длиной, так что
+ * алгоритм Бойера-Мура-Хорспула идет по байтам с множествами допустимых значений.
+ * В многобайтовых кодировках такая маска может пропустить смесь байт разных вариантов,
+ * поэтому кандидат проверяется декодированием, как и слово целиком
+ */
+public final class ByteSearcher {
+
+    private final SearchQuery query;
+    /**
+     * допустимые байты каждой позиции образца
+     */
+    private final boolean[][] accepts;
+    private final int[] shift = new int[256];
+    private final int length;
+    /**
+     * запрос не кодируется в кодировке файла, вхождений нет
+     */
+    private final boolean unmappable;
+
+    public ByteSearcher(SearchQuery query, Charset charset) {
+        this.query = query;
+        final String text = query.getText();
+        unmappable = !charset.newEncoder().canEncode(text);
+        final List<boolean[]> positions = new ArrayList<>();
+        for (int i = 0; i < text.length(); ) {
+            final int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            final byte[] exact = encode(c, charset);
+            final boolean[][] sets = new boolean[exact.length][256];
+            accept(sets, exact);
+            if (!query.isMatchCase()) {
+                accept(sets, encode(Character.toLowerCase(c), charset));
+                accept(sets, encode(Character.toUpperCase(c), charset));
+                accept(sets, encode(Character.toTitleCase(c), charset));
+            }
+            positions.addAll(Arrays.asList(sets));
+        }
+        accepts = positions.toArray(new boolean[0][]);
+        length = accepts.length;
+        final int last = length - 1;
+        Arrays.fill(shift, length);
+        for (int i = 0; i < last; i++) {
+            for (int b = 0; b < 256; b++) {
+                if (accepts[i][b]) {
+                    shift[b] = last - i;
+                }
+            }
+        }
+    }
+
+    private static byte[] encode(int c, Charset charset) {
+        return new String(Character.toChars(c)).getBytes(charset);
+    }
+
+    private static void accept(boolean[][] sets, byte[] bytes) {
+        if (bytes.length != sets.length) {
+            return;
+        }
+        for (int k = 0; k < bytes.length; k++) {
+            sets[k][bytes[k] & 0xff] = true;
+        }
+    }
+
+    public SearchQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * длина вхождения в байтах
+     */
+    public int getMatchLength() {
+        return length;
+    }
+
+    /**
+     * поиск от from (вперед) или до from (назад), при wrap продолжает с другого конца файла;
+     * возвращает смещение вхождения или -1. cancelled проверяется перед каждым окном
+     */
+    public long find(MappedText text, long from, boolean forward, boolean wrap, BooleanSupplier cancelled) throws IOException {
+        final long start = text.getDataStart();
+        final long end = text.size();
+        if (unmappable) {
+            return -1;
+        }
+        if (forward) {
+            final long found = findForward(text, from, end, cancelled);
+            return found >= 0 || !wrap ? found : findForward(text, start, Math.min(end, from + length - 1), cancelled);
+        }
+        final long found = findBackward(text, start, from, cancelled);
+        return found >= 0 || !wrap ? found : findBackward(text, Math.max(start, from - length + 1), end, cancelled);
+    }
+
+    /**
+     * первое вхождение, целиком лежащее в [from, to); окна перекрываются на длину образца
+     */
+    public long findForward(MappedText text, long from, long to, BooleanSupplier cancelled) throws IOException {
+        final int window = Math.max(text.getWindow(), 2 * length);
+        long position = from;
+        while (to - position >= length && !cancelled.getAsBoolean()) {
+            final int count = (int) Math.min(window, to - position);
+            final ByteBuffer bytes = text.map(position, count);
+            for (int i = indexOf(bytes, 0, count); i >= 0; i = indexOf(bytes, i + 1, count)) {
+                if (matches(text, position + i)) {
+                    return position + i;
+                }
+            }
+            if (position + count >= to) {
+                break;
+            }
+            position += count - (length - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * последнее вхождение, целиком лежащее в [from, to); окна просматриваются с конца
+     */
+    public long findBackward(MappedText text, long from, long to, BooleanSupplier cancelled) throws IOException {
+        final int window = Math.max(text.getWindow(), 2 * length);
+        long chunkEnd = to;
+        while (chunkEnd - from >= length && !cancelled.getAsBoolean()) {
+            final long chunkStart = Math.max(from, chunkEnd - window);
+            final int count = (int) (chunkEnd - chunkStart);
+            final ByteBuffer bytes = text.map(chunkStart, count);
+            long last = -1;
+            for (int i = indexOf(bytes, 0, count); i >= 0; i = indexOf(bytes, i + 1, count)) {
+                if (matches(text, chunkStart + i)) {
+                    last = chunkStart + i;
+                }
+            }
+            if (last >= 0) {
+                return last;
+            }
+            if (chunkStart == from) {
+                break;
+            }
+            // вхождения на стыке окон попадут в следующее окно
+            chunkEnd = chunkStart + length - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * индекс совпадения байт в [from, to) или -1
+     */
+    private int indexOf(ByteBuffer bytes, int from, int to) {
+        final int last = length - 1;
+        final boolean[] lastAccepts = accepts[last];
+        int i = from;
+        while (i + last < to) {
+            final int b = bytes.get(i + last) & 0xff;
+            if (lastAccepts[b] && matchesAt(bytes, i, last)) {
+                return i;
+            }
+            i += shift[b];
+        }
+        return -1;
+    }
+
+    private boolean matchesAt(ByteBuffer bytes, int at, int last) {
+        for (int k = last - 1; k >= 0; k--) {
+            if (!accepts[k][bytes.get(at + k) & 0xff]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(MappedText text, long at) throws IOException {
+        if (!query.isMatchCase()) {
+            final String found = text.decode(at, at + length);
+            final String wanted = query.getText();
+            if (found.length() != wanted.length() || !found.regionMatches(true, 0, wanted, 0, wanted.length())) {
+                return false;
+            }
+        }
+        if (!query.isWholeWord()) {
+            return true;
+        }
+        return !isWordChar(text.charBefore(at)) && !isWordChar(text.charAt(at + length));
+    }
+
+    private static boolean isWordChar(int c) {
+        return c >= 0 && (Character.isLetterOrDigit(c) || c == '_');
+    }
+}
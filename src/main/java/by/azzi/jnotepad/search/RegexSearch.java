@@ -0,0 +1,215 @@
+package by.azzi.jnotepad.search;
+
+import by.azzi.jnotepad.document.TextSnapshot;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * поиск регулярного выражения по снимку документа на {@link ForkJoinPool}.
+ * <p>
+ * Текст делится пополам по границам строк, пока куски не станут меньше {@link #CHUNK_LENGTH};
+ * каждый кусок копируется в char[] и просматривается своим {@link Matcher}, результаты
+ * склеиваются по порядку. Совпадение не может пересечь границу куска, поэтому
+ * многострочные совпадения на стыке кусков не находятся.
+ */
+public final class RegexSearch {
+
+    /**
+     * кусок меньше этого размера ищется в одном потоке
+     */
+    static final int CHUNK_LENGTH = 1024 * 1024;
+    /**
+     * сколько совпадений хранится, остальные только считаются
+     */
+    public static final int MAX_STORED = 1_000_000;
+    private static final int CANCEL_CHECK_MASK = 0xff;
+
+    private final TextSnapshot snapshot;
+    private final Pattern pattern;
+    private volatile boolean cancelled;
+
+    public RegexSearch(TextSnapshot snapshot, Pattern pattern) {
+        this.snapshot = snapshot;
+        this.pattern = pattern;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * ищет все совпадения, блокируя вызывающий поток
+     *
+     * @throws CancellationException если поиск отменен
+     */
+    public SearchResult run(ForkJoinPool pool) {
+        final Chunk result = pool.invoke(new ChunkTask(0, snapshot.length()));
+        checkCancelled();
+        return new SearchResult(snapshot, pattern, result.count, result.starts, result.ends, result.lines, result.size);
+    }
+
+    /**
+     * отмена из любого потока, куски перестают искать при ближайшей проверке
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+    }
+
+    /**
+     * первая граница строки не раньше offset, либо to
+     */
+    private int lineStartAfter(int offset, int to) {
+        for (int i = offset; i < to; i++) {
+            if (snapshot.charAt(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return to;
+    }
+
+    private final class ChunkTask extends RecursiveTask<Chunk> {
+        private final int from;
+        private final int to;
+
+        ChunkTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Chunk compute() {
+            checkCancelled();
+            if (to - from > CHUNK_LENGTH) {
+                final int mid = lineStartAfter(from + (to - from) / 2, to);
+                if (mid < to) {
+                    final ChunkTask right = new ChunkTask(mid, to);
+                    right.fork();
+                    final Chunk left = new ChunkTask(from, mid).compute();
+                    return left.append(right.join());
+                }
+            }
+            return search();
+        }
+
+        private Chunk search() {
+            final char[] chars = new char[to - from];
+            snapshot.getChars(from, to, chars, 0);
+            final Chunk chunk = new Chunk();
+            final Matcher matcher = pattern.matcher(new CharArraySequence(chars));
+            int line = 0;
+            int scanned = 0;
+            while (matcher.find()) {
+                if ((chunk.count & CANCEL_CHECK_MASK) == 0) {
+                    checkCancelled();
+                }
+                final int start = matcher.start();
+                for (; scanned < start; scanned++) {
+                    if (chars[scanned] == '\n') {
+                        line++;
+                    }
+                }
+                chunk.add(from + start, from + matcher.end(), line);
+            }
+            for (; scanned < chars.length; scanned++) {
+                if (chars[scanned] == '\n') {
+                    line++;
+                }
+            }
+            chunk.lineCount = line;
+            return chunk;
+        }
+    }
+
+    /**
+     * совпадения одного куска, строки считаются от начала куска
+     */
+    private static final class Chunk {
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int[] lines = new int[16];
+        int size;
+        long count;
+        int lineCount;
+
+        void add(int start, int end, int line) {
+            count++;
+            if (size == MAX_STORED) {
+                return;
+            }
+            if (size == starts.length) {
+                final int capacity = Math.min(MAX_STORED, size * 2);
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            lines[size] = line;
+            size++;
+        }
+
+        /**
+         * дописывает совпадения следующего куска, сдвигая его строки
+         */
+        Chunk append(Chunk next) {
+            final long total = count + next.count;
+            for (int i = 0; i < next.size && size < MAX_STORED; i++) {
+                add(next.starts[i], next.ends[i], next.lines[i] + lineCount);
+            }
+            count = total;
+            lineCount += next.lineCount;
+            return this;
+        }
+    }
+
+    private static final class CharArraySequence implements CharSequence {
+        private final char[] chars;
+        private final int offset;
+        private final int length;
+
+        CharArraySequence(char[] chars) {
+            this(chars, 0, chars.length);
+        }
+
+        CharArraySequence(char[] chars, int offset, int length) {
+            this.chars = chars;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[offset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new CharArraySequence(chars, offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, offset, length);
+        }
+    }
+}
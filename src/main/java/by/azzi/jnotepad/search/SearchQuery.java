@@ -0,0 +1,51 @@
+package by.azzi.jnotepad.search;
+
+import java.util.Objects;
+
+/**
+ * параметры поиска
+ */
+public final class SearchQuery {
+
+    private final String text;
+    private final boolean matchCase;
+    private final boolean wholeWord;
+
+    public SearchQuery(String text, boolean matchCase, boolean wholeWord) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("empty search text");
+        }
+        this.text = text;
+        this.matchCase = matchCase;
+        this.wholeWord = wholeWord;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isMatchCase() {
+        return matchCase;
+    }
+
+    public boolean isWholeWord() {
+        return wholeWord;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SearchQuery)) {
+            return false;
+        }
+        final SearchQuery that = (SearchQuery) o;
+        return matchCase == that.matchCase && wholeWord == that.wholeWord && text.equals(that.text);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(text, matchCase, wholeWord);
+    }
+}
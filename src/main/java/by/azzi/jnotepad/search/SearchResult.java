@@ -0,0 +1,102 @@
+package by.azzi.jnotepad.search;
+
+import by.azzi.jnotepad.document.TextSnapshot;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * совпадения регулярного выражения по возрастанию смещения, смещения относятся
+ * к снимку, по которому шел поиск
+ */
+public final class SearchResult {
+
+    private static final int PREVIEW_BEFORE = 40;
+    private static final int PREVIEW_LENGTH = 160;
+
+    private final TextSnapshot snapshot;
+    private final Pattern pattern;
+    private final long count;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] lines;
+    private final int size;
+
+    SearchResult(TextSnapshot snapshot, Pattern pattern, long count, int[] starts, int[] ends, int[] lines, int size) {
+        this.snapshot = snapshot;
+        this.pattern = pattern;
+        this.count = count;
+        this.starts = starts;
+        this.ends = ends;
+        this.lines = lines;
+        this.size = size;
+    }
+
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    /**
+     * число всех совпадений, может быть больше числа сохраненных
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * число сохраненных совпадений
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * номер строки с 0
+     */
+    public int getLine(int index) {
+        return lines[index];
+    }
+
+    /**
+     * индекс первого совпадения, которое начинается не раньше offset, либо size()
+     */
+    public int indexAfter(int offset) {
+        final int index = Arrays.binarySearch(starts, 0, size, offset);
+        if (index < 0) {
+            return -index - 1;
+        }
+        int i = index;
+        while (i > 0 && starts[i - 1] == offset) {
+            i--;
+        }
+        return i;
+    }
+
+    /**
+     * строка вокруг совпадения для списка результатов
+     */
+    public String getPreview(int index) {
+        final int start = starts[index];
+        int from = start;
+        while (from > 0 && start - from < PREVIEW_BEFORE && snapshot.charAt(from - 1) != '\n') {
+            from--;
+        }
+        final StringBuilder text = new StringBuilder();
+        for (int i = from, end = Math.min(snapshot.length(), from + PREVIEW_LENGTH); i < end; i++) {
+            final char c = snapshot.charAt(i);
+            if (c == '\n') {
+                break;
+            }
+            text.append(c == '\t' ? ' ' : c);
+        }
+        return text.toString();
+    }
+}
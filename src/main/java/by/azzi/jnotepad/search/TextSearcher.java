@@ -0,0 +1,280 @@
+package by.azzi.jnotepad.search;
+
+import by.azzi.jnotepad.document.IntArray;
+
+import javax.swing.text.Segment;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * поиск строки алгоритмом Бойера-Мура-Хорспула.
+ * <p>
+ * Текст читается сегментами {@link TextSource} с частичным возвратом и просматривается
+ * прямо в их массивах. Вхождения на стыке сегментов ищутся в небольшом буфере из хвоста
+ * предыдущего сегмента и начала следующего, так что копируется не больше 2 * (m - 1) символов.
+ * Куски, хранящиеся однобайтово (отображенный ASCII файл), просматриваются прямо в байтах:
+ * со сдвигами алгоритма читается лишь часть из них.
+ */
+public final class TextSearcher {
+
+    /**
+     * размер куска при поиске назад
+     */
+    private static final int BACKWARD_CHUNK = 256 * 1024;
+
+    private final SearchQuery query;
+    private final char[] pattern;
+    private final boolean ignoreCase;
+    /**
+     * сдвиг по младшему байту символа; символы с одинаковым байтом получают
+     * наименьший из сдвигов, что только уменьшает шаг, но не пропускает вхождений
+     */
+    private final int[] shift = new int[256];
+    private final Segment segment = new Segment();
+    private final char[] stitch;
+
+    public TextSearcher(SearchQuery query) {
+        this.query = query;
+        ignoreCase = !query.isMatchCase();
+        pattern = query.getText().toCharArray();
+        if (ignoreCase) {
+            for (int i = 0; i < pattern.length; i++) {
+                pattern[i] = fold(pattern[i]);
+            }
+        }
+        final int last = pattern.length - 1;
+        Arrays.fill(shift, pattern.length);
+        for (int i = 0; i < last; i++) {
+            shift[pattern[i] & 0xff] = last - i;
+        }
+        stitch = new char[2 * last];
+    }
+
+    public SearchQuery getQuery() {
+        return query;
+    }
+
+    public int getMatchLength() {
+        return pattern.length;
+    }
+
+    /**
+     * поиск от from (вперед) или до from (назад), при wrap продолжает
+     * с другого конца текста; возвращает начало вхождения или -1
+     */
+    public int find(TextSource text, int from, boolean forward, boolean wrap) {
+        final int length = text.length();
+        final int m = pattern.length;
+        if (forward) {
+            final int found = findForward(text, from, length);
+            return found >= 0 || !wrap ? found : findForward(text, 0, Math.min(length, from + m - 1));
+        }
+        final int found = findBackward(text, 0, from);
+        return found >= 0 || !wrap ? found : findBackward(text, Math.max(0, from - m + 1), length);
+    }
+
+    /**
+     * первое вхождение, целиком лежащее в [from, to)
+     */
+    public int findForward(TextSource text, int from, int to) {
+        final int m = pattern.length;
+        int offset = from;
+        while (offset + m <= to) {
+            final int found = indexOf(text, offset, to);
+            if (found < 0 || isWholeWord(text, found)) {
+                return found;
+            }
+            offset = found + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * начала всех непересекающихся вхождений в [from, to) по возрастанию
+     */
+    public IntArray findAll(TextSource text, int from, int to) {
+        final IntArray found = new IntArray();
+        int offset = findForward(text, from, to);
+        while (offset >= 0) {
+            found.add(offset);
+            offset = findForward(text, offset + pattern.length, to);
+        }
+        return found;
+    }
+
+    /**
+     * последнее вхождение, целиком лежащее в [from, to); текст просматривается
+     * кусками с конца, каждый кусок - прямым поиском
+     */
+    public int findBackward(TextSource text, int from, int to) {
+        final int m = pattern.length;
+        int chunkEnd = to;
+        while (chunkEnd - from >= m) {
+            final int chunkStart = Math.max(from, chunkEnd - Math.max(BACKWARD_CHUNK, 2 * m));
+            int last = -1;
+            int found = findForward(text, chunkStart, chunkEnd);
+            while (found >= 0) {
+                last = found;
+                found = findForward(text, found + 1, chunkEnd);
+            }
+            if (last >= 0) {
+                return last;
+            }
+            if (chunkStart == from) {
+                break;
+            }
+            // вхождения на стыке кусков попадут в следующий кусок
+            chunkEnd = chunkStart + m - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * первое вхождение без проверки на слово целиком
+     */
+    private int indexOf(TextSource text, int from, int to) {
+        final int keep = pattern.length - 1;
+        // хвост предыдущих сегментов лежит в stitch[0, carry)
+        int carry = 0;
+        int offset = from;
+        while (offset < to) {
+            // однобайтовые куски просматриваются прямо в байтах, без расширения в символы
+            final ByteBuffer bytes = text.bytes(offset, to - offset);
+            final int count;
+            if (bytes != null) {
+                count = bytes.remaining();
+            } else {
+                text.segment(offset, to - offset, segment);
+                count = segment.count;
+            }
+            if (carry > 0) {
+                final int head = Math.min(keep, count);
+                copy(bytes, 0, stitch, carry, head);
+                final int found = indexOf(stitch, 0, carry + head);
+                if (found >= 0) {
+                    return offset - carry + found;
+                }
+            }
+            final int found = bytes != null
+                    ? indexOf(bytes, bytes.position(), bytes.limit()) - bytes.position()
+                    : indexOf(segment.array, segment.offset, segment.offset + count) - segment.offset;
+            if (found >= 0) {
+                return offset + found;
+            }
+            if (keep > 0) {
+                if (count >= keep) {
+                    copy(bytes, count - keep, stitch, 0, keep);
+                    carry = keep;
+                } else {
+                    final int old = Math.min(carry, keep - count);
+                    System.arraycopy(stitch, carry - old, stitch, 0, old);
+                    copy(bytes, 0, stitch, old, count);
+                    carry = old + count;
+                }
+            }
+            offset += count;
+        }
+        return -1;
+    }
+
+    /**
+     * копирует символы текущего куска: из bytes или, если их нет, из segment
+     */
+    private void copy(ByteBuffer bytes, int from, char[] dst, int dstBegin, int count) {
+        if (bytes == null) {
+            System.arraycopy(segment.array, segment.offset + from, dst, dstBegin, count);
+            return;
+        }
+        final int start = bytes.position() + from;
+        for (int i = 0; i < count; i++) {
+            dst[dstBegin + i] = (char) (bytes.get(start + i) & 0xff);
+        }
+    }
+
+    /**
+     * индекс вхождения в [from, to) или from - 1
+     */
+    private int indexOf(char[] array, int from, int to) {
+        final char[] p = pattern;
+        final int last = p.length - 1;
+        final char lastChar = p[last];
+        int i = from;
+        final int end = to - last;
+        while (i < end) {
+            char c = array[i + last];
+            if (ignoreCase) {
+                c = fold(c);
+            }
+            if (c == lastChar && matchesAt(array, i, last)) {
+                return i;
+            }
+            i += shift[c & 0xff];
+        }
+        return from - 1;
+    }
+
+    /**
+     * то же по байтам ISO-8859-1 с абсолютными индексами
+     */
+    private int indexOf(ByteBuffer bytes, int from, int to) {
+        final char[] p = pattern;
+        final int last = p.length - 1;
+        final char lastChar = p[last];
+        int i = from;
+        final int end = to - last;
+        while (i < end) {
+            char c = (char) (bytes.get(i + last) & 0xff);
+            if (ignoreCase) {
+                c = fold(c);
+            }
+            if (c == lastChar && matchesAt(bytes, i, last)) {
+                return i;
+            }
+            i += shift[c & 0xff];
+        }
+        return from - 1;
+    }
+
+    private boolean matchesAt(char[] array, int at, int last) {
+        for (int k = last - 1; k >= 0; k--) {
+            final char c = ignoreCase ? fold(array[at + k]) : array[at + k];
+            if (c != pattern[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matchesAt(ByteBuffer bytes, int at, int last) {
+        for (int k = last - 1; k >= 0; k--) {
+            final char c = (char) (bytes.get(at + k) & 0xff);
+            if ((ignoreCase ? fold(c) : c) != pattern[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isWholeWord(TextSource text, int at) {
+        if (!query.isWholeWord()) {
+            return true;
+        }
+        final int end = at + pattern.length;
+        return (at == 0 || !isWordChar(text.charAt(at - 1)))
+                && (end >= text.length() || !isWordChar(text.charAt(end)));
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * символ без учета регистра, ASCII без обращения к таблицам Unicode
+     */
+    private static char fold(char c) {
+        if (c < 0x80) {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
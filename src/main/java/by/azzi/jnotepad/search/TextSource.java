@@ -0,0 +1,92 @@
+package by.azzi.jnotepad.search;
+
+import by.azzi.jnotepad.document.TextDocument;
+import by.azzi.jnotepad.document.TextSnapshot;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Segment;
+import java.nio.ByteBuffer;
+
+/**
+ * текст, который читается сегментами без копирования в String
+ */
+public interface TextSource {
+
+    int length();
+
+    /**
+     * как Document.getText с частичным возвратом: в segment попадает
+     * не больше length символов начиная с offset, но хотя бы один
+     */
+    void segment(int offset, int length, Segment segment);
+
+    /**
+     * байты ISO-8859-1 начала диапазона, если текст там хранится байтами, иначе null;
+     * символ offset + i - байт position() + i, всего remaining() символов
+     */
+    default ByteBuffer bytes(int offset, int length) {
+        return null;
+    }
+
+    default char charAt(int offset) {
+        final Segment segment = new Segment();
+        segment(offset, 1, segment);
+        return segment.first();
+    }
+
+    static TextSource of(Document document) {
+        return new TextSource() {
+            @Override
+            public int length() {
+                return document.getLength();
+            }
+
+            @Override
+            public void segment(int offset, int length, Segment segment) {
+                segment.setPartialReturn(true);
+                try {
+                    document.getText(offset, length, segment);
+                } catch (BadLocationException ex) {
+                    throw new IndexOutOfBoundsException(ex.getMessage());
+                }
+            }
+
+            @Override
+            public ByteBuffer bytes(int offset, int length) {
+                if (!(document instanceof TextDocument)) {
+                    return null;
+                }
+                try {
+                    return ((TextDocument) document).getBytes(offset, length);
+                } catch (BadLocationException ex) {
+                    throw new IndexOutOfBoundsException(ex.getMessage());
+                }
+            }
+        };
+    }
+
+    static TextSource of(TextSnapshot snapshot) {
+        return new TextSource() {
+            @Override
+            public int length() {
+                return snapshot.length();
+            }
+
+            @Override
+            public void segment(int offset, int length, Segment segment) {
+                snapshot.segment(offset, length, segment);
+            }
+
+            @Override
+            public ByteBuffer bytes(int offset, int length) {
+                return snapshot.bytes(offset, length);
+            }
+
+            @Override
+            public char charAt(int offset) {
+                return snapshot.charAt(offset);
+            }
+        };
+    }
+}
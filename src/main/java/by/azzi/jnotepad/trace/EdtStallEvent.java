@@ -0,0 +1,19 @@
+package by.azzi.jnotepad.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("jnotepad.EdtStall")
+@Label("EDT Stall")
+@Description("поток событий не отвечал дольше порога")
+@Category("JNotepad")
+@StackTrace(false)
+final class EdtStallEvent extends jdk.jfr.Event {
+
+    @Label("EDT Stack")
+    @Description("стек потока событий в момент, когда зависание было замечено")
+    String stack;
+}
@@ -0,0 +1,102 @@
+package by.azzi.jnotepad.trace;
+
+import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * фоновый поток, который отправляет в поток событий пустую задачу и ждет ее выполнения;
+ * если ответа нет дольше порога, снимает стек потока событий и после ответа
+ * пишет {@link EdtStallEvent} с длительностью зависания
+ */
+final class EdtWatchdog implements Runnable {
+
+    private final long thresholdNanos;
+    private final long periodMillis;
+    private final BooleanSupplier active;
+    private volatile Thread edt;
+
+    EdtWatchdog(long thresholdMillis) {
+        // без окон поток событий должен успеть завершиться сам
+        this(thresholdMillis, EdtWatchdog::hasWindows);
+    }
+
+    EdtWatchdog(long thresholdMillis, BooleanSupplier active) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.periodMillis = Math.max(1, thresholdMillis / 2);
+        this.active = active;
+    }
+
+    void start() {
+        final Thread thread = new Thread(this, "edt-watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                Thread.sleep(periodMillis);
+                if (active.getAsBoolean()) {
+                    check();
+                }
+            }
+        } catch (InterruptedException ex) {
+            // остановлен
+        }
+    }
+
+    private void check() throws InterruptedException {
+        final EdtStallEvent event = new EdtStallEvent();
+        event.begin();
+        final CountDownLatch answered = new CountDownLatch(1);
+        EventQueue.invokeLater(() -> {
+            edt = Thread.currentThread();
+            answered.countDown();
+        });
+        if (answered.await(thresholdNanos, TimeUnit.NANOSECONDS)) {
+            return;
+        }
+        final String stack = stackOf(edt);
+        answered.await();
+        event.end();
+        event.stack = stack;
+        event.commit();
+    }
+
+    private static boolean hasWindows() {
+        for (Window window : Window.getWindows()) {
+            if (window.isDisplayable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * стек потока событий, до первого ответа он ищется по имени
+     */
+    private static String stackOf(Thread thread) {
+        StackTraceElement[] stack = null;
+        if (thread != null) {
+            stack = thread.getStackTrace();
+        } else {
+            for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+                if (entry.getKey().getName().startsWith("AWT-EventQueue")) {
+                    stack = entry.getValue();
+                }
+            }
+        }
+        if (stack == null) {
+            return "";
+        }
+        final StringBuilder text = new StringBuilder();
+        for (StackTraceElement element : stack) {
+            text.append("at ").append(element).append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,22 @@
+package by.azzi.jnotepad.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("jnotepad.FileIO")
+@Label("File I/O")
+@Category("JNotepad")
+final class FileIOEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Path")
+    String path;
+
+    @Label("Size")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,87 @@
+package by.azzi.jnotepad.trace;
+
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.io.File;
+
+/**
+ * события JFR за {@link Trace}, загружается только при включенных замерах
+ */
+final class JfrRecorder {
+
+    /**
+     * нажатие, после которого текст так и не перерисовался, не ждет следующей отрисовки дольше этого
+     */
+    private static final long STALE_NANOS = 2_000_000_000L;
+
+    /**
+     * первое нажатие после последней отрисовки, трогается только в потоке событий
+     */
+    private static KeystrokeEvent pending;
+    private static long pendingNanos;
+
+    private JfrRecorder() {
+    }
+
+    static void install() {
+        Toolkit.getDefaultToolkit().addAWTEventListener(event -> {
+            if (event.getID() == KeyEvent.KEY_PRESSED) {
+                keyPressed((KeyEvent) event);
+            }
+        }, AWTEvent.KEY_EVENT_MASK);
+        new EdtWatchdog(Trace.STALL_MILLIS).start();
+    }
+
+    private static void keyPressed(KeyEvent e) {
+        final long now = System.nanoTime();
+        if (pending != null && now - pendingNanos < STALE_NANOS) {
+            pending.keys++;
+            return;
+        }
+        pending = new KeystrokeEvent();
+        pending.begin();
+        pendingNanos = now;
+        pending.key = KeyEvent.getKeyText(e.getKeyCode());
+        pending.keys = 1;
+    }
+
+    static void painted() {
+        if (pending != null) {
+            pending.commit();
+            pending = null;
+        }
+    }
+
+    static Object beginListeners() {
+        final ListenersEvent event = new ListenersEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endListeners(Object span, String source, String type) {
+        final ListenersEvent event = (ListenersEvent) span;
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.type = type;
+            event.commit();
+        }
+    }
+
+    static Object beginFileIO() {
+        final FileIOEvent event = new FileIOEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endFileIO(Object span, String operation, File file) {
+        final FileIOEvent event = (FileIOEvent) span;
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.path = file.getPath();
+            event.bytes = file.length();
+            event.commit();
+        }
+    }
+}
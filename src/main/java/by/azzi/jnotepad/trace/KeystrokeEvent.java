@@ -0,0 +1,22 @@
+package by.azzi.jnotepad.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("jnotepad.Keystroke")
+@Label("Keystroke To Paint")
+@Description("от нажатия клавиши до следующей отрисовки текста")
+@Category("JNotepad")
+@StackTrace(false)
+final class KeystrokeEvent extends jdk.jfr.Event {
+
+    @Label("Key")
+    String key;
+
+    @Label("Keys")
+    @Description("нажатий до отрисовки")
+    int keys;
+}
@@ -0,0 +1,21 @@
+package by.azzi.jnotepad.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("jnotepad.Listeners")
+@Label("Listeners")
+@Description("рассылка одного события всем слушателям")
+@Category("JNotepad")
+@StackTrace(false)
+final class ListenersEvent extends jdk.jfr.Event {
+
+    @Label("Source")
+    String source;
+
+    @Label("Type")
+    String type;
+}
@@ -0,0 +1,81 @@
+package by.azzi.jnotepad.trace;
+
+import java.io.File;
+
+/**
+ * замеры времени в потоке событий для Java Flight Recorder, включаются свойством jnotepad.trace:
+ * задержка от нажатия клавиши до отрисовки текста, время слушателей документа, каретки
+ * и свойств окна, чтение и запись файлов, зависания потока событий со стеком.
+ * <p>
+ * Вызовы закрываются проверкой {@link #ENABLED}, так что выключенные замеры ничего не стоят,
+ * а классы JFR не загружаются. События пишутся, только если идет запись JFR, например
+ * -XX:StartFlightRecording=filename=jnotepad.jfr
+ */
+public final class Trace {
+
+    public static final boolean ENABLED = Boolean.getBoolean("jnotepad.trace") && isJfrAvailable();
+    /**
+     * с какой задержки ответа поток событий считается зависшим
+     */
+    static final long STALL_MILLIS = Long.getLong("jnotepad.trace.stallMillis", 200);
+
+    private Trace() {
+    }
+
+    private static boolean isJfrAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException ex) {
+            System.err.println("jnotepad.trace: JFR недоступен в этой JVM");
+            return false;
+        }
+    }
+
+    /**
+     * начинает следить за клавиатурой и потоком событий
+     */
+    public static void install() {
+        JfrRecorder.install();
+    }
+
+    /**
+     * текст отрисован, завершает замер от нажатия клавиши
+     */
+    public static void painted() {
+        JfrRecorder.painted();
+    }
+
+    /**
+     * начало рассылки слушателям
+     *
+     * @return замер для {@link #endListeners}
+     */
+    public static Object beginListeners() {
+        return JfrRecorder.beginListeners();
+    }
+
+    /**
+     * @param source чьи слушатели: document, caret, property
+     * @param type   тип события или имя свойства
+     */
+    public static void endListeners(Object span, String source, String type) {
+        JfrRecorder.endListeners(span, source, type);
+    }
+
+    /**
+     * начало чтения или записи файла
+     *
+     * @return замер для {@link #endFileIO}
+     */
+    public static Object beginFileIO() {
+        return JfrRecorder.beginFileIO();
+    }
+
+    /**
+     * @param operation read или write
+     */
+    public static void endFileIO(Object span, String operation, File file) {
+        JfrRecorder.endFileIO(span, operation, file);
+    }
+}
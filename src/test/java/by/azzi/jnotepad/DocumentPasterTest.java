@@ -0,0 +1,59 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.EditHistory;
+import by.azzi.jnotepad.document.TextDocument;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.awt.datatransfer.StringSelection;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentPasterTest {
+
+    @Test
+    public void pastesInChunksAsOneStep() throws Exception {
+        final TextDocument document = new TextDocument();
+        document.insertString(0, "начало [выделение] конец", null);
+        final EditHistory history = new EditHistory();
+        document.addUndoableEditListener(history);
+
+        // "\r\n" на стыке первых двух кусков
+        final char[] chars = new char[2 * DocumentPaster.CHUNK + 100];
+        Arrays.fill(chars, 'a');
+        chars[DocumentPaster.CHUNK - 1] = '\r';
+        chars[DocumentPaster.CHUNK] = '\n';
+        chars[chars.length - 1] = '\r';
+        final int start = "начало ".length();
+        final int end = start + "[выделение]".length();
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger pastedEnd = new AtomicInteger();
+        SwingUtilities.invokeAndWait(() -> new DocumentPaster(document, new StringSelection(new String(chars)), start, end) {
+            @Override
+            protected void finished(int end) {
+                pastedEnd.set(end);
+                done.countDown();
+            }
+
+            @Override
+            protected void failed(Throwable cause) {
+                throw new AssertionError(cause);
+            }
+        }.start());
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        final int pasted = chars.length - 1;
+        assertEquals(start + pasted, pastedEnd.get());
+        assertEquals("начало ".length() + pasted + " конец".length(), document.getLength());
+        assertEquals("a\na", document.getText(start + DocumentPaster.CHUNK - 2, 3));
+        assertEquals("\n конец", document.getText(start + pasted - 1, 7));
+        assertEquals(1, history.getUndoCount());
+        SwingUtilities.invokeAndWait(history::undo);
+        assertEquals("начало [выделение] конец", document.getText(0, document.getLength()));
+    }
+}
@@ -0,0 +1,96 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.TextDocument;
+import org.junit.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.print.PageFormat;
+import java.awt.print.Paper;
+import java.awt.print.Printable;
+import java.awt.print.PrinterAbortException;
+
+import static org.junit.Assert.assertEquals;
+
+public class DocumentPrintableTest {
+
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 10);
+
+    private final BufferedImage image = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB);
+    private final FontMetrics metrics = image.getGraphics().getFontMetrics(FONT);
+
+    @Test
+    public void paginatesLines() throws Exception {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+        final DocumentPrintable printable = printable(content.toString());
+        final PageFormat format = format(80, 10);
+        for (int page = 0; page < 10; page++) {
+            assertEquals(Printable.PAGE_EXISTS, print(printable, format, page));
+            // принтер может запросить страницу повторно
+            assertEquals(Printable.PAGE_EXISTS, print(printable, format, page));
+        }
+        assertEquals(100, printable.getProgress());
+        assertEquals(Printable.NO_SUCH_PAGE, print(printable, format, 10));
+        assertEquals(10, printable.getPageCount());
+    }
+
+    @Test
+    public void wrapsLongLinesByWords() throws Exception {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            content.append("word ");
+        }
+        // по 4 слова в строке страницы, две строки на страницу
+        final DocumentPrintable printable = printable(content.toString());
+        final PageFormat format = format(22, 2);
+        assertEquals(Printable.PAGE_EXISTS, print(printable, format, 4));
+        assertEquals(Printable.NO_SUCH_PAGE, print(printable, format, 5));
+    }
+
+    @Test
+    public void printsEmptyDocumentAsOnePage() throws Exception {
+        final DocumentPrintable printable = printable("");
+        final PageFormat format = format(80, 10);
+        assertEquals(Printable.PAGE_EXISTS, print(printable, format, 0));
+        assertEquals(Printable.NO_SUCH_PAGE, print(printable, format, 1));
+    }
+
+    @Test(expected = PrinterAbortException.class)
+    public void abortsWhenCancelled() throws Exception {
+        final DocumentPrintable printable = printable("text");
+        printable.cancel();
+        print(printable, format(80, 10), 0);
+    }
+
+    private DocumentPrintable printable(String content) throws Exception {
+        final TextDocument document = new TextDocument();
+        document.insertString(0, content, null);
+        return new DocumentPrintable(document.snapshot(), FONT);
+    }
+
+    /**
+     * страница на columns символов в ширину и rows строк в высоту
+     */
+    private PageFormat format(int columns, int rows) {
+        final Paper paper = new Paper();
+        final double width = columns * metrics.charWidth('w');
+        final double height = rows * metrics.getHeight() + metrics.getHeight() / 2.0;
+        paper.setSize(width + 20, height + 20);
+        paper.setImageableArea(10, 10, width, height);
+        final PageFormat format = new PageFormat();
+        format.setPaper(paper);
+        return format;
+    }
+
+    private int print(DocumentPrintable printable, PageFormat format, int page) throws Exception {
+        final Graphics graphics = image.getGraphics();
+        try {
+            return printable.print(graphics, format, page);
+        } finally {
+            graphics.dispose();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.TextDocument;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentTabTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<DocumentTab> tabs = new ArrayList<>();
+
+    @After
+    public void closeTabs() {
+        for (DocumentTab tab : tabs) {
+            tab.close();
+        }
+    }
+
+    @Test
+    public void dropsCleanAndSpillsChangedIdleDocuments() throws Exception {
+        final DocumentTab clean = tab("clean.txt", "чистый текст\n");
+        final DocumentTab changed = tab("changed.txt", "измененный текст\n");
+        changed.changed = true;
+        final DocumentTab current = tab("current.txt", "текущий текст\n");
+        current.setCurrent(true);
+        final TextDocument changedDocument = changed.document;
+        final long heap = changedDocument.getHeapSize();
+
+        DocumentTab.trim(0);
+
+        assertNull(clean.document);
+        assertSame(changedDocument, changed.document);
+        assertTrue(changedDocument.getHeapSize() < heap);
+        assertEquals("измененный текст\n", changedDocument.getText(0, changedDocument.getLength()));
+        assertNotNull(current.document);
+        assertEquals("текущий текст\n", current.document.getText(0, current.document.getLength()));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFirst() throws Exception {
+        final DocumentTab older = tab("older.txt", "старый\n");
+        final DocumentTab newer = tab("newer.txt", "новый\n");
+        older.setCurrent(false);
+        newer.setCurrent(false);
+
+        DocumentTab.trim(newer.document.getHeapSize());
+
+        assertNull(older.document);
+        assertNotNull(newer.document);
+    }
+
+    @Test
+    public void evictsLargeDocumentsOverMemoryBudget() throws Exception {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            text.append("строка ").append(i).append('\n');
+        }
+        final List<DocumentTab> large = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final DocumentTab tab = tab("large" + i + ".txt", text.toString());
+            tab.setCurrent(false);
+            large.add(tab);
+        }
+        final TextDocument document = large.get(0).document;
+        // каждая вставка в середину куска добавляет два куска
+        for (int i = 0; i < 10_000; i++) {
+            document.insertString(i * 100, "x", null);
+        }
+        // в оценке не только символы, но и начала строк и куски
+        assertTrue(document.getHeapSize() >= 2L * text.length() + 4L * 100_000 + 24L * 2 * 10_000);
+
+        DocumentTab.trim(2 * document.getHeapSize());
+
+        assertNull(large.get(0).document);
+        assertNull(large.get(1).document);
+        assertNotNull(large.get(2).document);
+        assertNotNull(large.get(3).document);
+    }
+
+    private DocumentTab tab(String name, String text) throws Exception {
+        final File file = folder.newFile(name);
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        final DocumentTab tab = new DocumentTab(TextDocument.read(file), name);
+        tab.file = file;
+        tabs.add(tab);
+        return tab;
+    }
+}
@@ -0,0 +1,51 @@
+package by.azzi.jnotepad;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IconCacheTest {
+
+    private static final String[] RESOURCES = {"./img/icons8-spiral-notepad-48.png", "./img/icons8-spiral-notepad-96.png", "./img/missing.png"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void cachedIconsMatchDecoded() throws IOException {
+        final File cacheFile = new File(folder.getRoot(), "icons.cache");
+        final List<Image> decoded = IconCache.read(cacheFile, RESOURCES);
+        assertEquals(2, decoded.size());
+        assertTrue(cacheFile.isFile());
+
+        final long written = cacheFile.lastModified();
+        final List<Image> cached = IconCache.read(cacheFile, RESOURCES);
+        assertEquals(written, cacheFile.lastModified());
+        assertEquals(2, cached.size());
+        for (int i = 0; i < decoded.size(); i++) {
+            assertArrayEquals(pixels((BufferedImage) decoded.get(i)), pixels((BufferedImage) cached.get(i)));
+        }
+
+        // обрезанный кэш пересобирается
+        try (RandomAccessFile file = new RandomAccessFile(cacheFile, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        assertEquals(2, IconCache.read(cacheFile, RESOURCES).size());
+        assertEquals(2, IconCache.read(cacheFile, RESOURCES).size());
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+}
@@ -0,0 +1,43 @@
+package by.azzi.jnotepad;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InstanceServerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void forwardsFilesToRunningInstance() throws IOException, InterruptedException {
+        final File instanceFile = new File(folder.getRoot(), "instance");
+        assertFalse(InstanceServer.forward(instanceFile, new String[0]));
+
+        final BlockingQueue<List<File>> received = new ArrayBlockingQueue<>(4);
+        InstanceServer.listen(instanceFile, received::add);
+        assertTrue(InstanceServer.forward(instanceFile, new String[]{"a.txt", "/tmp/b.txt"}));
+        assertEquals(Arrays.asList(new File("a.txt").getAbsoluteFile(), new File("/tmp/b.txt").getAbsoluteFile()), received.take());
+        assertTrue(InstanceServer.forward(instanceFile, new String[0]));
+        assertTrue(received.take().isEmpty());
+
+        // без ключа запрос не принимается
+        final String port = new String(Files.readAllBytes(instanceFile.toPath()), StandardCharsets.UTF_8).split(" ")[0];
+        Files.write(instanceFile.toPath(), (port + " wrong").getBytes(StandardCharsets.UTF_8));
+        assertFalse(InstanceServer.forward(instanceFile, new String[]{"c.txt"}));
+        assertTrue(received.isEmpty());
+    }
+}
@@ -0,0 +1,129 @@
+package by.azzi.jnotepad;
+
+import by.azzi.jnotepad.document.TextDocument;
+import com.formdev.flatlaf.FlatLightLaf;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TextAreaViewTest {
+
+    @BeforeClass
+    public static void setUpLaf() {
+        FlatLightLaf.setup();
+    }
+
+    @Test
+    public void wrapsLikeWrappedPlainView() throws InvocationTargetException, InterruptedException {
+        SwingUtilities.invokeAndWait(() -> {
+            final Random random = new Random(1);
+            final String text = randomText(random, 200);
+            for (boolean word : new boolean[]{true, false}) {
+                final JTextArea ours = area(text, true, word);
+                final JTextArea standard = area(text, false, word);
+                final Document oursDocument = ours.getDocument();
+                final Document standardDocument = standard.getDocument();
+                try {
+                    for (int edit = 0; edit < 40; edit++) {
+                        assertSameGeometry(ours, standard);
+                        final int length = oursDocument.getLength();
+                        final int offset = random.nextInt(length + 1);
+                        if (random.nextBoolean() || length < 10) {
+                            final String inserted = random.nextInt(4) == 0 ? "x\nyy zz" : "abc def ";
+                            oursDocument.insertString(offset, inserted, null);
+                            standardDocument.insertString(offset, inserted, null);
+                        } else {
+                            final int count = Math.min(length - offset, random.nextInt(30));
+                            oursDocument.remove(offset, count);
+                            standardDocument.remove(offset, count);
+                        }
+                    }
+                } catch (BadLocationException ex) {
+                    throw new AssertionError(ex);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void longLineIsLaidOutByColumns() throws InvocationTargetException, InterruptedException {
+        SwingUtilities.invokeAndWait(() -> {
+            final char[] chars = new char[TextAreaView.LONG_LINE * 20];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = i % 7 == 0 ? ' ' : 'a';
+            }
+            final JTextArea area = area(new String(chars), true, true);
+            final Rectangle end = modelToView(area, chars.length);
+            assertEquals(chars.length, area.viewToModel(new Point(end.x, end.y + 1)));
+            final Rectangle middle = modelToView(area, chars.length / 2);
+            assertEquals(chars.length / 2, area.viewToModel(new Point(middle.x, middle.y + 1)));
+            paint(area);
+
+            area.setLineWrap(false);
+            area.setSize(area.getPreferredSize());
+            assertEquals(modelToView(area, 0).y, modelToView(area, chars.length).y);
+            paint(area);
+        });
+    }
+
+    private static JTextArea area(String text, boolean ours, boolean word) {
+        final JTextArea area = ours ? new JTextArea(new TextDocument(), text, 0, 0) {
+            @Override
+            public void updateUI() {
+                setUI(new TextAreaUI());
+            }
+        } : new JTextArea(text);
+        area.setLineWrap(true);
+        area.setWrapStyleWord(word);
+        area.setSize(400, 10);
+        area.setSize(400, area.getPreferredSize().height);
+        return area;
+    }
+
+    private static void assertSameGeometry(JTextArea ours, JTextArea standard) {
+        final int length = ours.getDocument().getLength();
+        for (int offset = 0; offset <= length; offset++) {
+            final Rectangle expected = modelToView(standard, offset);
+            final Rectangle actual = modelToView(ours, offset);
+            assertEquals("offset " + offset, expected.getLocation(), actual.getLocation());
+            assertEquals(offset, ours.viewToModel(new Point(actual.x, actual.y + 1)));
+        }
+        paint(ours);
+    }
+
+    private static Rectangle modelToView(JTextArea area, int offset) {
+        try {
+            return area.modelToView(offset);
+        } catch (BadLocationException ex) {
+            throw new AssertionError(ex);
+        }
+    }
+
+    private static void paint(JTextArea area) {
+        final BufferedImage image = new BufferedImage(400, 300, BufferedImage.TYPE_INT_RGB);
+        final Graphics g = image.getGraphics();
+        area.paint(g);
+        g.dispose();
+    }
+
+    private static String randomText(Random random, int lines) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            final int length = random.nextInt(150);
+            for (int j = 0; j < length; j++) {
+                text.append(random.nextInt(6) == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,54 @@
+package by.azzi.jnotepad;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class WrapRowsTest {
+
+    @Test
+    public void followsNaiveSums() {
+        final Random random = new Random(5);
+        final List<Integer> naive = new ArrayList<>();
+        final WrapRows rows = new WrapRows();
+        rows.reset(50, line -> line % 3);
+        for (int i = 0; i < 50; i++) {
+            naive.add(Math.max(1, i % 3));
+        }
+        for (int step = 0; step < 2000; step++) {
+            final int op = random.nextInt(3);
+            if (op == 0) {
+                final int line = random.nextInt(naive.size());
+                final int count = 1 + random.nextInt(5);
+                rows.measured(line, count);
+                naive.set(line, count);
+            } else if (op == 1 || naive.size() < 5) {
+                final int index = random.nextInt(naive.size());
+                final int removed = random.nextInt(Math.min(3, naive.size() - index) + 1);
+                final int added = random.nextInt(4) + (naive.size() - removed == 0 ? 1 : 0);
+                rows.replace(index, removed, added, line -> 2);
+                for (int i = 0; i < removed; i++) {
+                    naive.remove(index);
+                }
+                for (int i = 0; i < added; i++) {
+                    naive.add(index, 2);
+                }
+            }
+            assertEquals(naive.size(), rows.size());
+            int sum = 0;
+            for (int line = 0; line < naive.size(); line++) {
+                assertEquals(sum, rows.rowOf(line));
+                for (int row = sum; row < sum + naive.get(line); row++) {
+                    assertEquals(line, rows.lineOfRow(row));
+                }
+                sum += naive.get(line);
+            }
+            assertEquals(sum, rows.total());
+            assertEquals(naive.size() - 1, rows.lineOfRow(sum + 10));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package by.azzi.jnotepad.batch;
+
+import by.azzi.jnotepad.document.TextFormat;
+import by.azzi.jnotepad.search.SearchQuery;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FileProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replacesAcrossChunks() throws Exception {
+        final StringBuilder content = new StringBuilder();
+        final Random random = new Random(3);
+        int expected = 0;
+        while (content.length() < 5000) {
+            if (random.nextInt(4) == 0) {
+                content.append("Кот ");
+                expected++;
+            } else {
+                content.append(random.nextBoolean() ? "котлета " : "пес\r\n");
+            }
+        }
+        final File file = write(content.toString(), StandardCharsets.UTF_8);
+        // буфер меньше текста, вхождения попадают на границы буфера
+        final FileProcessor.Result result = processor(new SearchQuery("кот", false, true), "кошка", null, null, 7).process(file);
+        assertEquals(expected, result.matches);
+        assertTrue(result.written);
+        final String replaced = content.toString().replaceAll("(?iu)\\bкот\\b", "кошка");
+        assertEquals(replaced, new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void countsWithoutWriting() throws Exception {
+        final File file = write("abc\nabcabc\nab", StandardCharsets.UTF_8);
+        final long modified = file.lastModified();
+        final FileProcessor.Result result = processor(new SearchQuery("abc", true, false), null, null, null, 3).process(file);
+        assertEquals(3, result.matches);
+        assertFalse(result.written);
+        assertEquals(modified, file.lastModified());
+    }
+
+    @Test
+    public void leavesFileWithoutMatchesUntouched() throws Exception {
+        // смешанные переводы строк сохранились бы приведенными к первому
+        final byte[] bytes = "one\r\ntwo\nthree\r".getBytes(StandardCharsets.UTF_8);
+        final File file = folder.newFile();
+        Files.write(file.toPath(), bytes);
+        final FileProcessor.Result result = processor(new SearchQuery("four", true, false), "4", null, null, 4).process(file);
+        assertEquals(0, result.matches);
+        assertFalse(result.written);
+        assertArrayEquals(bytes, Files.readAllBytes(file.toPath()));
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void reencodesAndChangesLineSeparators() throws Exception {
+        final File file = write("Привет\r\nмир\r\n", TextFormat.WINDOWS_1251);
+        final FileProcessor.Result result = processor(null, null, StandardCharsets.UTF_8, "\n", 5).process(file);
+        assertTrue(result.written);
+        assertEquals("Привет\nмир\n", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void skipsBinaryFiles() throws Exception {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), new byte[]{'a', 'b', 0, 'a', 'b'});
+        final FileProcessor.Result result = processor(new SearchQuery("ab", true, false), "x", null, null, 8).process(file);
+        assertTrue(result.binary);
+        assertArrayEquals(new byte[]{'a', 'b', 0, 'a', 'b'}, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void doesNotRewriteInvalidBytes() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("кот\n".getBytes(StandardCharsets.UTF_8));
+        // кодировка определяется по первым 64K, неверный для UTF-8 байт дальше
+        while (out.size() < 70_000) {
+            out.write("line\n".getBytes(StandardCharsets.UTF_8));
+        }
+        out.write(0xFF);
+        out.write("кот\n".getBytes(StandardCharsets.UTF_8));
+        final byte[] bytes = out.toByteArray();
+        final File file = folder.newFile();
+        Files.write(file.toPath(), bytes);
+        assertEquals(2, processor(new SearchQuery("кот", true, false), null, null, null, 4).process(file).matches);
+        try {
+            processor(new SearchQuery("кот", true, false), "пес", null, null, 4).process(file);
+            fail();
+        } catch (IOException ex) {
+            // байт 0xFF пропал бы при записи
+        }
+        assertArrayEquals(bytes, Files.readAllBytes(file.toPath()));
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    private static FileProcessor processor(SearchQuery query, String replacement, Charset charset, String lineSeparator, int chunk) {
+        return new FileProcessor(query, replacement, charset, lineSeparator, false, chunk);
+    }
+
+    private File write(String content, Charset charset) throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(charset));
+        return file;
+    }
+}
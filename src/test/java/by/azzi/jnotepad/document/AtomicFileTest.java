@@ -0,0 +1,47 @@
+package by.azzi.jnotepad.document;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class AtomicFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replacesTargetFile() throws IOException {
+        final File target = folder.newFile("target.txt");
+        Files.write(target.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+        AtomicFile.write(target, true, channel -> channel.write(ByteBuffer.wrap("new".getBytes(StandardCharsets.UTF_8))));
+        assertEquals("new", new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+        assertArrayEquals(new String[]{"target.txt"}, folder.getRoot().list());
+    }
+
+    @Test
+    public void keepsTargetWhenWriteFails() throws IOException {
+        final File target = folder.newFile("target.txt");
+        Files.write(target.toPath(), "old".getBytes(StandardCharsets.UTF_8));
+        try {
+            AtomicFile.write(target, false, channel -> {
+                channel.write(ByteBuffer.wrap("partial".getBytes(StandardCharsets.UTF_8)));
+                throw new IOException("disk full");
+            });
+            fail();
+        } catch (IOException ex) {
+            assertEquals("disk full", ex.getMessage());
+        }
+        assertEquals("old", new String(Files.readAllBytes(target.toPath()), StandardCharsets.UTF_8));
+        assertArrayEquals(new String[]{"target.txt"}, folder.getRoot().list());
+    }
+}
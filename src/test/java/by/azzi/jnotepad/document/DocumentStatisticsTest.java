@@ -0,0 +1,106 @@
+package by.azzi.jnotepad.document;
+
+import org.junit.Test;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.undo.UndoManager;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class DocumentStatisticsTest {
+
+    @Test
+    public void tracksWordsLinesAndCharsThroughEditsAndUndo() throws BadLocationException {
+        final TextDocument document = new TextDocument();
+        document.insertString(0, "hello world\nsecond line", null);
+        final DocumentStatistics statistics = new DocumentStatistics();
+        statistics.setDocument(document);
+        assertEquals(4, statistics.getWordCount());
+        assertEquals(2, statistics.getLineCount());
+
+        final UndoManager undoManager = new UndoManager();
+        undoManager.setLimit(10_000);
+        document.addUndoableEditListener(undoManager);
+        final Random random = new Random(7);
+        final String[] pieces = {" ", "a", "word ", "\n", "x y", "  "};
+        for (int i = 0; i < 1000; i++) {
+            final int length = document.getLength();
+            if (random.nextInt(3) > 0 || length < 2) {
+                document.insertString(random.nextInt(length + 1), pieces[random.nextInt(pieces.length)], null);
+            } else {
+                final int offset = random.nextInt(length);
+                document.remove(offset, Math.min(length - offset, random.nextInt(6) + 1));
+            }
+            assertStatistics(document, statistics);
+        }
+        while (undoManager.canUndo()) {
+            undoManager.undo();
+            assertStatistics(document, statistics);
+        }
+        assertEquals(4, statistics.getWordCount());
+    }
+
+    @Test
+    public void tracksWordsThroughReplaceAll() throws BadLocationException {
+        final Random random = new Random(11);
+        final String[] replacements = {"", " ", "x", "a b", "\n\n"};
+        for (int round = 0; round < 200; round++) {
+            final StringBuilder text = new StringBuilder();
+            for (int i = random.nextInt(40); i > 0; i--) {
+                text.append(" ab\n".charAt(random.nextInt(4)));
+            }
+            final TextDocument document = new TextDocument();
+            document.insertString(0, text.toString(), null);
+            final DocumentStatistics statistics = new DocumentStatistics();
+            statistics.setDocument(document);
+            final UndoManager undoManager = new UndoManager();
+            document.addUndoableEditListener(undoManager);
+
+            final String match = random.nextBoolean() ? " " : "b";
+            final IntArray starts = new IntArray();
+            for (int i = text.indexOf(match); i >= 0; i = text.indexOf(match, i + 1)) {
+                starts.add(i);
+            }
+            document.replace(starts.toArray(), starts.size(), 1, replacements[random.nextInt(replacements.length)]);
+            assertStatistics(document, statistics);
+            if (starts.size() > 0) {
+                undoManager.undo();
+                assertStatistics(document, statistics);
+                undoManager.redo();
+                assertStatistics(document, statistics);
+            }
+        }
+    }
+
+    @Test
+    public void recountsWordsAfterReplacingManyMatches() throws BadLocationException {
+        final TextDocument document = new TextDocument();
+        final StringBuilder text = new StringBuilder();
+        final IntArray starts = new IntArray();
+        for (int i = 0; i < 20_000; i++) {
+            text.append("word ");
+            starts.add(text.length() - 1);
+        }
+        document.insertString(0, text.toString(), null);
+        final DocumentStatistics statistics = new DocumentStatistics();
+        statistics.setDocument(document);
+        final UndoManager undoManager = new UndoManager();
+        document.addUndoableEditListener(undoManager);
+
+        document.replace(starts.toArray(), starts.size(), 1, "");
+        assertEquals(1, statistics.getWordCount());
+        undoManager.undo();
+        assertEquals(20_000, statistics.getWordCount());
+        undoManager.redo();
+        assertStatistics(document, statistics);
+    }
+
+    private static void assertStatistics(TextDocument document, DocumentStatistics statistics) throws BadLocationException {
+        final String text = document.getText(0, document.getLength());
+        final String trimmed = text.trim();
+        assertEquals(text, trimmed.isEmpty() ? 0 : trimmed.split("\\s+").length, statistics.getWordCount());
+        assertEquals(text.length(), statistics.getCharCount());
+        assertEquals(text.split("\n", -1).length, statistics.getLineCount());
+    }
+}
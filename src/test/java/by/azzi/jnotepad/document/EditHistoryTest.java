@@ -0,0 +1,149 @@
+package by.azzi.jnotepad.document;
+
+import org.junit.Test;
+
+import javax.swing.text.BadLocationException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EditHistoryTest {
+
+    private long now;
+
+    @Test
+    public void mergesTypingByWords() throws BadLocationException {
+        final TextDocument document = new TextDocument();
+        final EditHistory history = new EditHistory(EditHistory.DEFAULT_BUDGET, () -> now);
+        document.addUndoableEditListener(history);
+        type(document, 0, "hello world");
+        assertEquals(2, history.getUndoCount());
+
+        // Backspace дважды - один шаг
+        document.remove(10, 1);
+        document.remove(9, 1);
+        assertEquals(3, history.getUndoCount());
+        assertEquals("hello wor", text(document));
+
+        history.undo();
+        assertEquals("hello world", text(document));
+        history.undo();
+        assertEquals("hello ", text(document));
+        assertTrue(history.canRedo());
+        history.redo();
+        history.redo();
+        assertEquals("hello wor", text(document));
+        assertFalse(history.canRedo());
+
+        // новая правка после отмены забывает повтор
+        history.undo();
+        type(document, 11, "!");
+        assertFalse(history.canRedo());
+        assertEquals("hello world!", text(document));
+    }
+
+    @Test
+    public void splitsOnPauseAndJump() throws BadLocationException {
+        final TextDocument document = new TextDocument();
+        final EditHistory history = new EditHistory(EditHistory.DEFAULT_BUDGET, () -> now);
+        document.addUndoableEditListener(history);
+        type(document, 0, "abc");
+        now += EditHistory.PAUSE_MILLIS + 1;
+        type(document, 3, "def");
+        type(document, 0, "xy");
+        assertEquals(3, history.getUndoCount());
+        history.undo();
+        assertEquals("abcdef", text(document));
+        history.undo();
+        assertEquals("abc", text(document));
+    }
+
+    @Test
+    public void forgetsOldestStepsOverBudget() throws BadLocationException {
+        final TextDocument document = new TextDocument();
+        final EditHistory history = new EditHistory(10_000, () -> now);
+        document.addUndoableEditListener(history);
+        for (int i = 0; i < 100; i++) {
+            document.insertString(0, "paste\n", null);
+        }
+        assertTrue(history.getSize() <= 10_000);
+        final int steps = history.getUndoCount();
+        assertTrue(steps > 1 && steps < 100);
+        while (history.canUndo()) {
+            history.undo();
+        }
+        assertEquals((100 - steps) * 6, document.getLength());
+
+        // шаг больше бюджета остается единственным
+        document.insertString(0, new String(new char[20_000]), null);
+        assertEquals(1, history.getUndoCount());
+        history.undo();
+        assertEquals((100 - steps) * 6, document.getLength());
+    }
+
+    @Test
+    public void groupedEditsAreOneStep() throws BadLocationException {
+        final TextDocument document = new TextDocument();
+        final EditHistory history = new EditHistory(EditHistory.DEFAULT_BUDGET, () -> now);
+        document.addUndoableEditListener(history);
+        type(document, 0, "abc");
+        now += EditHistory.PAUSE_MILLIS + 1;
+        document.beginEdit();
+        document.remove(1, 1);
+        document.insertString(1, "x", null);
+        document.insertString(2, "yz", null);
+        document.endEdit();
+        assertEquals("axyzc", text(document));
+        assertEquals(2, history.getUndoCount());
+        history.undo();
+        assertEquals("abc", text(document));
+        history.redo();
+        assertEquals("axyzc", text(document));
+    }
+
+    @Test
+    public void keepsStepsOfDetachedSpilledDocument() throws Exception {
+        final char[] chars = "первая строка\nвторая строка".toCharArray();
+        final TextDocument first = new TextDocument(new PieceTableContent(new CharArrayTextBuffer(chars, chars.length)));
+        final EditHistory history = new EditHistory(EditHistory.DEFAULT_BUDGET, () -> now);
+        first.addUndoableEditListener(history);
+        first.remove(0, 6);
+        type(first, 0, "новая");
+        assertEquals(2, history.getUndoCount());
+
+        // другая вкладка: шаги первого документа сняты, его текст выгружен из кучи
+        first.removeUndoableEditListener(history);
+        final EditHistory.Steps steps = history.detach();
+        assertFalse(history.canUndo());
+        final long heap = first.getHeapSize();
+        first.spill();
+        assertTrue(first.getHeapSize() <= heap - 2 * chars.length);
+        final TextDocument second = new TextDocument();
+        second.addUndoableEditListener(history);
+        type(second, 0, "x");
+        second.removeUndoableEditListener(history);
+        history.detach();
+
+        history.attach(steps);
+        first.addUndoableEditListener(history);
+        assertEquals("новая строка\nвторая строка", text(first));
+        history.undo();
+        history.undo();
+        assertEquals("первая строка\nвторая строка", text(first));
+        first.restore();
+        assertEquals(heap, first.getHeapSize());
+        history.redo();
+        assertEquals(" строка\nвторая строка", text(first));
+    }
+
+    private static void type(TextDocument document, int offset, String text) throws BadLocationException {
+        for (int i = 0; i < text.length(); i++) {
+            document.insertString(offset + i, text.substring(i, i + 1), null);
+        }
+    }
+
+    private static String text(TextDocument document) throws BadLocationException {
+        return document.getText(0, document.getLength());
+    }
+}
@@ -0,0 +1,122 @@
+package by.azzi.jnotepad.document;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.undo.UndoManager;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EditJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replaysEditsOverSavedFile() throws IOException, BadLocationException {
+        final File dir = folder.newFolder("journal");
+        final File file = folder.newFile("doc.txt");
+        Files.write(file.toPath(), "one two one\nthree".getBytes(StandardCharsets.UTF_8));
+        final TextDocument document = TextDocument.read(file);
+        final EditJournal journal = EditJournal.start(dir, document, file);
+        final UndoManager undo = new UndoManager();
+        document.addUndoableEditListener(undo);
+        document.insertString(3, ",", null);
+        document.remove(0, 1);
+        document.replace(new int[]{0, 9}, 2, 2, "ONE\n");
+        undo.undo();
+        document.insertString(document.getLength(), " end", null);
+
+        // живой журнал не восстанавливается
+        journal.sync();
+        assertNull(EditJournal.find(dir, file));
+        journal.abandon();
+        journal.sync();
+
+        final EditJournal.Recovery recovery = EditJournal.find(dir, file);
+        assertNotNull(recovery);
+        final TextDocument recovered = TextDocument.read(file);
+        recovery.replay(recovered);
+        assertEquals(text(document), text(recovered));
+        recovery.discard();
+        assertNull(EditJournal.find(dir, file));
+    }
+
+    @Test
+    public void compactsOnSave() throws IOException, BadLocationException {
+        final File dir = folder.newFolder("journal");
+        final TextDocument document = new TextDocument();
+        final EditJournal journal = EditJournal.start(dir, document, null);
+        document.insertString(0, "draft text", null);
+        final long mark = journal.mark();
+        final File file = folder.newFile("saved.txt");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            document.write(out.getChannel());
+        }
+        // правка во время записи остается в журнале
+        document.insertString(0, "new ", null);
+        journal.compact(file, mark);
+        document.remove(document.getLength() - 4, 4);
+        journal.abandon();
+        journal.sync();
+
+        assertNull(EditJournal.find(dir, null));
+        final EditJournal.Recovery recovery = EditJournal.find(dir, file);
+        assertNotNull(recovery);
+        final TextDocument recovered = TextDocument.read(file);
+        assertEquals(2, recovery.replay(recovered));
+        assertEquals("new draft ", text(recovered));
+
+        // файл изменен после сохранения - журнал к нему не подходит
+        Files.write(file.toPath(), "other".getBytes(StandardCharsets.UTF_8));
+        assertNull(EditJournal.find(dir, file));
+    }
+
+    @Test
+    public void journalsReplaceAllAsMatches() throws IOException, BadLocationException {
+        final File dir = folder.newFolder("journal");
+        final File file = folder.newFile("big.txt");
+        final StringBuilder text = new StringBuilder();
+        final IntArray starts = new IntArray();
+        for (int i = 0; i < 20_000; i++) {
+            starts.add(text.length());
+            text.append(i % 2 == 0 ? "Needle" : "needle").append(" and some hay ").append(i).append('\n');
+        }
+        Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        final TextDocument document = TextDocument.read(file);
+        final EditJournal journal = EditJournal.start(dir, document, file);
+        final UndoManager undo = new UndoManager();
+        document.addUndoableEditListener(undo);
+        document.replace(starts.toArray(), starts.size(), 6, "pin\n");
+        undo.undo();
+        undo.redo();
+        undo.undo();
+        document.replace(starts.toArray(), starts.size(), 7, "");
+        journal.abandon();
+        journal.sync();
+
+        // записи замен - смещения и новый текст участков, а не весь затронутый текст
+        final File[] journals = dir.listFiles();
+        assertEquals(1, journals.length);
+        assertTrue(journals[0].length() < 5L * 4 * starts.size() + 3L * 2 * 7 * starts.size());
+        final EditJournal.Recovery recovery = EditJournal.find(dir, file);
+        assertNotNull(recovery);
+        final TextDocument recovered = TextDocument.read(file);
+        assertEquals(5, recovery.replay(recovered));
+        assertEquals(text(document), text(recovered));
+    }
+
+    private static String text(TextDocument document) throws BadLocationException {
+        return document.getText(0, document.getLength());
+    }
+}
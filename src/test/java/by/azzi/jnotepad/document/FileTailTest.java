@@ -0,0 +1,127 @@
+package by.azzi.jnotepad.document;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FileTailTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final StringBuilder appended = new StringBuilder();
+    private int truncated;
+
+    private final FileTail.Listener listener = new FileTail.Listener() {
+        @Override
+        public void appended(String text) {
+            appended.append(text);
+        }
+
+        @Override
+        public void truncated() {
+            truncated++;
+        }
+    };
+
+    @Test
+    public void readsOnlyAppendedBytes() throws Exception {
+        final File file = write("first\n", StandardCharsets.UTF_8);
+        final FileTail tail = new FileTail(file, file.length(), TextFormat.defaultFormat(), listener);
+        tail.check();
+        assertEquals("", appended.toString());
+        append(file, "second\nthird".getBytes(StandardCharsets.UTF_8));
+        tail.check();
+        assertEquals("second\nthird", appended.toString());
+    }
+
+    @Test
+    public void joinsCharacterSplitBetweenAppends() throws Exception {
+        final File file = write("", StandardCharsets.UTF_8);
+        final FileTail tail = new FileTail(file, 0, TextFormat.defaultFormat(), listener);
+        final byte[] bytes = "лог".getBytes(StandardCharsets.UTF_8);
+        for (byte b : bytes) {
+            append(file, new byte[]{b});
+            tail.check();
+        }
+        assertEquals("лог", appended.toString());
+    }
+
+    @Test
+    public void normalizesLineSeparatorsAcrossAppends() throws Exception {
+        final File file = write("a\r", StandardCharsets.UTF_8);
+        final FileTail tail = new FileTail(file, file.length(), TextFormat.defaultFormat(), listener);
+        append(file, "\nb\r".getBytes(StandardCharsets.UTF_8));
+        tail.check();
+        append(file, "\nc\rd".getBytes(StandardCharsets.UTF_8));
+        tail.check();
+        assertEquals("b\nc\nd", appended.toString());
+    }
+
+    @Test
+    public void decodesUtf16() throws Exception {
+        final Charset charset = StandardCharsets.UTF_16LE;
+        final File file = write("x\r\n", charset);
+        final TextFormat format = new TextFormat(charset, false, "\r\n");
+        final FileTail tail = new FileTail(file, file.length(), format, listener);
+        append(file, "строка\r\n".getBytes(charset));
+        tail.check();
+        assertEquals("строка\n", appended.toString());
+    }
+
+    @Test
+    public void stopsWhenFileIsTruncated() throws Exception {
+        final File file = write("long line\n", StandardCharsets.UTF_8);
+        final FileTail tail = new FileTail(file, file.length(), TextFormat.defaultFormat(), listener);
+        write("short", StandardCharsets.UTF_8);
+        tail.check();
+        assertEquals(1, truncated);
+        assertEquals("", appended.toString());
+    }
+
+    @Test
+    public void followsInBackground() throws Exception {
+        final File file = write("", StandardCharsets.UTF_8);
+        final CountDownLatch done = new CountDownLatch(1);
+        final StringBuffer text = new StringBuffer();
+        try (FileTail tail = FileTail.follow(file, 0, TextFormat.defaultFormat(), new FileTail.Listener() {
+            @Override
+            public void appended(String appended) {
+                text.append(appended);
+                if (text.length() >= 6) {
+                    done.countDown();
+                }
+            }
+
+            @Override
+            public void truncated() {
+            }
+        })) {
+            append(file, "line1\n".getBytes(StandardCharsets.UTF_8));
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+        }
+        assertEquals("line1\n", text.toString());
+    }
+
+    private File write(String text, Charset charset) throws IOException {
+        final File file = new File(folder.getRoot(), "app.log");
+        Files.write(file.toPath(), text.getBytes(charset));
+        return file;
+    }
+
+    private static void append(File file, byte[] bytes) throws IOException {
+        Files.write(file.toPath(), bytes, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,129 @@
+package by.azzi.jnotepad.document;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LineDiffTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsMinimalLineChanges() throws Exception {
+        final List<LineDiff.Hunk> hunks = diff("a\nb\nc\nd\ne\n", "a\nB\nc\nd\nx\ne\nf");
+        assertEquals("[1,1 -> 1,1, 4,0 -> 4,1, 5,0 -> 6,1]", hunks.toString());
+        assertTrue(diff("same\ntext", "same\ntext").isEmpty());
+        assertEquals("[0,0 -> 0,2]", diff("", "new\nlines").toString());
+    }
+
+    @Test
+    public void mergeReproducesNewTextAsOneUndoStep() throws Exception {
+        final Random random = new Random(5);
+        for (int round = 0; round < 200; round++) {
+            final String old = randomLines(random);
+            final String updated = randomLines(random);
+            final TextDocument document = document(old);
+            final EditHistory history = new EditHistory();
+            document.addUndoableEditListener(history);
+            document.merge(document(updated), LineDiff.diff(document.snapshot(), document(updated).snapshot()));
+            assertEquals(updated, text(document));
+            if (!old.equals(updated)) {
+                assertEquals(1, history.getUndoCount());
+                history.undo();
+                assertEquals(old, text(document));
+            }
+        }
+    }
+
+    @Test
+    public void mergeKeepsPositionsInUnchangedLines() throws Exception {
+        final File file = folder.newFile("log.txt");
+        write(file, "first\nsecond\nthird\n");
+        final TextDocument document = TextDocument.read(file);
+        final Position caret = document.createPosition(document.getText(0, document.getLength()).indexOf("third") + 2);
+        // другая программа переписывает файл на месте, документ читает свою копию и не меняется
+        write(file, "zero\nfirst\nthird\nfourth\n");
+        assertEquals("first\nsecond\nthird\n", text(document));
+        final TextDocument disk = TextDocument.read(file);
+        assertFalse(disk.getFileStamp().sameContent(document.getFileStamp()));
+
+        document.merge(disk, LineDiff.diff(document.snapshot(), disk.snapshot()));
+
+        assertEquals("zero\nfirst\nthird\nfourth\n", text(document));
+        assertEquals("ird", document.getText(caret.getOffset(), 3));
+        assertTrue(disk.getFileStamp().sameContent(FileStamp.read(file)));
+    }
+
+    @Test
+    public void rebaseKeepsUnsavedEdits() throws Exception {
+        final File file = folder.newFile("notes.txt");
+        write(file, "a\nb\nc\nd\ne\n");
+        final TextDocument document = TextDocument.read(file);
+        document.insertString(0, "0\n", null);
+        document.replace(4, 1, "B", null);
+        write(file, "a\nbb\nc\nD\ne\nf\n");
+        final TextDocument disk = TextDocument.read(file);
+
+        final TextSnapshot base = document.getFileText();
+        assertEquals("a\nb\nc\nd\ne\n", text(base));
+        final List<LineDiff.Hunk> conflicts = new ArrayList<>();
+        final List<LineDiff.Hunk> hunks = LineDiff.rebase(LineDiff.diff(base, document.snapshot()),
+                LineDiff.diff(base, disk.snapshot()), conflicts);
+        document.merge(disk, hunks);
+
+        // строка b изменена и в документе, и на диске - остается как в документе
+        assertEquals("0\na\nB\nc\nD\ne\nf\n", text(document));
+        assertEquals("[1,1 -> 1,1]", conflicts.toString());
+        final List<LineDiff.Hunk> updated = LineDiff.diff(base, disk.snapshot());
+        assertEquals(updated.toString(), LineDiff.rebase(new ArrayList<>(), updated, conflicts).toString());
+    }
+
+    private static List<LineDiff.Hunk> diff(String old, String updated) throws Exception {
+        return LineDiff.diff(document(old).snapshot(), document(updated).snapshot());
+    }
+
+    private static String randomLines(Random random) {
+        final StringBuilder text = new StringBuilder();
+        for (int i = random.nextInt(30); i > 0; i--) {
+            text.append((char) ('a' + random.nextInt(4)));
+            if (random.nextInt(8) > 0) {
+                text.append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    private static TextDocument document(String text) throws BadLocationException {
+        final TextDocument document = new TextDocument();
+        document.insertString(0, text, null);
+        return document;
+    }
+
+    private static String text(TextDocument document) throws BadLocationException {
+        return document.getText(0, document.getLength());
+    }
+
+    private static String text(TextSnapshot snapshot) {
+        final char[] chars = new char[snapshot.length()];
+        snapshot.getChars(0, chars.length, chars, 0);
+        return new String(chars);
+    }
+
+    private static void write(File file, String text) throws Exception {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,96 @@
+package by.azzi.jnotepad.document;
+
+import org.junit.Test;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.undo.UndoManager;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class LineIndexTest {
+
+    @Test
+    public void lookups() throws BadLocationException {
+        final TextDocument document = new TextDocument();
+        document.insertString(0, "one\ntwo\n\nfour", null);
+        final LineIndex lines = document.getLineIndex();
+        assertEquals(4, lines.getLineCount());
+        assertEquals(4, lines.getLineStart(1));
+        assertEquals(9, lines.getLineStart(3));
+        assertEquals(8, lines.getLineEnd(1));
+        assertEquals(0, lines.getLineOfOffset(3));
+        assertEquals(1, lines.getLineOfOffset(4));
+        assertEquals(2, lines.getLineOfOffset(8));
+        assertEquals(3, lines.getLineOfOffset(document.getLength()));
+    }
+
+    @Test
+    public void followsEditsUndoAndRedo() throws BadLocationException {
+        final Random random = new Random(3);
+        final TextDocument document = new TextDocument();
+        final UndoManager undo = new UndoManager();
+        undo.setLimit(-1);
+        document.addUndoableEditListener(undo);
+        for (int i = 0; i < 2000; i++) {
+            final int length = document.getLength();
+            final int op = random.nextInt(10);
+            if (op < 5 || length == 0) {
+                final int offset = random.nextInt(length + 1);
+                document.insertString(offset, "ab\ncd\n\ne".substring(random.nextInt(8)), null);
+            } else if (op < 8) {
+                final int offset = random.nextInt(length);
+                document.remove(offset, random.nextInt(Math.min(10, length - offset)) + 1);
+            } else if (op == 8) {
+                final int matchLength = random.nextInt(3) + 1;
+                final IntArray starts = new IntArray();
+                for (int start = random.nextInt(length); start + matchLength <= length; start += matchLength + random.nextInt(20)) {
+                    starts.add(start);
+                }
+                final String[] replacements = {"x\ny", "", "\n", "zz"};
+                document.replace(starts.toArray(), starts.size(), matchLength, replacements[random.nextInt(replacements.length)]);
+            } else if (undo.canUndo()) {
+                undo.undo();
+                if (random.nextBoolean() && undo.canRedo()) {
+                    undo.redo();
+                }
+            }
+            assertMatchesElements(document);
+        }
+        while (undo.canUndo()) {
+            undo.undo();
+        }
+        assertEquals(0, document.getLength());
+        assertMatchesElements(document);
+    }
+
+    @Test
+    public void builtFromReadLineEnds() throws BadLocationException {
+        final char[] chars = "a\nbb\n\nccc\n".toCharArray();
+        final TextDocument document = new TextDocument(new PieceTableContent(new CharArrayTextBuffer(chars, chars.length)));
+        assertMatchesElements(document);
+        document.insertString(2, "\n", null);
+        document.remove(0, 2);
+        assertMatchesElements(document);
+    }
+
+    private static void assertMatchesElements(TextDocument document) throws BadLocationException {
+        final Element root = document.getDefaultRootElement();
+        final LineIndex lines = document.getLineIndex();
+        final String[] text = document.getText(0, document.getLength()).split("\n", -1);
+        assertEquals(text.length, lines.getLineCount());
+        assertEquals(root.getElementCount(), lines.getLineCount());
+        int start = 0;
+        for (int i = 0; i < root.getElementCount(); i++) {
+            assertEquals(start, lines.getLineStart(i));
+            start += text[i].length() + 1;
+            assertEquals(start, lines.getLineEnd(i));
+            assertEquals(root.getElement(i).getStartOffset(), lines.getLineStart(i));
+            assertEquals(root.getElement(i).getEndOffset(), lines.getLineEnd(i));
+        }
+        for (int offset = 0; offset <= document.getLength(); offset++) {
+            assertEquals(root.getElementIndex(offset), lines.getLineOfOffset(offset));
+        }
+    }
+}
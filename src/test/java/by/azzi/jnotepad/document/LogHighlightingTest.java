@@ -0,0 +1,94 @@
+package by.azzi.jnotepad.document;
+
+import org.junit.Test;
+
+import javax.swing.*;
+import javax.swing.text.BadLocationException;
+import javax.swing.undo.UndoManager;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogHighlightingTest {
+
+    private static final String[] PIECES = {
+            "2024-03-01 12:00:00 ERROR failed\n", "12:00:01 INFO ok\n", "\tat Main.run(Main.java:7)\n",
+            "WARN ", "x", "\n", "Caused by: java.io.IOException\n"};
+
+    @Test
+    public void incrementalStatesMatchFullTokenizing() throws BadLocationException {
+        final TextDocument document = new TextDocument();
+        document.insertString(0, "2024-03-01 12:00:00 ERROR boom\n\tat A.a(A.java:1)\n\tat B.b(B.java:2)\nplain", null);
+        final LogHighlighting highlighting = new LogHighlighting();
+        highlighting.setDocument(document);
+        assertStates(document, highlighting);
+
+        final UndoManager undoManager = new UndoManager();
+        undoManager.setLimit(10_000);
+        document.addUndoableEditListener(undoManager);
+        final Random random = new Random(11);
+        for (int i = 0; i < 500; i++) {
+            final int length = document.getLength();
+            if (random.nextInt(3) > 0 || length < 2) {
+                document.insertString(random.nextInt(length + 1), PIECES[random.nextInt(PIECES.length)], null);
+            } else {
+                final int offset = random.nextInt(length);
+                document.remove(offset, Math.min(length - offset, random.nextInt(40) + 1));
+            }
+            assertStates(document, highlighting);
+        }
+        while (undoManager.canUndo()) {
+            undoManager.undo();
+            assertStates(document, highlighting);
+        }
+    }
+
+    @Test
+    public void mergesBackgroundResultWithEditsMadeMeanwhile() throws Exception {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 2 * 1024 * 1024; i++) {
+            text.append("2024-03-01 12:00:00 ").append(i % 10 == 0 ? "ERROR" : "INFO").append(" request ").append(i).append('\n');
+            if (i % 10 == 0) {
+                text.append("\tat Main.run(Main.java:7)\n");
+            }
+        }
+        final TextDocument document = new TextDocument();
+        document.insertString(0, text.toString(), null);
+        final LogHighlighting highlighting = new LogHighlighting();
+        // первое событие - подключение документа, второе - конец фоновой разметки
+        final CountDownLatch merged = new CountDownLatch(2);
+        highlighting.addChangeListener(e -> merged.countDown());
+        SwingUtilities.invokeAndWait(() -> {
+            highlighting.setDocument(document);
+            try {
+                // правки до конца фоновой разметки: заголовок со стеком становится WARN, в начало дописана строка
+                final int header = document.getText(0, document.getLength()).indexOf("ERROR", 100);
+                document.remove(header, 5);
+                document.insertString(header, "WARN", null);
+                document.insertString(0, "12:00:00 DEBUG first\n", null);
+            } catch (BadLocationException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        assertTrue(merged.await(30, TimeUnit.SECONDS));
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                assertStates(document, highlighting);
+            } catch (BadLocationException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+    }
+
+    private static void assertStates(TextDocument document, LogHighlighting highlighting) throws BadLocationException {
+        final String[] lines = document.getText(0, document.getLength()).split("\n", -1);
+        int previous = LogTokenizer.UNKNOWN;
+        for (int line = 0; line < lines.length; line++) {
+            previous = LogTokenizer.tokenize(lines[line].toCharArray(), 0, lines[line].length(), previous);
+            assertEquals("line " + line, previous, highlighting.getState(line));
+        }
+    }
+}
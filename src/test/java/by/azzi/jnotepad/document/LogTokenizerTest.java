@@ -0,0 +1,62 @@
+package by.azzi.jnotepad.document;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogTokenizerTest {
+
+    @Test
+    public void findsTimestampAndLevel() {
+        final String line = "2024-03-01T12:34:56.789+03:00 [main] ERROR Service - failed";
+        final int state = tokenize(line, LogTokenizer.UNKNOWN);
+        assertEquals(LogTokenizer.ERROR, LogTokenizer.level(state));
+        assertFalse(LogTokenizer.isContinuation(state));
+        assertEquals(0, LogTokenizer.timestampStart(state));
+        assertEquals("2024-03-01T12:34:56.789+03:00".length(), LogTokenizer.timestampLength(state));
+        assertEquals(line.indexOf("ERROR"), LogTokenizer.levelStart(state));
+        assertEquals(5, LogTokenizer.levelLength(state));
+    }
+
+    @Test
+    public void recognizesCommonFormats() {
+        assertTimestamp("Mar  1 12:34:56 host sshd[42]: accepted", "Mar  1 12:34:56");
+        assertTimestamp("[01.03.2024 12:34] WARN disk", "01.03.2024 12:34");
+        assertTimestamp("12:34:56,789 INFO started", "12:34:56,789");
+        assertTimestamp("2024/03/01 message", "2024/03/01");
+        assertEquals(LogTokenizer.WARN, LogTokenizer.level(tokenize("W [WARNING] low memory", LogTokenizer.UNKNOWN)));
+        assertEquals(LogTokenizer.DEBUG, LogTokenizer.level(tokenize("DEBUG: x=1", LogTokenizer.UNKNOWN)));
+    }
+
+    @Test
+    public void ignoresLevelWordsInsideIdentifiersAndLowercase() {
+        assertEquals(LogTokenizer.NONE, LogTokenizer.level(tokenize("ERRORS are counted", LogTokenizer.UNKNOWN)));
+        assertEquals(LogTokenizer.NONE, LogTokenizer.level(tokenize("MY_INFO_KEY=1", LogTokenizer.UNKNOWN)));
+        assertEquals(LogTokenizer.NONE, LogTokenizer.level(tokenize("an error happened", LogTokenizer.UNKNOWN)));
+        assertEquals(0, LogTokenizer.timestampLength(tokenize("version 1234-56-78x", LogTokenizer.UNKNOWN)));
+    }
+
+    @Test
+    public void continuationInheritsLevel() {
+        final int header = tokenize("2024-03-01 12:00:00 ERROR boom", LogTokenizer.UNKNOWN);
+        final int trace = tokenize("\tat by.azzi.Main.main(Main.java:1)", header);
+        assertTrue(LogTokenizer.isContinuation(trace));
+        assertEquals(LogTokenizer.ERROR, LogTokenizer.level(trace));
+        assertEquals(LogTokenizer.ERROR, LogTokenizer.level(tokenize("", trace)));
+        final int next = tokenize("2024-03-01 12:00:01 message", trace);
+        assertFalse(LogTokenizer.isContinuation(next));
+        assertEquals(LogTokenizer.NONE, LogTokenizer.level(next));
+    }
+
+    private static void assertTimestamp(String line, String timestamp) {
+        final int state = tokenize(line, LogTokenizer.UNKNOWN);
+        final int start = LogTokenizer.timestampStart(state);
+        assertEquals(timestamp, line.substring(start, start + LogTokenizer.timestampLength(state)));
+    }
+
+    private static int tokenize(String line, int previous) {
+        return LogTokenizer.tokenize(line.toCharArray(), 0, line.length(), previous);
+    }
+}
@@ -0,0 +1,113 @@
+package by.azzi.jnotepad.document;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedTextTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void indexesLinesWithAllSeparators() throws Exception {
+        final StringBuilder content = new StringBuilder();
+        final String[] separators = {"\n", "\r\n", "\r"};
+        final int lines = 3 * MappedText.SPARSE + 7;
+        for (int i = 0; i < lines; i++) {
+            content.append("строка ").append(i).append(separators[i % 3]);
+        }
+        final File file = write(content.toString());
+        try (MappedText text = open(file, 4096)) {
+            final long count = text.getLineCount();
+            assertEquals(lines + 1, count);
+            final byte[] bytes = Files.readAllBytes(file.toPath());
+            long expectedLine = 0;
+            for (int position = 0; position < bytes.length; position++) {
+                if (position % 7 == 0) {
+                    assertEquals(expectedLine, text.lineOfOffset(position));
+                }
+                if (bytes[position] == '\n' || bytes[position] == '\r' && bytes[position + 1] != '\n') {
+                    expectedLine++;
+                    assertEquals(position + 1, text.offsetOfLine(expectedLine));
+                }
+            }
+            assertEquals("строка 2000", text.decode(text.offsetOfLine(2000), text.offsetOfLine(2000) + "строка 2000".getBytes(StandardCharsets.UTF_8).length));
+            assertEquals(-1, text.offsetOfLine(lines + 1));
+        }
+    }
+
+    @Test
+    public void indexesLongLinesByBytes() throws Exception {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 3 * MappedText.CHECKPOINT_BYTES; i++) {
+            content.append('x');
+        }
+        content.append("\nend");
+        try (MappedText text = open(write(content.toString()), 1 << 16)) {
+            assertEquals(2, text.getLineCount());
+            assertEquals(0, text.lineOfOffset(2 * MappedText.CHECKPOINT_BYTES + 5));
+            assertEquals(1, text.lineOfOffset(3 * MappedText.CHECKPOINT_BYTES + 2));
+            assertEquals(3 * MappedText.CHECKPOINT_BYTES + 1, text.offsetOfLine(1));
+        }
+    }
+
+    @Test
+    public void pageEndsAtLineBreak() throws Exception {
+        final File file = write("один\r\nдва\rтри\nчетыре");
+        try (MappedText text = open(file, 4096)) {
+            final MappedText.Page page = text.page(0, 20);
+            assertEquals("один\nдва\n", page.getDocument().getText(0, page.getDocument().getLength()));
+            assertEquals(17, page.getEnd());
+            assertEquals(3, page.getDocument().getLineIndex().getLineCount());
+            assertEquals(10, page.getLineOffset(1));
+            assertEquals(1, page.lineOf(12));
+            assertEquals(5, page.charOffsetOf(10));
+            assertEquals(12, page.offsetOf(6));
+
+            final MappedText.Page rest = text.page(page.getEnd(), 1000);
+            assertEquals("три\nчетыре", rest.getDocument().getText(0, rest.getDocument().getLength()));
+            assertEquals(file.length(), rest.getEnd());
+        }
+    }
+
+    @Test
+    public void longLineIsCutAtCharacterBoundary() throws Exception {
+        try (MappedText text = open(write("яяяяя\n"), 4096)) {
+            final MappedText.Page page = text.page(0, 5);
+            assertEquals(4, page.getEnd());
+            assertEquals("яя", page.getDocument().getText(0, page.getDocument().getLength()));
+            assertEquals(4, text.lineStart(9, 5));
+            assertEquals(0, text.lineStart(9, 100));
+            assertEquals('я', text.charBefore(4));
+            assertEquals('\n', text.charAt(10));
+            assertEquals(-1, text.charAt(11));
+        }
+    }
+
+    private File write(String content) throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * открывает и дожидается индекса строк
+     */
+    static MappedText open(File file, int window) throws IOException, InterruptedException {
+        final MappedText text = MappedText.open(file, window);
+        for (int i = 0; i < 500 && !text.isIndexed(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(text.isIndexed());
+        return text;
+    }
+}
@@ -0,0 +1,134 @@
+package by.azzi.jnotepad.document;
+
+import org.junit.Test;
+
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Position;
+import javax.swing.text.Segment;
+import javax.swing.undo.UndoableEdit;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PieceTableContentTest {
+
+    @Test
+    public void emptyContentHasTrailingNewLine() throws BadLocationException {
+        final PieceTableContent content = new PieceTableContent();
+        assertEquals(1, content.length());
+        assertEquals("\n", content.getString(0, 1));
+    }
+
+    @Test
+    public void editsOverOriginalBuffer() throws BadLocationException {
+        final PieceTableContent content = content("hello world");
+        content.insertString(5, ",");
+        content.remove(0, 1);
+        content.insertString(0, "H");
+        content.insertString(content.length() - 1, "!");
+        assertEquals("Hello, world!\n", content.getString(0, content.length()));
+    }
+
+    @Test
+    public void partialReturnStopsAtPieceBoundary() throws BadLocationException {
+        final PieceTableContent content = content("abcdef");
+        content.insertString(3, "XYZ");
+        final Segment segment = new Segment();
+        segment.setPartialReturn(true);
+        content.getChars(0, content.length(), segment);
+        assertEquals("abc", segment.toString());
+        content.getChars(3, content.length() - 3, segment);
+        assertEquals("XYZ", segment.toString());
+    }
+
+    @Test
+    public void positionsFollowEditsAndUndo() throws BadLocationException {
+        final PieceTableContent content = content("one\ntwo\nthree");
+        final Position two = content.createPosition(4);
+        final Position three = content.createPosition(8);
+        content.insertString(0, ">>");
+        assertEquals(6, two.getOffset());
+        assertEquals(10, three.getOffset());
+
+        final UndoableEdit remove = content.remove(3, 6);
+        assertEquals(3, two.getOffset());
+        assertEquals(4, three.getOffset());
+
+        remove.undo();
+        assertEquals(6, two.getOffset());
+        assertEquals(10, three.getOffset());
+        assertEquals(">>one\ntwo\nthree\n", content.getString(0, content.length()));
+    }
+
+    @Test
+    public void snapshotIsNotAffectedByLaterEdits() throws BadLocationException {
+        final PieceTableContent content = content("0123456789");
+        content.insertString(5, "abc");
+        final TextSnapshot snapshot = content.snapshot(0, content.length() - 1);
+        for (int i = 0; i < 1000; i++) {
+            content.insertString(0, "x");
+        }
+        content.remove(0, 500);
+        final char[] chars = new char[snapshot.length()];
+        snapshot.getChars(0, chars.length, chars, 0);
+        assertEquals("01234abc56789", new String(chars));
+        assertEquals('a', snapshot.charAt(5));
+    }
+
+    @Test
+    public void randomEditsWithUndoMatchStringBuilder() throws BadLocationException {
+        final Random random = new Random(42);
+        final StringBuilder expected = new StringBuilder("line one\nline two\n");
+        final PieceTableContent content = content(expected.substring(0, expected.length() - 1));
+        final Deque<UndoableEdit> edits = new ArrayDeque<>();
+        final Deque<String> states = new ArrayDeque<>();
+        for (int i = 0; i < 2000; i++) {
+            states.push(expected.toString());
+            final int where = random.nextInt(expected.length());
+            if (random.nextBoolean() || expected.length() < 3) {
+                final String text = random.nextInt(5) == 0 ? "\n" : Integer.toString(i);
+                edits.push(content.insertString(where, text));
+                expected.insert(where, text);
+            } else {
+                final int n = random.nextInt(Math.min(10, expected.length() - where - 1) + 1);
+                edits.push(content.remove(where, n));
+                expected.delete(where, where + n);
+            }
+            assertEquals(expected.toString(), content.getString(0, content.length()));
+        }
+        for (int i = 0; i < 500; i++) {
+            edits.pop().undo();
+            assertEquals(states.pop(), content.getString(0, content.length()));
+        }
+    }
+
+    @Test
+    public void keepsInsertedLatin1TextInBytesUntilWiderChar() throws BadLocationException {
+        final PieceTableContent content = content("log");
+        content.insertString(3, " café");
+        // исходные байты "log", три куска и массив их смещений тоже в куче
+        final long added = content.getHeapSize() - 3 - 3 * PieceTableContent.PIECE_SIZE - 4 * 16;
+        final ByteBuffer bytes = content.getBytes(3, 5);
+        assertEquals(5, bytes.remaining());
+        assertEquals((byte) 'é', bytes.get(bytes.position() + 4));
+        final TextSnapshot before = content.snapshot(0, content.length() - 1);
+
+        content.insertString(content.length() - 1, " и чай");
+        assertEquals("log café и чай\n", content.getString(0, content.length()));
+        assertEquals(null, content.getBytes(3, 5));
+        // вставка продолжила последний кусок
+        assertEquals(2 * added, content.getHeapSize() - 3 - 3 * PieceTableContent.PIECE_SIZE - 4 * 16);
+        final char[] chars = new char[before.length()];
+        before.getChars(0, chars.length, chars, 0);
+        assertEquals("log café", new String(chars));
+    }
+
+    private static PieceTableContent content(String text) {
+        final ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+        return new PieceTableContent(new ByteTextBuffer(bytes));
+    }
+}
@@ -0,0 +1,333 @@
+package by.azzi.jnotepad.document;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+import javax.swing.undo.UndoableEdit;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnmappableCharacterException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TextDocumentTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsAsciiFileWithLines() throws IOException, BadLocationException {
+        final File file = write("first\nsecond\n\nlast");
+        final TextDocument document = TextDocument.read(file);
+        assertEquals("first\nsecond\n\nlast", document.getText(0, document.getLength()));
+        final Element root = document.getDefaultRootElement();
+        assertEquals(4, root.getElementCount());
+        assertEquals(6, root.getElement(1).getStartOffset());
+        assertEquals(14, root.getElement(3).getStartOffset());
+        assertEquals("\n", document.getFormat().getLineSeparator());
+    }
+
+    @Test
+    public void normalizesCarriageReturns() throws IOException, BadLocationException {
+        final File file = write("a\r\nb\r\nc");
+        final TextDocument document = TextDocument.read(file);
+        assertEquals("a\nb\nc", document.getText(0, document.getLength()));
+        assertEquals(3, document.getDefaultRootElement().getElementCount());
+        assertEquals("\r\n", document.getFormat().getLineSeparator());
+    }
+
+    @Test
+    public void detectsEncodingAfterAsciiPrefix() throws IOException, BadLocationException {
+        final String text = "ascii line\nпривет, мир\r\nend";
+        final TextDocument document = TextDocument.read(write(text.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("ascii line\nпривет, мир\nend", document.getText(0, document.getLength()));
+        assertEquals(StandardCharsets.UTF_8, document.getFormat().getCharset());
+        assertEquals(3, document.getDefaultRootElement().getElementCount());
+        assertEquals(23, document.getDefaultRootElement().getElement(2).getStartOffset());
+    }
+
+    @Test
+    public void detectsLegacyCyrillic() throws IOException, BadLocationException {
+        final TextDocument document = TextDocument.read(write("Съешь же ещё этих мягких булок\r\n".getBytes(TextFormat.WINDOWS_1251)));
+        assertEquals(TextFormat.WINDOWS_1251, document.getFormat().getCharset());
+        assertEquals("Съешь же ещё этих мягких булок\n", document.getText(0, document.getLength()));
+    }
+
+    @Test
+    public void writesBackSameBytes() throws IOException {
+        assertRoundTrip("line 1\r\nстрока 2\r\n".getBytes(StandardCharsets.UTF_8));
+        assertRoundTrip("mac\rline\r".getBytes(StandardCharsets.ISO_8859_1));
+        final byte[] utf16 = "\uFEFFtext\nтекст\n".getBytes(StandardCharsets.UTF_16LE);
+        assertRoundTrip(utf16);
+        final byte[] bom = "\uFEFFbom\n".getBytes(StandardCharsets.UTF_8);
+        assertRoundTrip(bom);
+
+        final StringBuilder large = new StringBuilder();
+        for (int i = 0; large.length() < 3 * 1024 * 1024; i++) {
+            large.append("строка ").append(i).append("\r\n");
+        }
+        assertRoundTrip(large.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void keepsDecodedLatin1TextInBytes() throws IOException, BadLocationException {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < 1024 * 1024; i++) {
+            text.append("2024-01-01 INFO request ").append(i).append(" served in 5 ms, café\r\n");
+        }
+        final TextDocument compact = TextDocument.read(write(text.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(StandardCharsets.UTF_8, compact.getFormat().getCharset());
+        assertEquals(text.toString().replace("\r\n", "\n"), compact.getText(0, compact.getLength()));
+        assertEquals(1.0, compact.getHeapSize() / (double) compact.getLength(), 0.2);
+
+        // символ шире ISO-8859-1 в конце переводит остаток в char[]
+        text.append("конец");
+        final TextDocument wide = TextDocument.read(write(text.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(text.toString().replace("\r\n", "\n"), wide.getText(0, wide.getLength()));
+        assertEquals(2.0, wide.getHeapSize() / (double) wide.getLength(), 0.2);
+    }
+
+    @Test
+    public void writesBackInvalidUtf8AfterSample() throws IOException {
+        final ByteArrayOutputStream latin = new ByteArrayOutputStream();
+        while (latin.size() < TextReader.SAMPLE_LENGTH + 8000) {
+            latin.write("café au lait\n".getBytes(StandardCharsets.UTF_8));
+        }
+        // одиночный байт из windows-1252 дальше выборки, по которой выбран UTF-8
+        latin.write(0xE9);
+        latin.write("\nend\n".getBytes(StandardCharsets.ISO_8859_1));
+        assertEquals(TextFormat.WINDOWS_1252, assertRoundTrip(latin.toByteArray()).getFormat().getCharset());
+
+        final ByteArrayOutputStream cyrillic = new ByteArrayOutputStream();
+        while (cyrillic.size() < TextReader.SAMPLE_LENGTH + 8000) {
+            cyrillic.write("строка\r\n".getBytes(StandardCharsets.UTF_8));
+        }
+        // 0x81 из UTF-8 кириллицы нет в windows-1252
+        cyrillic.write(0xFF);
+        assertEquals(StandardCharsets.ISO_8859_1, assertRoundTrip(cyrillic.toByteArray()).getFormat().getCharset());
+    }
+
+    @Test
+    public void marksLossyFileWithBom() throws IOException, BadLocationException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write("\uFEFFtext\n".getBytes(StandardCharsets.UTF_8));
+        bytes.write(0xFF);
+        final TextDocument document = TextDocument.read(write(bytes.toByteArray()));
+        assertTrue(document.isLossy());
+        assertEquals("text\n\uFFFD", document.getText(0, document.getLength()));
+        assertFalse(TextDocument.read(write("\uFEFFtext\n".getBytes(StandardCharsets.UTF_8))).isLossy());
+    }
+
+    @Test
+    public void writerReportsUnmappableChars() throws IOException, BadLocationException {
+        final TextDocument document = TextDocument.read(write("Съешь же ещё этих мягких булок\r\n".getBytes(TextFormat.WINDOWS_1251)));
+        document.insertString(0, "日本", null);
+        try {
+            document.write(Channels.newChannel(new ByteArrayOutputStream()));
+            fail();
+        } catch (UnmappableCharacterException ex) {
+            // символов нет в windows-1251
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TextWriter.write(document.snapshot(), document.getFormat(), Channels.newChannel(out), true);
+        assertEquals("??Съешь же ещё этих мягких булок\r\n", new String(out.toByteArray(), TextFormat.WINDOWS_1251));
+    }
+
+    private TextDocument assertRoundTrip(byte[] bytes) throws IOException {
+        final TextDocument document = TextDocument.read(write(bytes));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        document.write(Channels.newChannel(out));
+        assertArrayEquals(bytes, out.toByteArray());
+        assertFalse(document.isLossy());
+        return document;
+    }
+
+    @Test
+    public void keepsTextWhenFileIsRewrittenInPlace() throws IOException, BadLocationException {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        final File file = folder.newFile();
+        Files.write(file.toPath(), text.toString().getBytes(StandardCharsets.UTF_8));
+        final TextDocument document = TextDocument.read(file);
+        Files.write(file.toPath(), "short\n".getBytes(StandardCharsets.UTF_8));
+        assertEquals(text.toString(), document.getText(0, document.getLength()));
+        Files.delete(file.toPath());
+        assertEquals(text.length(), document.getLength());
+    }
+
+    @Test
+    public void editsKeepLineStructure() throws IOException, BadLocationException {
+        final TextDocument document = TextDocument.read(write("a\nb\nc"));
+        document.insertString(2, "x\ny", null);
+        document.remove(0, 2);
+        assertEquals("x\nyb\nc", document.getText(0, document.getLength()));
+        assertEquals(3, document.getDefaultRootElement().getElementCount());
+    }
+
+    @Test
+    public void eventsReportLineChangesWithoutStoredElements() throws BadLocationException {
+        final TextDocument document = new TextDocument();
+        document.insertString(0, "a\nb\nc", null);
+        final List<DocumentEvent> events = new ArrayList<>();
+        final List<UndoableEdit> edits = new ArrayList<>();
+        document.addDocumentListener(new by.azzi.jnotepad.listeners.DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                events.add(e);
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                events.add(e);
+            }
+        });
+        document.addUndoableEditListener(e -> edits.add(e.getEdit()));
+
+        document.insertString(2, "x\ny\nz", null);
+        assertLineChange(events.get(0), 1, 1, 3);
+        document.remove(1, 5);
+        assertLineChange(events.get(1), 0, 4, 1);
+        document.insertString(0, "no breaks", null);
+        assertEquals(null, events.get(2).getChange(document.getDefaultRootElement()));
+        assertLines(document);
+
+        // отмена переставляет удаленные и добавленные строки
+        edits.get(2).undo();
+        edits.get(1).undo();
+        assertLineChange(events.get(4), 0, 1, 4);
+        assertLines(document);
+        assertEquals("z", document.getText(document.getDefaultRootElement().getElement(3).getStartOffset(), 1));
+        edits.get(1).redo();
+        assertLineChange(events.get(5), 0, 4, 1);
+        assertLines(document);
+    }
+
+    private static void assertLineChange(DocumentEvent event, int index, int removed, int added) {
+        final DocumentEvent.ElementChange change = event.getChange(event.getDocument().getDefaultRootElement());
+        assertEquals(index, change.getIndex());
+        assertEquals(removed, TextDocument.getRemovedCount(change));
+        assertEquals(added, TextDocument.getAddedCount(change));
+        assertEquals(removed, change.getChildrenRemoved().length);
+        assertEquals(added, change.getChildrenAdded().length);
+        for (int i = 0; i < added; i++) {
+            final Element line = event.getDocument().getDefaultRootElement().getElement(index + i);
+            assertEquals(line.getStartOffset(), change.getChildrenAdded()[i].getStartOffset());
+            assertEquals(line.getEndOffset(), change.getChildrenAdded()[i].getEndOffset());
+        }
+    }
+
+    @Test
+    public void replaceIsOneEdit() throws IOException, BadLocationException {
+        final String text = "one two\none\nthree one";
+        final TextDocument document = TextDocument.read(write(text));
+        final DocumentStatistics statistics = new DocumentStatistics();
+        statistics.setDocument(document);
+        final List<UndoableEdit> edits = new ArrayList<>();
+        document.addUndoableEditListener(e -> edits.add(e.getEdit()));
+        final int[] events = new int[1];
+        document.addDocumentListener(new by.azzi.jnotepad.listeners.DocumentListener() {
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                events[0]++;
+            }
+        });
+        final Position three = document.createPosition(text.indexOf("three"));
+
+        document.replace(new int[]{0, 8, 18}, 3, 3, "1 \n2");
+        final String replaced = "1 \n2 two\n1 \n2\nthree 1 \n2";
+        assertEquals(replaced, document.getText(0, document.getLength()));
+        assertLines(document);
+        assertEquals(1, edits.size());
+        assertEquals(1, events[0]);
+        assertEquals(replaced.indexOf("three"), three.getOffset());
+        assertEquals(8, statistics.getWordCount());
+
+        edits.get(0).undo();
+        assertEquals(text, document.getText(0, document.getLength()));
+        assertLines(document);
+        assertEquals(text.indexOf("three"), three.getOffset());
+        assertEquals(5, statistics.getWordCount());
+
+        edits.get(0).redo();
+        assertEquals(replaced, document.getText(0, document.getLength()));
+        assertLines(document);
+    }
+
+    @Test
+    public void replaceAtLineBoundariesKeepsLines() throws IOException, BadLocationException {
+        assertReplaceLines("\nab", "\n", "");
+        assertReplaceLines("\n\nx\n", "\n", "");
+        assertReplaceLines("x\ny\nx\n", "x\n", "");
+        assertReplaceLines("a\nb\nb", "\nb", "");
+        assertReplaceLines("ab\ncd\nab", "b\nc", "\n\n");
+        assertReplaceLines("\n\n\n", "\n", "-\n-");
+    }
+
+    /**
+     * заменяет все вхождения match и сверяет строки документа с текстом до и после отмены
+     */
+    private void assertReplaceLines(String text, String match, String replacement) throws IOException, BadLocationException {
+        final TextDocument document = TextDocument.read(write(text));
+        final List<UndoableEdit> edits = new ArrayList<>();
+        document.addUndoableEditListener(e -> edits.add(e.getEdit()));
+        final IntArray starts = new IntArray();
+        for (int i = text.indexOf(match); i >= 0; i = text.indexOf(match, i + match.length())) {
+            starts.add(i);
+        }
+        document.replace(starts.toArray(), starts.size(), match.length(), replacement);
+        assertEquals(text.replace(match, replacement), document.getText(0, document.getLength()));
+        assertLines(document);
+        edits.get(0).undo();
+        assertLines(document);
+        edits.get(0).redo();
+        assertLines(document);
+    }
+
+    /**
+     * элементы строк и {@link LineIndex} совпадают с переводами строк в тексте
+     */
+    private static void assertLines(TextDocument document) throws BadLocationException {
+        final String text = document.getText(0, document.getLength());
+        final Element root = document.getDefaultRootElement();
+        final String[] lines = text.split("\n", -1);
+        final LineIndex index = document.getLineIndex();
+        assertEquals(lines.length, root.getElementCount());
+        assertEquals(lines.length, index.getLineCount());
+        int start = 0;
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(start, root.getElement(i).getStartOffset());
+            assertEquals(start, index.getLineStart(i));
+            assertEquals(i, root.getElementIndex(start));
+            start += lines[i].length() + 1;
+            assertEquals(start, root.getElement(i).getEndOffset());
+            assertEquals(start, index.getLineEnd(i));
+        }
+    }
+
+    private File write(String text) throws IOException {
+        return write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private File write(byte[] bytes) throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+}
@@ -0,0 +1,107 @@
+package by.azzi.jnotepad.search;
+
+import by.azzi.jnotepad.document.MappedText;
+import by.azzi.jnotepad.document.TextFormat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ByteSearcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsAcrossWindows() throws Exception {
+        final StringBuilder content = new StringBuilder();
+        final Random random = new Random(7);
+        while (content.length() < 20_000) {
+            content.append(random.nextInt(3) == 0 ? "needle " : "hay ");
+        }
+        final String string = content.toString();
+        // окно меньше текста, вхождения попадают на стыки окон
+        try (MappedText text = MappedText.open(write(string, StandardCharsets.UTF_8), 97)) {
+            final ByteSearcher searcher = searcher("needle", true, false, StandardCharsets.UTF_8);
+            long from = 0;
+            int expected = string.indexOf("needle");
+            while (expected >= 0) {
+                final long found = searcher.find(text, from, true, false, () -> false);
+                assertEquals(expected, found);
+                from = found + 1;
+                expected = string.indexOf("needle", expected + 1);
+            }
+            assertEquals(-1, searcher.find(text, from, true, false, () -> false));
+            assertEquals(string.indexOf("needle"), searcher.find(text, from, true, true, () -> false));
+            assertEquals(string.lastIndexOf("needle"), searcher.find(text, string.length(), false, false, () -> false));
+            assertEquals(string.lastIndexOf("needle", 5000), searcher.find(text, 5000 + 6, false, false, () -> false));
+        }
+    }
+
+    @Test
+    public void ignoresCaseInMultibyteText() throws Exception {
+        final String content = "запись: ОШИБКА диска, Ошибка сети, ошибкА, ошибки";
+        try (MappedText text = MappedText.open(write(content, StandardCharsets.UTF_8), 16)) {
+            final ByteSearcher searcher = searcher("ошибка", false, false, StandardCharsets.UTF_8);
+            final int utf8Length = "ошибка".getBytes(StandardCharsets.UTF_8).length;
+            assertEquals(utf8Length, searcher.getMatchLength());
+            long found = searcher.find(text, 0, true, false, () -> false);
+            assertEquals(bytes(content, content.indexOf("ОШИБКА")), found);
+            found = searcher.find(text, found + 1, true, false, () -> false);
+            assertEquals(bytes(content, content.indexOf("Ошибка")), found);
+            found = searcher.find(text, found + 1, true, false, () -> false);
+            assertEquals(bytes(content, content.indexOf("ошибкА")), found);
+            assertEquals(-1, searcher.find(text, found + 1, true, false, () -> false));
+
+            final ByteSearcher exact = searcher("Ошибка", true, false, StandardCharsets.UTF_8);
+            assertEquals(bytes(content, content.indexOf("Ошибка")), exact.find(text, 0, true, false, () -> false));
+        }
+    }
+
+    @Test
+    public void searchesSingleByteCharset() throws Exception {
+        final Charset charset = TextFormat.WINDOWS_1251;
+        final String content = "Привет, мир! привет миру. ПРИВЕТ";
+        try (MappedText text = MappedText.open(write(content, charset), 8)) {
+            final ByteSearcher searcher = searcher("привет", false, true, charset);
+            assertEquals(0, searcher.find(text, 0, true, false, () -> false));
+            assertEquals(content.indexOf("привет"), searcher.find(text, 1, true, false, () -> false));
+            assertEquals(content.lastIndexOf("ПРИВЕТ"), searcher.find(text, content.length(), false, false, () -> false));
+            // слово целиком: "мир" внутри "миру" не подходит
+            final ByteSearcher word = searcher("мир", false, true, charset);
+            assertEquals(content.indexOf("мир!"), word.find(text, 0, true, false, () -> false));
+            assertEquals(-1, word.find(text, content.indexOf("мир!") + 1, true, false, () -> false));
+            // символа нет в кодировке файла
+            assertEquals(-1, searcher("日本", true, false, charset).find(text, 0, true, true, () -> false));
+        }
+    }
+
+    @Test
+    public void stopsWhenCancelled() throws Exception {
+        try (MappedText text = MappedText.open(write("abc abc", StandardCharsets.UTF_8), 16)) {
+            assertEquals(-1, searcher("abc", true, false, StandardCharsets.UTF_8).find(text, 0, true, true, () -> true));
+        }
+    }
+
+    private static ByteSearcher searcher(String text, boolean matchCase, boolean wholeWord, Charset charset) {
+        return new ByteSearcher(new SearchQuery(text, matchCase, wholeWord), charset);
+    }
+
+    private static long bytes(String content, int chars) {
+        return content.substring(0, chars).getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private File write(String content, Charset charset) throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), content.getBytes(charset));
+        return file;
+    }
+}
@@ -0,0 +1,51 @@
+package by.azzi.jnotepad.search;
+
+import by.azzi.jnotepad.document.TextDocument;
+import org.junit.Test;
+
+import javax.swing.text.BadLocationException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+
+public class RegexSearchTest {
+
+    @Test
+    public void matchesSingleThreadedSearchAcrossChunks() throws BadLocationException {
+        // текст в несколько кусков, что бы поиск разделился
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < RegexSearch.CHUNK_LENGTH * 5; i++) {
+            text.append(i % 7 == 0 ? "ERROR request " + i + " timeout\n" : "INFO request " + i + " ok\n");
+        }
+        final TextDocument document = new TextDocument();
+        document.insertString(0, text.toString(), null);
+        final Pattern pattern = Pattern.compile("ERROR.*timeout", Pattern.MULTILINE);
+
+        final SearchResult result = new RegexSearch(document.snapshot(), pattern).run(new ForkJoinPool(4));
+
+        final Matcher matcher = pattern.matcher(text);
+        int index = 0;
+        while (matcher.find()) {
+            assertEquals(matcher.start(), result.getStart(index));
+            assertEquals(matcher.end(), result.getEnd(index));
+            assertEquals(document.getDefaultRootElement().getElementIndex(matcher.start()), result.getLine(index));
+            index++;
+        }
+        assertEquals(index, result.getCount());
+        assertEquals(index, result.size());
+        assertEquals(1, result.indexAfter(result.getStart(0) + 1));
+        assertEquals("ERROR request 7 timeout", result.getPreview(1));
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancelled() throws BadLocationException {
+        final TextDocument document = new TextDocument();
+        document.insertString(0, "a\nb\n", null);
+        final RegexSearch search = new RegexSearch(document.snapshot(), Pattern.compile("a"));
+        search.cancel();
+        search.run(ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,102 @@
+package by.azzi.jnotepad.search;
+
+import by.azzi.jnotepad.document.CharArrayTextBuffer;
+import by.azzi.jnotepad.document.PieceTableContent;
+import by.azzi.jnotepad.document.TextDocument;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.swing.text.BadLocationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TextSearcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void searchesMappedBytes() throws IOException, BadLocationException {
+        // ASCII начало файла остается байтами в отображении, после 'é' текст декодирован в char[]
+        final File file = folder.newFile("mapped.txt");
+        final String text = "first Strasse line\nsecond line ending here é then STRASSE and straße";
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        final TextDocument document = TextDocument.read(file);
+        final TextSource source = TextSource.of(document);
+        final int tail = text.indexOf('é');
+        final TextSearcher searcher = new TextSearcher(new SearchQuery("LINE", false, false));
+        assertEquals(text.indexOf("line"), searcher.find(source, 0, true, false));
+        assertEquals(text.lastIndexOf("line"), searcher.find(source, tail, false, false));
+        // вхождение на стыке байтового и символьного кусков
+        final TextSearcher stitched = new TextSearcher(new SearchQuery("here é", true, false));
+        assertEquals(text.indexOf("here é"), stitched.find(source, 0, true, false));
+        final TextSearcher unicode = new TextSearcher(new SearchQuery("straße", true, false));
+        assertEquals(text.lastIndexOf("straße"), unicode.find(source, 10, true, false));
+    }
+
+    @Test
+    public void findsAcrossPieceBoundaries() throws BadLocationException {
+        // каждый символ - отдельный кусок, так что любое вхождение лежит на стыке сегментов
+        final TextDocument document = new TextDocument();
+        final String text = "abc needle xyz Needle needle";
+        for (int i = 0; i < text.length(); i++) {
+            document.insertString(0, String.valueOf(text.charAt(text.length() - 1 - i)), null);
+        }
+        final TextSource source = TextSource.of(document);
+
+        final TextSearcher exact = new TextSearcher(new SearchQuery("needle", true, false));
+        assertEquals(4, exact.find(source, 0, true, false));
+        assertEquals(22, exact.find(source, 5, true, false));
+        assertEquals(-1, exact.find(source, 23, true, false));
+        assertEquals(4, exact.find(source, 23, true, true));
+        assertEquals(4, exact.find(source, 22, false, false));
+        assertEquals(22, exact.find(source, 4, false, true));
+
+        final TextSearcher ignoreCase = new TextSearcher(new SearchQuery("NEEDLE", false, false));
+        assertEquals(15, ignoreCase.find(source, 5, true, false));
+    }
+
+    @Test
+    public void wholeWord() throws BadLocationException {
+        final TextDocument document = new TextDocument();
+        document.insertString(0, "cat concat cat_ caterpillar cat.", null);
+        final TextSearcher searcher = new TextSearcher(new SearchQuery("cat", true, true));
+        final TextSource source = TextSource.of(document);
+        assertEquals(0, searcher.find(source, 0, true, false));
+        assertEquals(28, searcher.find(source, 1, true, false));
+        assertEquals(0, searcher.find(source, 28, false, false));
+    }
+
+    @Test
+    public void matchesStringIndexOf() throws BadLocationException {
+        final Random random = new Random(7);
+        final char[] chars = new char[200_000];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = "abAB\n".charAt(random.nextInt(5));
+        }
+        final String text = new String(chars);
+        final TextDocument document = new TextDocument(new PieceTableContent(new CharArrayTextBuffer(chars, chars.length)));
+        // правки разбивают текст на куски
+        for (int i = 0; i < 50; i++) {
+            final int offset = random.nextInt(document.getLength());
+            document.remove(offset, 1);
+            document.insertString(offset, text.substring(offset, offset + 1), null);
+        }
+        final TextSource source = TextSource.of(document);
+        for (String pattern : new String[]{"a", "abba", "aBbA\nA", "bbbbbbbb"}) {
+            final TextSearcher searcher = new TextSearcher(new SearchQuery(pattern, true, false));
+            for (int k = 0; k < 20; k++) {
+                final int from = random.nextInt(text.length());
+                assertEquals(pattern + " from " + from, text.indexOf(pattern, from), searcher.find(source, from, true, false));
+                final int expected = text.lastIndexOf(pattern, from - pattern.length());
+                assertEquals(pattern + " before " + from, expected, searcher.find(source, from, false, false));
+            }
+        }
+    }
+}
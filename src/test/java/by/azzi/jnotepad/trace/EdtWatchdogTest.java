@@ -0,0 +1,63 @@
+package by.azzi.jnotepad.trace;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.*;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EdtWatchdogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsStallWithEdtStack() throws IOException, InterruptedException, InvocationTargetException {
+        final File file = new File(folder.getRoot(), "stall.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(EdtStallEvent.class);
+            recording.start();
+            final EdtWatchdog watchdog = new EdtWatchdog(50, () -> true);
+            final Thread thread = new Thread(watchdog);
+            thread.setDaemon(true);
+            thread.start();
+
+            EventQueue.invokeAndWait(() -> {
+                // поток событий отвечает
+            });
+            EventQueue.invokeAndWait(EdtWatchdogTest::stall);
+            // ответ на последний опрос приходит после зависания
+            Thread.sleep(200);
+            thread.interrupt();
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+
+        final List<RecordedEvent> stalls = RecordingFile.readAllEvents(file.toPath()).stream()
+                .filter(event -> event.getEventType().getName().equals("jnotepad.EdtStall"))
+                .collect(Collectors.toList());
+        assertEquals(1, stalls.size());
+        assertTrue(stalls.get(0).getDuration().compareTo(Duration.ofMillis(300)) >= 0);
+        assertTrue(stalls.get(0).getString("stack"), stalls.get(0).getString("stack").contains("EdtWatchdogTest.stall"));
+    }
+
+    private static void stall() {
+        try {
+            Thread.sleep(500);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}